@@ -84,4 +84,8 @@ public class MxImpl implements MxInterface {
         S3ObjectMx.copy(bucketName, key);
     }
 
+    public void registerConcurrencyLimitChangeEvent(int concurrencyLimit) {
+        S3ServiceMx.concurrencyLimitChanged(concurrencyLimit);
+    }
+
 }
@@ -33,6 +33,8 @@ import javax.management.ObjectName;
 public class S3ServiceMx implements S3ServiceMxMBean {
     static final String DOMAIN = "jets3t";
     S3BucketMx bucketCounter;
+    LongCounter concurrencyLimitChanges = new LongCounter();
+    private volatile int concurrencyLimit = -1;
     private static S3ServiceMx instance;
 
     private S3ServiceMx() {
@@ -114,4 +116,18 @@ public class S3ServiceMx implements S3ServiceMxMBean {
     public long getTotalRequests() {
         return this.bucketCounter.getTotalRequests();
     }
+
+    static void concurrencyLimitChanged(int concurrencyLimit) {
+        S3ServiceMx mx = getInstance();
+        mx.concurrencyLimit = concurrencyLimit;
+        mx.concurrencyLimitChanges.increment();
+    }
+
+    public int getConcurrencyLimit() {
+        return this.concurrencyLimit;
+    }
+
+    public long getConcurrencyLimitChanges() {
+        return this.concurrencyLimitChanges.getValue();
+    }
 }
@@ -20,4 +20,8 @@ package contribs.mx;
 
 public interface S3ServiceMxMBean extends S3BucketMxMBean {
 
+    public int getConcurrencyLimit();
+
+    public long getConcurrencyLimitChanges();
+
 }
@@ -1898,8 +1898,9 @@ public class Cockpit extends JApplet implements S3ServiceEventListener, ActionLi
                     for (int i = 0; i < selectedObjects.length; i++) {
                         selectedObjects[i].setAcl(updatedObjectACL[0]);
                     }                            
-                    // Perform ACL updates.
-                    s3ServiceMulti.putACLs(selectedBucket, selectedObjects);                
+                    // Perform ACL updates, skipping objects whose cached ACL is already up-to-date.
+                    s3ServiceMulti.putACLs(selectedBucket, selectedObjects, 
+                        s3ServiceMulti.getS3Service().getAccessControlListCache().isEnabled());
                 }
             }    
         });
@@ -45,6 +45,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -137,6 +138,7 @@ import org.jets3t.service.utils.TimeFormatter;
 import org.jets3t.service.utils.gatekeeper.GatekeeperMessage;
 import org.jets3t.service.utils.gatekeeper.SignatureRequest;
 import org.jets3t.service.utils.signedurl.GatekeeperClientUtils;
+import org.jets3t.service.utils.signedurl.GatekeeperRequestCoalescer;
 import org.jets3t.service.utils.signedurl.SignedUrlAndObject;
 
 import com.centerkey.utils.BareBonesBrowserLaunch;
@@ -202,6 +204,8 @@ public class CockpitLite extends JApplet implements S3ServiceEventListener, Acti
     private S3ServiceMulti s3ServiceMulti = null;
     
     private GatekeeperClientUtils gkClient = null;
+    private GatekeeperRequestCoalescer gkCoalescer = null;
+    private int gkPrefetchBatchSize = 0;
     
     private String userBucketName = null;
     private String userVanityHost = null;
@@ -401,6 +405,15 @@ public class CockpitLite extends JApplet implements S3ServiceEventListener, Acti
     			gatekeeperUrl, 
                 APPLICATION_DESCRIPTION, MAX_CONNECTION_RETRIES, HTTP_CONNECTION_TIMEOUT,
                 this);
+        gkClient.setMaxConnections(
+            cockpitLiteProperties.getIntProperty("gatekeeper.max-connections", 4));
+        
+        // Merge signature requests made at the same time, and reuse prefetched signatures.
+        gkCoalescer = new GatekeeperRequestCoalescer(gkClient,
+            cockpitLiteProperties.getLongProperty("gatekeeper.batch-window-ms", 20),
+            cockpitLiteProperties.getIntProperty("gatekeeper.batch-max-requests", 1000),
+            cockpitLiteProperties.getLongProperty("gatekeeper.prefetch-expiry-seconds", 300) * 1000);
+        gkPrefetchBatchSize = cockpitLiteProperties.getIntProperty("gatekeeper.prefetch-batch-size", 100);
 
         // Initialise a non-authenticated service.
         try {
@@ -975,6 +988,7 @@ public class CockpitLite extends JApplet implements S3ServiceEventListener, Acti
     		Map requestProperties = new HashMap();
     		requestProperties.put(GatekeeperMessage.LIST_OBJECTS_IN_BUCKET_FLAG, "");
     		requestProperties.putAll(cockpitLiteProperties.getProperties());
+            requestProperties.put(GatekeeperMessage.LIST_OBJECTS_MAX_KEYS, "1000");
             if (filterObjectsCheckBox.isSelected() && filterObjectsPrefix.getText().length() > 0) {
                 requestProperties.put("Prefix", filterObjectsPrefix.getText());                
             }
@@ -983,15 +997,32 @@ public class CockpitLite extends JApplet implements S3ServiceEventListener, Acti
 				gkClient.requestActionThroughGatekeeper(
 						null, null, new S3Object[] {}, requestProperties);		
 			
-			stopProgressPanel(this);
-			
             String gatekeeperErrorCode = responseMessage.getApplicationProperties()
             	.getProperty(GatekeeperMessage.APP_PROPERTY_GATEKEEPER_ERROR_CODE);
             
+            // Request further pages of the listing until the Gatekeeper reports it is complete.
+            List allSignatureRequests = new ArrayList(
+                Arrays.asList(responseMessage.getSignatureRequests()));
+            String nextMarker = responseMessage.getApplicationProperties()
+                .getProperty(GatekeeperMessage.LIST_OBJECTS_NEXT_MARKER);
+            while (gatekeeperErrorCode == null && nextMarker != null) {
+                requestProperties.put(GatekeeperMessage.LIST_OBJECTS_MARKER, nextMarker);
+                GatekeeperMessage pageMessage = gkClient.requestActionThroughGatekeeper(
+                    null, null, new S3Object[] {}, requestProperties);
+                gatekeeperErrorCode = pageMessage.getApplicationProperties()
+                    .getProperty(GatekeeperMessage.APP_PROPERTY_GATEKEEPER_ERROR_CODE);
+                allSignatureRequests.addAll(Arrays.asList(pageMessage.getSignatureRequests()));
+                nextMarker = pageMessage.getApplicationProperties()
+                    .getProperty(GatekeeperMessage.LIST_OBJECTS_NEXT_MARKER);
+            }
+			
+			stopProgressPanel(this);
+			
             if (gatekeeperErrorCode == null) {
             	// Listing succeeded
     			final S3Object[] objects = gkClient.buildS3ObjectsFromSignatureRequests(
-					responseMessage.getSignatureRequests());
+    			    (SignatureRequest[]) allSignatureRequests.toArray(
+    			        new SignatureRequest[allSignatureRequests.size()]));
     			
                 // User account description provided by Gatekeeper
                 final String accountDescription = 
@@ -1681,7 +1712,7 @@ public class CockpitLite extends JApplet implements S3ServiceEventListener, Acti
     	try {
             startProgressPanel(this, "Checking permissions", 0, null); 
     		
-        	GatekeeperMessage responseMessage = gkClient.requestActionThroughGatekeeper(
+        	GatekeeperMessage responseMessage = gkCoalescer.requestActionThroughGatekeeper(
     			operationType, userBucketName, objects, cockpitLiteProperties.getProperties());
         	
 			stopProgressPanel(this);
@@ -1865,6 +1896,7 @@ public class CockpitLite extends JApplet implements S3ServiceEventListener, Acti
             // Populate S3Objects representing upload files with metadata etc.
             final S3Object[] objects = new S3Object[fileKeysForUpload.size()];
             int objectIndex = 0;
+            int prefetchedCount = 0;
             for (Iterator iter = fileKeysForUpload.iterator(); iter.hasNext();) {
                 String fileKey = iter.next().toString();
                 File file = (File) uploadingFilesMap.get(fileKey);
@@ -1876,6 +1908,17 @@ public class CockpitLite extends JApplet implements S3ServiceEventListener, Acti
                     + " of " + fileKeysForUpload.size() + " file(s) for upload";
                 
                 objects[objectIndex++] = newObject;
+                
+                // Obtain signed PUT URLs for prepared files while the remaining files are prepared. 
+                if (gkPrefetchBatchSize > 0 && objectIndex - prefetchedCount >= gkPrefetchBatchSize 
+                    && objectIndex < objects.length) 
+                {
+                    S3Object[] prefetchObjects = new S3Object[objectIndex - prefetchedCount];
+                    System.arraycopy(objects, prefetchedCount, prefetchObjects, 0, prefetchObjects.length);
+                    gkCoalescer.prefetch(SignatureRequest.SIGNATURE_TYPE_PUT, userBucketName, 
+                        prefetchObjects, cockpitLiteProperties.getProperties());
+                    prefetchedCount = objectIndex;
+                }
             }
             
             stopProgressDialog();
@@ -0,0 +1,456 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.apps.synchronize;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.utils.FileComparer;
+
+/**
+ * Detects changes to a set of local files and directories between successive scans, for
+ * use by the watch mode of {@link Synchronize}.
+ * <p>
+ * The first scan walks the whole tree, applying the same file keys and <code>.jets3t-ignore</code>
+ * rules as {@link FileComparer#buildFileMap(File[], boolean)}. Later scans avoid examining every
+ * file, so their cost depends on the number of directories and changes rather than the size of
+ * the tree:
+ * <ul>
+ * <li>Only directories whose last-modified date has changed are listed again, to find files
+ * that have been created, removed or renamed.</li>
+ * <li>Files that changed recently are checked on every scan until they stop changing.</li>
+ * <li>Other files are checked in turn, <code>filesCheckedPerScan</code> at a time, to find
+ * files modified in place. Such changes may therefore take several scans to detect.</li>
+ * </ul>
+ * Changes to <code>.jets3t-ignore</code> files are not detected, so callers should also perform
+ * a full synchronization from time to time.
+ * <p>
+ * The keys of changed and removed files accumulate until they are collected with
+ * {@link #takeChangedKeys()} and {@link #takeRemovedKeys()}. A key is only ever in one
+ * of these sets, reflecting the most recent change to the file.
+ *
+ * @author James Murty
+ */
+public class FileChangeDetector {
+    /**
+     * Directories modified this soon before they were listed are listed again on the next scan,
+     * in case a later change in the same second did not alter the directory's modification date.
+     */
+    private static final long DIRECTORY_DATE_RESOLUTION_MS = 2000;
+
+    private final DirectoryScanner scanner;
+    private final File[] paths;
+    private final boolean includeDirectories;
+    private final int filesCheckedPerScan;
+
+    private Map filesMap = new HashMap();
+    private Map fileSignatures = new HashMap();
+    private Map directoryStates = new HashMap();
+    private List[] topLevelIgnorePatternLists = null;
+
+    private List fileKeysInCheckOrder = null;
+    private int nextFileCheckIndex = 0;
+    private Set recentlyChangedKeys = new HashSet();
+
+    private Set changedKeys = new TreeSet();
+    private Set removedKeys = new TreeSet();
+    private boolean isBaselineScanned = false;
+    private boolean changesDetected = false;
+
+    /**
+     * Gives the change detector access to the ignore rules applied by {@link FileComparer},
+     * so individual directories can be listed with the same rules as a full file map.
+     */
+    private static class DirectoryScanner extends FileComparer {
+        public DirectoryScanner(Jets3tProperties jets3tProperties) {
+            super(jets3tProperties);
+        }
+
+        public List getIgnorePatternList(File directory, List parentIgnorePatternList) {
+            return buildIgnoreRegexpList(directory, parentIgnorePatternList);
+        }
+
+        public boolean isIgnoredFile(List ignorePatternList, File file) {
+            return isIgnored(ignorePatternList, file);
+        }
+    }
+
+    /**
+     * The state of a watched directory when it was last listed.
+     */
+    private static class DirectoryState {
+        private final File directory;
+        private final String key;
+        private final String keyPrefix;
+        private final List ignorePatternList;
+        private final Set childKeys = new HashSet();
+        private long lastModified = 0;
+        private long listedTime = 0;
+
+        public DirectoryState(File directory, String key, List ignorePatternList) {
+            this.directory = directory;
+            this.key = key;
+            this.keyPrefix = key + "/";
+            this.ignorePatternList = ignorePatternList;
+        }
+
+        public boolean isListingRequired() {
+            return directory.lastModified() != lastModified
+                || lastModified + DIRECTORY_DATE_RESOLUTION_MS >= listedTime;
+        }
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties that control which files are ignored, as for {@link FileComparer}.
+     * @param paths
+     * the local files and directories to watch.
+     * @param includeDirectories
+     * if true, directories are included in the file maps.
+     * @param filesCheckedPerScan
+     * the number of unchanged files checked for modifications by each scan. If this value
+     * is 0 or less, every file is checked by every scan.
+     */
+    public FileChangeDetector(Jets3tProperties jets3tProperties, File[] paths,
+        boolean includeDirectories, int filesCheckedPerScan)
+    {
+        this.scanner = new DirectoryScanner(jets3tProperties);
+        this.paths = paths;
+        this.includeDirectories = includeDirectories;
+        this.filesCheckedPerScan = filesCheckedPerScan;
+    }
+
+    /**
+     * Describes the state of a file, such that the description changes when the file is modified.
+     */
+    private String buildSignature(File file) {
+        return file.length() + ":" + file.lastModified();
+    }
+
+    /**
+     * Scans the local files and records the keys of any files that have been created, modified
+     * or removed since the previous scan. The first scan establishes the baseline state of
+     * the files and does not record any changes.
+     *
+     * @return
+     * true if any changes were detected by this scan.
+     */
+    public synchronized boolean scan() {
+        changesDetected = false;
+        if (!isBaselineScanned) {
+            isBaselineScanned = true;
+            topLevelIgnorePatternLists = new List[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                // The same ignore rules as FileComparer.buildFileMap(File[], boolean).
+                File parentDirectory = paths[i].getParentFile();
+                topLevelIgnorePatternLists[i] = scanner.getIgnorePatternList(
+                    (parentDirectory == null ? new File(".") : parentDirectory), null);
+                if (isTopLevelPathPresent(i)) {
+                    addEntry(paths[i].getName(), paths[i], topLevelIgnorePatternLists[i], false);
+                }
+            }
+            return false;
+        }
+
+        // Check for watched paths that have been created or removed.
+        for (int i = 0; i < paths.length; i++) {
+            String key = paths[i].getName();
+            boolean isKnown = filesMap.containsKey(key) || directoryStates.containsKey(key)
+                || fileSignatures.containsKey(key);
+            boolean isPresent = isTopLevelPathPresent(i);
+            if (isKnown && !isPresent) {
+                removeEntry(key);
+            } else if (!isKnown && isPresent) {
+                addEntry(key, paths[i], topLevelIgnorePatternLists[i], true);
+            }
+        }
+
+        // List directories whose contents have changed.
+        Iterator stateIter = new ArrayList(directoryStates.values()).iterator();
+        while (stateIter.hasNext()) {
+            DirectoryState state = (DirectoryState) stateIter.next();
+            // Directories removed while listing their parents are skipped.
+            if (directoryStates.get(state.key) == state && state.isListingRequired()) {
+                listDirectory(state, true);
+            }
+        }
+
+        // Check recently changed files until they stop changing.
+        Iterator keyIter = new ArrayList(recentlyChangedKeys).iterator();
+        while (keyIter.hasNext()) {
+            String key = (String) keyIter.next();
+            if (!checkFile(key)) {
+                recentlyChangedKeys.remove(key);
+            }
+        }
+
+        // Check some of the other files for modifications.
+        if (fileKeysInCheckOrder == null) {
+            fileKeysInCheckOrder = new ArrayList(fileSignatures.keySet());
+        }
+        int checkCount = fileKeysInCheckOrder.size();
+        if (filesCheckedPerScan > 0 && filesCheckedPerScan < checkCount) {
+            checkCount = filesCheckedPerScan;
+        }
+        for (int i = 0; i < checkCount; i++) {
+            if (nextFileCheckIndex >= fileKeysInCheckOrder.size()) {
+                nextFileCheckIndex = 0;
+            }
+            String key = (String) fileKeysInCheckOrder.get(nextFileCheckIndex++);
+            if (checkFile(key)) {
+                recentlyChangedKeys.add(key);
+            }
+        }
+
+        return changesDetected;
+    }
+
+    private boolean isTopLevelPathPresent(int index) {
+        return paths[index].exists()
+            && !scanner.isIgnoredFile(topLevelIgnorePatternLists[index], paths[index]);
+    }
+
+    /**
+     * Starts watching a file or directory, and everything inside a directory.
+     *
+     * @param isNew
+     * if true, the file and the contents of a directory are recorded as changed.
+     */
+    private void addEntry(String key, File file, List parentIgnorePatternList, boolean isNew) {
+        int delimOffset = key.lastIndexOf('/');
+        if (delimOffset > 0) {
+            DirectoryState parentState = (DirectoryState) directoryStates.get(key.substring(0, delimOffset));
+            if (parentState != null) {
+                parentState.childKeys.add(key);
+            }
+        }
+
+        if (file.isDirectory()) {
+            DirectoryState state = new DirectoryState(file, key,
+                scanner.getIgnorePatternList(file, parentIgnorePatternList));
+            directoryStates.put(key, state);
+            if (includeDirectories) {
+                filesMap.put(key, file);
+                if (isNew) {
+                    recordChange(key);
+                }
+            }
+            listDirectory(state, isNew);
+        } else {
+            filesMap.put(key, file);
+            fileSignatures.put(key, buildSignature(file));
+            fileKeysInCheckOrder = null;
+            if (isNew) {
+                recordChange(key);
+                recentlyChangedKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Stops watching a file or directory, and everything inside a directory, recording them
+     * all as removed.
+     */
+    private void removeEntry(String key) {
+        DirectoryState state = (DirectoryState) directoryStates.remove(key);
+        if (state != null) {
+            Iterator childIter = new ArrayList(state.childKeys).iterator();
+            while (childIter.hasNext()) {
+                removeEntry((String) childIter.next());
+            }
+        }
+        int delimOffset = key.lastIndexOf('/');
+        if (delimOffset > 0) {
+            DirectoryState parentState = (DirectoryState) directoryStates.get(key.substring(0, delimOffset));
+            if (parentState != null) {
+                parentState.childKeys.remove(key);
+            }
+        }
+
+        boolean wasMapped = (filesMap.remove(key) != null);
+        if (fileSignatures.remove(key) != null) {
+            fileKeysInCheckOrder = null;
+        }
+        recentlyChangedKeys.remove(key);
+        if (wasMapped) {
+            removedKeys.add(key);
+            changedKeys.remove(key);
+            changesDetected = true;
+        }
+    }
+
+    /**
+     * Lists a directory, and starts or stops watching any files that have been created in it
+     * or removed from it since it was last listed.
+     *
+     * @param isNew
+     * if true, files found in the directory are recorded as changed.
+     */
+    private void listDirectory(DirectoryState state, boolean isNew) {
+        // Note the modification date before listing, so changes during the listing are not missed.
+        state.lastModified = state.directory.lastModified();
+        state.listedTime = System.currentTimeMillis();
+
+        Set presentKeys = new HashSet();
+        File children[] = state.directory.listFiles();
+        for (int i = 0; children != null && i < children.length; i++) {
+            if (scanner.isIgnoredFile(state.ignorePatternList, children[i])) {
+                continue;
+            }
+            String childKey = state.keyPrefix + children[i].getName();
+            presentKeys.add(childKey);
+
+            boolean isKnownDirectory = directoryStates.containsKey(childKey);
+            boolean isKnownFile = fileSignatures.containsKey(childKey);
+            if (isKnownDirectory != children[i].isDirectory() || isKnownFile == children[i].isDirectory()) {
+                // The child is new, or has been replaced by a different kind of entry.
+                if (isKnownDirectory || isKnownFile) {
+                    removeEntry(childKey);
+                }
+                addEntry(childKey, children[i], state.ignorePatternList, isNew);
+            }
+        }
+
+        Iterator childIter = new ArrayList(state.childKeys).iterator();
+        while (childIter.hasNext()) {
+            String childKey = (String) childIter.next();
+            if (!presentKeys.contains(childKey)) {
+                removeEntry(childKey);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a file has been modified, and records the change if it has.
+     *
+     * @return
+     * true if the file has been modified since it was last checked.
+     */
+    private boolean checkFile(String key) {
+        File file = (File) filesMap.get(key);
+        String previousSignature = (String) fileSignatures.get(key);
+        if (file == null || previousSignature == null) {
+            return false;
+        }
+        if (!file.exists()) {
+            removeEntry(key);
+            return false;
+        }
+        String signature = buildSignature(file);
+        if (signature.equals(previousSignature)) {
+            return false;
+        }
+        fileSignatures.put(key, signature);
+        recordChange(key);
+        return true;
+    }
+
+    private void recordChange(String key) {
+        changedKeys.add(key);
+        removedKeys.remove(key);
+        changesDetected = true;
+    }
+
+    /**
+     * @return
+     * true if there are changed or removed keys that have not yet been collected.
+     */
+    public synchronized boolean hasChanges() {
+        return !changedKeys.isEmpty() || !removedKeys.isEmpty();
+    }
+
+    /**
+     * @return
+     * a map of file keys to the files found by the most recent scan.
+     */
+    public synchronized Map getFilesMap() {
+        return new HashMap(filesMap);
+    }
+
+    /**
+     * Returns the keys of files created or modified since they were last collected,
+     * and clears this set.
+     *
+     * @return
+     * a sorted set of file keys.
+     */
+    public synchronized Set takeChangedKeys() {
+        Set keys = changedKeys;
+        changedKeys = new TreeSet();
+        return keys;
+    }
+
+    /**
+     * Returns the keys of files removed since they were last collected,
+     * and clears this set.
+     *
+     * @return
+     * a sorted set of file keys.
+     */
+    public synchronized Set takeRemovedKeys() {
+        Set keys = removedKeys;
+        removedKeys = new TreeSet();
+        return keys;
+    }
+
+    /**
+     * Restores changes that were collected but could not be synchronized, so they are
+     * collected again later. Changes superseded by more recent changes to the same files
+     * are not restored.
+     *
+     * @param changedKeys
+     * keys previously returned by {@link #takeChangedKeys()}.
+     * @param removedKeys
+     * keys previously returned by {@link #takeRemovedKeys()}.
+     */
+    public synchronized void restoreChanges(Set changedKeys, Set removedKeys) {
+        Iterator keyIter = changedKeys.iterator();
+        while (keyIter.hasNext()) {
+            String key = (String) keyIter.next();
+            if (!this.removedKeys.contains(key)) {
+                this.changedKeys.add(key);
+            }
+        }
+        keyIter = removedKeys.iterator();
+        while (keyIter.hasNext()) {
+            String key = (String) keyIter.next();
+            if (!this.changedKeys.contains(key)) {
+                this.removedKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Discards any changes that have not been collected, for example after a full
+     * synchronization has made them irrelevant.
+     */
+    public synchronized void clearChanges() {
+        changedKeys.clear();
+        removedKeys.clear();
+    }
+
+}
@@ -19,19 +19,32 @@
 package org.jets3t.apps.synchronize;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.jets3t.service.Constants;
 import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3ObjectsChunk;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.acl.AccessControlList;
@@ -39,6 +52,8 @@ import org.jets3t.service.impl.rest.httpclient.RestS3Service;
 import org.jets3t.service.io.BytesProgressWatcher;
 import org.jets3t.service.model.S3Bucket;
 import org.jets3t.service.model.S3Object;
+import org.jets3t.service.multithread.BoundedBlockingQueue;
+import org.jets3t.service.multithread.CopyObjectsEvent;
 import org.jets3t.service.multithread.CreateObjectsEvent;
 import org.jets3t.service.multithread.DeleteObjectsEvent;
 import org.jets3t.service.multithread.DownloadObjectsEvent;
@@ -51,10 +66,15 @@ import org.jets3t.service.multithread.ThreadWatcher;
 import org.jets3t.service.security.AWSCredentials;
 import org.jets3t.service.security.EncryptionUtil;
 import org.jets3t.service.utils.ByteFormatter;
+import org.jets3t.service.utils.ChunkManifest;
+import org.jets3t.service.utils.ContentDefinedChunker;
 import org.jets3t.service.utils.FileComparer;
 import org.jets3t.service.utils.FileComparerResults;
 import org.jets3t.service.utils.Mimetypes;
+import org.jets3t.service.utils.ObjectMoveMatcher;
 import org.jets3t.service.utils.ObjectUtils;
+import org.jets3t.service.utils.PackIndex;
+import org.jets3t.service.utils.ServiceUtils;
 import org.jets3t.service.utils.TimeFormatter;
 import org.jets3t.service.utils.FileComparer.PartialObjectListing;
 
@@ -86,6 +106,10 @@ public class Synchronize {
     private boolean isMoveEnabled = false;
     private boolean isBatchMode = false;
     private boolean isSkipMetadata = false;
+    private boolean isMoveDetectionEnabled = false; // New files matching existing objects are copied in S3 if true.
+    private boolean isWatchModeEnabled = false; // Local files are watched and uploaded as they change if true.
+    private boolean isPackingEnabled = false; // Small files are packed into larger objects if true.
+    private boolean isDeduplicationEnabled = false; // Large files are stored as de-duplicated chunks if true.
     private int reportLevel = REPORT_LEVEL_ALL;
     private String cryptoPassword = null;
     private Jets3tProperties properties = null;
@@ -96,8 +120,8 @@ public class Synchronize {
     private int maxTemporaryStringLength = 0;
     
     // Hacky variables to track progress of batched uploads for transformed files. 
-    private long partialUploadObjectsTotal = -1;
-    private long partialUploadObjectsProgressCount = 0;
+    private volatile long partialUploadObjectsTotal = -1;
+    private volatile long partialUploadObjectsProgressCount = 0;
 
     
     /**
@@ -159,6 +183,10 @@ public class Synchronize {
         this.reportLevel = reportLevel;
         this.properties = properties;
         this.fileComparer = FileComparer.getInstance(properties);
+        this.isMoveDetectionEnabled = properties.getBoolProperty("upload.detect-moves", false);
+        this.isWatchModeEnabled = properties.getBoolProperty("upload.watch", false);
+        this.isPackingEnabled = properties.getBoolProperty("upload.pack-small-files", false);
+        this.isDeduplicationEnabled = properties.getBoolProperty("upload.dedup-chunks", false);
     }
     
 
@@ -174,38 +202,349 @@ public class Synchronize {
         private File file;
         private String aclString;
         private EncryptionUtil encryptionUtil;
+        private ChunkStore chunkStore;
 
         /**
          * @param bucket    the bucket to create the object in 
          * @param targetKey the key name for the object
          * @param file      the file to upload to S3
          * @param aclString the ACL to apply to the uploaded object
+         * @param chunkStore the store for de-duplicated file chunks, or null if de-duplication is disabled
          */
-        public LazyPreparedUploadObject(String targetKey, File file, String aclString, EncryptionUtil encryptionUtil) {
+        public LazyPreparedUploadObject(String targetKey, File file, String aclString, 
+            EncryptionUtil encryptionUtil, ChunkStore chunkStore) 
+        {
             this.targetKey = targetKey;
             this.file = file;
             this.aclString = aclString;
             this.encryptionUtil = encryptionUtil;
+            this.chunkStore = chunkStore;
         }
         
         public S3Object prepareUploadObject() throws Exception {        
-            S3Object newObject = ObjectUtils
-                .createObjectForUpload(targetKey, file, encryptionUtil, isGzipEnabled, null);
-    
-            if ("PUBLIC_READ".equalsIgnoreCase(aclString)) {
-                newObject.setAcl(AccessControlList.REST_CANNED_PUBLIC_READ);                        
-            } else if ("PUBLIC_READ_WRITE".equalsIgnoreCase(aclString)) {
-                newObject.setAcl(AccessControlList.REST_CANNED_PUBLIC_READ_WRITE);            
-            } else if ("PRIVATE".equalsIgnoreCase(aclString)) {
-                // Private is the default, no need to add an ACL
+            S3Object newObject = null;
+            if (chunkStore != null && chunkStore.isChunkingRequired(file)) {
+                newObject = chunkStore.prepareManifestObject(targetKey, file, aclString);
             } else {
-                throw new Exception("Invalid value for ACL string: " + aclString);
+                newObject = ObjectUtils
+                    .createObjectForUpload(targetKey, file, encryptionUtil, isGzipEnabled, null);
             }
-            
+            applyAclString(newObject, aclString);
             return newObject;
         }
     }
     
+    /**
+     * Stores large files as content-defined chunks in the chunk store below a root path, 
+     * uploading only the chunks that are not already stored. Each file is represented by an 
+     * object containing its {@link ChunkManifest}, with the file's original MD5 hash and date 
+     * in its metadata so it can be compared with local files like any other object.
+     * <p>
+     * The chunks already in the store are listed once, the first time a file is chunked.
+     */
+    class ChunkStore {
+        private final S3Bucket bucket;
+        private final String chunkDirectoryPath;
+        private final ContentDefinedChunker chunker;
+        private final long minFileSize;
+        private final long uploadBatchBytes;
+        private Set storedChunkHashes = null;
+        
+        public ChunkStore(S3Bucket bucket, String rootObjectPath) {
+            this.bucket = bucket;
+            this.chunkDirectoryPath = ChunkManifest.getChunkDirectoryPath(rootObjectPath);
+            this.chunker = new ContentDefinedChunker(
+                properties.getIntProperty("upload.dedup-min-chunk-size", 256 * 1024),
+                properties.getIntProperty("upload.dedup-average-chunk-size", 1024 * 1024),
+                properties.getIntProperty("upload.dedup-max-chunk-size", 4 * 1024 * 1024));
+            this.minFileSize = properties.getLongProperty("upload.dedup-min-file-size", 4 * 1024 * 1024);
+            this.uploadBatchBytes = properties.getLongProperty("upload.dedup-batch-bytes", 32 * 1024 * 1024);
+        }
+        
+        public boolean isChunkingRequired(File file) {
+            return !file.isDirectory() && file.length() >= minFileSize;
+        }
+        
+        public S3Object prepareManifestObject(String targetKey, File file, String aclString) 
+            throws Exception 
+        {
+            printProgressLine("Splitting file into chunks: " + targetKey);
+            ChunkManifest manifest = chunker.chunkFile(file);
+            
+            if (storedChunkHashes == null) {
+                printProgressLine("Listing chunks stored in S3");
+                storedChunkHashes = new HashSet();
+                S3Object[] chunkObjects = s3Service.listObjects(bucket, chunkDirectoryPath, null);
+                for (int i = 0; i < chunkObjects.length; i++) {
+                    storedChunkHashes.add(
+                        chunkObjects[i].getKey().substring(chunkDirectoryPath.length()));
+                }
+            }
+            
+            // Upload chunks that are not already stored, in batches of limited total size.
+            List chunkObjectsBatch = new ArrayList();
+            long batchBytes = 0;
+            RandomAccessFile chunkSource = new RandomAccessFile(file, "r");
+            try {
+                Iterator chunkIter = manifest.getChunks().iterator();
+                while (chunkIter.hasNext()) {
+                    ChunkManifest.Chunk chunk = (ChunkManifest.Chunk) chunkIter.next();
+                    if (storedChunkHashes.contains(chunk.getHashAsHex())) {
+                        continue;
+                    }
+                    
+                    byte[] chunkData = new byte[chunk.getLength()];
+                    chunkSource.seek(chunk.getOffset());
+                    chunkSource.readFully(chunkData);
+                    if (!chunk.getHashAsHex().equals(ServiceUtils.toHex(
+                        MessageDigest.getInstance("SHA-1").digest(chunkData)))) 
+                    {
+                        throw new IOException("File changed while it was being uploaded: " + file);
+                    }
+                    
+                    S3Object chunkObject = new S3Object(chunkDirectoryPath + chunk.getHashAsHex());
+                    chunkObject.setContentType(Mimetypes.MIMETYPE_OCTET_STREAM);
+                    chunkObject.setContentLength(chunkData.length);
+                    chunkObject.setDataInputStream(new ByteArrayInputStream(chunkData));
+                    chunkObject.setMd5Hash(ServiceUtils.computeMD5Hash(chunkData));
+                    applyAclString(chunkObject, aclString);
+                    chunkObjectsBatch.add(chunkObject);
+                    storedChunkHashes.add(chunk.getHashAsHex());
+                    batchBytes += chunkData.length;
+                    
+                    if (batchBytes >= uploadBatchBytes || !chunkIter.hasNext()) {
+                        uploadChunks(chunkObjectsBatch);
+                        chunkObjectsBatch.clear();
+                        batchBytes = 0;
+                    }
+                }
+                uploadChunks(chunkObjectsBatch);
+            } catch (Exception e) {
+                // Forget about chunks that may not have been stored.
+                storedChunkHashes = null;
+                throw e;
+            } finally {
+                chunkSource.close();
+            }
+            
+            byte[] manifestData = manifest.toByteArray();
+            S3Object manifestObject = new S3Object(targetKey);
+            manifestObject.setContentType(ChunkManifest.MIMETYPE_CHUNK_MANIFEST);
+            manifestObject.setContentLength(manifestData.length);
+            manifestObject.setDataInputStream(new ByteArrayInputStream(manifestData));
+            manifestObject.setMd5Hash(ServiceUtils.computeMD5Hash(manifestData));
+            manifestObject.addMetadata(Constants.METADATA_JETS3T_CHUNK_STORE, chunkDirectoryPath);
+            manifestObject.addMetadata(S3Object.METADATA_HEADER_ORIGINAL_HASH_MD5, 
+                manifest.getMd5HashAsBase64());
+            manifestObject.addMetadata(Constants.METADATA_JETS3T_LOCAL_FILE_DATE, 
+                ServiceUtils.formatIso8601Date(new Date(file.lastModified())));
+            return manifestObject;
+        }
+        
+        private void uploadChunks(List chunkObjects) throws Exception {
+            if (chunkObjects.size() == 0) {
+                return;
+            }
+            S3Object[] objects = (S3Object[]) chunkObjects.toArray(new S3Object[chunkObjects.size()]);
+            
+            // Chunks are uploaded by the prepare stage while the upload stage is using the 
+            // main event adaptor, so they have an adaptor of their own. A manifest must not 
+            // refer to chunks that failed to upload, so ignored errors are also failures.
+            final Throwable[] chunkErrorThrown = new Throwable[1];
+            S3ServiceEventAdaptor chunkEventAdaptor = new S3ServiceEventAdaptor() {
+                public void s3ServiceEventPerformed(CreateObjectsEvent event) {
+                    super.s3ServiceEventPerformed(event);
+                    if (ServiceEvent.EVENT_IN_PROGRESS == event.getEventCode()) {
+                        ThreadWatcher watcher = event.getThreadWatcher();
+                        printProgressLine("Uploading chunks: " + watcher.getCompletedThreads() 
+                            + "/" + watcher.getThreadCount());
+                    } else if (ServiceEvent.EVENT_IGNORED_ERRORS == event.getEventCode()
+                        && chunkErrorThrown[0] == null) 
+                    {
+                        chunkErrorThrown[0] = event.getIgnoredErrors()[0];
+                    }
+                }
+            };
+            (new S3ServiceMulti(s3Service, chunkEventAdaptor)).putObjects(bucket, objects);
+            if (chunkEventAdaptor.wasErrorThrown()) {
+                chunkErrorThrown[0] = chunkEventAdaptor.getErrorThrown();
+            }
+            if (chunkErrorThrown[0] != null) {
+                Throwable thrown = chunkErrorThrown[0];
+                if (thrown instanceof Exception) {
+                    throw (Exception) thrown;
+                } else {
+                    throw new Exception(thrown);
+                }
+            }
+        }
+    }
+    
+    /**
+     * A new local file whose content matches an object that already exists in S3. The file is 
+     * synchronized by copying the existing object within S3, rather than by uploading it.
+     */
+    class ServerSideCopy {
+        private String sourceKey;
+        private S3Object destinationObject;
+        
+        public ServerSideCopy(String sourceKey, S3Object destinationObject) {
+            this.sourceKey = sourceKey;
+            this.destinationObject = destinationObject;
+        }
+        
+        public String getSourceKey() {
+            return sourceKey;
+        }
+        
+        public S3Object getDestinationObject() {
+            return destinationObject;
+        }
+    }
+    
+    /**
+     * Applies the ACL described by the user's ACL string to an object that will be created in S3.
+     * 
+     * @param object    the object that will be created
+     * @param aclString the ACL to apply to the object
+     * 
+     * @throws Exception
+     */
+    private void applyAclString(S3Object object, String aclString) throws Exception {
+        if ("PUBLIC_READ".equalsIgnoreCase(aclString)) {
+            object.setAcl(AccessControlList.REST_CANNED_PUBLIC_READ);                        
+        } else if ("PUBLIC_READ_WRITE".equalsIgnoreCase(aclString)) {
+            object.setAcl(AccessControlList.REST_CANNED_PUBLIC_READ_WRITE);            
+        } else if ("PRIVATE".equalsIgnoreCase(aclString)) {
+            // Private is the default, no need to add an ACL
+        } else {
+            throw new Exception("Invalid value for ACL string: " + aclString);
+        }
+    }
+    
+    /**
+     * Builds a copy operation that re-creates an existing S3 object under the target key of a 
+     * new local file with the same content. The copy is given the Content-Type an upload of 
+     * the file would have, which differs from the source object's if the file was renamed with
+     * a different extension.
+     * 
+     * @param targetKey     the key name for the new object
+     * @param file          the local file the new object will represent
+     * @param sourceObject  the existing object in S3 with the same content as the file
+     * @param aclString     the ACL to apply to the new object
+     * 
+     * @throws Exception
+     */
+    private ServerSideCopy prepareServerSideCopy(String targetKey, File file, 
+        S3Object sourceObject, String aclString) throws Exception 
+    {
+        S3Object destinationObject = new S3Object(targetKey);
+        if (!isSkipMetadata) {
+            // Metadata will be replaced, so carry over the source object's metadata 
+            // with the new file's date. 
+            destinationObject.addAllMetadata(sourceObject.getModifiableMetadata());
+            destinationObject.addMetadata(Constants.METADATA_JETS3T_LOCAL_FILE_DATE, 
+                ServiceUtils.formatIso8601Date(new Date(file.lastModified())));
+            destinationObject.setContentType(getUploadContentType(file));
+        }
+        applyAclString(destinationObject, aclString);
+        return new ServerSideCopy(sourceObject.getKey(), destinationObject);
+    }
+    
+    /**
+     * @return
+     * the Content-Type an object uploaded from the file would have.
+     */
+    private String getUploadContentType(File file) {
+        if (isEncryptionEnabled) {
+            return Mimetypes.MIMETYPE_OCTET_STREAM;
+        }
+        return Mimetypes.getInstance().getMimetype(file);
+    }
+    
+    /**
+     * Coordinates the stages of a pipelined upload. Each stage runs in its own thread 
+     * and the stages are connected by bounded queues. If any stage fails, every queue 
+     * is aborted so the remaining stages stop promptly, and the first failure is 
+     * re-thrown by {@link #waitForCompletion()}.
+     */
+    private class UploadPipeline {
+        private final BoundedBlockingQueue[] queues;
+        private final List stages = new ArrayList();
+        private Throwable failure = null;
+        
+        public UploadPipeline(BoundedBlockingQueue[] queues) {
+            this.queues = queues;
+        }
+        
+        public void addStage(PipelineStage stage) {
+            stages.add(stage);
+        }
+        
+        public void start() {
+            Iterator stageIter = stages.iterator();
+            while (stageIter.hasNext()) {
+                ((Thread) stageIter.next()).start();
+            }
+        }
+        
+        public synchronized void fail(Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+            for (int i = 0; i < queues.length; i++) {
+                queues[i].abort();
+            }
+        }
+        
+        /**
+         * Waits for all the pipeline's stage threads to finish, then throws the first 
+         * failure that occurred in any stage, if any.
+         * 
+         * @throws Exception
+         */
+        public void waitForCompletion() throws Exception {
+            Iterator stageIter = stages.iterator();
+            while (stageIter.hasNext()) {
+                ((Thread) stageIter.next()).join();
+            }
+            Throwable thrown = null;
+            synchronized (this) {
+                thrown = failure;
+            }
+            if (thrown instanceof Exception) {
+                throw (Exception) thrown;
+            } else if (thrown != null) {
+                throw new Exception(thrown);
+            }
+        }
+    }
+    
+    /**
+     * A single stage of an {@link UploadPipeline}, run in its own daemon thread. 
+     * Any exception thrown by the stage fails the whole pipeline.
+     */
+    private abstract class PipelineStage extends Thread {
+        private final UploadPipeline pipeline;
+        
+        public PipelineStage(UploadPipeline pipeline, String stageName) {
+            super("Synchronize-" + stageName);
+            this.pipeline = pipeline;
+            setDaemon(true);
+        }
+        
+        public void run() {
+            try {
+                runStage();
+            } catch (Throwable t) {
+                pipeline.fail(t);
+            }
+        }
+        
+        public abstract void runStage() throws Exception;
+    }
+
+    
 
     private String formatTransferDetails(ThreadWatcher watcher) {
         String detailsText = "";
@@ -222,7 +561,7 @@ public class Synchronize {
         return detailsText;
     }
     
-    private void printOutputLine(String line, int level) {
+    private synchronized void printOutputLine(String line, int level) {
         if ((isQuiet && level > REPORT_LEVEL_NONE) || reportLevel < level) {
             return;
         }
@@ -243,7 +582,7 @@ public class Synchronize {
      * if true, the line is printed followed by a carriage return such
      * that the next line output to the console will overwrite it.
      */
-    private void printProgressLine(String line) {
+    private synchronized void printProgressLine(String line) {
         if (isQuiet || isNoProgress) {
             return;
         }
@@ -281,6 +620,20 @@ public class Synchronize {
      * <li>The local file's last-modified date, as {@link Constants#METADATA_JETS3T_LOCAL_FILE_DATE}</li>
      * <li>An MD5 hash of file data, as {@link S3Object#METADATA_HEADER_HASH_MD5}</li>
      * </ul>
+     * <p>
+     * The listing, comparison, preparation and upload of objects are performed as a pipeline
+     * of stages that run at the same time, so uploads can begin as soon as the first changed 
+     * files are identified. The size of each upload batch, and therefore how far the earlier 
+     * stages can get ahead of the uploads, is controlled by the property 
+     * <tt>upload.pipeline-batch-size</tt> (or <tt>upload.transformed-files-batch-size</tt> 
+     * when files are gzipped or encrypted). Each batch is uploaded once it is full, or after 
+     * the upload stage has waited <tt>upload.pipeline-batch-wait-ms</tt> for it to fill.
+     * <p>
+     * If the property <tt>upload.detect-moves</tt> is true, new local files with the same content 
+     * as an object that exists only in S3 are created by copying that object within S3 instead 
+     * of uploading the file. Unless deletes are disabled, the original object is then deleted 
+     * along with any other objects that no longer correspond with local files, so renamed or 
+     * moved files are also renamed or moved in S3 without transferring their data again. 
      * 
      * @param filesMap      a map of the local <code>File</code>s with '/'-delimited file paths as keys 
      * @param bucket        the bucket to put the objects in (will be created if necessary)
@@ -290,14 +643,26 @@ public class Synchronize {
      * 
      * @throws Exception
      */
-    public void uploadLocalDirectoryToS3(Map filesMap, S3Bucket bucket, 
-        String rootObjectPath, String aclString,
-        BytesProgressWatcher progressWatcher) throws Exception 
+    public void uploadLocalDirectoryToS3(final Map filesMap, final S3Bucket bucket, 
+        final String rootObjectPath, final String aclString,
+        final BytesProgressWatcher progressWatcher) throws Exception 
     {        
-        FileComparerResults mergedDiscrepancyResults = new FileComparerResults();
-        String priorLastKey = null;
-        String lastFileKeypathChecked = "";
-        long totalObjectsListed = 0;
+        final FileComparerResults mergedDiscrepancyResults = new FileComparerResults();
+        
+        // Small files are stored in packs when packing is enabled, other files as objects. 
+        final Map objectFilesMap = new HashMap();
+        Map packFilesMap = new HashMap();
+        long packMaxFileSize = properties.getLongProperty("upload.pack-max-file-size", 10240);
+        Iterator filesIter = filesMap.entrySet().iterator();
+        while (filesIter.hasNext()) {
+            Map.Entry entry = (Map.Entry) filesIter.next();
+            File file = (File) entry.getValue();
+            if (isPackingEnabled && !file.isDirectory() && file.length() <= packMaxFileSize) {
+                packFilesMap.put(entry.getKey(), file);
+            } else {
+                objectFilesMap.put(entry.getKey(), file);
+            }
+        }
 
         EncryptionUtil encryptionUtil = null;
         if (isEncryptionEnabled) {
@@ -305,133 +670,859 @@ public class Synchronize {
                 .getStringProperty("crypto.algorithm", "PBEWithMD5AndDES");
             encryptionUtil = new EncryptionUtil(cryptoPassword, algorithm, EncryptionUtil.DEFAULT_VERSION);
         }
+        final EncryptionUtil finalEncryptionUtil = encryptionUtil;
+        final ChunkStore chunkStore = 
+            (isDeduplicationEnabled ? new ChunkStore(bucket, rootObjectPath) : null);
         
-        // Repeat upload actions until all objects in bucket have been listed.
-        do {
-            // List objects in S3. Listing may be complete, or partial.
-            printProgressLine("Listing objects in S3" 
-                + (isBatchMode ? " (Batch mode. Objects listed so far: " 
-                    + totalObjectsListed + ")" : ""));        
-            
-            PartialObjectListing partialListing = fileComparer.buildS3ObjectMapPartial(
-                s3Service, bucket, rootObjectPath, priorLastKey, !isBatchMode,
-                isSkipMetadata, serviceEventAdaptor);            
-            if (serviceEventAdaptor.wasErrorThrown()) {
-                throw new Exception("Unable to build map of S3 Objects", 
-                    serviceEventAdaptor.getErrorThrown());
+        int uploadBatchSize = properties.getIntProperty("upload.pipeline-batch-size", 1000);
+        if ((isEncryptionEnabled || isGzipEnabled) 
+            && properties.containsKey("upload.transformed-files-batch-size")) 
+        {
+            // Limit uploads to small batches in batch mode -- based on the 
+            // number of upload threads that are available.
+            uploadBatchSize = properties.getIntProperty("upload.transformed-files-batch-size", 1000);
+            partialUploadObjectsTotal = 0;
+            partialUploadObjectsProgressCount = 0;
+        } else {
+            partialUploadObjectsTotal = -1;
+        }
+        int listingQueueDepth = properties.getIntProperty("upload.pipeline-listing-queue-depth", 2);
+        long uploadBatchWaitMS = properties.getLongProperty("upload.pipeline-batch-wait-ms", 1000);
+        final long[] copiedObjectsCount = new long[] {0};
+
+        /*
+         * The upload is performed as a pipeline of stages, each running in its own thread
+         * and connected to the next by a bounded queue: 
+         * list S3 objects -> compare with local files -> prepare upload objects -> upload.
+         * The queues limit how far ahead of the slower stages each stage can get, so the 
+         * prepared queue also bounds the number of transformed temporary files on disk.
+         */
+        final BoundedBlockingQueue listingQueue = new BoundedBlockingQueue(listingQueueDepth);
+        final BoundedBlockingQueue candidateQueue = new BoundedBlockingQueue(uploadBatchSize * 2);
+        final BoundedBlockingQueue preparedQueue = new BoundedBlockingQueue(uploadBatchSize);
+        UploadPipeline pipeline = new UploadPipeline(
+            new BoundedBlockingQueue[] {listingQueue, candidateQueue, preparedQueue});
+        
+        // List objects in S3. Listing may be complete, or partial.
+        pipeline.addStage(new PipelineStage(pipeline, "list") {
+            public void runStage() throws Exception {
+                String priorLastKey = null;
+                long totalObjectsListed = 0;
+                
+                // Repeat listing until all objects in bucket have been listed.
+                do {
+                    printProgressLine("Listing objects in S3" 
+                        + (isBatchMode ? " (Batch mode. Objects listed so far: " 
+                            + totalObjectsListed + ")" : ""));        
+                    
+                    // Metadata of objects without local files is only needed to detect moves.
+                    PartialObjectListing partialListing = fileComparer.buildS3ObjectMapPartial(
+                        s3Service, bucket, rootObjectPath, priorLastKey, !isBatchMode,
+                        isSkipMetadata, objectFilesMap, isMoveDetectionEnabled, 
+                        serviceEventAdaptor);            
+                    if (serviceEventAdaptor.wasErrorThrown()) {
+                        throw new Exception("Unable to build map of S3 Objects", 
+                            serviceEventAdaptor.getErrorThrown());
+                    }
+                    
+                    priorLastKey = partialListing.getPriorLastKey();
+                    totalObjectsListed += partialListing.getObjectsMap().size();
+                    
+                    if (!listingQueue.put(partialListing)) {
+                        return; // Pipeline was aborted.
+                    }
+                } while (priorLastKey != null);
+                listingQueue.close();
+            }
+        });
+        
+        // Compare the listed objects with the local system, and identify upload candidates.
+        pipeline.addStage(new PipelineStage(pipeline, "compare") {
+            public void runStage() throws Exception {
+                String lastFileKeypathChecked = "";
+                
+                ObjectMoveMatcher moveMatcher = null;
+                if (isMoveDetectionEnabled) {
+                    moveMatcher = new ObjectMoveMatcher(isGzipEnabled, isEncryptionEnabled);
+                }
+                
+                // Sort upload file candidates by path.
+                ArrayList sortedFilesKeys = new ArrayList(objectFilesMap.keySet());
+                Collections.sort(sortedFilesKeys);
+                
+                PartialObjectListing partialListing = null;
+                while ((partialListing = (PartialObjectListing) listingQueue.take()) != null) {
+                    String priorLastKey = partialListing.getPriorLastKey();
+                    Map s3ObjectsMap = partialListing.getObjectsMap();
+                    
+                    printProgressLine("Comparing S3 contents with local system");        
+                    FileComparerResults discrepancyResults = fileComparer.buildDiscrepancyLists(
+                        objectFilesMap, s3ObjectsMap, progressWatcher);
+                    
+                    // Merge S3 objects and discrepancies to track overall changes.
+                    mergedDiscrepancyResults.merge(discrepancyResults);
+                    
+                    // Objects that exist only in S3 may be the source of a local rename or move.
+                    if (moveMatcher != null) {
+                        moveMatcher.addCandidates(s3ObjectsMap, discrepancyResults.onlyOnServerKeys);
+                    }
+                    
+                    // Iterate through local files and perform the necessary action to synchronise them with S3.
+                    Iterator fileKeyIter = sortedFilesKeys.iterator();
+                    while (fileKeyIter.hasNext()) {
+                        String relativeKeyPath = (String) fileKeyIter.next();
+                        
+                        String targetKey = relativeKeyPath;
+                        if (rootObjectPath.length() > 0) {
+                            if (rootObjectPath.endsWith(Constants.FILE_PATH_DELIM)) {
+                                targetKey = rootObjectPath + targetKey;                         
+                            } else {
+                                targetKey = rootObjectPath + Constants.FILE_PATH_DELIM + targetKey;                         
+                            }
+                        }
+                        
+                        if (isBatchMode) {
+                            if (priorLastKey != null && targetKey.compareTo(priorLastKey) > 0) {
+                                // We do not yet have the S3 object listing to compare this file.
+                                continue;
+                            }
+                            
+                            if (targetKey.compareTo(lastFileKeypathChecked) <= 0) {
+                                // We have already handled this file in a prior batch.
+                                continue;
+                            } else {
+                                lastFileKeypathChecked = targetKey;
+                            }
+                        }
+                        
+                        File file = (File) objectFilesMap.get(relativeKeyPath);
+                        
+                        boolean isUploadRequired = false;
+                        if (discrepancyResults.onlyOnClientKeys.contains(relativeKeyPath)) {
+                            S3Object sourceObject = null;
+                            if (moveMatcher != null) {
+                                sourceObject = moveMatcher.findMatchingObject(file);
+                                
+                                // Without metadata the copy keeps the source's Content-Type, 
+                                // so the file is uploaded if that would give it the wrong type.
+                                if (sourceObject != null && isSkipMetadata 
+                                    && !getUploadContentType(file).equals(
+                                        sourceObject.getContentType()))
+                                {
+                                    sourceObject = null;
+                                }
+                            }
+                            if (sourceObject != null) {
+                                printOutputLine("C " + targetKey, REPORT_LEVEL_ACTIONS);
+                                copiedObjectsCount[0]++;
+                                if (doAction && !candidateQueue.put(prepareServerSideCopy(
+                                    targetKey, file, sourceObject, aclString))) 
+                                {
+                                    return; // Pipeline was aborted.
+                                }
+                            } else {
+                                printOutputLine("N " + targetKey, REPORT_LEVEL_ACTIONS);
+                                isUploadRequired = true;
+                            }
+                        } else if (discrepancyResults.updatedOnClientKeys.contains(relativeKeyPath)) {
+                            printOutputLine("U " + targetKey, REPORT_LEVEL_ACTIONS);
+                            isUploadRequired = true;
+                        } else if (discrepancyResults.alreadySynchronisedKeys.contains(relativeKeyPath)) {
+                            if (isForce) {
+                                printOutputLine("F " + targetKey, REPORT_LEVEL_ACTIONS);
+                                isUploadRequired = true;
+                            } else {
+                                printOutputLine("- " + targetKey, REPORT_LEVEL_ALL);
+                            }
+                        } else if (discrepancyResults.updatedOnServerKeys.contains(relativeKeyPath)) {
+                            // This file has been updated on the server-side.
+                            if (isKeepFiles) {
+                                printOutputLine("r " + targetKey, REPORT_LEVEL_DIFFERENCES);                    
+                            } else {
+                                printOutputLine("R " + targetKey, REPORT_LEVEL_ACTIONS);
+                                isUploadRequired = true;
+                            }
+                        } else {
+                            // Uh oh, program error here. The safest thing to do is abort!
+                            throw new SynchronizeException("Invalid discrepancy comparison details for file " 
+                                + file.getPath() 
+                                + ". Sorry, this is a program error - aborting to keep your data safe");
+                        }
+                        
+                        if (isUploadRequired && doAction) {
+                            if (!candidateQueue.put(new LazyPreparedUploadObject(
+                                targetKey, file, aclString, finalEncryptionUtil, chunkStore))) 
+                            {
+                                return; // Pipeline was aborted.
+                            }
+                            if (partialUploadObjectsTotal >= 0) {
+                                partialUploadObjectsTotal++;
+                            }
+                        }
+                    }
+                }
+                candidateQueue.close();
+            }
+        });
+        
+        // Invoke lazy upload object creator, which may transform (gzip or encrypt) files.
+        pipeline.addStage(new PipelineStage(pipeline, "prepare") {
+            public void runStage() throws Exception {
+                Object candidate = null;
+                while ((candidate = candidateQueue.take()) != null) {
+                    Object prepared = candidate;
+                    if (candidate instanceof LazyPreparedUploadObject) {
+                        prepared = ((LazyPreparedUploadObject) candidate).prepareUploadObject();
+                    }
+                    if (!preparedQueue.put(prepared)) {
+                        return; // Pipeline was aborted.
+                    }
+                }
+                preparedQueue.close();
+            }
+        });
+        
+        pipeline.start();
+        
+        // Upload New/Updated/Forced/Replaced objects to S3 as soon as they are prepared,
+        // and copy objects within S3 for new files that match existing objects.
+        try {
+            List preparedBatch = new ArrayList();
+            // Wait briefly for a full batch, so uploads are not performed one object at a time
+            // when preparation is only slightly slower than uploading.
+            while (preparedQueue.drainTo(preparedBatch, uploadBatchSize, uploadBatchSize, 
+                uploadBatchWaitMS) > 0) 
+            {
+                List objectsList = new ArrayList();
+                List copySourceKeysList = new ArrayList();
+                List copyDestinationObjectsList = new ArrayList();
+                Iterator preparedIter = preparedBatch.iterator();
+                while (preparedIter.hasNext()) {
+                    Object prepared = preparedIter.next();
+                    if (prepared instanceof ServerSideCopy) {
+                        ServerSideCopy copy = (ServerSideCopy) prepared;
+                        copySourceKeysList.add(copy.getSourceKey());
+                        copyDestinationObjectsList.add(copy.getDestinationObject());
+                    } else {
+                        objectsList.add(prepared);
+                    }
+                }
+                preparedBatch.clear();
+                
+                if (objectsList.size() > 0) {
+                    S3Object[] objects = (S3Object[]) objectsList.toArray(new S3Object[objectsList.size()]);
+                    (new S3ServiceMulti(s3Service, serviceEventAdaptor)).putObjects(bucket, objects);
+                    if (serviceEventAdaptor.wasErrorThrown()) {
+                        Throwable thrown = serviceEventAdaptor.getErrorThrown();
+                        if (thrown instanceof Exception) {
+                            throw (Exception) thrown;
+                        } else {
+                            throw new Exception(thrown);
+                        }
+                    }
+                    partialUploadObjectsProgressCount += objects.length;
+                }
+                
+                if (copySourceKeysList.size() > 0) {
+                    String[] sourceKeys = (String[]) copySourceKeysList
+                        .toArray(new String[copySourceKeysList.size()]);
+                    S3Object[] destinationObjects = (S3Object[]) copyDestinationObjectsList
+                        .toArray(new S3Object[copyDestinationObjectsList.size()]);
+                    (new S3ServiceMulti(s3Service, serviceEventAdaptor)).copyObjects(
+                        bucket.getName(), bucket.getName(), sourceKeys, destinationObjects, 
+                        !isSkipMetadata);
+                    if (serviceEventAdaptor.wasErrorThrown()) {
+                        Throwable thrown = serviceEventAdaptor.getErrorThrown();
+                        if (thrown instanceof Exception) {
+                            throw (Exception) thrown;
+                        } else {
+                            throw new Exception(thrown);
+                        }
+                    }
+                }
             }
+        } catch (Throwable t) {
+            pipeline.fail(t);
+        }
+        pipeline.waitForCompletion();
+        
+        // Delete objects on S3 that don't correspond with local files.
+        List objectsToDelete = new ArrayList();
+        Iterator serverOnlyIter = mergedDiscrepancyResults.onlyOnServerKeys.iterator();
+        while (serverOnlyIter.hasNext()) {
+            // Relative key
+            String relativeKeyPath = (String) serverOnlyIter.next();
 
-            // Retrieve details from listing.
-            priorLastKey = partialListing.getPriorLastKey();
-            Map s3ObjectsMap = partialListing.getObjectsMap();
-            totalObjectsListed += partialListing.getObjectsMap().size();
+            // Build absolute key path for object.
+            String targetKey = relativeKeyPath;
+            if (rootObjectPath.length() > 0) {
+                if (rootObjectPath.endsWith(Constants.FILE_PATH_DELIM)) {
+                    targetKey = rootObjectPath + targetKey;                         
+                } else {
+                    targetKey = rootObjectPath + Constants.FILE_PATH_DELIM + targetKey;                         
+                }
+            }
+            S3Object s3Object = new S3Object(targetKey);
+                        
+            if (isKeepFiles || isNoDelete) {
+                printOutputLine("d " + relativeKeyPath, REPORT_LEVEL_DIFFERENCES);                
+            } else {
+                printOutputLine("D " + relativeKeyPath, REPORT_LEVEL_ACTIONS);
+                if (doAction) {
+                    objectsToDelete.add(s3Object);
+                }
+            }
+        }
+        if (objectsToDelete.size() > 0) {
+            S3Object[] objects = (S3Object[]) objectsToDelete.toArray(new S3Object[objectsToDelete.size()]);
+            (new S3ServiceMulti(s3Service, serviceEventAdaptor)).deleteObjects(bucket, objects);
+            if (serviceEventAdaptor.wasErrorThrown()) {
+                Throwable thrown = serviceEventAdaptor.getErrorThrown();
+                if (thrown instanceof Exception) {
+                    throw (Exception) thrown;
+                } else {
+                    throw new Exception(thrown);
+                }
+            }
+        }
+        
+        // Pack small files, and remove packed files that no longer exist locally.
+        if (isPackingEnabled) {
+            mergedDiscrepancyResults.merge(uploadLocalFilesToPacks(
+                packFilesMap, objectFilesMap.keySet(), bucket, rootObjectPath, aclString, progressWatcher));
+        }
+        
+        // Delete local files that have been moved to S3.
+        List filesMoved = new ArrayList();
+        if (isMoveEnabled) {
+            filesMoved.addAll(mergedDiscrepancyResults.onlyOnClientKeys);
+            filesMoved.addAll(mergedDiscrepancyResults.updatedOnClientKeys);
+            filesMoved.addAll(mergedDiscrepancyResults.updatedOnServerKeys);
+            filesMoved.addAll(mergedDiscrepancyResults.alreadySynchronisedKeys);
             
-            ArrayList sortedS3ObjectKeys = new ArrayList(s3ObjectsMap.keySet());
-            Collections.sort(sortedS3ObjectKeys);
+            ArrayList dirsToDelete = new ArrayList();
+            Iterator filesMovedIter = filesMoved.iterator();
+            while (filesMovedIter.hasNext()) {
+                String keyPath = (String) filesMovedIter.next();
+                File file = (File) filesMap.get(keyPath);
+                
+                printOutputLine("M " + keyPath, REPORT_LEVEL_ACTIONS);
+                if (doAction) {
+                    if (file.isDirectory()) {
+                        // Delete directories later, as they may still contain 
+                        // files until this loop completes.
+                        dirsToDelete.add(file);
+                    } else {
+                        file.delete();
+                    }
+                }
+            }
+            Iterator dirIter = dirsToDelete.iterator();
+            while (dirIter.hasNext()) {
+                File dir = (File) dirIter.next();
+                dir.delete();
+            }            
+        }
+        
+        printOutputLine( 
+            "New files: " + mergedDiscrepancyResults.onlyOnClientKeys.size() +
+            ", Updated: " + mergedDiscrepancyResults.updatedOnClientKeys.size() +
+            (isKeepFiles?
+                ", Kept: " + 
+                (mergedDiscrepancyResults.updatedOnServerKeys.size())                    
+                :                 
+                ", Reverted: " + mergedDiscrepancyResults.updatedOnServerKeys.size()
+                ) +
+            (isNoDelete || isKeepFiles?
+                ", Not Deleted: " + mergedDiscrepancyResults.onlyOnServerKeys.size()
+                :
+                ", Deleted: " + mergedDiscrepancyResults.onlyOnServerKeys.size()
+                ) +
+            (isForce ?
+                ", Forced updates: " + mergedDiscrepancyResults.alreadySynchronisedKeys.size() :
+                ", Unchanged: " + mergedDiscrepancyResults.alreadySynchronisedKeys.size()
+                ) +
+            (isMoveDetectionEnabled ?
+                ", Copied in S3: " + copiedObjectsCount[0]
+                : ""
+                ) +
+            (isMoveEnabled ?
+                ", Moved: " + filesMoved.size()
+                : ""
+                ), REPORT_LEVEL_NONE
+            );
+    }
+        
+    /**
+     * Builds the full S3 key name for a file's relative key path.
+     */
+    private String buildTargetKey(String rootObjectPath, String relativeKeyPath) {
+        if (rootObjectPath.length() == 0) {
+            return relativeKeyPath;
+        } else if (rootObjectPath.endsWith(Constants.FILE_PATH_DELIM)) {
+            return rootObjectPath + relativeKeyPath;                         
+        } else {
+            return rootObjectPath + Constants.FILE_PATH_DELIM + relativeKeyPath;                         
+        }
+    }
     
-            // Compare the listed objects with the local sytem.
-            printProgressLine("Comparing S3 contents with local system");        
-            FileComparerResults discrepancyResults = fileComparer.buildDiscrepancyLists(
-                filesMap, s3ObjectsMap, progressWatcher);
-
-            // Merge S3 objects and discrepancies to track overall changes.
-            mergedDiscrepancyResults.merge(discrepancyResults);
-                       
-            // Sort upload file candidates by path.
-            ArrayList sortedFilesKeys = new ArrayList(filesMap.keySet());
-            Collections.sort(sortedFilesKeys);
+    /**
+     * Watches local files for changes after an initial upload, and keeps S3 up-to-date by 
+     * synchronizing only the files that change. This method runs until the application is 
+     * terminated.
+     * <p>
+     * The local files are scanned for changes every <tt>upload.watch-poll-interval-seconds</tt>
+     * seconds (default 5). Each scan lists only the directories that have changed, and checks
+     * at most <tt>upload.watch-files-per-poll</tt> unchanged files (default 1000) for 
+     * modifications, see {@link FileChangeDetector}. Changes are accumulated until no further 
+     * changes have been seen for <tt>upload.watch-debounce-seconds</tt> seconds (default 10, 
+     * and never less than the poll interval), so files that are still being written are not 
+     * uploaded repeatedly. Only the changed files are then compared with S3 and uploaded or 
+     * deleted, without listing the whole S3 path. To catch any changes the scans might miss, 
+     * a full synchronization is performed every <tt>upload.watch-full-sync-minutes</tt> 
+     * minutes (default 60).
+     * <p>
+     * If a synchronization fails, the error is reported and the synchronization is retried 
+     * after the next poll, so temporary S3 errors do not stop the watch.
+     * 
+     * @param paths         the local files and directories to watch
+     * @param bucket        the bucket to put the objects in
+     * @param rootObjectPath    the root path where objects are put
+     * @param aclString     the ACL to apply to uploaded objects
+     * @param includeDirectories    if true, directory place-holder objects are stored in S3
+     * 
+     * @throws Exception
+     */
+    public void watchLocalFilesForChanges(File[] paths, S3Bucket bucket, String rootObjectPath,
+        String aclString, boolean includeDirectories) throws Exception 
+    {
+        long pollIntervalMS = 
+            properties.getLongProperty("upload.watch-poll-interval-seconds", 5) * 1000;
+        // Changes are only seen when files are scanned, so a debounce period shorter than 
+        // the poll interval would have no effect.
+        long debounceMS = Math.max(pollIntervalMS,
+            properties.getLongProperty("upload.watch-debounce-seconds", 10) * 1000);
+        long fullSyncIntervalMS = 
+            properties.getLongProperty("upload.watch-full-sync-minutes", 60) * 60 * 1000;
+        
+        FileChangeDetector changeDetector = new FileChangeDetector(properties, paths, 
+            includeDirectories, properties.getIntProperty("upload.watch-files-per-poll", 1000));
+        changeDetector.scan(); // Establish the baseline state of the local files.
+        
+        // The chunks already stored are listed once for the life of the watch.
+        ChunkStore chunkStore = 
+            (isDeduplicationEnabled ? new ChunkStore(bucket, rootObjectPath) : null);
+        
+        long lastChangeTime = System.currentTimeMillis();
+        long lastFullSyncTime = System.currentTimeMillis();
+        printOutputLine("Watching local files for changes", REPORT_LEVEL_NONE);
+        
+        while (true) {
+            Thread.sleep(pollIntervalMS);
+            
+            if (changeDetector.scan()) {
+                lastChangeTime = System.currentTimeMillis();
+            }
+            
+            long now = System.currentTimeMillis();
+            if (now - lastFullSyncTime >= fullSyncIntervalMS) {
+                printOutputLine("Performing full synchronization", REPORT_LEVEL_NONE);
+                try {
+                    uploadLocalDirectoryToS3(changeDetector.getFilesMap(), bucket, 
+                        rootObjectPath, aclString, null);
+                    changeDetector.clearChanges();
+                    lastFullSyncTime = System.currentTimeMillis();
+                } catch (Exception e) {
+                    reportWatchFailure("Full synchronization failed", e);
+                }
+            } else if (changeDetector.hasChanges() && now - lastChangeTime >= debounceMS) {
+                Set changedKeys = changeDetector.takeChangedKeys();
+                Set removedKeys = changeDetector.takeRemovedKeys();
+                try {
+                    uploadChangedFilesToS3(changeDetector.getFilesMap(), 
+                        changedKeys, removedKeys, bucket, rootObjectPath, aclString, chunkStore);
+                } catch (Exception e) {
+                    // Keep the changes, so they are synchronized after the next poll.
+                    changeDetector.restoreChanges(changedKeys, removedKeys);
+                    reportWatchFailure("Synchronization of changed files failed", e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reports an error that interrupted a synchronization in watch mode, and clears the 
+     * error from the service event adaptor so that later synchronizations can proceed.
+     */
+    private void reportWatchFailure(String message, Exception e) {
+        serviceEventAdaptor.clearErrorThrown();
+        System.err.println("ERROR: " + message + ", will retry after the next poll: " + e);
+    }
+    
+    /**
+     * Synchronizes a set of changed and removed local files with S3. Only the objects 
+     * corresponding to these files are compared, using a batch of HEAD requests, so the cost 
+     * of this method depends on the number of changes rather than the number of files.
+     * 
+     * @param filesMap      a map of all the local <code>File</code>s with '/'-delimited file paths as keys 
+     * @param changedKeys   the keys of files that have been created or modified
+     * @param removedKeys   the keys of files that have been removed
+     * @param bucket        the bucket to put the objects in
+     * @param rootObjectPath    the root path where objects are put
+     * @param aclString     the ACL to apply to uploaded objects
+     * 
+     * @throws Exception
+     */
+    public void uploadChangedFilesToS3(Map filesMap, Set changedKeys, Set removedKeys,
+        S3Bucket bucket, String rootObjectPath, String aclString) throws Exception 
+    {
+        uploadChangedFilesToS3(filesMap, changedKeys, removedKeys, bucket, rootObjectPath, 
+            aclString, (isDeduplicationEnabled ? new ChunkStore(bucket, rootObjectPath) : null));
+    }
+    
+    private void uploadChangedFilesToS3(Map filesMap, Set changedKeys, Set removedKeys,
+        S3Bucket bucket, String rootObjectPath, String aclString, ChunkStore chunkStore) 
+        throws Exception 
+    {
+        EncryptionUtil encryptionUtil = null;
+        if (isEncryptionEnabled) {
+            String algorithm = properties
+                .getStringProperty("crypto.algorithm", "PBEWithMD5AndDES");
+            encryptionUtil = new EncryptionUtil(cryptoPassword, algorithm, EncryptionUtil.DEFAULT_VERSION);
+        }
+        
+        // Retrieve the details of existing objects for changed files.
+        Map changedFilesMap = new HashMap();
+        List targetKeys = new ArrayList();
+        Iterator keyIter = changedKeys.iterator();
+        while (keyIter.hasNext()) {
+            String relativeKeyPath = (String) keyIter.next();
+            File file = (File) filesMap.get(relativeKeyPath);
+            if (file == null) {
+                continue;
+            }
+            changedFilesMap.put(relativeKeyPath, file);
+            targetKeys.add(buildTargetKey(rootObjectPath, relativeKeyPath));
+        }
+        printProgressLine("Retrieving details of " + targetKeys.size() + " objects from S3");
+        final List existingObjects = new ArrayList();
+        S3ServiceEventAdaptor headsEventAdaptor = new S3ServiceEventAdaptor() {
+            public void s3ServiceEventPerformed(GetObjectHeadsEvent event) {
+                super.s3ServiceEventPerformed(event);
+                if (GetObjectHeadsEvent.EVENT_IN_PROGRESS == event.getEventCode()) {
+                    existingObjects.addAll(Arrays.asList(event.getCompletedObjects()));
+                }
+            }
+        };
+        // Objects that do not exist yet are not errors, they are simply not retrieved.
+        (new S3ServiceMulti(s3Service, headsEventAdaptor)).getObjectsHeads(bucket, 
+            (String[]) targetKeys.toArray(new String[targetKeys.size()]), true);
+        if (headsEventAdaptor.wasErrorThrown()) {
+            Throwable thrown = headsEventAdaptor.getErrorThrown();
+            if (thrown instanceof Exception) {
+                throw (Exception) thrown;
+            } else {
+                throw new Exception(thrown);
+            }
+        }
+        Map s3ObjectsMap = fileComparer.populateS3ObjectMap(rootObjectPath, 
+            (S3Object[]) existingObjects.toArray(new S3Object[existingObjects.size()]));
+        FileComparerResults discrepancyResults = 
+            fileComparer.buildDiscrepancyLists(changedFilesMap, s3ObjectsMap);
+        
+        // Upload New/Updated/Replaced objects to S3.
+        List objectsToUpload = new ArrayList();
+        keyIter = changedKeys.iterator();
+        while (keyIter.hasNext()) {
+            String relativeKeyPath = (String) keyIter.next();
+            File file = (File) changedFilesMap.get(relativeKeyPath);
+            if (file == null) {
+                continue;
+            }
+            String targetKey = buildTargetKey(rootObjectPath, relativeKeyPath);
+            
+            boolean isUploadRequired = false;
+            if (discrepancyResults.onlyOnClientKeys.contains(relativeKeyPath)) {
+                printOutputLine("N " + targetKey, REPORT_LEVEL_ACTIONS);
+                isUploadRequired = true;
+            } else if (discrepancyResults.updatedOnClientKeys.contains(relativeKeyPath)) {
+                printOutputLine("U " + targetKey, REPORT_LEVEL_ACTIONS);
+                isUploadRequired = true;
+            } else if (discrepancyResults.updatedOnServerKeys.contains(relativeKeyPath)) {
+                if (isKeepFiles) {
+                    printOutputLine("r " + targetKey, REPORT_LEVEL_DIFFERENCES);                    
+                } else {
+                    printOutputLine("R " + targetKey, REPORT_LEVEL_ACTIONS);
+                    isUploadRequired = true;
+                }
+            } else {
+                printOutputLine("- " + targetKey, REPORT_LEVEL_ALL);
+            }
+            
+            if (isUploadRequired && doAction) {
+                objectsToUpload.add(new LazyPreparedUploadObject(
+                    targetKey, file, aclString, encryptionUtil, chunkStore).prepareUploadObject());
+            }
+        }
+        if (objectsToUpload.size() > 0) {
+            S3Object[] objects = (S3Object[]) objectsToUpload.toArray(new S3Object[objectsToUpload.size()]);
+            (new S3ServiceMulti(s3Service, serviceEventAdaptor)).putObjects(bucket, objects);
+            if (serviceEventAdaptor.wasErrorThrown()) {
+                Throwable thrown = serviceEventAdaptor.getErrorThrown();
+                if (thrown instanceof Exception) {
+                    throw (Exception) thrown;
+                } else {
+                    throw new Exception(thrown);
+                }
+            }
+        }
+        
+        // Delete objects in S3 that correspond with removed files.
+        List objectsToDelete = new ArrayList();
+        keyIter = removedKeys.iterator();
+        while (keyIter.hasNext()) {
+            String relativeKeyPath = (String) keyIter.next();
+            if (isKeepFiles || isNoDelete) {
+                printOutputLine("d " + relativeKeyPath, REPORT_LEVEL_DIFFERENCES);                
+            } else {
+                printOutputLine("D " + relativeKeyPath, REPORT_LEVEL_ACTIONS);
+                if (doAction) {
+                    objectsToDelete.add(new S3Object(buildTargetKey(rootObjectPath, relativeKeyPath)));
+                }
+            }
+        }
+        if (objectsToDelete.size() > 0) {
+            S3Object[] objects = (S3Object[]) objectsToDelete.toArray(new S3Object[objectsToDelete.size()]);
+            (new S3ServiceMulti(s3Service, serviceEventAdaptor)).deleteObjects(bucket, objects);
+            if (serviceEventAdaptor.wasErrorThrown()) {
+                Throwable thrown = serviceEventAdaptor.getErrorThrown();
+                if (thrown instanceof Exception) {
+                    throw (Exception) thrown;
+                } else {
+                    throw new Exception(thrown);
+                }
+            }
+        }
+        
+        printOutputLine( 
+            "Changed files: " + changedFilesMap.size() +
+            ", Uploaded: " + objectsToUpload.size() +
+            (isNoDelete || isKeepFiles?
+                ", Not Deleted: " + removedKeys.size()
+                :
+                ", Deleted: " + removedKeys.size()
+                ), REPORT_LEVEL_NONE
+            );
+    }
+        
+    /**
+     * Stores small local files in pack objects, rather than as individual objects. 
+     * <p>
+     * The files are compared with the pack index for the root path, which records the hash 
+     * and date of every packed file, so no listing or HEAD requests are needed for packed files.
+     * New and changed files are concatenated into new pack objects of roughly 
+     * <tt>upload.pack-target-size</tt> bytes (default 8 MB), and the index is updated to point 
+     * to the new data. Files that no longer exist locally, or which are now stored as individual
+     * objects, are removed from the index. Pack objects are never modified, so a pack is only 
+     * deleted once none of the files in the index refer to it.
+     * <p>
+     * The index is read and replaced as a whole, so concurrent uploads to the same root path 
+     * with packing enabled are not supported.
+     * 
+     * @param packFilesMap  a map of the small local <code>File</code>s to pack, with '/'-delimited file paths as keys 
+     * @param objectFileKeys the keys of local files stored as individual objects
+     * @param bucket        the bucket to put the pack objects in
+     * @param rootObjectPath    the root path the packed files belong to
+     * @param aclString     the ACL to apply to the pack objects
+     * @param progressWatcher a class that reports on the progress of this method
+     * 
+     * @return
+     * the results of comparing the small local files with the packed files.
+     * 
+     * @throws Exception
+     */
+    private FileComparerResults uploadLocalFilesToPacks(Map packFilesMap, Set objectFileKeys, 
+        S3Bucket bucket, String rootObjectPath, String aclString, 
+        BytesProgressWatcher progressWatcher) throws Exception 
+    {
+        printProgressLine("Retrieving pack index from S3");
+        PackIndex packIndex = fileComparer.loadPackIndex(s3Service, bucket, rootObjectPath);
+        Set originalPackKeys = packIndex.getReferencedPackKeys();
+        boolean isIndexChanged = false;
+        
+        // Files now stored as individual objects supersede any packed versions.
+        List supersededKeys = new ArrayList(packIndex.getKeys());
+        supersededKeys.retainAll(objectFileKeys);
+        if (supersededKeys.size() > 0) {
+            packIndex.removeEntries(supersededKeys);
+            isIndexChanged = true;
+        }
+        
+        printProgressLine("Comparing packed files with local system");        
+        FileComparerResults discrepancyResults = fileComparer.buildDiscrepancyLists(
+            packFilesMap, packIndex.buildS3ObjectMap(), progressWatcher);
+        
+        List keysToPack = new ArrayList();
+        ArrayList sortedFilesKeys = new ArrayList(packFilesMap.keySet());
+        Collections.sort(sortedFilesKeys);
+        Iterator fileKeyIter = sortedFilesKeys.iterator();
+        while (fileKeyIter.hasNext()) {
+            String relativeKeyPath = (String) fileKeyIter.next();
+            String targetKey = buildTargetKey(rootObjectPath, relativeKeyPath);
             
-            List objectsToUpload = new ArrayList();
+            if (discrepancyResults.onlyOnClientKeys.contains(relativeKeyPath)) {
+                printOutputLine("N " + targetKey, REPORT_LEVEL_ACTIONS);
+                keysToPack.add(relativeKeyPath);
+            } else if (discrepancyResults.updatedOnClientKeys.contains(relativeKeyPath)) {
+                printOutputLine("U " + targetKey, REPORT_LEVEL_ACTIONS);
+                keysToPack.add(relativeKeyPath);
+            } else if (discrepancyResults.alreadySynchronisedKeys.contains(relativeKeyPath)) {
+                if (isForce) {
+                    printOutputLine("F " + targetKey, REPORT_LEVEL_ACTIONS);
+                    keysToPack.add(relativeKeyPath);
+                } else {
+                    printOutputLine("- " + targetKey, REPORT_LEVEL_ALL);
+                }
+            } else if (discrepancyResults.updatedOnServerKeys.contains(relativeKeyPath)) {
+                if (isKeepFiles) {
+                    printOutputLine("r " + targetKey, REPORT_LEVEL_DIFFERENCES);                    
+                } else {
+                    printOutputLine("R " + targetKey, REPORT_LEVEL_ACTIONS);
+                    keysToPack.add(relativeKeyPath);
+                }
+            }
+        }
+        
+        // Remove packed files that don't correspond with local files.
+        Iterator serverOnlyIter = new ArrayList(discrepancyResults.onlyOnServerKeys).iterator();
+        while (serverOnlyIter.hasNext()) {
+            String relativeKeyPath = (String) serverOnlyIter.next();
+            if (isKeepFiles || isNoDelete) {
+                printOutputLine("d " + relativeKeyPath, REPORT_LEVEL_DIFFERENCES);                
+            } else {
+                printOutputLine("D " + relativeKeyPath, REPORT_LEVEL_ACTIONS);
+                if (doAction) {
+                    packIndex.removeEntry(relativeKeyPath);
+                    isIndexChanged = true;
+                }
+            }
+        }
+        
+        if (!doAction) {
+            return discrepancyResults;
+        }
+        
+        String packDirectoryPath = PackIndex.getPackDirectoryPath(rootObjectPath);
+        if (keysToPack.size() > 0) {
+            long packTargetSize = properties.getLongProperty("upload.pack-target-size", 8 * 1024 * 1024);
+            String packKeyPrefix = packDirectoryPath + "pack-" + System.currentTimeMillis() + "-";
             
-            // Iterate through local files and perform the necessary action to synchronise them with S3.
-            Iterator fileKeyIter = sortedFilesKeys.iterator();
-            while (fileKeyIter.hasNext()) {
-                String relativeKeyPath = (String) fileKeyIter.next();
-                
-                String targetKey = relativeKeyPath;
-                if (rootObjectPath.length() > 0) {
-                    if (rootObjectPath.endsWith(Constants.FILE_PATH_DELIM)) {
-                        targetKey = rootObjectPath + targetKey;                         
-                    } else {
-                        targetKey = rootObjectPath + Constants.FILE_PATH_DELIM + targetKey;                         
+            // Concatenate files into temporary pack files.
+            List packObjects = new ArrayList();
+            Map newEntries = new HashMap();
+            byte[] buffer = new byte[8192];
+            File packFile = null;
+            OutputStream packOutputStream = null;
+            String packKey = null;
+            long packOffset = 0;
+            try {
+                Iterator packKeyIter = keysToPack.iterator();
+                while (packKeyIter.hasNext()) {
+                    String relativeKeyPath = (String) packKeyIter.next();
+                    File file = (File) packFilesMap.get(relativeKeyPath);
+                    
+                    if (packOutputStream == null) {
+                        packKey = packKeyPrefix + packObjects.size();
+                        packFile = File.createTempFile("JetS3t", ".pack");
+                        packFile.deleteOnExit();
+                        packOutputStream = new FileOutputStream(packFile);
+                        packOffset = 0;
+                        printProgressLine("Packing files: " + packKey);
                     }
-                }
-
-                if (isBatchMode) {
-                    if (priorLastKey != null && targetKey.compareTo(priorLastKey) > 0) {
-                        // We do not yet have the S3 object listing to compare this file.
-                        continue;
+                    
+                    MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+                    long length = 0;
+                    InputStream fileInputStream = new FileInputStream(file);
+                    try {
+                        int read = -1;
+                        while ((read = fileInputStream.read(buffer)) != -1) {
+                            messageDigest.update(buffer, 0, read);
+                            packOutputStream.write(buffer, 0, read);
+                            length += read;
+                        }
+                    } finally {
+                        fileInputStream.close();
                     }
+                    newEntries.put(relativeKeyPath, new PackIndex.Entry(packKey, packOffset, length, 
+                        ServiceUtils.toBase64(messageDigest.digest()), file.lastModified()));
+                    packOffset += length;
                     
-                    if (targetKey.compareTo(lastFileKeypathChecked) <= 0) {
-                        // We have already handled this file in a prior batch.
-                        continue;
-                    } else {
-                        lastFileKeypathChecked = targetKey;
+                    if (packOffset >= packTargetSize || !packKeyIter.hasNext()) {
+                        packOutputStream.close();
+                        packOutputStream = null;
+                        
+                        S3Object packObject = new S3Object(packKey);
+                        packObject.setContentType(Mimetypes.MIMETYPE_OCTET_STREAM);
+                        packObject.setContentLength(packFile.length());
+                        packObject.setDataInputFile(packFile);
+                        packObject.setMd5Hash(ServiceUtils.computeMD5Hash(new FileInputStream(packFile)));
+                        applyAclString(packObject, aclString);
+                        packObjects.add(packObject);
                     }
                 }
                 
-                File file = (File) filesMap.get(relativeKeyPath);
-                    
-                if (discrepancyResults.onlyOnClientKeys.contains(relativeKeyPath)) {
-                    printOutputLine("N " + targetKey, REPORT_LEVEL_ACTIONS);
-                    objectsToUpload.add(new LazyPreparedUploadObject(targetKey, file, aclString, encryptionUtil));
-                } else if (discrepancyResults.updatedOnClientKeys.contains(relativeKeyPath)) {
-                    printOutputLine("U " + targetKey, REPORT_LEVEL_ACTIONS);
-                    objectsToUpload.add(new LazyPreparedUploadObject(targetKey, file, aclString, encryptionUtil));
-                } else if (discrepancyResults.alreadySynchronisedKeys.contains(relativeKeyPath)) {
-                    if (isForce) {
-                        printOutputLine("F " + targetKey, REPORT_LEVEL_ACTIONS);
-                        objectsToUpload.add(new LazyPreparedUploadObject(targetKey, file, aclString, encryptionUtil));
-                    } else {
-                        printOutputLine("- " + targetKey, REPORT_LEVEL_ALL);
-                    }
-                } else if (discrepancyResults.updatedOnServerKeys.contains(relativeKeyPath)) {
-                    // This file has been updated on the server-side.
-                    if (isKeepFiles) {
-                        printOutputLine("r " + targetKey, REPORT_LEVEL_DIFFERENCES);                    
+                // Upload the pack objects.
+                S3Object[] objects = (S3Object[]) packObjects.toArray(new S3Object[packObjects.size()]);
+                (new S3ServiceMulti(s3Service, serviceEventAdaptor)).putObjects(bucket, objects);
+                if (serviceEventAdaptor.wasErrorThrown()) {
+                    Throwable thrown = serviceEventAdaptor.getErrorThrown();
+                    if (thrown instanceof Exception) {
+                        throw (Exception) thrown;
                     } else {
-                        printOutputLine("R " + targetKey, REPORT_LEVEL_ACTIONS);
-                        objectsToUpload.add(new LazyPreparedUploadObject(targetKey, file, aclString, encryptionUtil));
+                        throw new Exception(thrown);
                     }
-                } else {
-                    // Uh oh, program error here. The safest thing to do is abort!
-                    throw new SynchronizeException("Invalid discrepancy comparison details for file " 
-                        + file.getPath() 
-                        + ". Sorry, this is a program error - aborting to keep your data safe");
+                }
+            } finally {
+                if (packOutputStream != null) {
+                    packOutputStream.close();
+                }
+                Iterator packObjectIter = packObjects.iterator();
+                while (packObjectIter.hasNext()) {
+                    ((S3Object) packObjectIter.next()).getDataInputFile().delete();
+                }
+                if (packFile != null) {
+                    packFile.delete();
                 }
             }
-
-            int uploadBatchSize = objectsToUpload.size();            
-            if ((isEncryptionEnabled || isGzipEnabled) 
-                && properties.containsKey("upload.transformed-files-batch-size")) 
-            {
-                // Limit uploads to small batches in batch mode -- based on the 
-                // number of upload threads that are available.
-                uploadBatchSize = properties.getIntProperty("upload.transformed-files-batch-size", 1000);
-                partialUploadObjectsTotal = objectsToUpload.size();
-                partialUploadObjectsProgressCount = 0;
-            } else {
-                partialUploadObjectsTotal = -1;
+            
+            Iterator entryIter = newEntries.entrySet().iterator();
+            while (entryIter.hasNext()) {
+                Map.Entry entry = (Map.Entry) entryIter.next();
+                packIndex.putEntry((String) entry.getKey(), (PackIndex.Entry) entry.getValue());
             }
+            isIndexChanged = true;
+        }
+        
+        if (isIndexChanged) {
+            // Replace the index, then delete packs that are no longer referenced.
+            printProgressLine("Updating pack index in S3");
+            byte[] indexData = packIndex.toByteArray();
+            S3Object indexObject = new S3Object(packDirectoryPath + PackIndex.INDEX_OBJECT_NAME);
+            indexObject.setContentType("text/plain");
+            indexObject.setContentLength(indexData.length);
+            indexObject.setDataInputStream(new ByteArrayInputStream(indexData));
+            indexObject.setMd5Hash(ServiceUtils.computeMD5Hash(indexData));
+            s3Service.putObject(bucket, indexObject);
             
-            // Upload New/Updated/Forced/Replaced objects to S3.
-            while (doAction && objectsToUpload.size() > 0) {
-                S3Object[] objects = null;
-                if (uploadBatchSize > objectsToUpload.size()) {
-                    objects = new S3Object[objectsToUpload.size()];
-                } else {
-                    objects = new S3Object[uploadBatchSize];                    
-                }
-
-                // Invoke lazy upload object creator.
-                for (int i = 0; i < objects.length; i++) {
-                    LazyPreparedUploadObject lazyObj = 
-                        (LazyPreparedUploadObject) objectsToUpload.remove(0);
-                    objects[i] = lazyObj.prepareUploadObject();
-                }
-
-                (new S3ServiceMulti(s3Service, serviceEventAdaptor)).putObjects(bucket, objects);
+            List unreferencedPacks = new ArrayList();
+            originalPackKeys.removeAll(packIndex.getReferencedPackKeys());
+            Iterator packKeyIter = originalPackKeys.iterator();
+            while (packKeyIter.hasNext()) {
+                unreferencedPacks.add(new S3Object((String) packKeyIter.next()));
+            }
+            if (unreferencedPacks.size() > 0) {
+                S3Object[] objects = (S3Object[]) unreferencedPacks.toArray(new S3Object[unreferencedPacks.size()]);
+                (new S3ServiceMulti(s3Service, serviceEventAdaptor)).deleteObjects(bucket, objects);
                 if (serviceEventAdaptor.wasErrorThrown()) {
                     Throwable thrown = serviceEventAdaptor.getErrorThrown();
                     if (thrown instanceof Exception) {
@@ -440,107 +1531,271 @@ public class Synchronize {
                         throw new Exception(thrown);
                     }
                 }
-                partialUploadObjectsProgressCount += objects.length;
             }
-        } while (priorLastKey != null);
+        }
+        return discrepancyResults;
+    }
+    
+    /**
+     * Restores packed files from their pack objects to the local file system. 
+     * <p>
+     * Files are retrieved with ranged GET requests for just the bytes of each file. Files that
+     * are close together in the same pack are retrieved with a single request, so restoring
+     * all the files in a pack takes only one request.
+     * 
+     * @param packIndex     the index of packed files for the root path
+     * @param packFilesMap  a map of the local <code>File</code>s corresponding to packed files
+     * @param localDirectory the directory to which the files will be restored
+     * @param bucket        the bucket containing the pack objects
+     * @param progressWatcher a class that reports on the progress of this method
+     * 
+     * @return
+     * the results of comparing the local files with the packed files.
+     * 
+     * @throws Exception
+     */
+    private FileComparerResults restoreFromPacksToLocalDirectory(final PackIndex packIndex, 
+        Map packFilesMap, File localDirectory, S3Bucket bucket, 
+        BytesProgressWatcher progressWatcher) throws Exception
+    {
+        printProgressLine("Comparing packed files with local system");        
+        FileComparerResults discrepancyResults = fileComparer.buildDiscrepancyLists(
+            packFilesMap, packIndex.buildS3ObjectMap(), progressWatcher);
         
-        // Delete objects on S3 that don't correspond with local files.
-        List objectsToDelete = new ArrayList();
-        Iterator serverOnlyIter = mergedDiscrepancyResults.onlyOnServerKeys.iterator();
-        while (serverOnlyIter.hasNext()) {
-            // Relative key
-            String relativeKeyPath = (String) serverOnlyIter.next();
-
-            // Build absolute key path for object.
-            String targetKey = relativeKeyPath;
-            if (rootObjectPath.length() > 0) {
-                if (rootObjectPath.endsWith(Constants.FILE_PATH_DELIM)) {
-                    targetKey = rootObjectPath + targetKey;                         
+        // Identify the packed files to restore, grouped by pack.
+        Map keysByPack = new HashMap();
+        Iterator keyIter = packIndex.getKeys().iterator();
+        while (keyIter.hasNext()) {
+            String keyPath = (String) keyIter.next();
+            
+            boolean isRestoreRequired = false;
+            if (discrepancyResults.onlyOnServerKeys.contains(keyPath)) {
+                printOutputLine("N " + keyPath, REPORT_LEVEL_ACTIONS);
+                isRestoreRequired = true;
+            } else if (discrepancyResults.updatedOnServerKeys.contains(keyPath)) {
+                printOutputLine("U " + keyPath, REPORT_LEVEL_ACTIONS);
+                isRestoreRequired = true;
+            } else if (discrepancyResults.alreadySynchronisedKeys.contains(keyPath)) {
+                if (isForce) {
+                    printOutputLine("F " + keyPath, REPORT_LEVEL_ACTIONS);
+                    isRestoreRequired = true;
                 } else {
-                    targetKey = rootObjectPath + Constants.FILE_PATH_DELIM + targetKey;                         
+                    printOutputLine("- " + keyPath, REPORT_LEVEL_ALL);
+                }
+            } else if (discrepancyResults.updatedOnClientKeys.contains(keyPath)) {
+                if (isKeepFiles) {
+                    printOutputLine("r " + keyPath, REPORT_LEVEL_DIFFERENCES);                    
+                } else {
+                    printOutputLine("R " + keyPath, REPORT_LEVEL_ACTIONS);
+                    isRestoreRequired = true;
                 }
             }
-            S3Object s3Object = new S3Object(targetKey);
-                        
-            if (isKeepFiles || isNoDelete) {
-                printOutputLine("d " + relativeKeyPath, REPORT_LEVEL_DIFFERENCES);                
-            } else {
-                printOutputLine("D " + relativeKeyPath, REPORT_LEVEL_ACTIONS);
-                if (doAction) {
-                    objectsToDelete.add(s3Object);
+            
+            if (isRestoreRequired && doAction) {
+                String packKey = packIndex.getEntry(keyPath).getPackKey();
+                List packKeys = (List) keysByPack.get(packKey);
+                if (packKeys == null) {
+                    packKeys = new ArrayList();
+                    keysByPack.put(packKey, packKeys);
                 }
+                packKeys.add(keyPath);
             }
         }
-        if (objectsToDelete.size() > 0) {
-            S3Object[] objects = (S3Object[]) objectsToDelete.toArray(new S3Object[objectsToDelete.size()]);
-            (new S3ServiceMulti(s3Service, serviceEventAdaptor)).deleteObjects(bucket, objects);
-            if (serviceEventAdaptor.wasErrorThrown()) {
-                Throwable thrown = serviceEventAdaptor.getErrorThrown();
-                if (thrown instanceof Exception) {
-                    throw (Exception) thrown;
-                } else {
-                    throw new Exception(thrown);
+        
+        // Retrieve runs of nearby files in each pack with a single ranged GET.
+        long maxRangeGap = properties.getLongProperty("download.pack-max-range-gap", 65536);
+        byte[] buffer = new byte[8192];
+        Iterator packIter = keysByPack.entrySet().iterator();
+        while (packIter.hasNext()) {
+            Map.Entry packEntry = (Map.Entry) packIter.next();
+            String packKey = (String) packEntry.getKey();
+            List packKeys = (List) packEntry.getValue();
+            Collections.sort(packKeys, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    long offset1 = packIndex.getEntry((String) o1).getOffset();
+                    long offset2 = packIndex.getEntry((String) o2).getOffset();
+                    return (offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1));
+                }
+            });
+            
+            int runStart = 0;
+            while (runStart < packKeys.size()) {
+                PackIndex.Entry firstEntry = packIndex.getEntry((String) packKeys.get(runStart));
+                long rangeStart = firstEntry.getOffset();
+                long rangeEnd = rangeStart + firstEntry.getLength();
+                int runEnd = runStart + 1;
+                while (runEnd < packKeys.size()) {
+                    PackIndex.Entry nextEntry = packIndex.getEntry((String) packKeys.get(runEnd));
+                    if (nextEntry.getOffset() - rangeEnd > maxRangeGap) {
+                        break;
+                    }
+                    rangeEnd = Math.max(rangeEnd, nextEntry.getOffset() + nextEntry.getLength());
+                    runEnd++;
+                }
+                
+                printProgressLine("Restoring packed files from " + packKey);
+                InputStream packInputStream = null;
+                if (rangeEnd > rangeStart) {
+                    S3Object packObject = s3Service.getObject(bucket, packKey, 
+                        null, null, null, null, new Long(rangeStart), new Long(rangeEnd - 1));
+                    packInputStream = packObject.getDataInputStream();
+                }
+                try {
+                    long position = rangeStart;
+                    for (int i = runStart; i < runEnd; i++) {
+                        String keyPath = (String) packKeys.get(i);
+                        PackIndex.Entry entry = packIndex.getEntry(keyPath);
+                        
+                        // Skip over any data between files that were not requested.
+                        while (position < entry.getOffset()) {
+                            long skipped = packInputStream.skip(entry.getOffset() - position);
+                            if (skipped <= 0) {
+                                throw new IOException("Unexpected end of data in pack " + packKey);
+                            }
+                            position += skipped;
+                        }
+                        
+                        File fileTarget = new File(localDirectory, keyPath);
+                        if (fileTarget.getParentFile() != null) {
+                            fileTarget.getParentFile().mkdirs();
+                        }
+                        MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+                        OutputStream fileOutputStream = new FileOutputStream(fileTarget);
+                        try {
+                            long remaining = entry.getLength();
+                            while (remaining > 0) {
+                                int read = packInputStream.read(buffer, 0, 
+                                    (int) Math.min(buffer.length, remaining));
+                                if (read == -1) {
+                                    throw new IOException("Unexpected end of data in pack " + packKey);
+                                }
+                                messageDigest.update(buffer, 0, read);
+                                fileOutputStream.write(buffer, 0, read);
+                                remaining -= read;
+                            }
+                        } finally {
+                            fileOutputStream.close();
+                        }
+                        position += entry.getLength();
+                        
+                        if (!entry.getMd5HashAsBase64().equals(
+                            ServiceUtils.toBase64(messageDigest.digest()))) 
+                        {
+                            throw new IOException("Data restored from pack " + packKey 
+                                + " for file " + keyPath + " does not match the expected hash");
+                        }
+                        fileTarget.setLastModified(entry.getLastModified());
+                    }
+                } finally {
+                    if (packInputStream != null) {
+                        packInputStream.close();
+                    }
                 }
+                runStart = runEnd;
             }
         }
+        return discrepancyResults;
+    }
+    
+    /**
+     * Restores a file stored as de-duplicated chunks, by retrieving its chunk manifest and
+     * re-assembling the file from its chunks. The chunks are downloaded in parallel in 
+     * batches of <tt>download.dedup-batch-chunks</tt> chunks (default 32), and the 
+     * re-assembled file is verified against the original file's MD5 hash.
+     * 
+     * @param bucket        the bucket containing the manifest and chunk objects
+     * @param manifestObject the object containing the file's chunk manifest
+     * @param fileTarget    the file to restore
+     * 
+     * @throws Exception
+     */
+    private void restoreChunkedObject(S3Bucket bucket, S3Object manifestObject, File fileTarget)
+        throws Exception 
+    {
+        String chunkDirectoryPath = (String) manifestObject.getMetadata(
+            Constants.METADATA_JETS3T_CHUNK_STORE);
+        S3Object manifestDataObject = s3Service.getObject(bucket, manifestObject.getKey());
+        ChunkManifest manifest = ChunkManifest.parse(manifestDataObject.getDataInputStream());
+        int batchChunks = properties.getIntProperty("download.dedup-batch-chunks", 32);
         
-        // Delete local files that have been moved to S3.
-        List filesMoved = new ArrayList();
-        if (isMoveEnabled) {
-            filesMoved.addAll(mergedDiscrepancyResults.onlyOnClientKeys);
-            filesMoved.addAll(mergedDiscrepancyResults.updatedOnClientKeys);
-            filesMoved.addAll(mergedDiscrepancyResults.updatedOnServerKeys);
-            filesMoved.addAll(mergedDiscrepancyResults.alreadySynchronisedKeys);
-            
-            ArrayList dirsToDelete = new ArrayList();
-            Iterator filesMovedIter = filesMoved.iterator();
-            while (filesMovedIter.hasNext()) {
-                String keyPath = (String) filesMovedIter.next();
-                File file = (File) filesMap.get(keyPath);
+        if (fileTarget.getParentFile() != null) {
+            fileTarget.getParentFile().mkdirs();
+        }
+        MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+        byte[] buffer = new byte[65536];
+        OutputStream fileOutputStream = new FileOutputStream(fileTarget);
+        try {
+            List chunks = manifest.getChunks();
+            for (int batchStart = 0; batchStart < chunks.size(); batchStart += batchChunks) {
+                List batch = chunks.subList(batchStart, Math.min(chunks.size(), batchStart + batchChunks));
+                printProgressLine("Restoring chunks for " + manifestObject.getKey() + ": " 
+                    + batchStart + "/" + chunks.size());
                 
-                printOutputLine("M " + keyPath, REPORT_LEVEL_ACTIONS);
-                if (doAction) {
-                    if (file.isDirectory()) {
-                        // Delete directories later, as they may still contain 
-                        // files until this loop completes.
-                        dirsToDelete.add(file);
-                    } else {
-                        file.delete();
+                // Download each distinct chunk in the batch to a temporary file.
+                Map chunkFiles = new HashMap();
+                List downloadPackages = new ArrayList();
+                try {
+                    Iterator chunkIter = batch.iterator();
+                    while (chunkIter.hasNext()) {
+                        ChunkManifest.Chunk chunk = (ChunkManifest.Chunk) chunkIter.next();
+                        if (!chunkFiles.containsKey(chunk.getHashAsHex())) {
+                            File chunkFile = File.createTempFile("JetS3t", ".chunk");
+                            chunkFile.deleteOnExit();
+                            chunkFiles.put(chunk.getHashAsHex(), chunkFile);
+                            downloadPackages.add(new DownloadPackage(
+                                new S3Object(chunkDirectoryPath + chunk.getHashAsHex()), chunkFile));
+                        }
+                    }
+                    (new S3ServiceMulti(s3Service, serviceEventAdaptor)).downloadObjects(bucket, 
+                        (DownloadPackage[]) downloadPackages.toArray(new DownloadPackage[downloadPackages.size()]));
+                    if (serviceEventAdaptor.wasErrorThrown()) {
+                        Throwable thrown = serviceEventAdaptor.getErrorThrown();
+                        if (thrown instanceof Exception) {
+                            throw (Exception) thrown;
+                        } else {
+                            throw new Exception(thrown);
+                        }
+                    }
+                    
+                    // Append the chunks to the file in order.
+                    chunkIter = batch.iterator();
+                    while (chunkIter.hasNext()) {
+                        ChunkManifest.Chunk chunk = (ChunkManifest.Chunk) chunkIter.next();
+                        InputStream chunkInputStream = new FileInputStream(
+                            (File) chunkFiles.get(chunk.getHashAsHex()));
+                        try {
+                            int read = -1;
+                            while ((read = chunkInputStream.read(buffer)) != -1) {
+                                messageDigest.update(buffer, 0, read);
+                                fileOutputStream.write(buffer, 0, read);
+                            }
+                        } finally {
+                            chunkInputStream.close();
+                        }
+                    }
+                } finally {
+                    Iterator chunkFileIter = chunkFiles.values().iterator();
+                    while (chunkFileIter.hasNext()) {
+                        ((File) chunkFileIter.next()).delete();
                     }
                 }
             }
-            Iterator dirIter = dirsToDelete.iterator();
-            while (dirIter.hasNext()) {
-                File dir = (File) dirIter.next();
-                dir.delete();
-            }            
+        } finally {
+            fileOutputStream.close();
         }
         
-        printOutputLine( 
-            "New files: " + mergedDiscrepancyResults.onlyOnClientKeys.size() +
-            ", Updated: " + mergedDiscrepancyResults.updatedOnClientKeys.size() +
-            (isKeepFiles?
-                ", Kept: " + 
-                (mergedDiscrepancyResults.updatedOnServerKeys.size())                    
-                :                 
-                ", Reverted: " + mergedDiscrepancyResults.updatedOnServerKeys.size()
-                ) +
-            (isNoDelete || isKeepFiles?
-                ", Not Deleted: " + mergedDiscrepancyResults.onlyOnServerKeys.size()
-                :
-                ", Deleted: " + mergedDiscrepancyResults.onlyOnServerKeys.size()
-                ) +
-            (isForce ?
-                ", Forced updates: " + mergedDiscrepancyResults.alreadySynchronisedKeys.size() :
-                ", Unchanged: " + mergedDiscrepancyResults.alreadySynchronisedKeys.size()
-                ) +
-            (isMoveEnabled ?
-                ", Moved: " + filesMoved.size()
-                : ""
-                ), REPORT_LEVEL_NONE
-            );
+        if (!manifest.getMd5HashAsBase64().equals(ServiceUtils.toBase64(messageDigest.digest()))) {
+            throw new IOException("File re-assembled from chunks for object " 
+                + manifestObject.getKey() + " does not match the original file's hash");
+        }
+        String metadataLocalFileDate = (String) manifestObject.getMetadata(
+            Constants.METADATA_JETS3T_LOCAL_FILE_DATE);
+        if (metadataLocalFileDate != null) {
+            fileTarget.setLastModified(
+                ServiceUtils.parseIso8601Date(metadataLocalFileDate).getTime());
+        }
     }
-        
+    
     /**
      * Copies the contents of a root path in S3 to the local file system.
      * <p>
@@ -556,6 +1811,11 @@ public class Synchronize {
      * <b>Note</b>: If a file was backed-up with both encryption and gzip options it cannot be 
      * restored with only the gzip option set, as files are gzipped prior to being encrypted and cannot
      * be inflated without first being decrypted.
+     * <p>
+     * Files that were stored in pack objects are restored from the packs listed in the root 
+     * path's pack index, whether or not packing is enabled. Files that were stored as chunks are
+     * recognised by their metadata, so a path containing chunked files cannot be restored with the
+     * skip metadata option set.
      * 
      * @param filesMap      a map of the local <code>File</code>s with '/'-delimited file paths as keys 
      * @param rootObjectPath    the root path in S3 where backed-up objects were stored
@@ -572,6 +1832,34 @@ public class Synchronize {
         FileComparerResults mergedDiscrepancyResults = new FileComparerResults();
         String priorLastKey = null;
         long totalObjectsListed = 0;
+        
+        // Chunk manifests are recognised by their metadata, so they cannot be restored without it.
+        if (isSkipMetadata) {
+            S3ObjectsChunk chunkListing = s3Service.listObjectsChunked(bucket.getName(), 
+                ChunkManifest.getChunkDirectoryPath(rootObjectPath), null, 1, null);
+            if (chunkListing.getObjects().length > 0) {
+                throw new SynchronizeException("Files stored as chunks cannot be restored with " 
+                    + "the --skipmetadata option");
+            }
+        }
+        
+        // Local files that correspond to packed files are restored separately from objects.
+        // Packed files are always restored, whether or not packing is enabled for uploads.
+        printProgressLine("Retrieving pack index from S3");
+        PackIndex packIndex = fileComparer.loadPackIndex(s3Service, bucket, rootObjectPath);
+        Map packFilesMap = new HashMap();
+        if (packIndex.size() == 0) {
+            packIndex = null;
+        } else {
+            filesMap = new HashMap(filesMap);
+            Iterator packKeyIter = packIndex.getKeys().iterator();
+            while (packKeyIter.hasNext()) {
+                Object keyPath = packKeyIter.next();
+                if (filesMap.containsKey(keyPath)) {
+                    packFilesMap.put(keyPath, filesMap.remove(keyPath));
+                }
+            }
+        }
 
         // Repeat download actions until all objects in bucket have been listed.
         do {
@@ -582,7 +1870,7 @@ public class Synchronize {
             
             PartialObjectListing partialListing = fileComparer.buildS3ObjectMapPartial(
                 s3Service, bucket, rootObjectPath, priorLastKey, !isBatchMode,
-                isSkipMetadata, serviceEventAdaptor);        
+                isSkipMetadata, filesMap, true, serviceEventAdaptor);        
             if (serviceEventAdaptor.wasErrorThrown()) {
                 throw new Exception("Unable to build map of S3 Objects", 
                     serviceEventAdaptor.getErrorThrown());
@@ -672,6 +1960,17 @@ public class Synchronize {
                 }
             }
             
+            // Objects containing chunk manifests are restored from their chunks.
+            List chunkedDownloadsList = new ArrayList();
+            Iterator downloadIter = downloadPackagesList.iterator();
+            while (downloadIter.hasNext()) {
+                DownloadPackage downloadPackage = (DownloadPackage) downloadIter.next();
+                if (downloadPackage.getObject().containsMetadata(Constants.METADATA_JETS3T_CHUNK_STORE)) {
+                    chunkedDownloadsList.add(downloadPackage);
+                    downloadIter.remove();
+                }
+            }
+            
             // Download New/Updated/Forced/Replaced objects from S3.
             if (doAction && downloadPackagesList.size() > 0) {
                 DownloadPackage[] downloadPackages = (DownloadPackage[]) 
@@ -686,7 +1985,22 @@ public class Synchronize {
                     }
                 }
             }
+            if (doAction) {
+                Iterator chunkedIter = chunkedDownloadsList.iterator();
+                while (chunkedIter.hasNext()) {
+                    DownloadPackage downloadPackage = (DownloadPackage) chunkedIter.next();
+                    restoreChunkedObject(bucket, downloadPackage.getObject(), 
+                        downloadPackage.getDataFile());
+                }
+            }
         } while (priorLastKey != null);                        
+        
+        // Restore packed files.
+        FileComparerResults packDiscrepancyResults = null;
+        if (packIndex != null) {
+            packDiscrepancyResults = restoreFromPacksToLocalDirectory(
+                packIndex, packFilesMap, localDirectory, bucket, progressWatcher);
+        }
 
         // Delete local files that don't correspond with S3 objects.
         ArrayList dirsToDelete = new ArrayList();
@@ -752,6 +2066,11 @@ public class Synchronize {
             }
         }        
         
+        // Packed files are not removed from their packs by the move option.
+        if (packDiscrepancyResults != null) {
+            mergedDiscrepancyResults.merge(packDiscrepancyResults);
+        }
+        
         printOutputLine( 
             "New files: " + mergedDiscrepancyResults.onlyOnServerKeys.size() +
             ", Updated: " + mergedDiscrepancyResults.updatedOnServerKeys.size() +
@@ -908,6 +2227,11 @@ public class Synchronize {
         if ("UP".equals(actionCommand)) {  
             uploadLocalDirectoryToS3(filesMap, bucket, objectPath, 
                 aclString, progressWatcher);
+            
+            if (isWatchModeEnabled) {
+                watchLocalFilesForChanges((File[]) fileList.toArray(new File[fileList.size()]),
+                    bucket, objectPath, aclString, storeEmptyDirectories);
+            }
         } else if ("DOWN".equals(actionCommand)) {
             restoreFromS3ToLocalDirectory(filesMap, objectPath, 
                 (File) fileList.get(0), bucket, progressWatcher);
@@ -982,6 +2306,14 @@ public class Synchronize {
             }
         }
         
+        public void s3ServiceEventPerformed(CopyObjectsEvent event) {
+            super.s3ServiceEventPerformed(event);
+            displayIgnoredErrors(event);
+            if (ServiceEvent.EVENT_IN_PROGRESS == event.getEventCode()) {                
+                displayProgressStatus("Copying objects in S3: ", event.getThreadWatcher());
+            }
+        }
+        
         public void s3ServiceEventPerformed(DeleteObjectsEvent event) {
             super.s3ServiceEventPerformed(event);
             displayIgnoredErrors(event);
@@ -1070,7 +2402,8 @@ public class Synchronize {
         System.out.println("   synch process much faster for large buckets, but it will leave Synchronize");
         System.out.println("   with less information to make decisions. If this option is enabled, empty");
         System.out.println("   files or directories will not be synchronized reliably.");
-        System.out.println("   This option cannot be used with the --gzip or --crypto options.");
+        System.out.println("   This option cannot be used with the --gzip or --crypto options, or when");
+        System.out.println("   restoring files that were stored as chunks with the --dedup option.");
         System.out.println("");
         System.out.println("-g | --gzip");
         System.out.println("   Compress (GZip) files when backing up and Decompress gzipped files");
@@ -1080,6 +2413,32 @@ public class Synchronize {
         System.out.println("   Encrypt files when backing up and decrypt encrypted files when restoring. If");
         System.out.println("   this option is specified the properties must contain a password.");
         System.out.println("");
+        System.out.println("--detectmoves");
+        System.out.println("   When uploading, detect new files that have the same content as an object that");
+        System.out.println("   only exists in S3, such as files that have been renamed or moved. These files");
+        System.out.println("   are copied within S3 from the existing object instead of being uploaded.");
+        System.out.println("   This option can also be enabled with the upload.detect-moves property.");
+        System.out.println("");
+        System.out.println("-w | --watch");
+        System.out.println("   After uploading, keep running and watch the local files for changes. Changed");
+        System.out.println("   and removed files are synchronized with S3 shortly after they change, and a");
+        System.out.println("   full synchronization is performed periodically. This option can only be used");
+        System.out.println("   for uploads, and cannot be used with --move.");
+        System.out.println("");
+        System.out.println("--pack");
+        System.out.println("   Store small files in larger pack objects rather than as individual objects,");
+        System.out.println("   which greatly reduces the number of requests needed to back up and restore");
+        System.out.println("   many small files. Packed files are restored automatically. This option cannot");
+        System.out.println("   be used with the --gzip, --crypto or --watch options. It can also be enabled");
+        System.out.println("   with the upload.pack-small-files property.");
+        System.out.println("");
+        System.out.println("--dedup");
+        System.out.println("   Store large files as chunks that are shared between files and between");
+        System.out.println("   versions of a file, so only the changed parts of a file are uploaded when it");
+        System.out.println("   changes. Chunked files are restored automatically, but not with --skipmetadata.");
+        System.out.println("   This option cannot be used with the --gzip, --crypto or --skipmetadata options.");
+        System.out.println("   It can also be enabled with the upload.dedup-chunks property.");
+        System.out.println("");
         System.out.println("--properties <filename>");
         System.out.println("   Load the synchronizer app properties from the given file rather than from");
         System.out.println("   a synchronizer.properties file in the classpath.");
@@ -1097,9 +2456,9 @@ public class Synchronize {
         System.out.println("--reportlevel <Level>");
         System.out.println("   A number that specifies how much report information will be printed:");
         System.out.println("   0 - no report items will be printed (the summary will still be printed)");
-        System.out.println("   1 - only actions are reported          [Prefixes N, U, D, R, F, M]");
-        System.out.println("   2 - differences & actions are reported [Prefixes N, U, D, R, F, M, d, r]");
-        System.out.println("   3 - DEFAULT: all items are reported    [Prefixes N, U, D, R, F, M, d, r, -]");
+        System.out.println("   1 - only actions are reported          [Prefixes N, C, U, D, R, F, M]");
+        System.out.println("   2 - differences & actions are reported [Prefixes N, C, U, D, R, F, M, d, r]");
+        System.out.println("   3 - DEFAULT: all items are reported    [Prefixes N, C, U, D, R, F, M, d, r, -]");
         System.out.println("");
         System.out.println("Report");
         System.out.println("------");
@@ -1107,6 +2466,8 @@ public class Synchronize {
         System.out.println("the relative path of the file or S3 object. The report legend follows:");
         System.out.println("");
         System.out.println("N: A new file/object will be created");
+        System.out.println("C: A new file matches an object already in S3, and the object will be copied");
+        System.out.println("   within S3 rather than uploading the file (--detectmoves option).");
         System.out.println("U: An existing file/object has changed and will be updated");
         System.out.println("D: A file/object existing on the target does not exist on the source and");
         System.out.println("   will be deleted.");
@@ -1153,6 +2514,10 @@ public class Synchronize {
         boolean isMoveEnabled = false;
         boolean isBatchMode = false;
         boolean isSkipMetadata = false;
+        boolean isMoveDetectionRequested = false;
+        boolean isWatchModeRequested = false;
+        boolean isPackingRequested = false;
+        boolean isDeduplicationRequested = false;
         String aclString = null;
         int reportLevel = REPORT_LEVEL_ALL;
         AWSCredentials awsCredentials = null;
@@ -1186,6 +2551,14 @@ public class Synchronize {
                     isSkipMetadata = true; 
                 } else if (arg.equalsIgnoreCase("-b") || arg.equalsIgnoreCase("--batch")) {
                     isBatchMode = true; 
+                } else if (arg.equalsIgnoreCase("--detectmoves")) {
+                    isMoveDetectionRequested = true; 
+                } else if (arg.equalsIgnoreCase("-w") || arg.equalsIgnoreCase("--watch")) {
+                    isWatchModeRequested = true; 
+                } else if (arg.equalsIgnoreCase("--pack")) {
+                    isPackingRequested = true; 
+                } else if (arg.equalsIgnoreCase("--dedup")) {
+                    isDeduplicationRequested = true; 
                 } else if (arg.equalsIgnoreCase("--properties")) {
                     if (i + 1 < args.length) {
                         // Read the Synchronize properties file from the specified file            
@@ -1332,6 +2705,12 @@ public class Synchronize {
             printHelpAndExit(false);            
         }
         
+        if (isWatchModeRequested && "DOWN".equals(actionCommand)) {
+            // Incompatible options.
+            System.err.println("ERROR: The --watch option can only be used with the UP action");
+            printHelpAndExit(false);                        
+        }
+        
         if (isSkipMetadata && (isGzipEnabled || isEncryptionEnabled)) {
             // Incompatible options.
             System.err.println("ERROR: The --skipmetadata option cannot be used with the --gzip or --crypto options");
@@ -1396,6 +2775,39 @@ public class Synchronize {
             awsCredentials = null;
         }
         
+        if (isMoveDetectionRequested) {
+            myProperties.setProperty("upload.detect-moves", "true");
+        }
+        if (isWatchModeRequested) {
+            myProperties.setProperty("upload.watch", "true");
+        }
+        if (myProperties.getBoolProperty("upload.watch", false) && isMoveEnabled) {
+            // Incompatible options, as watching would delete the objects of moved files.
+            System.err.println("ERROR: Options --watch and --move cannot be used at the same time");
+            printHelpAndExit(false);                        
+        }
+        if (isPackingRequested) {
+            myProperties.setProperty("upload.pack-small-files", "true");
+        }
+        if (isDeduplicationRequested) {
+            myProperties.setProperty("upload.dedup-chunks", "true");
+        }
+        if (myProperties.getBoolProperty("upload.dedup-chunks", false) 
+            && (isGzipEnabled || isEncryptionEnabled || isSkipMetadata)) 
+        {
+            // Incompatible options.
+            System.err.println("ERROR: Chunk de-duplication cannot be used with the --gzip, --crypto or --skipmetadata options");
+            printHelpAndExit(false);                        
+        }
+        if (myProperties.getBoolProperty("upload.pack-small-files", false) 
+            && (isGzipEnabled || isEncryptionEnabled 
+                || myProperties.getBoolProperty("upload.watch", false))) 
+        {
+            // Incompatible options.
+            System.err.println("ERROR: Small file packing cannot be used with the --gzip, --crypto or --watch options");
+            printHelpAndExit(false);                        
+        }
+        
         if (aclString == null) {
             aclString = myProperties.getStringProperty("acl", "PRIVATE");
         }
@@ -0,0 +1,324 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service;
+
+import java.io.FileNotFoundException;
+import java.util.Calendar;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.acl.AccessControlList;
+import org.jets3t.service.cache.ObjectDataCache;
+import org.jets3t.service.model.MultipleDeleteResult;
+import org.jets3t.service.model.S3Bucket;
+import org.jets3t.service.model.S3BucketLoggingStatus;
+import org.jets3t.service.model.S3Object;
+import org.jets3t.service.model.S3Owner;
+
+/**
+ * An S3 service that wraps another service, serving the data of objects it has already 
+ * downloaded from an {@link ObjectDataCache} on the local disk.
+ * <p>
+ * Requests are performed by the underlying service, so this class can wrap any
+ * S3Service implementation and, because it is itself an S3Service, can be used anywhere a service
+ * is expected. For example, an {@link org.jets3t.service.multithread.S3ServiceMulti} 
+ * built with this service downloads objects through the cache. 
+ * <p>
+ * Only unconditional GET requests for whole objects are cached. Cached data is served without
+ * any request until its time-to-live period expires, after which it is revalidated with a 
+ * conditional GET that downloads the data only if the object's ETag has changed. The cached data 
+ * of an object is discarded when the object is put, copied over or deleted through this service, 
+ * but not when it is changed by other services.
+ * <p>
+ * Settings such as DevPay tokens and Requester Pays apply to the underlying service, and must be 
+ * configured there.
+ *
+ * @author James Murty
+ */
+public class CachingS3Service extends S3Service {
+    private static final long serialVersionUID = -4729307858233713566L;
+
+    private static final Log log = LogFactory.getLog(CachingS3Service.class);
+
+    private final S3Service s3Service;
+    private final transient ObjectDataCache dataCache;
+
+    /**
+     * Wraps a service with a cache configured by the service's JetS3t properties. 
+     * 
+     * @param s3Service
+     * the service that will perform requests, which must be thread-safe if this service will be
+     * used by multiple threads.
+     * @throws S3ServiceException
+     */
+    public CachingS3Service(S3Service s3Service) throws S3ServiceException {
+        this(s3Service, new ObjectDataCache(s3Service.getJetS3tProperties()));
+    }
+
+    /**
+     * Wraps a service with the given cache.
+     * 
+     * @param s3Service
+     * the service that will perform requests, which must be thread-safe if this service will be
+     * used by multiple threads.
+     * @param dataCache
+     * the cache in which object data is stored.
+     * @throws S3ServiceException
+     */
+    public CachingS3Service(S3Service s3Service, ObjectDataCache dataCache) throws S3ServiceException {
+        super(s3Service.getAWSCredentials(), s3Service.getInvokingApplicationDescription(), 
+            s3Service.getJetS3tProperties());
+        this.s3Service = s3Service;
+        this.dataCache = dataCache;
+    }
+
+    /**
+     * @return
+     * the underlying service that performs requests.
+     */
+    public S3Service getS3Service() {
+        return s3Service;
+    }
+
+    /**
+     * @return
+     * the cache in which object data is stored, which also counts the cache's hits, misses 
+     * and evictions.
+     */
+    public ObjectDataCache getDataCache() {
+        return dataCache;
+    }
+
+    protected S3Object getObjectImpl(String bucketName, String objectKey, Calendar ifModifiedSince,
+        Calendar ifUnmodifiedSince, String[] ifMatchTags, String[] ifNoneMatchTags,
+        Long byteRangeStart, Long byteRangeEnd) throws S3ServiceException
+    {
+        if (ifModifiedSince != null || ifUnmodifiedSince != null || ifMatchTags != null
+            || ifNoneMatchTags != null || byteRangeStart != null || byteRangeEnd != null)
+        {
+            // Only whole objects retrieved unconditionally are cached.
+            return s3Service.getObjectImpl(bucketName, objectKey, ifModifiedSince, 
+                ifUnmodifiedSince, ifMatchTags, ifNoneMatchTags, byteRangeStart, byteRangeEnd);
+        }
+
+        ObjectDataCache.Entry entry = dataCache.get(bucketName, objectKey);
+        if (entry != null && !entry.isExpired()) {
+            S3Object cachedObject = openCachedObject(entry);
+            if (cachedObject != null) {
+                return cachedObject;
+            }
+            entry = null;
+        }
+
+        S3Object object = null;
+        try {
+            if (entry != null) {
+                // Revalidate the stale data, downloading the object only if it has changed.
+                object = s3Service.getObjectImpl(bucketName, objectKey, null, null, null, 
+                    new String[] {entry.getETag()}, null, null);
+            } else {
+                object = s3Service.getObjectImpl(bucketName, objectKey, null, null, null, 
+                    null, null, null);
+            }
+        } catch (S3ServiceException e) {
+            if (entry != null && e.getResponseCode() == 304) {
+                S3Object cachedObject = openCachedObject(entry);
+                if (cachedObject != null) {
+                    dataCache.renew(entry);
+                    return cachedObject;
+                }
+                // The cached data has gone, so download the object after all.
+                return getObjectImpl(bucketName, objectKey, null, null, null, null, null, null);
+            }
+            if (e.getResponseCode() == 404) {
+                dataCache.invalidate(bucketName, objectKey);
+            }
+            throw e;
+        }
+
+        if (!dataCache.isCacheable(object.getContentLength())) {
+            dataCache.invalidate(bucketName, objectKey);
+            return object;
+        }
+        S3Object cachedObject = openCachedObject(dataCache.put(bucketName, object));
+        if (cachedObject == null) {
+            throw new S3ServiceException("Cached data of object " + objectKey 
+                + " in bucket " + bucketName + " was removed before it could be read");
+        }
+        return cachedObject;
+    }
+
+    /**
+     * @return
+     * the cached object with its data input stream, or null if the cached data file was removed.
+     */
+    private S3Object openCachedObject(ObjectDataCache.Entry entry) {
+        try {
+            return entry.openObject();
+        } catch (FileNotFoundException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Cached data file is missing, object will be downloaded", e);
+            }
+            return null;
+        }
+    }
+
+    protected S3Object putObjectImpl(String bucketName, S3Object object) throws S3ServiceException {
+        try {
+            return s3Service.putObjectImpl(bucketName, object);
+        } finally {
+            dataCache.invalidate(bucketName, object.getKey());
+        }
+    }
+
+    protected Map copyObjectImpl(String sourceBucketName, String sourceObjectKey,
+        String destinationBucketName, String destinationObjectKey,
+        AccessControlList acl, Map destinationMetadata,
+        Calendar ifModifiedSince, Calendar ifUnmodifiedSince, 
+        String[] ifMatchTags, String[] ifNoneMatchTags) throws S3ServiceException
+    {
+        try {
+            return s3Service.copyObjectImpl(sourceBucketName, sourceObjectKey, 
+                destinationBucketName, destinationObjectKey, acl, destinationMetadata, 
+                ifModifiedSince, ifUnmodifiedSince, ifMatchTags, ifNoneMatchTags);
+        } finally {
+            dataCache.invalidate(destinationBucketName, destinationObjectKey);
+        }
+    }
+
+    protected void deleteObjectImpl(String bucketName, String objectKey) throws S3ServiceException {
+        try {
+            s3Service.deleteObjectImpl(bucketName, objectKey);
+        } finally {
+            dataCache.invalidate(bucketName, objectKey);
+        }
+    }
+
+    protected MultipleDeleteResult deleteMultipleObjectsImpl(String bucketName, 
+        String[] objectKeys, boolean quiet) throws S3ServiceException 
+    {
+        try {
+            return s3Service.deleteMultipleObjectsImpl(bucketName, objectKeys, quiet);
+        } finally {
+            for (int i = 0; i < objectKeys.length; i++) {
+                dataCache.invalidate(bucketName, objectKeys[i]);
+            }
+        }
+    }
+
+    // The remaining operations are performed by the underlying service unchanged.
+
+    protected boolean isBucketAccessibleImpl(String bucketName) throws S3ServiceException {
+        return s3Service.isBucketAccessibleImpl(bucketName);
+    }
+
+    protected int checkBucketStatusImpl(String bucketName) throws S3ServiceException {
+        return s3Service.checkBucketStatusImpl(bucketName);
+    }
+
+    protected String getBucketLocationImpl(String bucketName) throws S3ServiceException {
+        return s3Service.getBucketLocationImpl(bucketName);
+    }
+
+    protected S3BucketLoggingStatus getBucketLoggingStatusImpl(String bucketName) 
+        throws S3ServiceException 
+    {
+        return s3Service.getBucketLoggingStatusImpl(bucketName);
+    }
+
+    protected void setBucketLoggingStatusImpl(String bucketName, S3BucketLoggingStatus status) 
+        throws S3ServiceException 
+    {
+        s3Service.setBucketLoggingStatusImpl(bucketName, status);
+    }
+
+    protected void setRequesterPaysBucketImpl(String bucketName, boolean requesterPays) 
+        throws S3ServiceException 
+    {
+        s3Service.setRequesterPaysBucketImpl(bucketName, requesterPays);
+    }
+
+    protected boolean isRequesterPaysBucketImpl(String bucketName) throws S3ServiceException {
+        return s3Service.isRequesterPaysBucketImpl(bucketName);
+    }
+
+    protected S3Bucket[] listAllBucketsImpl() throws S3ServiceException {
+        return s3Service.listAllBucketsImpl();
+    }
+
+    protected S3Owner getAccountOwnerImpl() throws S3ServiceException {
+        return s3Service.getAccountOwnerImpl();
+    }
+
+    protected S3Object[] listObjectsImpl(String bucketName, String prefix, 
+        String delimiter, long maxListingLength) throws S3ServiceException 
+    {
+        return s3Service.listObjectsImpl(bucketName, prefix, delimiter, maxListingLength);
+    }
+
+    protected S3ObjectsChunk listObjectsChunkedImpl(String bucketName, String prefix, 
+        String delimiter, long maxListingLength, String priorLastKey, boolean completeListing) 
+        throws S3ServiceException 
+    {
+        return s3Service.listObjectsChunkedImpl(bucketName, prefix, delimiter, 
+            maxListingLength, priorLastKey, completeListing);
+    }
+
+    protected S3Bucket createBucketImpl(String bucketName, String location, 
+        AccessControlList acl) throws S3ServiceException 
+    {
+        return s3Service.createBucketImpl(bucketName, location, acl);
+    }
+
+    protected void deleteBucketImpl(String bucketName) throws S3ServiceException {
+        s3Service.deleteBucketImpl(bucketName);
+    }
+
+    protected S3Object getObjectDetailsImpl(String bucketName, String objectKey,
+        Calendar ifModifiedSince, Calendar ifUnmodifiedSince, String[] ifMatchTags,
+        String[] ifNoneMatchTags) throws S3ServiceException 
+    {
+        return s3Service.getObjectDetailsImpl(bucketName, objectKey, ifModifiedSince, 
+            ifUnmodifiedSince, ifMatchTags, ifNoneMatchTags);
+    }
+
+    protected void putBucketAclImpl(String bucketName, AccessControlList acl) 
+        throws S3ServiceException 
+    {
+        s3Service.putBucketAclImpl(bucketName, acl);
+    }
+
+    protected void putObjectAclImpl(String bucketName, String objectKey, AccessControlList acl) 
+        throws S3ServiceException 
+    {
+        s3Service.putObjectAclImpl(bucketName, objectKey, acl);
+    }
+
+    protected AccessControlList getObjectAclImpl(String bucketName, String objectKey)
+        throws S3ServiceException 
+    {
+        return s3Service.getObjectAclImpl(bucketName, objectKey);
+    }
+
+    protected AccessControlList getBucketAclImpl(String bucketName) throws S3ServiceException {
+        return s3Service.getBucketAclImpl(bucketName);
+    }
+
+}
@@ -123,6 +123,12 @@ public class Constants {
      */
     public static final String METADATA_JETS3T_COMPRESSED = "jets3t-compression";
 
+    /**
+     * Metadata header identifying an object whose data is a chunk manifest, rather than the 
+     * data of the original file, and storing the key name prefix of the chunk objects.
+     */
+    public static final String METADATA_JETS3T_CHUNK_STORE = "jets3t-chunk-store";
+
     ///////////////////////////////////
     // Settings used by all S3 Services
     ///////////////////////////////////
@@ -131,6 +137,11 @@ public class Constants {
      * Default number of objects to include in each chunk of an object listing.
      */
     public static final long DEFAULT_OBJECT_LIST_CHUNK_SIZE = 1000;
+
+    /**
+     * Maximum number of objects that can be deleted by a single multiple object delete request.
+     */
+    public static final int MULTIPLE_DELETE_MAX_KEYS = 1000;
     
     ///////////////////////////////////
     // Headers used by REST S3 Services
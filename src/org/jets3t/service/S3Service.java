@@ -18,6 +18,7 @@
  */
 package org.jets3t.service;
 
+import java.io.File;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
@@ -36,11 +37,20 @@ import org.jets3t.service.acl.AccessControlList;
 import org.jets3t.service.acl.GrantAndPermission;
 import org.jets3t.service.acl.GroupGrantee;
 import org.jets3t.service.acl.Permission;
+import org.jets3t.service.model.MultipleDeleteResult;
+import org.jets3t.service.cache.AccessControlListCache;
+import org.jets3t.service.cache.BucketStatusCache;
+import org.jets3t.service.cache.FileBucketStatusCache;
+import org.jets3t.service.cache.ObjectMetadataCache;
 import org.jets3t.service.model.S3Bucket;
 import org.jets3t.service.model.S3BucketLoggingStatus;
 import org.jets3t.service.model.S3Object;
 import org.jets3t.service.model.S3Owner;
 import org.jets3t.service.mx.MxDelegate;
+import org.jets3t.service.retry.DefaultRetryPolicy;
+import org.jets3t.service.retry.RetryBudget;
+import org.jets3t.service.retry.RetryMetrics;
+import org.jets3t.service.retry.RetryPolicy;
 import org.jets3t.service.security.AWSCredentials;
 import org.jets3t.service.security.AWSDevPayCredentials;
 import org.jets3t.service.utils.RestUtils;
@@ -93,6 +103,13 @@ public abstract class S3Service implements Serializable {
     private boolean isHttpsOnly = true;
     private int internalErrorRetryMax = 5;
     
+    private RetryPolicy retryPolicy = null;
+    private RetryBudget retryBudget = null;
+    private RetryMetrics retryMetrics = new RetryMetrics();
+    private ObjectMetadataCache objectMetadataCache = null;
+    private BucketStatusCache bucketStatusCache = null;
+    private AccessControlListCache accessControlListCache = null;
+    
     /**
      * The approximate difference in the current time between your computer and
      * Amazon's S3 server, measured in milliseconds.
@@ -127,6 +144,17 @@ public abstract class S3Service implements Serializable {
         this.jets3tProperties = jets3tProperties;                
         this.isHttpsOnly = jets3tProperties.getBoolProperty("s3service.https-only", true);        
         this.internalErrorRetryMax = jets3tProperties.getIntProperty("s3service.internal-error-retry-max", 5);
+        this.retryPolicy = new DefaultRetryPolicy(jets3tProperties);
+        this.retryBudget = new RetryBudget(jets3tProperties);
+        this.objectMetadataCache = new ObjectMetadataCache(jets3tProperties);
+        this.accessControlListCache = new AccessControlListCache(jets3tProperties);
+        
+        String bucketCacheFile = jets3tProperties.getStringProperty("s3service.bucket-cache-file", null);
+        if (bucketCacheFile != null) {
+            this.bucketStatusCache = new FileBucketStatusCache(new File(bucketCacheFile), jets3tProperties);
+        } else {
+            this.bucketStatusCache = new BucketStatusCache(jets3tProperties);
+        }
         
         if (awsCredentials instanceof AWSDevPayCredentials) {
             AWSDevPayCredentials awsDevPayCredentials = (AWSDevPayCredentials) awsCredentials;
@@ -292,6 +320,121 @@ public abstract class S3Service implements Serializable {
         return internalErrorRetryMax;
     }
     
+    /**
+     * @return
+     * the policy that decides whether and when this service retries failed requests.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+    
+    /**
+     * Replaces the service's default retry policy, which is a {@link DefaultRetryPolicy}
+     * configured by the service's JetS3t properties.
+     * 
+     * @param retryPolicy
+     * the policy that will decide whether and when failed requests are retried.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+    
+    /**
+     * @return
+     * the budget that limits the number of retries performed by this service.
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+    
+    /**
+     * Replaces the service's retry budget, for example to share a single budget between
+     * several services that communicate with S3.
+     * 
+     * @param retryBudget
+     * the budget that will limit the number of retries performed by this service.
+     */
+    public void setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+    
+    /**
+     * @return
+     * counts of the retries performed and refused by this service.
+     */
+    public RetryMetrics getRetryMetrics() {
+        return retryMetrics;
+    }
+    
+    /**
+     * @return
+     * the cache of object details used by this service to avoid repeating HEAD requests, 
+     * which also counts the cache's hits, misses and evictions.
+     */
+    public ObjectMetadataCache getObjectMetadataCache() {
+        return objectMetadataCache;
+    }
+    
+    /**
+     * Replaces the service's object metadata cache, for example to enable caching with 
+     * settings other than those in the service's JetS3t properties.
+     * 
+     * @param objectMetadataCache
+     * the cache of object details that will be used by this service.
+     */
+    public void setObjectMetadataCache(ObjectMetadataCache objectMetadataCache) {
+        this.objectMetadataCache = objectMetadataCache;
+    }
+    
+    /**
+     * @return
+     * the cache of bucket information used by this service to avoid repeating requests 
+     * for the status, location and settings of buckets.
+     */
+    public BucketStatusCache getBucketStatusCache() {
+        return bucketStatusCache;
+    }
+    
+    /**
+     * Replaces the service's bucket status cache, for example to share a single cache 
+     * between several services.
+     * 
+     * @param bucketStatusCache
+     * the cache of bucket information that will be used by this service.
+     */
+    public void setBucketStatusCache(BucketStatusCache bucketStatusCache) {
+        this.bucketStatusCache = bucketStatusCache;
+    }
+
+    /**
+     * @return
+     * the AWS access key of the service user, or null if the service is not authenticated. 
+     * Bucket information is cached separately for each user, as users see different results.
+     */
+    private String getBucketCacheUser() {
+        return (isAuthenticatedConnection() ? awsCredentials.getAccessKey() : null);
+    }
+    
+    /**
+     * @return
+     * the cache of bucket and object ACLs used by this service to avoid repeating ACL requests,
+     * which also interns ACLs with identical content.
+     */
+    public AccessControlListCache getAccessControlListCache() {
+        return accessControlListCache;
+    }
+    
+    /**
+     * Replaces the service's ACL cache, for example to enable caching with settings other 
+     * than those in the service's JetS3t properties.
+     * 
+     * @param accessControlListCache
+     * the cache of ACLs that will be used by this service.
+     */
+    public void setAccessControlListCache(AccessControlListCache accessControlListCache) {
+        this.accessControlListCache = accessControlListCache;
+    }
+    
     /**
      * @return
      * the JetS3t properties that will be used by this service. 
@@ -363,46 +506,100 @@ public abstract class S3Service implements Serializable {
     
     /**
      * Sleeps for a period of time based on the number of S3 Internal Server errors a request has
-     * encountered, provided the number of errors does not exceed the value set with the
-     * property <code>s3service.internal-error-retry-max</code>. If the maximum error count is
-     * exceeded, this method will throw an S3ServiceException.
-     *  
-     * The millisecond delay grows rapidly according to the formula 
-     * <code>50 * (<i>internalErrorCount</i> ^ 2)</code>.
-     * 
-     * <table>
-     * <tr><th>Error count</th><th>Delay in milliseconds</th></tr>
-     * <tr><td>1</td><td>50</td></tr>
-     * <tr><td>2</td><td>200</td></tr>
-     * <tr><td>3</td><td>450</td></tr>
-     * <tr><td>4</td><td>800</td></tr>
-     * <tr><td>5</td><td>1250</td></tr>
-     * </table>
+     * encountered, provided the service's retry policy and retry budget allow the request to
+     * be retried. If the request may not be retried, this method will throw an S3ServiceException.
+     * New code should use {@link #sleepBeforeRetry(int, int, int, long)}, which spreads out 
+     * retries based on the delay before the previous retry.
      * 
      * @param internalErrorCount
      * the number of S3 Internal Server errors encountered by a request.
      * 
      * @throws S3ServiceException
-     * thrown if the number of internal errors exceeds the value of internalErrorCount.
+     * thrown if the request may not be retried.
      * @throws InterruptedException
      * thrown if the thread sleep is interrupted.
      */
     protected void sleepOnInternalError(int internalErrorCount) 
         throws S3ServiceException, InterruptedException 
     {
-        if (internalErrorCount <= internalErrorRetryMax) {
-            long delayMs = 50L * (int) Math.pow(internalErrorCount, 2);
-            if (log.isWarnEnabled()) {
-		        log.warn("Encountered " + internalErrorCount 
-		            + " S3 Internal Server error(s), will retry in " + delayMs + "ms");
-            }
-            Thread.sleep(delayMs);
-        } else {
+        if (sleepBeforeRetry(RetryPolicy.OPERATION_READ, RetryPolicy.ERROR_SERVER_UNAVAILABLE, 
+            internalErrorCount, 0) < 0) 
+        {
             throw new S3ServiceException("Encountered too many S3 Internal Server errors (" 
                 + internalErrorCount + "), aborting request.");
         }        
     }
 
+    /**
+     * Decides whether a request that failed with a recoverable error may be retried and,
+     * if so, sleeps for the delay chosen by the service's {@link RetryPolicy} before returning.
+     * A retry is refused if the policy does not allow any more retries for the kind of error,
+     * or if the service's {@link RetryBudget} is exhausted. Retries taken and refused are
+     * counted in the service's {@link RetryMetrics}.
+     * 
+     * @param operationType
+     * the kind of operation that failed, one of the <code>RetryPolicy.OPERATION_</code> constants.
+     * @param errorType
+     * the kind of error that occurred, one of the <code>RetryPolicy.ERROR_</code> constants.
+     * @param retryCount
+     * the number of the retry to perform, starting at 1 for the first retry of a request.
+     * @param previousDelayMs
+     * the value returned by this method before the previous retry of the same request,
+     * or 0 if this is the first retry.
+     * 
+     * @return
+     * the number of milliseconds slept before the retry, or -1 if the request may not be retried.
+     * 
+     * @throws InterruptedException
+     * thrown if the thread sleep is interrupted.
+     */
+    protected long sleepBeforeRetry(int operationType, int errorType, int retryCount, 
+        long previousDelayMs) throws InterruptedException 
+    {
+        if (retryCount > retryPolicy.getMaxRetries(operationType, errorType)) {
+            retryMetrics.recordRetryRefusedByPolicy(errorType);
+            return -1;
+        }
+        if (!retryBudget.tryAcquireRetry()) {
+            retryMetrics.recordRetryRefusedByBudget(errorType);
+            if (log.isWarnEnabled()) {
+                log.warn("Retry budget is exhausted, will not retry request after error " 
+                    + retryCount);
+            }
+            return -1;
+        }
+        
+        long delayMs = retryPolicy.getRetryDelayMs(retryCount, previousDelayMs);
+        retryMetrics.recordRetryTaken(errorType, delayMs);
+        if (log.isWarnEnabled()) {
+            log.warn("Encountered " + retryCount + " " + describeRetryErrorType(errorType)
+                + " error(s), will retry in " + delayMs + "ms");
+        }
+        Thread.sleep(delayMs);
+        return delayMs;
+    }
+    
+    private String describeRetryErrorType(int errorType) {
+        switch (errorType) {
+        case RetryPolicy.ERROR_SERVER_UNAVAILABLE:
+            return "S3 Internal Server";
+        case RetryPolicy.ERROR_REQUEST_TIMEOUT:
+            return "RequestTimeout";
+        case RetryPolicy.ERROR_IO:
+            return "IO";
+        default:
+            return "recoverable";
+        }
+    }
+    
+    /**
+     * Notifies the service that a request completed successfully, which gradually refills
+     * the service's retry budget.
+     */
+    protected void recordRequestSuccess() {
+        retryBudget.recordSuccess();
+    }
+
     /**
      * @return the AWS Credentials identifying the S3 user, may be null if the service is acting
      * anonymously.
@@ -1340,6 +1537,12 @@ public abstract class S3Service implements Serializable {
         assertAuthenticatedConnection("List all buckets");
         S3Bucket[] buckets = listAllBucketsImpl();
         MxDelegate.getInstance().registerS3BucketMBeans(buckets);
+        String[] bucketNames = new String[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            bucketNames[i] = buckets[i].getName();
+        }
+        bucketStatusCache.put(getBucketCacheUser(), bucketNames, BucketStatusCache.FIELD_STATUS, 
+            String.valueOf(BUCKET_STATUS__MY_BUCKET));
         return buckets;
     }
     
@@ -1523,7 +1726,13 @@ public abstract class S3Service implements Serializable {
     public S3Bucket createBucket(S3Bucket bucket) throws S3ServiceException {
         assertAuthenticatedConnection("Create Bucket");
         assertValidBucket(bucket, "Create Bucket");        
-        return createBucketImpl(bucket.getName(), bucket.getLocation(), bucket.getAcl());
+        S3Bucket createdBucket = createBucketImpl(bucket.getName(), bucket.getLocation(), bucket.getAcl());
+        bucketStatusCache.invalidate(getBucketCacheUser(), bucket.getName());
+        accessControlListCache.invalidate(bucket.getName(), null);
+        bucketStatusCache.put(getBucketCacheUser(), 
+            bucket.getName(), BucketStatusCache.FIELD_STATUS, 
+            String.valueOf(BUCKET_STATUS__MY_BUCKET));
+        return createdBucket;
     }
 
     /**
@@ -1555,6 +1764,9 @@ public abstract class S3Service implements Serializable {
     /**
      * Returns a bucket in your S3 account, and creates the bucket if it does 
      * not yet exist. 
+     * <p>
+     * If the service's {@link BucketStatusCache} records that the bucket already belongs 
+     * to you, no request is made and the bucket returned includes only its name.
      *  
      * @param bucketName
      * the name of the bucket to retrieve or create.
@@ -1566,6 +1778,13 @@ public abstract class S3Service implements Serializable {
     public S3Bucket getOrCreateBucket(String bucketName) throws S3ServiceException {
         assertAuthenticatedConnection("Get or Create Bucket");
         
+        if (String.valueOf(BUCKET_STATUS__MY_BUCKET).equals(
+            bucketStatusCache.get(getBucketCacheUser(), 
+                bucketName, BucketStatusCache.FIELD_STATUS))) 
+        {
+            return new S3Bucket(bucketName);
+        }
+        
         S3Bucket bucket = getBucket(bucketName);
         if (bucket == null) {
             // Bucket does not exist in this user's account, create it.
@@ -1586,7 +1805,7 @@ public abstract class S3Service implements Serializable {
      */
     public void deleteBucket(S3Bucket bucket) throws S3ServiceException {
         assertValidBucket(bucket, "Delete bucket");
-        deleteBucketImpl(bucket.getName());
+        deleteBucket(bucket.getName());
     }
 
     /**
@@ -1599,7 +1818,12 @@ public abstract class S3Service implements Serializable {
      * @throws S3ServiceException
      */
     public void deleteBucket(String bucketName) throws S3ServiceException {
-        deleteBucketImpl(bucketName);
+        try {
+            deleteBucketImpl(bucketName);
+        } finally {
+            bucketStatusCache.invalidate(getBucketCacheUser(), bucketName);
+            accessControlListCache.invalidate(bucketName, null);
+        }
     }
 
     /**
@@ -1626,7 +1850,12 @@ public abstract class S3Service implements Serializable {
     public S3Object putObject(String bucketName, S3Object object) throws S3ServiceException {
         assertValidObject(object, "Create Object in bucket " + bucketName);
         MxDelegate.getInstance().registerS3ObjectPutEvent(bucketName, object.getKey());
-        return putObjectImpl(bucketName, object);
+        try {
+            return putObjectImpl(bucketName, object);
+        } finally {
+            objectMetadataCache.invalidate(bucketName, object.getKey());
+            accessControlListCache.invalidate(bucketName, object.getKey());
+        }
     }
     
     /**
@@ -1685,10 +1914,15 @@ public abstract class S3Service implements Serializable {
             replaceMetadata ? destinationObject.getModifiableMetadata() : null;
         
         MxDelegate.getInstance().registerS3ObjectCopyEvent(sourceBucketName, sourceObjectKey);
-        return copyObjectImpl(sourceBucketName, sourceObjectKey, 
-            destinationBucketName, destinationObject.getKey(), 
-            destinationObject.getAcl(), destinationMetadata,
-            ifModifiedSince, ifUnmodifiedSince, ifMatchTags, ifNoneMatchTags);
+        try {
+            return copyObjectImpl(sourceBucketName, sourceObjectKey, 
+                destinationBucketName, destinationObject.getKey(), 
+                destinationObject.getAcl(), destinationMetadata,
+                ifModifiedSince, ifUnmodifiedSince, ifMatchTags, ifNoneMatchTags);
+        } finally {
+            objectMetadataCache.invalidate(destinationBucketName, destinationObject.getKey());
+            accessControlListCache.invalidate(destinationBucketName, destinationObject.getKey());
+        }
     }
 
     /**
@@ -1915,7 +2149,54 @@ public abstract class S3Service implements Serializable {
     public void deleteObject(String bucketName, String objectKey) throws S3ServiceException {
         assertValidObject(objectKey, "deleteObject");
         MxDelegate.getInstance().registerS3ObjectDeleteEvent(bucketName, objectKey);
-        deleteObjectImpl(bucketName, objectKey);
+        try {
+            deleteObjectImpl(bucketName, objectKey);
+        } finally {
+            objectMetadataCache.invalidate(bucketName, objectKey);
+            accessControlListCache.invalidate(bucketName, objectKey);
+        }
+    }
+
+    /**
+     * Deletes multiple objects from a bucket in S3 with a single multiple object delete request.
+     * <p>
+     * Each object is deleted independently, so some objects may be deleted while others fail.
+     * Failures are reported by the result rather than by throwing an exception, which is only 
+     * thrown if the request as a whole fails. 
+     * <p>
+     * This method can be performed by anonymous services. Anonymous services
+     * can delete objects from publicly-writable buckets.
+     * 
+     * @param bucketName
+     * the name of the bucket containing the objects to be deleted.
+     * @param objectKeys
+     * the keys representing the objects in S3, at most {@link Constants#MULTIPLE_DELETE_MAX_KEYS}.
+     * @param quiet
+     * if true, S3 responds only with the objects that could not be deleted, which keeps the 
+     * response small. The result lists the deleted objects in either case.
+     * @return
+     * the keys of the objects that were deleted, and the errors for those that were not.
+     * @throws S3ServiceException
+     */
+    public MultipleDeleteResult deleteMultipleObjects(String bucketName, String[] objectKeys, 
+        boolean quiet) throws S3ServiceException 
+    {
+        if (objectKeys.length == 0 || objectKeys.length > Constants.MULTIPLE_DELETE_MAX_KEYS) {
+            throw new S3ServiceException("A multiple object delete request must include between 1 and "
+                + Constants.MULTIPLE_DELETE_MAX_KEYS + " objects, not " + objectKeys.length);
+        }
+        for (int i = 0; i < objectKeys.length; i++) {
+            assertValidObject(objectKeys[i], "deleteMultipleObjects");
+            MxDelegate.getInstance().registerS3ObjectDeleteEvent(bucketName, objectKeys[i]);
+        }
+        try {
+            return deleteMultipleObjectsImpl(bucketName, objectKeys, quiet);
+        } finally {
+            for (int i = 0; i < objectKeys.length; i++) {
+                objectMetadataCache.invalidate(bucketName, objectKeys[i]);
+                accessControlListCache.invalidate(bucketName, objectKeys[i]);
+            }
+        }
     }
 
     /**
@@ -1951,8 +2232,7 @@ public abstract class S3Service implements Serializable {
         String[] ifNoneMatchTags) throws S3ServiceException
     {
         assertValidBucket(bucket, "Get Object Details");
-        MxDelegate.getInstance().registerS3ObjectHeadEvent(bucket.getName(), objectKey);
-        return getObjectDetailsImpl(bucket.getName(), objectKey, ifModifiedSince, ifUnmodifiedSince, 
+        return getObjectDetails(bucket.getName(), objectKey, ifModifiedSince, ifUnmodifiedSince, 
             ifMatchTags, ifNoneMatchTags);
     }
 
@@ -1963,6 +2243,9 @@ public abstract class S3Service implements Serializable {
      * An exception is thrown if any of the preconditions fail. 
      * Preconditions are only applied if they are non-null.
      * <p>
+     * If the service's {@link ObjectMetadataCache} is enabled, details requested without 
+     * preconditions may be returned from the cache instead of S3.
+     * <p>
      * This method can be performed by anonymous services. Anonymous services
      * can get details of publicly-readable objects.
      * 
@@ -1987,11 +2270,60 @@ public abstract class S3Service implements Serializable {
         Calendar ifModifiedSince, Calendar ifUnmodifiedSince, String[] ifMatchTags,
         String[] ifNoneMatchTags) throws S3ServiceException
     {
+        if (objectMetadataCache.isEnabled() && ifModifiedSince == null && ifUnmodifiedSince == null 
+            && ifMatchTags == null && ifNoneMatchTags == null)
+        {
+            return getObjectDetailsCached(bucketName, objectKey);
+        }
         MxDelegate.getInstance().registerS3ObjectHeadEvent(bucketName, objectKey);
         return getObjectDetailsImpl(bucketName, objectKey, ifModifiedSince, ifUnmodifiedSince, 
             ifMatchTags, ifNoneMatchTags);
     }
 
+    /**
+     * Returns the details of an object from the service's {@link ObjectMetadataCache} if they 
+     * are available, otherwise retrieves them from S3 and caches them. Expired details are 
+     * revalidated with a conditional request if the cache allows it, and objects that are not 
+     * found are cached so that repeated lookups also fail without a request. 
+     */
+    private S3Object getObjectDetailsCached(String bucketName, String objectKey) 
+        throws S3ServiceException
+    {
+        ObjectMetadataCache.Entry entry = objectMetadataCache.get(bucketName, objectKey);
+        if (entry != null && !entry.isExpired()) {
+            if (entry.isNotFound()) {
+                S3ServiceException exception = new S3ServiceException(
+                    "Object '" + objectKey + "' in bucket '" + bucketName 
+                    + "' was recently found not to exist");
+                exception.setResponseCode(404);
+                exception.setResponseStatus("Not Found");
+                throw exception;
+            }
+            return entry.getObject();
+        }
+
+        String[] revalidateETags = null;
+        if (entry != null) {
+            revalidateETags = new String[] {entry.getETag()};
+        }
+        MxDelegate.getInstance().registerS3ObjectHeadEvent(bucketName, objectKey);
+        try {
+            S3Object object = getObjectDetailsImpl(bucketName, objectKey, null, null, 
+                null, revalidateETags);
+            objectMetadataCache.put(bucketName, object);
+            return object;
+        } catch (S3ServiceException e) {
+            if (entry != null && e.getResponseCode() == 304) {
+                // The object has not changed since it was cached.
+                objectMetadataCache.renew(entry);
+                return entry.getObject();
+            } else if (e.getResponseCode() == 404) {
+                objectMetadataCache.putNotFound(bucketName, objectKey);
+            }
+            throw e;
+        }
+    }
+
     /**
      * Returns an object representing the details and data of an item in S3 that meets any given preconditions.
      * <p>
@@ -2135,7 +2467,13 @@ public abstract class S3Service implements Serializable {
             throw new S3ServiceException("The object '" + objectKey +
                 "' does not include ACL information");
         }
-        putObjectAclImpl(bucketName, objectKey, acl);
+        try {
+            putObjectAclImpl(bucketName, objectKey, acl);
+            accessControlListCache.put(bucketName, objectKey, acl);
+        } catch (S3ServiceException e) {
+            accessControlListCache.invalidate(bucketName, objectKey);
+            throw e;
+        }
     }
 
     /**
@@ -2178,7 +2516,13 @@ public abstract class S3Service implements Serializable {
             throw new S3ServiceException("The bucket '" + bucketName +
                 "' does not include ACL information");
         }
-        putBucketAclImpl(bucketName, acl);
+        try {
+            putBucketAclImpl(bucketName, acl);
+            accessControlListCache.put(bucketName, null, acl);
+        } catch (S3ServiceException e) {
+            accessControlListCache.invalidate(bucketName, null);
+            throw e;
+        }
     }
 
     /**
@@ -2202,7 +2546,7 @@ public abstract class S3Service implements Serializable {
      */
     public AccessControlList getObjectAcl(S3Bucket bucket, String objectKey) throws S3ServiceException {
         assertValidBucket(bucket, "Get Object Access Control List");
-        return getObjectAclImpl(bucket.getName(), objectKey);
+        return getObjectAcl(bucket.getName(), objectKey);
     }
 
     /**
@@ -2225,7 +2569,13 @@ public abstract class S3Service implements Serializable {
      * @throws S3ServiceException
      */
     public AccessControlList getObjectAcl(String bucketName, String objectKey) throws S3ServiceException {
-        return getObjectAclImpl(bucketName, objectKey);
+        AccessControlList cachedAcl = accessControlListCache.get(bucketName, objectKey);
+        if (cachedAcl != null) {
+            return AccessControlListCache.copyOf(cachedAcl);
+        }
+        AccessControlList acl = getObjectAclImpl(bucketName, objectKey);
+        accessControlListCache.put(bucketName, objectKey, acl);
+        return acl;
     }
 
     /**
@@ -2247,7 +2597,7 @@ public abstract class S3Service implements Serializable {
      */
     public AccessControlList getBucketAcl(S3Bucket bucket) throws S3ServiceException {
         assertValidBucket(bucket, "Get Bucket Access Control List");
-        return getBucketAclImpl(bucket.getName());
+        return getBucketAcl(bucket.getName());
     }
 
     /**
@@ -2267,7 +2617,13 @@ public abstract class S3Service implements Serializable {
      * @throws S3ServiceException
      */
     public AccessControlList getBucketAcl(String bucketName) throws S3ServiceException {
-        return getBucketAclImpl(bucketName);
+        AccessControlList cachedAcl = accessControlListCache.get(bucketName, null);
+        if (cachedAcl != null) {
+            return AccessControlListCache.copyOf(cachedAcl);
+        }
+        AccessControlList acl = getBucketAclImpl(bucketName);
+        accessControlListCache.put(bucketName, null, acl);
+        return acl;
     }
     
     /**
@@ -2281,7 +2637,15 @@ public abstract class S3Service implements Serializable {
      * @throws S3ServiceException
      */
     public String getBucketLocation(String bucketName) throws S3ServiceException {
-        return getBucketLocationImpl(bucketName);
+        String cachedLocation = bucketStatusCache.get(getBucketCacheUser(), 
+            bucketName, BucketStatusCache.FIELD_LOCATION);
+        if (cachedLocation != null) {
+            return (cachedLocation.length() > 0 ? cachedLocation : null);
+        }
+        String location = getBucketLocationImpl(bucketName);
+        bucketStatusCache.put(getBucketCacheUser(), bucketName, BucketStatusCache.FIELD_LOCATION, 
+            (location != null ? location : ""));
+        return location;
     }
 
     /**
@@ -2295,7 +2659,28 @@ public abstract class S3Service implements Serializable {
      * @throws S3ServiceException
      */
     public S3BucketLoggingStatus getBucketLoggingStatus(String bucketName) throws S3ServiceException {
-        return getBucketLoggingStatusImpl(bucketName);
+        String cachedLogging = bucketStatusCache.get(getBucketCacheUser(), 
+            bucketName, BucketStatusCache.FIELD_LOGGING);
+        if (cachedLogging != null) {
+            // The target bucket name cannot contain a slash, but the log file prefix can.
+            int slashIndex = cachedLogging.indexOf('/');
+            if (slashIndex < 0) {
+                return new S3BucketLoggingStatus();
+            }
+            return new S3BucketLoggingStatus(cachedLogging.substring(0, slashIndex), 
+                cachedLogging.substring(slashIndex + 1));
+        }
+        S3BucketLoggingStatus status = getBucketLoggingStatusImpl(bucketName);
+        if (status.isLoggingEnabled()) {
+            bucketStatusCache.put(getBucketCacheUser(), 
+                bucketName, BucketStatusCache.FIELD_LOGGING, 
+                status.getTargetBucketName() + "/" 
+                + (status.getLogfilePrefix() != null ? status.getLogfilePrefix() : ""));
+        } else {
+            bucketStatusCache.put(getBucketCacheUser(), 
+                bucketName, BucketStatusCache.FIELD_LOGGING, "");
+        }
+        return status;
     }
     
     /**
@@ -2374,7 +2759,12 @@ public abstract class S3Service implements Serializable {
             }
         }
 
-        setBucketLoggingStatusImpl(bucketName, status);        
+        try {
+            setBucketLoggingStatusImpl(bucketName, status);        
+        } finally {
+            bucketStatusCache.invalidate(getBucketCacheUser(), 
+                bucketName, BucketStatusCache.FIELD_LOGGING);
+        }
     }
 
     /**
@@ -2395,7 +2785,16 @@ public abstract class S3Service implements Serializable {
      */
     public boolean isRequesterPaysBucket(String bucketName) throws S3ServiceException
     {
-        return isRequesterPaysBucketImpl(bucketName);
+        String cachedRequesterPays = bucketStatusCache.get(getBucketCacheUser(), 
+            bucketName, BucketStatusCache.FIELD_REQUESTER_PAYS);
+        if (cachedRequesterPays != null) {
+            return "true".equals(cachedRequesterPays);
+        }
+        boolean requesterPays = isRequesterPaysBucketImpl(bucketName);
+        bucketStatusCache.put(getBucketCacheUser(), 
+            bucketName, BucketStatusCache.FIELD_REQUESTER_PAYS, 
+            String.valueOf(requesterPays));
+        return requesterPays;
     } 
 
     /**
@@ -2415,7 +2814,12 @@ public abstract class S3Service implements Serializable {
     public void setRequesterPaysBucket(String bucketName, boolean requesterPays) 
         throws S3ServiceException
     {
-        setRequesterPaysBucketImpl(bucketName, requesterPays);
+        try {
+            setRequesterPaysBucketImpl(bucketName, requesterPays);
+        } finally {
+            bucketStatusCache.invalidate(getBucketCacheUser(), 
+                bucketName, BucketStatusCache.FIELD_REQUESTER_PAYS);
+        }
     }
 
 
@@ -2432,10 +2836,6 @@ public abstract class S3Service implements Serializable {
         return new Date(System.currentTimeMillis() + timeOffset);
     }
 
-    // /////////////////////////////////////////////////////////////////////////////////
-    // Abstract methods that must be implemented by interface-specific S3Service classes
-    // /////////////////////////////////////////////////////////////////////////////////
-
     /**
      * Indicates whether a bucket exists and is accessible to a service user.
      * <b>Caution:</b> After changes to the way S3 operates, this check started to 
@@ -2445,15 +2845,23 @@ public abstract class S3Service implements Serializable {
      * <p>
      * This method can be performed by anonymous services.
      * <p>
-     * <b>Implementation notes</b><p>
-     * This method can be implemented by attempting to list the objects in a bucket. If the listing
-     * is successful return true, if the listing failed for any reason return false. 
+     * If the service's {@link BucketStatusCache} holds a recent result, no request is made.
      * 
      * @return
      * true if the bucket exists and is accessible to the service user, false otherwise.
      * @throws S3ServiceException
      */
-    public abstract boolean isBucketAccessible(String bucketName) throws S3ServiceException;
+    public boolean isBucketAccessible(String bucketName) throws S3ServiceException {
+        String cachedAccessible = bucketStatusCache.get(getBucketCacheUser(), 
+            bucketName, BucketStatusCache.FIELD_ACCESSIBLE);
+        if (cachedAccessible != null) {
+            return "true".equals(cachedAccessible);
+        }
+        boolean accessible = isBucketAccessibleImpl(bucketName);
+        bucketStatusCache.put(getBucketCacheUser(), bucketName, BucketStatusCache.FIELD_ACCESSIBLE, 
+            String.valueOf(accessible));
+        return accessible;
+    }
 
     /**
      * Find out the status of an S3 bucket with the given name. This method is only implemented
@@ -2467,6 +2875,8 @@ public abstract class S3Service implements Serializable {
      * This S3 quirk makes it a bad idea to use this method to check for a bucket's 
      * existence before creating that bucket. Use the {@link #getOrCreateBucket(String)} 
      * method for this purpose instead.  
+     * <p>
+     * If the service's {@link BucketStatusCache} holds a recent result, no request is made.
      * 
      * @param bucketName
      * @return
@@ -2477,7 +2887,61 @@ public abstract class S3Service implements Serializable {
      *  
      * @throws S3ServiceException
      */
-    public abstract int checkBucketStatus(String bucketName) throws S3ServiceException;
+    public int checkBucketStatus(String bucketName) throws S3ServiceException {
+        String cachedStatus = bucketStatusCache.get(getBucketCacheUser(), 
+            bucketName, BucketStatusCache.FIELD_STATUS);
+        if (cachedStatus != null) {
+            return Integer.parseInt(cachedStatus);
+        }
+        int status = checkBucketStatusImpl(bucketName);
+        bucketStatusCache.put(getBucketCacheUser(), 
+            bucketName, BucketStatusCache.FIELD_STATUS, String.valueOf(status));
+        if (status != BUCKET_STATUS__ALREADY_CLAIMED) {
+            bucketStatusCache.put(getBucketCacheUser(), 
+                bucketName, BucketStatusCache.FIELD_ACCESSIBLE, 
+                String.valueOf(status == BUCKET_STATUS__MY_BUCKET));
+        }
+        return status;
+    }
+
+    /**
+     * Indicates whether a bucket exists and is accessible to the service user. This default
+     * implementation relies on {@link #checkBucketStatusImpl(String)}, and interface-specific 
+     * services may override it with a simpler request.
+     */
+    protected boolean isBucketAccessibleImpl(String bucketName) throws S3ServiceException {
+        try {
+            return checkBucketStatusImpl(bucketName) == BUCKET_STATUS__MY_BUCKET;
+        } catch (S3ServiceException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Bucket does not exist: " + bucketName, e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Finds out the status of a bucket. This default implementation lists at most one object
+     * in the bucket, and interface-specific services may override it with a simpler request.
+     */
+    protected int checkBucketStatusImpl(String bucketName) throws S3ServiceException {
+        try {
+            listObjectsChunkedImpl(bucketName, null, null, 1, null, false);
+            return BUCKET_STATUS__MY_BUCKET;
+        } catch (S3ServiceException e) {
+            if (e.getResponseCode() == 403) {
+                return BUCKET_STATUS__ALREADY_CLAIMED;
+            } else if (e.getResponseCode() == 404) {
+                return BUCKET_STATUS__DOES_NOT_EXIST;
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    // /////////////////////////////////////////////////////////////////////////////////
+    // Abstract methods that must be implemented by interface-specific S3Service classes
+    // /////////////////////////////////////////////////////////////////////////////////
 
     protected abstract String getBucketLocationImpl(String bucketName) 
         throws S3ServiceException;
@@ -2618,6 +3082,27 @@ public abstract class S3Service implements Serializable {
         String[] ifMatchTags, String[] ifNoneMatchTags) throws S3ServiceException;     
 
     protected abstract void deleteObjectImpl(String bucketName, String objectKey) throws S3ServiceException;
+
+    /**
+     * Deletes several objects. This default implementation deletes the objects with one request
+     * each and reports any failures in the result; services whose interface supports multiple
+     * object deletes override it.
+     */
+    protected MultipleDeleteResult deleteMultipleObjectsImpl(String bucketName, 
+        String[] objectKeys, boolean quiet) throws S3ServiceException
+    {
+        MultipleDeleteResult result = new MultipleDeleteResult();
+        for (int i = 0; i < objectKeys.length; i++) {
+            try {
+                deleteObjectImpl(bucketName, objectKeys[i]);
+                result.addDeletedObjectKey(objectKeys[i]);
+            } catch (S3ServiceException e) {
+                result.addErrorResult(new MultipleDeleteResult.ErrorResult(
+                    objectKeys[i], e.getS3ErrorCode(), e.getMessage()));
+            }
+        }
+        return result;
+    }
     
     protected abstract S3Object getObjectDetailsImpl(String bucketName, String objectKey,
         Calendar ifModifiedSince, Calendar ifUnmodifiedSince, String[] ifMatchTags,
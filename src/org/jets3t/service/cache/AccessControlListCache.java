@@ -0,0 +1,411 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.acl.AccessControlList;
+import org.jets3t.service.acl.CanonicalGrantee;
+import org.jets3t.service.acl.EmailAddressGrantee;
+import org.jets3t.service.acl.GrantAndPermission;
+import org.jets3t.service.acl.GroupGrantee;
+import org.jets3t.service.acl.Permission;
+import org.jets3t.service.model.S3Owner;
+
+/**
+ * A size-bounded, least-recently-used cache of the Access Control Lists of buckets and objects,
+ * used by {@link org.jets3t.service.S3Service#getObjectAcl(String, String)} and 
+ * {@link org.jets3t.service.S3Service#getBucketAcl(String)} to avoid repeating requests for 
+ * the same ACLs.
+ * <p>
+ * Cached ACLs are also interned by their content: an ACL with the same owner and the same set
+ * of grants as an ACL already in the cache is replaced by that ACL, so that the thousands of 
+ * objects in a bucket that typically share a handful of distinct ACLs do not each hold their 
+ * own copy. Interned ACLs are shared, and must never be modified; the service returns copies 
+ * of cached ACLs to its callers.
+ * <p>
+ * Entries expire after a time-to-live period. A service updates its cache entries when it 
+ * applies ACLs, and invalidates them when it puts, copies or deletes objects or buckets, but the 
+ * cache cannot know about changes made by other services or applications.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>s3service.acl-cache-enabled</td><td>false</td></tr>
+ * <tr><td>s3service.acl-cache-max-entries</td><td>10000</td></tr>
+ * <tr><td>s3service.acl-cache-ttl-seconds</td><td>60</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class AccessControlListCache {
+    private final boolean isEnabled;
+    private final int maxEntries;
+    private final long ttlMS;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long internedCount = 0;
+
+    /**
+     * Cache entries keyed by bucket name and object key, in least-recently-used order.
+     */
+    private final Map entries;
+
+    /**
+     * Distinct ACLs keyed by their content, in least-recently-used order.
+     */
+    private final Map internedAcls;
+
+    private static class Entry {
+        private final AccessControlList acl;
+        private final long expiryMS;
+
+        private Entry(AccessControlList acl, long expiryMS) {
+            this.acl = acl;
+            this.expiryMS = expiryMS;
+        }
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the cache.
+     */
+    public AccessControlListCache(Jets3tProperties jets3tProperties) {
+        this(jets3tProperties.getBoolProperty("s3service.acl-cache-enabled", false),
+            jets3tProperties.getIntProperty("s3service.acl-cache-max-entries", 10000),
+            jets3tProperties.getLongProperty("s3service.acl-cache-ttl-seconds", 60) * 1000);
+    }
+
+    /**
+     * @param isEnabled
+     * if false, nothing is cached or interned.
+     * @param maxEntries
+     * the maximum number of entries kept, after which the least recently used entries are evicted.
+     * @param ttlMS
+     * the number of milliseconds for which cached ACLs are valid.
+     */
+    public AccessControlListCache(boolean isEnabled, int maxEntries, long ttlMS) {
+        this.isEnabled = isEnabled && maxEntries > 0 && ttlMS > 0;
+        this.maxEntries = maxEntries;
+        this.ttlMS = ttlMS;
+        this.entries = new LinkedHashMap(16, 0.75f, true) {
+            private static final long serialVersionUID = -3482196583519262145L;
+
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() > AccessControlListCache.this.maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.internedAcls = new LinkedHashMap(16, 0.75f, true) {
+            private static final long serialVersionUID = 2707519405386140517L;
+
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > AccessControlListCache.this.maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    private String buildCacheKey(String bucketName, String objectKey) {
+        // Bucket names cannot contain a slash, so the combined key is unambiguous.
+        return (objectKey == null ? bucketName : bucketName + "/" + objectKey);
+    }
+
+    /**
+     * Builds a key that identifies the content of an ACL: its owner, and its grants in a 
+     * canonical order. Grantees are identified as in {@link GrantAndPermission#equals(Object)},
+     * so display names are ignored.
+     * 
+     * @param acl
+     * an ACL, which must not be one of the REST canned ACLs.
+     * @return
+     * a key that is equal for ACLs with the same content.
+     */
+    public static String buildContentKey(AccessControlList acl) {
+        List grantKeys = new ArrayList();
+        Iterator grantIter = acl.getGrants().iterator();
+        while (grantIter.hasNext()) {
+            GrantAndPermission gap = (GrantAndPermission) grantIter.next();
+            grantKeys.add(gap.getGrantee().getIdentifier() + "=" + gap.getPermission());
+        }
+        Collections.sort(grantKeys);
+        
+        StringBuffer sb = new StringBuffer();
+        sb.append(acl.getOwner() == null ? "" : acl.getOwner().getId());
+        Iterator keyIter = grantKeys.iterator();
+        while (keyIter.hasNext()) {
+            sb.append('\n').append(keyIter.next());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds the full ACL that S3 applies for a REST canned ACL.
+     * 
+     * @param cannedAcl
+     * one of the REST canned ACLs defined in {@link AccessControlList}.
+     * @param owner
+     * the owner of the bucket or object the canned ACL is applied to.
+     * @return
+     * the equivalent full ACL.
+     */
+    public static AccessControlList expandCannedAcl(AccessControlList cannedAcl, S3Owner owner) {
+        AccessControlList acl = new AccessControlList();
+        acl.setOwner(owner);
+        acl.grantPermission(new CanonicalGrantee(owner.getId()), Permission.PERMISSION_FULL_CONTROL);
+        if (cannedAcl == AccessControlList.REST_CANNED_PUBLIC_READ) {
+            acl.grantPermission(GroupGrantee.ALL_USERS, Permission.PERMISSION_READ);
+        } else if (cannedAcl == AccessControlList.REST_CANNED_PUBLIC_READ_WRITE) {
+            acl.grantPermission(GroupGrantee.ALL_USERS, Permission.PERMISSION_READ);
+            acl.grantPermission(GroupGrantee.ALL_USERS, Permission.PERMISSION_WRITE);
+        } else if (cannedAcl == AccessControlList.REST_CANNED_AUTHENTICATED_READ) {
+            acl.grantPermission(GroupGrantee.AUTHENTICATED_USERS, Permission.PERMISSION_READ);
+        }
+        return acl;
+    }
+
+    /**
+     * Returns a copy of an ACL that can be modified without affecting the original.
+     * 
+     * @param acl
+     * @return
+     * a copy of the ACL, or the ACL itself if it is null or a REST canned ACL.
+     */
+    public static AccessControlList copyOf(AccessControlList acl) {
+        if (acl == null || acl.isCannedRestACL()) {
+            return acl;
+        }
+        AccessControlList copy = new AccessControlList();
+        if (acl.getOwner() != null) {
+            copy.setOwner(new S3Owner(acl.getOwner().getId(), acl.getOwner().getDisplayName()));
+        }
+        copy.grantAllPermissions(acl.getGrants());
+        return copy;
+    }
+
+    /**
+     * Determines whether applying an ACL to a bucket or object would leave its ACL unchanged.
+     * <p>
+     * ACLs that grant permissions to email address grantees are never considered equivalent,
+     * as S3 replaces these grantees with canonical user grantees. 
+     * 
+     * @param currentAcl
+     * the ACL currently applied to the bucket or object.
+     * @param targetAcl
+     * the ACL that would be applied, which may be a REST canned ACL.
+     * @return
+     * true if the ACLs have the same content.
+     */
+    public static boolean isEquivalent(AccessControlList currentAcl, AccessControlList targetAcl) {
+        if (currentAcl == null || targetAcl == null || currentAcl.getOwner() == null) {
+            return false;
+        }
+        if (targetAcl.isCannedRestACL()) {
+            targetAcl = expandCannedAcl(targetAcl, currentAcl.getOwner());
+        } else if (!isCacheable(targetAcl)) {
+            return false;
+        }
+        return currentAcl == targetAcl 
+            || buildContentKey(currentAcl).equals(buildContentKey(targetAcl));
+    }
+
+    /**
+     * @param acl
+     * @return
+     * true if the ACL is stored by S3 exactly as given, so that it can be cached once applied.
+     */
+    private static boolean isCacheable(AccessControlList acl) {
+        if (acl.isCannedRestACL() || acl.getOwner() == null) {
+            return false;
+        }
+        Iterator grantIter = acl.getGrants().iterator();
+        while (grantIter.hasNext()) {
+            GrantAndPermission gap = (GrantAndPermission) grantIter.next();
+            if (gap.getGrantee() instanceof EmailAddressGrantee) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the shared ACL with the same content as the given ACL, recording the given ACL as 
+     * the shared instance if there is none. The returned ACL must not be modified.
+     * 
+     * @param acl
+     * @return
+     * the shared ACL with the same content, or the given ACL if the cache is disabled or the
+     * ACL is a REST canned ACL.
+     */
+    public synchronized AccessControlList intern(AccessControlList acl) {
+        if (!isEnabled || acl == null || acl.isCannedRestACL()) {
+            return acl;
+        }
+        String contentKey = buildContentKey(acl);
+        AccessControlList internedAcl = (AccessControlList) internedAcls.get(contentKey);
+        if (internedAcl != null) {
+            internedCount++;
+            return internedAcl;
+        }
+        internedAcls.put(contentKey, acl);
+        return acl;
+    }
+
+    /**
+     * Looks up the cached ACL of a bucket or object, counting the lookup as a hit or a miss.
+     * 
+     * @param bucketName
+     * @param objectKey
+     * the key of the object, or null for the bucket's own ACL.
+     * @return
+     * the shared cached ACL, which must not be modified, or null if there is no unexpired entry.
+     */
+    public synchronized AccessControlList get(String bucketName, String objectKey) {
+        if (!isEnabled) {
+            return null;
+        }
+        String cacheKey = buildCacheKey(bucketName, objectKey);
+        Entry entry = (Entry) entries.get(cacheKey);
+        if (entry != null && System.currentTimeMillis() > entry.expiryMS) {
+            entries.remove(cacheKey);
+            entry = null;
+        }
+        if (entry != null) {
+            hitCount++;
+            return entry.acl;
+        } else {
+            missCount++;
+            return null;
+        }
+    }
+
+    /**
+     * Records the ACL of a bucket or object, as retrieved from or applied to S3. ACLs that
+     * S3 does not store exactly as given, such as REST canned ACLs, are not recorded and 
+     * instead invalidate any existing entry.
+     * 
+     * @param bucketName
+     * @param objectKey
+     * the key of the object, or null for the bucket's own ACL.
+     * @param acl
+     * the ACL, of which a copy is recorded.
+     */
+    public synchronized void put(String bucketName, String objectKey, AccessControlList acl) {
+        if (!isEnabled) {
+            return;
+        }
+        String cacheKey = buildCacheKey(bucketName, objectKey);
+        if (acl == null || !isCacheable(acl)) {
+            entries.remove(cacheKey);
+            return;
+        }
+        entries.put(cacheKey, new Entry(intern(copyOf(acl)), System.currentTimeMillis() + ttlMS));
+    }
+
+    /**
+     * Removes the entry for a bucket or object, if any.
+     * 
+     * @param bucketName
+     * @param objectKey
+     * the key of the object, or null for the bucket's own ACL.
+     */
+    public synchronized void invalidate(String bucketName, String objectKey) {
+        if (!isEnabled) {
+            return;
+        }
+        entries.remove(buildCacheKey(bucketName, objectKey));
+    }
+
+    /**
+     * Removes all entries and interned ACLs.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        internedAcls.clear();
+    }
+
+    /**
+     * @return
+     * the number of entries in the cache, including expired entries not yet removed.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return
+     * the number of distinct ACLs currently interned.
+     */
+    public synchronized int getInternedSize() {
+        return internedAcls.size();
+    }
+
+    /**
+     * @return
+     * the number of lookups that found a valid entry.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return
+     * the number of lookups that found no valid entry.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return
+     * the number of entries evicted to keep the cache within its maximum size.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return
+     * the number of ACLs replaced by a shared ACL with the same content.
+     */
+    public synchronized long getInternedCount() {
+        return internedCount;
+    }
+
+    public synchronized String toString() {
+        return "AccessControlListCache [enabled=" + isEnabled + ", size=" + entries.size()
+            + ", interned=" + internedAcls.size() + ", hits=" + hitCount + ", misses=" + missCount 
+            + ", evictions=" + evictionCount + ", internedReuses=" + internedCount + "]";
+    }
+
+}
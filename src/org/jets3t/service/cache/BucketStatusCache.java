@@ -0,0 +1,299 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.jets3t.service.Jets3tProperties;
+
+/**
+ * A cache of information about buckets, such as whether they exist and who owns them, their 
+ * location, and their Requester Pays and logging settings. An {@link org.jets3t.service.S3Service} 
+ * uses the cache to avoid repeating requests for information that rarely changes, such as the 
+ * checks an application performs on its buckets every time it starts.
+ * <p>
+ * Users with different credentials can see different results for the same bucket, so values
+ * are cached separately for each AWS access key, and for anonymous users.
+ * <p>
+ * Values are stored as strings, and expire after a time-to-live period. A service invalidates 
+ * the values affected by the bucket operations it performs itself, such as deleting a bucket
+ * or changing its Requester Pays setting. Invalidated values are recorded as removals with the 
+ * time they were removed, and when values from different sources are merged the most recent 
+ * change wins, which allows subclasses such as {@link FileBucketStatusCache} to share a cache 
+ * between processes by overriding {@link #refresh(Map)} and {@link #persist(Map)}.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>s3service.bucket-cache-enabled</td><td>false</td></tr>
+ * <tr><td>s3service.bucket-cache-ttl-seconds</td><td>300</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class BucketStatusCache {
+    /**
+     * The bucket's status, as returned by {@link org.jets3t.service.S3Service#checkBucketStatus(String)}.
+     */
+    public static final String FIELD_STATUS = "status";
+    /**
+     * Whether the bucket is accessible, "true" or "false".
+     */
+    public static final String FIELD_ACCESSIBLE = "accessible";
+    /**
+     * The bucket's location, an empty string for the default location.
+     */
+    public static final String FIELD_LOCATION = "location";
+    /**
+     * Whether the bucket is configured as Requester Pays, "true" or "false".
+     */
+    public static final String FIELD_REQUESTER_PAYS = "requester-pays";
+    /**
+     * The bucket's logging target bucket and log file prefix separated by a slash, 
+     * an empty string if logging is disabled.
+     */
+    public static final String FIELD_LOGGING = "logging";
+
+    private static final String[] ALL_FIELDS = new String[] {
+        FIELD_STATUS, FIELD_ACCESSIBLE, FIELD_LOCATION, FIELD_REQUESTER_PAYS, FIELD_LOGGING};
+
+    private static final String ANONYMOUS_USER = "anonymous";
+
+    private final boolean isEnabled;
+    private final long ttlMS;
+
+    /**
+     * Values keyed by access key, bucket name and field name.
+     */
+    private final Map values = new HashMap();
+
+    /**
+     * A cached value, or a record that a value was removed if the value is null.
+     */
+    protected static class CachedValue {
+        private final String value;
+        private final long updatedMS;
+
+        public CachedValue(String value, long updatedMS) {
+            this.value = value;
+            this.updatedMS = updatedMS;
+        }
+
+        /**
+         * @return
+         * the value, or null if this records the removal of a value.
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return
+         * the time at which the value was stored or removed.
+         */
+        public long getUpdatedMS() {
+            return updatedMS;
+        }
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the cache.
+     */
+    public BucketStatusCache(Jets3tProperties jets3tProperties) {
+        this(jets3tProperties.getBoolProperty("s3service.bucket-cache-enabled", false),
+            jets3tProperties.getLongProperty("s3service.bucket-cache-ttl-seconds", 300) * 1000);
+    }
+
+    /**
+     * @param isEnabled
+     * if false, nothing is cached.
+     * @param ttlMS
+     * the number of milliseconds for which values are valid.
+     */
+    public BucketStatusCache(boolean isEnabled, long ttlMS) {
+        this.isEnabled = isEnabled && ttlMS > 0;
+        this.ttlMS = ttlMS;
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public long getTtlMS() {
+        return ttlMS;
+    }
+
+    private String buildCacheKey(String accessKey, String bucketName, String field) {
+        // Access keys and bucket names cannot contain a slash, so the combined key is unambiguous.
+        return (accessKey != null ? accessKey : ANONYMOUS_USER) + "/" + bucketName + "/" + field;
+    }
+
+    /**
+     * @param accessKey
+     * the AWS access key of the user the value applies to, or null for anonymous users.
+     * @param bucketName
+     * @param field
+     * one of the <code>FIELD_</code> constants.
+     * @return
+     * the cached value, or null if there is no unexpired value.
+     */
+    public synchronized String get(String accessKey, String bucketName, String field) {
+        if (!isEnabled) {
+            return null;
+        }
+        refresh(values);
+        CachedValue cachedValue = (CachedValue) values.get(
+            buildCacheKey(accessKey, bucketName, field));
+        if (cachedValue == null || isExpired(cachedValue)) {
+            return null;
+        }
+        return cachedValue.getValue();
+    }
+
+    /**
+     * Stores a value.
+     * 
+     * @param accessKey
+     * the AWS access key of the user the value applies to, or null for anonymous users.
+     * @param bucketName
+     * @param field
+     * one of the <code>FIELD_</code> constants.
+     * @param value
+     */
+    public void put(String accessKey, String bucketName, String field, String value) {
+        update(accessKey, new String[] {bucketName}, new String[] {field}, value);
+    }
+
+    /**
+     * Stores the same value for several buckets, such as the buckets in a listing, with a 
+     * single update of the cache.
+     * 
+     * @param accessKey
+     * the AWS access key of the user the value applies to, or null for anonymous users.
+     * @param bucketNames
+     * @param field
+     * one of the <code>FIELD_</code> constants.
+     * @param value
+     */
+    public void put(String accessKey, String[] bucketNames, String field, String value) {
+        update(accessKey, bucketNames, new String[] {field}, value);
+    }
+
+    /**
+     * Removes a value.
+     * 
+     * @param accessKey
+     * the AWS access key of the user the value applies to, or null for anonymous users.
+     * @param bucketName
+     * @param field
+     * one of the <code>FIELD_</code> constants.
+     */
+    public void invalidate(String accessKey, String bucketName, String field) {
+        update(accessKey, new String[] {bucketName}, new String[] {field}, null);
+    }
+
+    /**
+     * Removes all the values stored for a bucket.
+     * 
+     * @param accessKey
+     * the AWS access key of the user the values apply to, or null for anonymous users.
+     * @param bucketName
+     */
+    public void invalidate(String accessKey, String bucketName) {
+        update(accessKey, new String[] {bucketName}, ALL_FIELDS, null);
+    }
+
+    private synchronized void update(String accessKey, String[] bucketNames, String[] fields, 
+        String value) 
+    {
+        if (!isEnabled || bucketNames.length == 0) {
+            return;
+        }
+        refresh(values);
+        long nowMS = System.currentTimeMillis();
+        for (int b = 0; b < bucketNames.length; b++) {
+            for (int i = 0; i < fields.length; i++) {
+                values.put(buildCacheKey(accessKey, bucketNames[b], fields[i]), 
+                    new CachedValue(value, nowMS));
+            }
+        }
+
+        // Discard values and removal records that have expired.
+        Iterator valueIter = values.values().iterator();
+        while (valueIter.hasNext()) {
+            if (isExpired((CachedValue) valueIter.next())) {
+                valueIter.remove();
+            }
+        }
+        persist(values);
+    }
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void clear() {
+        values.clear();
+        persist(values);
+    }
+
+    protected boolean isExpired(CachedValue cachedValue) {
+        return System.currentTimeMillis() > cachedValue.getUpdatedMS() + ttlMS;
+    }
+
+    /**
+     * Merges a value from another source into the cache, if it is more recent than the 
+     * cached value.
+     * 
+     * @param values
+     * the cache's values, keyed by access key, bucket name and field name separated by slashes.
+     * @param key
+     * @param cachedValue
+     */
+    protected static void merge(Map values, String key, CachedValue cachedValue) {
+        CachedValue existing = (CachedValue) values.get(key);
+        if (existing == null || existing.getUpdatedMS() < cachedValue.getUpdatedMS()) {
+            values.put(key, cachedValue);
+        }
+    }
+
+    /**
+     * Called before values are read or changed, to allow subclasses to merge values from 
+     * a shared store using {@link #merge(Map, String, CachedValue)}. This implementation
+     * does nothing.
+     * 
+     * @param values
+     * the cache's values, keyed by access key, bucket name and field name separated by slashes.
+     */
+    protected void refresh(Map values) {
+    }
+
+    /**
+     * Called after values are changed, to allow subclasses to write the values to a shared store.
+     * This implementation does nothing.
+     * 
+     * @param values
+     * the cache's values, keyed by access key, bucket name and field name separated by slashes.
+     */
+    protected void persist(Map values) {
+    }
+
+}
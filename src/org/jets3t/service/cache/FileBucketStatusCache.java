@@ -0,0 +1,189 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.Jets3tProperties;
+
+/**
+ * A bucket status cache that stores its values in a file, so that several processes, such as 
+ * the workers of a fleet running on one machine or sharing a file system, can share the 
+ * information retrieved by any one of them. 
+ * <p>
+ * The file is re-read whenever it has been changed by another process, and its values are 
+ * merged with those of this cache, with the most recent change winning. The file is rewritten
+ * whenever this cache changes, by writing a temporary file and renaming it over the original 
+ * so that readers never see a partially written file. Concurrent changes by different 
+ * processes may occasionally overwrite each other, which only costs extra requests to S3.
+ * <p>
+ * The cache file is set by the property <code>s3service.bucket-cache-file</code>, in addition 
+ * to the properties used by {@link BucketStatusCache}.
+ *
+ * @author James Murty
+ */
+public class FileBucketStatusCache extends BucketStatusCache {
+    private static final Log log = LogFactory.getLog(FileBucketStatusCache.class);
+
+    private final File cacheFile;
+    private long cacheFileLastModified = 0;
+
+    /**
+     * @param cacheFile
+     * the file in which values are stored.
+     * @param jets3tProperties
+     * the properties that configure the cache.
+     */
+    public FileBucketStatusCache(File cacheFile, Jets3tProperties jets3tProperties) {
+        super(jets3tProperties);
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @param cacheFile
+     * the file in which values are stored.
+     * @param isEnabled
+     * if false, nothing is cached.
+     * @param ttlMS
+     * the number of milliseconds for which values are valid.
+     */
+    public FileBucketStatusCache(File cacheFile, boolean isEnabled, long ttlMS) {
+        super(isEnabled, ttlMS);
+        this.cacheFile = cacheFile;
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    protected void refresh(Map values) {
+        long lastModified = cacheFile.lastModified();
+        if (lastModified == 0 || lastModified == cacheFileLastModified) {
+            return;
+        }
+        Properties fileValues = new Properties();
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(new FileInputStream(cacheFile));
+            fileValues.load(is);
+            cacheFileLastModified = lastModified;
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to read bucket status cache file " + cacheFile, e);
+            }
+            return;
+        } finally {
+            closeQuietly(is, null);
+        }
+
+        // Each value is stored as the time it was updated, followed by a colon and the value 
+        // itself unless the value was removed.
+        Iterator entryIter = fileValues.entrySet().iterator();
+        while (entryIter.hasNext()) {
+            Map.Entry entry = (Map.Entry) entryIter.next();
+            String fileValue = (String) entry.getValue();
+            int colonIndex = fileValue.indexOf(':');
+            try {
+                long updatedMS = Long.parseLong(
+                    colonIndex >= 0 ? fileValue.substring(0, colonIndex) : fileValue);
+                String value = (colonIndex >= 0 ? fileValue.substring(colonIndex + 1) : null);
+                CachedValue cachedValue = new CachedValue(value, updatedMS);
+                if (!isExpired(cachedValue)) {
+                    merge(values, (String) entry.getKey(), cachedValue);
+                }
+            } catch (NumberFormatException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Ignoring invalid entry in bucket status cache file " + cacheFile 
+                        + ": " + entry.getKey() + "=" + fileValue);
+                }
+            }
+        }
+    }
+
+    protected void persist(Map values) {
+        Properties fileValues = new Properties();
+        Iterator entryIter = values.entrySet().iterator();
+        while (entryIter.hasNext()) {
+            Map.Entry entry = (Map.Entry) entryIter.next();
+            CachedValue cachedValue = (CachedValue) entry.getValue();
+            fileValues.put(entry.getKey(), cachedValue.getUpdatedMS() 
+                + (cachedValue.getValue() != null ? ":" + cachedValue.getValue() : ""));
+        }
+
+        File tempFile = null;
+        OutputStream os = null;
+        try {
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory()) {
+                directory.mkdirs();
+            }
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+            os = new BufferedOutputStream(new FileOutputStream(tempFile));
+            fileValues.store(os, "JetS3t bucket status cache");
+            os.close();
+            os = null;
+
+            if (!tempFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!tempFile.renameTo(cacheFile)) {
+                    throw new IOException("Unable to rename " + tempFile + " to " + cacheFile);
+                }
+            }
+            tempFile = null;
+            cacheFileLastModified = cacheFile.lastModified();
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to write bucket status cache file " + cacheFile, e);
+            }
+        } finally {
+            closeQuietly(null, os);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private void closeQuietly(InputStream is, OutputStream os) {
+        try {
+            if (is != null) {
+                is.close();
+            }
+            if (os != null) {
+                os.close();
+            }
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to close bucket status cache file stream", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,741 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.Constants;
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.model.S3Object;
+import org.jets3t.service.utils.ServiceUtils;
+
+/**
+ * A size-bounded, least-recently-used cache of object data stored in files on the local disk,
+ * used by {@link org.jets3t.service.CachingS3Service} to avoid downloading the same objects 
+ * from S3 repeatedly.
+ * <p>
+ * Each cached object is stored in a file named for the object's bucket, key and ETag. Data is 
+ * written to a temporary file and verified against the object's ETag before it is installed
+ * under its final name, so a partially downloaded or corrupted object is never served from the 
+ * cache. Once the total size of the cached data exceeds the cache's maximum, the least recently
+ * used objects are deleted. 
+ * <p>
+ * Cached data is served without contacting S3 until an entry's time-to-live period expires. 
+ * After that the entry is stale, and must be revalidated with a conditional GET request that
+ * includes the ETag, which returns the object's data only if it has changed.
+ * <p>
+ * Each cache stores its data files in a directory of its own beneath the configured cache 
+ * directory, and locks the directory while the cache is in use. The details of each cached 
+ * object are stored in a file alongside its data, so the cached data outlives the cache and 
+ * the process that created it. A new cache takes over the directory most recently used by a 
+ * cache that is no longer running, in this process or any other, and deletes the directories 
+ * of any others. The entries it takes over are treated as stale, so their data is revalidated
+ * with S3 before it is served.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>s3service.data-cache-directory</td><td>jets3t-data-cache in the temp directory</td></tr>
+ * <tr><td>s3service.data-cache-max-bytes</td><td>1073741824</td></tr>
+ * <tr><td>s3service.data-cache-ttl-seconds</td><td>300</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class ObjectDataCache {
+    private static final Log log = LogFactory.getLog(ObjectDataCache.class);
+
+    private static final String DATA_FILE_SUFFIX = ".data";
+    private static final String DETAILS_FILE_SUFFIX = ".details";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String INSTANCE_DIRECTORY_PREFIX = "cache-";
+    private static final String LOCK_FILE_NAME = "lock";
+
+    /**
+     * How long a new instance directory without a lock file is left alone, so that directories
+     * are not mistaken for abandoned ones while they are being created.
+     */
+    private static final long LOCK_GRACE_PERIOD_MS = 60 * 1000;
+
+    private final File cacheDirectory;
+    /**
+     * The open lock file of the cache directory, which holds the directory's lock for as long as
+     * the cache is in use.
+     */
+    private final RandomAccessFile lockFile;
+    private boolean isClosed = false;
+    private final long maxBytes;
+    private final long ttlMS;
+
+    private long cachedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long revalidationCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Cache entries keyed by bucket name and object key, in least-recently-used order.
+     */
+    private final Map entries = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * The cached data of an object.
+     */
+    public static class Entry {
+        private final S3Object objectDetails;
+        private final File dataFile;
+        private final File detailsFile;
+        private final long dataLength;
+        private volatile long expiryMS;
+
+        private Entry(S3Object objectDetails, File dataFile, File detailsFile, long expiryMS) {
+            this.objectDetails = objectDetails;
+            this.dataFile = dataFile;
+            this.detailsFile = detailsFile;
+            this.dataLength = dataFile.length();
+            this.expiryMS = expiryMS;
+        }
+
+        /**
+         * @return
+         * true if the entry's time-to-live period has passed, so it must be revalidated.
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expiryMS;
+        }
+
+        /**
+         * @return
+         * the ETag of the cached object.
+         */
+        public String getETag() {
+            return objectDetails.getETag();
+        }
+
+        /**
+         * Opens the cached data. 
+         * 
+         * @return
+         * a copy of the cached object, with a data input stream that reads the cached data.
+         * @throws FileNotFoundException
+         * if the data file was removed from the cache directory.
+         */
+        public S3Object openObject() throws FileNotFoundException {
+            S3Object object = (S3Object) objectDetails.clone();
+            object.setDataInputStream(new FileInputStream(dataFile));
+            return object;
+        }
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the cache.
+     */
+    public ObjectDataCache(Jets3tProperties jets3tProperties) {
+        this(new File(jets3tProperties.getStringProperty("s3service.data-cache-directory",
+                new File(System.getProperty("java.io.tmpdir"), "jets3t-data-cache").getPath())),
+            jets3tProperties.getLongProperty("s3service.data-cache-max-bytes", 1024 * 1024 * 1024),
+            jets3tProperties.getLongProperty("s3service.data-cache-ttl-seconds", 300) * 1000);
+    }
+
+    /**
+     * @param baseDirectory
+     * the directory beneath which the cache keeps a directory of its own for its data files.
+     * The base directory is created if necessary, and may be shared by several caches.
+     * @param maxBytes
+     * the maximum total size of the cached data. Objects larger than this are not cached.
+     * @param ttlMS
+     * the number of milliseconds for which cached data is served without revalidation.
+     */
+    public ObjectDataCache(File baseDirectory, long maxBytes, long ttlMS) {
+        this.maxBytes = maxBytes;
+        this.ttlMS = ttlMS;
+
+        if (!baseDirectory.isDirectory() && !baseDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Unable to create cache directory " + baseDirectory);
+        }
+
+        // Take over the most recently used directory whose cache is no longer running, and 
+        // delete any other such directories.
+        File instanceDirectory = null;
+        RandomAccessFile instanceLockFile = null;
+        File[] directories = findInstanceDirectories(baseDirectory);
+        for (int i = 0; i < directories.length; i++) {
+            RandomAccessFile raf = null;
+            try {
+                raf = lockDirectory(directories[i]);
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to check lock of cache directory " + directories[i], e);
+                }
+            }
+            if (raf == null) {
+                continue;
+            }
+            if (instanceDirectory == null) {
+                instanceDirectory = directories[i];
+                instanceLockFile = raf;
+            } else {
+                deleteDirectory(directories[i], raf);
+            }
+        }
+
+        while (instanceDirectory == null) {
+            // Create and lock a directory that no other cache uses. If another cache takes 
+            // over or deletes the new directory before it is locked, create another.
+            File directory = null;
+            do {
+                directory = new File(baseDirectory, INSTANCE_DIRECTORY_PREFIX 
+                    + Long.toString(System.currentTimeMillis(), 36) + "-" 
+                    + Long.toString((long) (Math.random() * Integer.MAX_VALUE), 36));
+            } while (!directory.mkdir() && directory.exists());
+            if (!directory.isDirectory()) {
+                throw new IllegalArgumentException("Unable to create cache directory " + directory);
+            }
+            try {
+                instanceLockFile = lockDirectory(directory);
+            } catch (IOException e) {
+                if (directory.exists()) {
+                    throw new IllegalArgumentException("Unable to lock cache directory " 
+                        + directory + ": " + e.getMessage());
+                }
+            }
+            if (instanceLockFile != null && new File(directory, LOCK_FILE_NAME).exists()) {
+                instanceDirectory = directory;
+            } else if (instanceLockFile != null) {
+                try {
+                    instanceLockFile.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        this.lockFile = instanceLockFile;
+        this.cacheDirectory = instanceDirectory;
+        loadEntries();
+    }
+
+    /**
+     * @return
+     * the instance directories beneath the base directory, most recently modified first, 
+     * except new directories that may not have been locked by their caches yet.
+     */
+    private static File[] findInstanceDirectories(File baseDirectory) {
+        List instanceDirectories = new ArrayList();
+        File[] directories = baseDirectory.listFiles();
+        for (int i = 0; directories != null && i < directories.length; i++) {
+            if (!directories[i].isDirectory() 
+                || !directories[i].getName().startsWith(INSTANCE_DIRECTORY_PREFIX)) 
+            {
+                continue;
+            }
+            if (new File(directories[i], LOCK_FILE_NAME).exists() 
+                || System.currentTimeMillis() - directories[i].lastModified() 
+                    >= LOCK_GRACE_PERIOD_MS) 
+            {
+                instanceDirectories.add(directories[i]);
+            }
+        }
+        File[] result = (File[]) instanceDirectories.toArray(new File[instanceDirectories.size()]);
+        Arrays.sort(result, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long lastModified1 = ((File) o1).lastModified();
+                long lastModified2 = ((File) o2).lastModified();
+                return lastModified1 > lastModified2 ? -1 : (lastModified1 < lastModified2 ? 1 : 0);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Locks an instance directory that no running cache is using.
+     * 
+     * @return
+     * the open lock file, which holds the directory's lock, or null if the directory is
+     * locked by a running cache in this process or any other.
+     * @throws IOException
+     * if the directory cannot be locked.
+     */
+    private static RandomAccessFile lockDirectory(File directory) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        boolean isLocked = false;
+        try {
+            FileChannel channel = raf.getChannel();
+            FileLock lock = channel.tryLock();
+            isLocked = (lock != null);
+        } catch (OverlappingFileLockException e) {
+            // The directory belongs to a cache running in this process.
+        } finally {
+            if (!isLocked) {
+                raf.close();
+            }
+        }
+        return isLocked ? raf : null;
+    }
+
+    /**
+     * Deletes a locked instance directory and its files.
+     */
+    private static void deleteDirectory(File directory, RandomAccessFile raf) {
+        File[] files = directory.listFiles();
+        for (int f = 0; files != null && f < files.length; f++) {
+            if (!files[f].getName().equals(LOCK_FILE_NAME)) {
+                files[f].delete();
+            }
+        }
+        try {
+            raf.close();
+        } catch (IOException e) {
+        }
+        new File(directory, LOCK_FILE_NAME).delete();
+        directory.delete();
+    }
+
+    /**
+     * Loads the entries whose data and details files are in the cache directory, as stale 
+     * entries in least-recently-stored order, and deletes any other files.
+     */
+    private void loadEntries() {
+        File[] files = cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long lastModified1 = ((File) o1).lastModified();
+                long lastModified2 = ((File) o2).lastModified();
+                return lastModified1 < lastModified2 ? -1 : (lastModified1 > lastModified2 ? 1 : 0);
+            }
+        });
+        List filesToDelete = new ArrayList();
+        Set entryDataFiles = new HashSet();
+        for (int i = 0; i < files.length; i++) {
+            String fileName = files[i].getName();
+            if (fileName.equals(LOCK_FILE_NAME) || fileName.endsWith(DATA_FILE_SUFFIX)) {
+                continue;
+            }
+            if (!fileName.endsWith(DETAILS_FILE_SUFFIX)) {
+                filesToDelete.add(files[i]);
+                continue;
+            }
+            File dataFile = new File(cacheDirectory, fileName.substring(0, 
+                fileName.length() - DETAILS_FILE_SUFFIX.length()) + DATA_FILE_SUFFIX);
+            ObjectInputStream ois = null;
+            try {
+                ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(files[i])));
+                String cacheKey = (String) ois.readObject();
+                S3Object objectDetails = (S3Object) ois.readObject();
+                if (dataFile.isFile()) {
+                    Entry entry = new Entry(objectDetails, dataFile, files[i], 0);
+                    Entry replacedEntry = (Entry) entries.put(cacheKey, entry);
+                    if (replacedEntry != null) {
+                        cachedBytes -= replacedEntry.dataLength;
+                        filesToDelete.add(replacedEntry.detailsFile);
+                        filesToDelete.add(replacedEntry.dataFile);
+                    }
+                    cachedBytes += entry.dataLength;
+                    entryDataFiles.add(dataFile);
+                } else {
+                    filesToDelete.add(files[i]);
+                }
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to load cached object details from " + files[i], e);
+                }
+                filesToDelete.add(files[i]);
+                filesToDelete.add(dataFile);
+            } finally {
+                if (ois != null) {
+                    try {
+                        ois.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+
+        // Delete data files without details.
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().endsWith(DATA_FILE_SUFFIX) 
+                && !entryDataFiles.contains(files[i])) 
+            {
+                filesToDelete.add(files[i]);
+            }
+        }
+        evictEntries(null, filesToDelete);
+        deleteFiles(filesToDelete);
+        if (log.isDebugEnabled() && entries.size() > 0) {
+            log.debug("Reusing " + entries.size() + " cached objects in " + cacheDirectory);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its size limit.
+     * 
+     * @param entryToKeep
+     * an entry that must not be evicted, or null.
+     * @param filesToDelete
+     * the list to which the files of evicted entries are added.
+     */
+    private void evictEntries(Entry entryToKeep, List filesToDelete) {
+        Iterator entryIter = entries.values().iterator();
+        while (cachedBytes > maxBytes && entryIter.hasNext()) {
+            Entry eldestEntry = (Entry) entryIter.next();
+            if (eldestEntry == entryToKeep) {
+                continue;
+            }
+            entryIter.remove();
+            cachedBytes -= eldestEntry.dataLength;
+            filesToDelete.add(eldestEntry.detailsFile);
+            filesToDelete.add(eldestEntry.dataFile);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Writes the details of a cached object, so that a later cache can reuse its data. 
+     * The details are written to a temporary file that is renamed into place, so a partially
+     * written file is never loaded.
+     * 
+     * @return
+     * true if the details were written.
+     */
+    private boolean writeDetails(File detailsFile, String cacheKey, S3Object objectDetails) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(detailsFile.getName(), TEMP_FILE_SUFFIX, cacheDirectory);
+            ObjectOutputStream oos = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                oos.writeObject(cacheKey);
+                oos.writeObject(objectDetails);
+            } finally {
+                oos.close();
+            }
+            if (!tempFile.renameTo(detailsFile)) {
+                detailsFile.delete();
+                if (!tempFile.renameTo(detailsFile)) {
+                    throw new IOException("Unable to rename " + tempFile + " to " + detailsFile);
+                }
+            }
+            tempFile = null;
+            return true;
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to store details of cached object, its data will not be reused "
+                    + "by later caches: " + objectDetails.getKey(), e);
+            }
+            return false;
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return
+     * the directory, created for or taken over by this cache, in which its data files are stored.
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Releases the lock on the cache directory, so that a cache created later can take over
+     * the directory and reuse its data. The cache must not be used once it is closed.
+     */
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            lockFile.close();
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to release lock of cache directory " + cacheDirectory, e);
+            }
+        }
+    }
+
+    private String buildCacheKey(String bucketName, String objectKey) {
+        // Bucket names cannot contain a slash, so the combined key is unambiguous.
+        return bucketName + "/" + objectKey;
+    }
+
+    /**
+     * @return
+     * true if an object of the given size may be cached.
+     */
+    public boolean isCacheable(long contentLength) {
+        return contentLength >= 0 && contentLength <= maxBytes;
+    }
+
+    /**
+     * Looks up the cached data of an object, counting the lookup as a hit or a miss.
+     * 
+     * @param bucketName
+     * @param objectKey
+     * @return
+     * the entry for the object, or null if the object's data is not cached. The entry
+     * may be expired, in which case it must be revalidated before its data is used.
+     */
+    public synchronized Entry get(String bucketName, String objectKey) {
+        Entry entry = (Entry) entries.get(buildCacheKey(bucketName, objectKey));
+        if (entry != null && !entry.isExpired()) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Renews an entry that S3 has confirmed is still current.
+     * 
+     * @param entry
+     * an entry previously returned by {@link #get(String, String)}.
+     */
+    public synchronized void renew(Entry entry) {
+        entry.expiryMS = System.currentTimeMillis() + ttlMS;
+        revalidationCount++;
+    }
+
+    /**
+     * Stores the data of an object retrieved from S3, consuming and closing the object's data 
+     * input stream.
+     * 
+     * @param bucketName
+     * @param object
+     * an object retrieved with a GET request, including its data input stream.
+     * @return
+     * the new cache entry for the object.
+     * 
+     * @throws S3ServiceException
+     * if the data cannot be read or stored, or if it does not match the object's ETag.
+     */
+    public Entry put(String bucketName, S3Object object) throws S3ServiceException {
+        String cacheKey = buildCacheKey(bucketName, object.getKey());
+        String etag = object.getETag();
+        File dataFile = null;
+        File detailsFile = null;
+        File tempFile = null;
+        try {
+            String fileNamePrefix = ServiceUtils.toHex(
+                ServiceUtils.computeMD5Hash(cacheKey.getBytes(Constants.DEFAULT_ENCODING)))
+                + "-" + (etag != null ? etag.replaceAll("[^0-9A-Za-z]", "") : "none");
+            dataFile = new File(cacheDirectory, fileNamePrefix + DATA_FILE_SUFFIX);
+            detailsFile = new File(cacheDirectory, fileNamePrefix + DETAILS_FILE_SUFFIX);
+            tempFile = File.createTempFile(fileNamePrefix, TEMP_FILE_SUFFIX, cacheDirectory);
+
+            // Write the data to a temporary file, computing its hash as we go.
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            InputStream is = object.getDataInputStream();
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile));
+            try {
+                byte[] buffer = new byte[8192];
+                int byteCount = -1;
+                while ((byteCount = is.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, byteCount);
+                    os.write(buffer, 0, byteCount);
+                }
+            } finally {
+                os.close();
+                object.closeDataInputStream();
+            }
+
+            // Only ETags that are plain hex-encoded MD5 hashes can be verified.
+            String dataHash = ServiceUtils.toHex(messageDigest.digest());
+            if (etag != null && etag.length() == 32 && !etag.equalsIgnoreCase(dataHash)) {
+                throw new S3ServiceException("Mismatch between MD5 hash of downloaded data ("
+                    + dataHash + ") and ETag returned by S3 (" + etag + ") for object " 
+                    + object.getKey());
+            }
+
+            // Install the verified data under its final name.
+            if (!tempFile.renameTo(dataFile)) {
+                dataFile.delete();
+                if (!tempFile.renameTo(dataFile)) {
+                    throw new S3ServiceException("Unable to install cached data file " + dataFile);
+                }
+            }
+            tempFile = null;
+        } catch (IOException e) {
+            throw new S3ServiceException("Unable to cache data of object " + object.getKey(), e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new S3ServiceException("Unable to cache data of object " + object.getKey(), e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+
+        S3Object objectDetails = (S3Object) object.clone();
+        objectDetails.setDataInputStream(null);
+        if (!writeDetails(detailsFile, cacheKey, objectDetails)) {
+            detailsFile.delete();
+        }
+        Entry entry = new Entry(objectDetails, dataFile, detailsFile, 
+            System.currentTimeMillis() + ttlMS);
+        List filesToDelete = new ArrayList();
+        synchronized (this) {
+            Entry replacedEntry = (Entry) entries.put(cacheKey, entry);
+            if (replacedEntry != null) {
+                cachedBytes -= replacedEntry.dataLength;
+                if (!replacedEntry.dataFile.equals(dataFile)) {
+                    filesToDelete.add(replacedEntry.detailsFile);
+                    filesToDelete.add(replacedEntry.dataFile);
+                }
+            }
+            cachedBytes += entry.dataLength;
+            evictEntries(entry, filesToDelete);
+        }
+        deleteFiles(filesToDelete);
+        return entry;
+    }
+
+    /**
+     * Removes the cached data of an object, if any.
+     * 
+     * @param bucketName
+     * @param objectKey
+     */
+    public void invalidate(String bucketName, String objectKey) {
+        Entry entry = null;
+        synchronized (this) {
+            entry = (Entry) entries.remove(buildCacheKey(bucketName, objectKey));
+            if (entry != null) {
+                cachedBytes -= entry.dataLength;
+            }
+        }
+        if (entry != null) {
+            List filesToDelete = new ArrayList();
+            filesToDelete.add(entry.detailsFile);
+            filesToDelete.add(entry.dataFile);
+            deleteFiles(filesToDelete);
+        }
+    }
+
+    /**
+     * Removes all cached data.
+     */
+    public void clear() {
+        List filesToDelete = new ArrayList();
+        synchronized (this) {
+            Iterator entryIter = entries.values().iterator();
+            while (entryIter.hasNext()) {
+                Entry entry = (Entry) entryIter.next();
+                filesToDelete.add(entry.detailsFile);
+                filesToDelete.add(entry.dataFile);
+            }
+            entries.clear();
+            cachedBytes = 0;
+        }
+        deleteFiles(filesToDelete);
+    }
+
+    private void deleteFiles(List files) {
+        Iterator fileIter = files.iterator();
+        while (fileIter.hasNext()) {
+            File file = (File) fileIter.next();
+            if (!file.delete() && file.exists()) {
+                // The file may be open for reading, so try again later.
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to delete cached data file, will retry on exit: " + file);
+                }
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * @return
+     * the total size in bytes of the cached data.
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * @return
+     * the number of lookups that found data that could be served without revalidation.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return
+     * the number of lookups that found no data, or data that needed revalidation.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return
+     * the number of stale entries that S3 confirmed were still current.
+     */
+    public synchronized long getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    /**
+     * @return
+     * the number of entries evicted to keep the cache within its maximum size.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized String toString() {
+        return "ObjectDataCache [directory=" + cacheDirectory + ", entries=" + entries.size() 
+            + ", bytes=" + cachedBytes + ", hits=" + hitCount + ", misses=" + missCount 
+            + ", revalidations=" + revalidationCount + ", evictions=" + evictionCount + "]";
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.model.S3Object;
+
+/**
+ * A size-bounded, least-recently-used cache of object details retrieved by HEAD requests,
+ * used by {@link org.jets3t.service.S3Service#getObjectDetails(String, String, java.util.Calendar, 
+ * java.util.Calendar, String[], String[])} to avoid repeating requests for the same objects.
+ * <p>
+ * Entries expire after a time-to-live period. The cache also remembers objects that were not
+ * found, for a separate (usually shorter) period, so that repeated checks for missing objects
+ * need not reach S3. A service invalidates its cache entry for an object whenever it puts, copies
+ * or deletes the object, but the cache cannot know about changes made by other services or
+ * applications, so applications should choose a time-to-live period that suits how often
+ * their objects are changed elsewhere.
+ * <p>
+ * If revalidation is enabled, the details of an expired object are not discarded but revalidated
+ * with a conditional HEAD request that includes the object's ETag. If the object has not changed 
+ * S3 responds with a 304 Not Modified response, and the cached details are renewed.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>s3service.metadata-cache-enabled</td><td>false</td></tr>
+ * <tr><td>s3service.metadata-cache-max-entries</td><td>1000</td></tr>
+ * <tr><td>s3service.metadata-cache-ttl-seconds</td><td>60</td></tr>
+ * <tr><td>s3service.metadata-cache-not-found-ttl-seconds</td><td>10</td></tr>
+ * <tr><td>s3service.metadata-cache-revalidate</td><td>false</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class ObjectMetadataCache {
+    private final boolean isEnabled;
+    private final int maxEntries;
+    private final long ttlMS;
+    private final long notFoundTtlMS;
+    private final boolean isRevalidationEnabled;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long revalidationCount = 0;
+
+    /**
+     * Cache entries keyed by bucket name and object key, in least-recently-used order.
+     */
+    private final Map entries;
+
+    /**
+     * The cached details of an object, or a record that the object was not found.
+     */
+    public static class Entry {
+        private final S3Object object;
+        private volatile long expiryMS;
+
+        private Entry(S3Object object, long expiryMS) {
+            this.object = object;
+            this.expiryMS = expiryMS;
+        }
+
+        /**
+         * @return
+         * true if the object was not found when its details were last requested.
+         */
+        public boolean isNotFound() {
+            return object == null;
+        }
+
+        /**
+         * @return
+         * true if the entry's time-to-live period has passed.
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expiryMS;
+        }
+
+        /**
+         * @return
+         * a copy of the cached object details, or null if the object was not found.
+         */
+        public S3Object getObject() {
+            return (object == null ? null : (S3Object) object.clone());
+        }
+
+        /**
+         * @return
+         * the ETag of the cached object, or null if the object was not found.
+         */
+        public String getETag() {
+            return (object == null ? null : object.getETag());
+        }
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the cache.
+     */
+    public ObjectMetadataCache(Jets3tProperties jets3tProperties) {
+        this(jets3tProperties.getBoolProperty("s3service.metadata-cache-enabled", false),
+            jets3tProperties.getIntProperty("s3service.metadata-cache-max-entries", 1000),
+            jets3tProperties.getLongProperty("s3service.metadata-cache-ttl-seconds", 60) * 1000,
+            jets3tProperties.getLongProperty("s3service.metadata-cache-not-found-ttl-seconds", 10) * 1000,
+            jets3tProperties.getBoolProperty("s3service.metadata-cache-revalidate", false));
+    }
+
+    /**
+     * @param isEnabled
+     * if false, nothing is cached.
+     * @param maxEntries
+     * the maximum number of entries kept, after which the least recently used entries are evicted.
+     * @param ttlMS
+     * the number of milliseconds for which the details of objects are valid.
+     * @param notFoundTtlMS
+     * the number of milliseconds for which records of objects that were not found are valid,
+     * or 0 or less to not record missing objects.
+     * @param isRevalidationEnabled
+     * if true, expired object details are kept for revalidation with conditional requests.
+     */
+    public ObjectMetadataCache(boolean isEnabled, int maxEntries, long ttlMS, long notFoundTtlMS,
+        boolean isRevalidationEnabled)
+    {
+        this.isEnabled = isEnabled && maxEntries > 0 && ttlMS > 0;
+        this.maxEntries = maxEntries;
+        this.ttlMS = ttlMS;
+        this.notFoundTtlMS = notFoundTtlMS;
+        this.isRevalidationEnabled = isRevalidationEnabled;
+        this.entries = new LinkedHashMap(16, 0.75f, true) {
+            private static final long serialVersionUID = 6054711367307357347L;
+
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                if (size() > ObjectMetadataCache.this.maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public boolean isRevalidationEnabled() {
+        return isRevalidationEnabled;
+    }
+
+    private String buildCacheKey(String bucketName, String objectKey) {
+        // Bucket names cannot contain a slash, so the combined key is unambiguous.
+        return bucketName + "/" + objectKey;
+    }
+
+    /**
+     * Looks up the cached details of an object, counting the lookup as a hit or a miss.
+     * 
+     * @param bucketName
+     * @param objectKey
+     * @return
+     * the entry for the object, or null if there is no entry. An expired entry is only returned
+     * if revalidation is enabled and the entry has an ETag to revalidate, in which case the 
+     * caller should revalidate it rather than use it.
+     */
+    public synchronized Entry get(String bucketName, String objectKey) {
+        if (!isEnabled) {
+            return null;
+        }
+        String cacheKey = buildCacheKey(bucketName, objectKey);
+        Entry entry = (Entry) entries.get(cacheKey);
+        if (entry != null && entry.isExpired()) {
+            if (!isRevalidationEnabled || entry.getETag() == null) {
+                entries.remove(cacheKey);
+                entry = null;
+            }
+        }
+        if (entry != null && !entry.isExpired()) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Records the details of an object, as returned by a HEAD request.
+     * 
+     * @param bucketName
+     * @param object
+     */
+    public synchronized void put(String bucketName, S3Object object) {
+        if (!isEnabled) {
+            return;
+        }
+        entries.put(buildCacheKey(bucketName, object.getKey()), 
+            new Entry((S3Object) object.clone(), System.currentTimeMillis() + ttlMS));
+    }
+
+    /**
+     * Records that an object was not found.
+     * 
+     * @param bucketName
+     * @param objectKey
+     */
+    public synchronized void putNotFound(String bucketName, String objectKey) {
+        if (!isEnabled || notFoundTtlMS <= 0) {
+            return;
+        }
+        entries.put(buildCacheKey(bucketName, objectKey), 
+            new Entry(null, System.currentTimeMillis() + notFoundTtlMS));
+    }
+
+    /**
+     * Renews an entry that S3 has confirmed is still current.
+     * 
+     * @param entry
+     * an entry previously returned by {@link #get(String, String)}.
+     */
+    public synchronized void renew(Entry entry) {
+        entry.expiryMS = System.currentTimeMillis() + ttlMS;
+        revalidationCount++;
+    }
+
+    /**
+     * Removes the entry for an object, if any.
+     * 
+     * @param bucketName
+     * @param objectKey
+     */
+    public synchronized void invalidate(String bucketName, String objectKey) {
+        if (!isEnabled) {
+            return;
+        }
+        entries.remove(buildCacheKey(bucketName, objectKey));
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return
+     * the number of entries in the cache, including expired entries not yet removed.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return
+     * the number of lookups that found a valid entry.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return
+     * the number of lookups that found no entry, or an entry that needed revalidation.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return
+     * the number of entries evicted to keep the cache within its maximum size.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return
+     * the number of expired entries that S3 confirmed were still current.
+     */
+    public synchronized long getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    public synchronized String toString() {
+        return "ObjectMetadataCache [enabled=" + isEnabled + ", size=" + entries.size()
+            + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+            + ", revalidations=" + revalidationCount + "]";
+    }
+
+}
@@ -40,6 +40,7 @@ import org.jets3t.service.acl.EmailAddressGrantee;
 import org.jets3t.service.acl.GranteeInterface;
 import org.jets3t.service.acl.GroupGrantee;
 import org.jets3t.service.acl.Permission;
+import org.jets3t.service.model.MultipleDeleteResult;
 import org.jets3t.service.model.S3Bucket;
 import org.jets3t.service.model.S3BucketLoggingStatus;
 import org.jets3t.service.model.S3Object;
@@ -284,6 +285,14 @@ public class XmlResponsesSaxParser {
         return handler.isRequesterPays();
     }
 
+    public MultipleDeleteResult parseMultipleDeleteResponse(InputStream inputStream)
+        throws S3ServiceException
+    {
+        MultipleDeleteResultHandler handler = new MultipleDeleteResultHandler();
+        parseXmlInputStream(handler, inputStream);
+        return handler.getMultipleDeleteResult();
+    }
+
     // ////////////
     // Handlers //
     // ////////////
@@ -897,4 +906,63 @@ public class XmlResponsesSaxParser {
         }
     }
 
+    /**
+     * Handler for DeleteResult response XML documents, returned by multiple object delete 
+     * requests. The document is parsed into a {@link MultipleDeleteResult} available via the
+     * {@link #getMultipleDeleteResult()} method.
+     */
+    public class MultipleDeleteResultHandler extends DefaultHandler {
+        private MultipleDeleteResult result = new MultipleDeleteResult();
+        
+        private String currentKey = null;
+        private String currentErrorCode = null;
+        private String currentErrorMessage = null;
+        
+        private StringBuffer currText = null;
+
+        public MultipleDeleteResultHandler() {
+            super();
+            this.currText = new StringBuffer();
+        }
+
+        public MultipleDeleteResult getMultipleDeleteResult() {
+            return result;
+        }
+
+        public void startDocument() {
+        }
+
+        public void endDocument() {
+        }
+
+        public void startElement(String uri, String name, String qName, Attributes attrs) {
+            if (name.equals("Deleted") || name.equals("Error")) {
+                currentKey = null;
+                currentErrorCode = null;
+                currentErrorMessage = null;
+            }
+        }
+
+        public void endElement(String uri, String name, String qName) {
+            String elementText = this.currText.toString();
+            if (name.equals("Key")) {
+                currentKey = elementText;
+            } else if (name.equals("Code")) {
+                currentErrorCode = elementText;
+            } else if (name.equals("Message")) {
+                currentErrorMessage = elementText;
+            } else if (name.equals("Deleted")) {
+                result.addDeletedObjectKey(currentKey);
+            } else if (name.equals("Error")) {
+                result.addErrorResult(new MultipleDeleteResult.ErrorResult(
+                    currentKey, currentErrorCode, currentErrorMessage));
+            }
+            this.currText = new StringBuffer();
+        }
+
+        public void characters(char ch[], int start, int length) {
+            this.currText.append(ch, start, length);
+        }
+    }
+
 }
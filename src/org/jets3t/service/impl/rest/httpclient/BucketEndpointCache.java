@@ -0,0 +1,134 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jets3t.service.Jets3tProperties;
+
+/**
+ * Remembers, for each bucket, the endpoint host that S3 most recently redirected requests to
+ * with a 307 Temporary Redirect.
+ * <p>
+ * S3 redirects requests for a newly created bucket, or a bucket outside the US, until the
+ * DNS entry for the bucket's sub-domain has settled. By sending later requests straight to
+ * the redirected host, {@link RestS3Service} avoids paying for the redirect on every request.
+ * Entries expire after a period set by the property
+ * <code>s3service.endpoint-cache-ttl-seconds</code> (default 600), and are removed when
+ * a request to the bucket fails in a way that suggests the entry is wrong. A period of
+ * 0 or less disables the cache.
+ * <p>
+ * Bucket locations are cached along with other bucket information by the service's
+ * {@link org.jets3t.service.cache.BucketStatusCache}.
+ *
+ * @author James Murty
+ */
+public class BucketEndpointCache {
+    private final long ttlMS;
+
+    /**
+     * Cache entries keyed by bucket name.
+     */
+    private final Map entries = new HashMap();
+
+    private static class Entry {
+        private String redirectHost = null;
+        private long redirectHostExpiryMS = 0;
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the cache.
+     */
+    public BucketEndpointCache(Jets3tProperties jets3tProperties) {
+        this(jets3tProperties.getLongProperty("s3service.endpoint-cache-ttl-seconds", 600) * 1000);
+    }
+
+    /**
+     * @param ttlMS
+     * the number of milliseconds for which entries are valid, or 0 or less to disable the cache.
+     */
+    public BucketEndpointCache(long ttlMS) {
+        this.ttlMS = ttlMS;
+    }
+
+    public boolean isEnabled() {
+        return ttlMS > 0;
+    }
+
+    private Entry getOrCreateEntry(String bucketName) {
+        Entry entry = (Entry) entries.get(bucketName);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(bucketName, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Records the host that requests for a bucket were redirected to.
+     *
+     * @param bucketName
+     * @param redirectHost
+     */
+    public synchronized void putRedirectHost(String bucketName, String redirectHost) {
+        if (!isEnabled()) {
+            return;
+        }
+        Entry entry = getOrCreateEntry(bucketName);
+        entry.redirectHost = redirectHost;
+        entry.redirectHostExpiryMS = System.currentTimeMillis() + ttlMS;
+    }
+
+    /**
+     * @param bucketName
+     * @return
+     * the host that requests for the bucket were recently redirected to, or null if there
+     * is no unexpired entry for the bucket.
+     */
+    public synchronized String getRedirectHost(String bucketName) {
+        Entry entry = (Entry) entries.get(bucketName);
+        if (entry == null || entry.redirectHost == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() > entry.redirectHostExpiryMS) {
+            entry.redirectHost = null;
+            return null;
+        }
+        return entry.redirectHost;
+    }
+
+    /**
+     * Removes all the information recorded for a bucket.
+     *
+     * @param bucketName
+     */
+    public synchronized void invalidate(String bucketName) {
+        entries.remove(bucketName);
+    }
+
+    /**
+     * Removes all the information recorded for all buckets.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+}
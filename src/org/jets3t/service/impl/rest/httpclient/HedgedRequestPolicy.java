@@ -0,0 +1,246 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.jets3t.service.Jets3tProperties;
+
+/**
+ * Decides when {@link RestS3Service} should hedge an object GET or HEAD request, by sending a
+ * second identical request if the first has not received a response after a delay. Whichever
+ * request responds first is used and the other is aborted, so an occasional slow request
+ * does not hold up the caller for much longer than a typical request takes.
+ * <p>
+ * The hedge delay is a percentile of the time recent requests took to receive their response
+ * headers, so only the slowest requests are hedged. The extra load is capped by allowing only
+ * a fixed percentage of requests to be hedged: each request earns a fraction of a hedge, and
+ * each hedge spends a whole one.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th><th>Description</th></tr>
+ * <tr><td>httpclient.hedged-reads-enabled</td><td>false</td>
+ * <td>Whether object GET and HEAD requests are hedged</td></tr>
+ * <tr><td>httpclient.hedged-reads-percentile</td><td>95</td>
+ * <td>The percentile of recent response times used as the hedge delay</td></tr>
+ * <tr><td>httpclient.hedged-reads-min-delay-ms</td><td>20</td>
+ * <td>The minimum hedge delay</td></tr>
+ * <tr><td>httpclient.hedged-reads-initial-delay-ms</td><td>200</td>
+ * <td>The hedge delay used until enough response times have been recorded</td></tr>
+ * <tr><td>httpclient.hedged-reads-max-extra-percent</td><td>5</td>
+ * <td>The maximum number of hedged requests, as a percentage of all requests</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class HedgedRequestPolicy {
+    /**
+     * The number of recent response times used to calculate the hedge delay.
+     */
+    private static final int LATENCY_SAMPLE_COUNT = 256;
+
+    /**
+     * The number of response times that must be recorded before the hedge delay is
+     * calculated from them, rather than using the initial delay.
+     */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /**
+     * The number of response times recorded between recalculations of the hedge delay.
+     */
+    private static final int RECALCULATE_INTERVAL = 16;
+
+    /**
+     * The maximum number of hedges that can be saved up while requests are fast.
+     */
+    private static final int MAX_SAVED_HEDGES = 10;
+
+    private final boolean isEnabled;
+    private final int percentile;
+    private final long minDelayMs;
+    private final int requestsPerHedge;
+
+    private final long[] latencySamples = new long[LATENCY_SAMPLE_COUNT];
+    private int latencySampleCount = 0;
+    private int nextLatencySample = 0;
+    private long hedgeDelayMs;
+
+    /**
+     * The hedges available, counted in fractions of a hedge such that each request earns one
+     * unit and each hedge costs {@link #requestsPerHedge} units.
+     */
+    private long availableHedgeUnits;
+
+    private long requestCount = 0;
+    private long hedgesIssued = 0;
+    private long hedgesWon = 0;
+
+    private Timer timer = null;
+    private boolean isShutdown = false;
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the policy.
+     */
+    public HedgedRequestPolicy(Jets3tProperties jets3tProperties) {
+        this.isEnabled = jets3tProperties.getBoolProperty("httpclient.hedged-reads-enabled", false);
+        this.percentile = Math.min(100, Math.max(1,
+            jets3tProperties.getIntProperty("httpclient.hedged-reads-percentile", 95)));
+        this.minDelayMs = Math.max(1,
+            jets3tProperties.getLongProperty("httpclient.hedged-reads-min-delay-ms", 20));
+        this.hedgeDelayMs = Math.max(minDelayMs,
+            jets3tProperties.getLongProperty("httpclient.hedged-reads-initial-delay-ms", 200));
+        int maxExtraPercent = Math.min(100, Math.max(1,
+            jets3tProperties.getIntProperty("httpclient.hedged-reads-max-extra-percent", 5)));
+        this.requestsPerHedge = Math.max(1, 100 / maxExtraPercent);
+        this.availableHedgeUnits = requestsPerHedge;
+    }
+
+    /**
+     * @return
+     * true if requests should be hedged.
+     */
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * @return
+     * the number of milliseconds to wait for a response before hedging a request.
+     */
+    public synchronized long getHedgeDelayMs() {
+        return hedgeDelayMs;
+    }
+
+    /**
+     * Notifies the policy that a hedgeable request is starting, which earns a fraction of a hedge.
+     */
+    public synchronized void recordRequest() {
+        requestCount++;
+        if (availableHedgeUnits < (long) MAX_SAVED_HEDGES * requestsPerHedge) {
+            availableHedgeUnits++;
+        }
+    }
+
+    /**
+     * Records the time a request took to receive its response headers.
+     *
+     * @param latencyMs
+     * the response time, in milliseconds.
+     */
+    public synchronized void recordLatency(long latencyMs) {
+        latencySamples[nextLatencySample] = latencyMs;
+        nextLatencySample = (nextLatencySample + 1) % LATENCY_SAMPLE_COUNT;
+        if (latencySampleCount < LATENCY_SAMPLE_COUNT) {
+            latencySampleCount++;
+        }
+        if (latencySampleCount >= MIN_LATENCY_SAMPLES
+            && (latencySampleCount == MIN_LATENCY_SAMPLES
+                || nextLatencySample % RECALCULATE_INTERVAL == 0))
+        {
+            long[] sortedSamples = new long[latencySampleCount];
+            System.arraycopy(latencySamples, 0, sortedSamples, 0, latencySampleCount);
+            Arrays.sort(sortedSamples);
+            int index = (int) Math.ceil(percentile / 100.0 * latencySampleCount) - 1;
+            hedgeDelayMs = Math.max(minDelayMs, sortedSamples[Math.max(0, index)]);
+        }
+    }
+
+    /**
+     * Spends a hedge, if one is available.
+     *
+     * @return
+     * true if a hedged request may be sent, false if too many requests have been hedged recently.
+     */
+    public synchronized boolean tryAcquireHedge() {
+        if (availableHedgeUnits < requestsPerHedge) {
+            return false;
+        }
+        availableHedgeUnits -= requestsPerHedge;
+        hedgesIssued++;
+        return true;
+    }
+
+    /**
+     * Records that a hedged request responded before the request it was hedging.
+     */
+    public synchronized void recordHedgeWon() {
+        hedgesWon++;
+    }
+
+    /**
+     * Schedules a task to send a hedged request. The timer thread that runs these tasks is
+     * started the first time a task is scheduled. After {@link #shutdown()} tasks are no 
+     * longer run, so requests are not hedged.
+     *
+     * @param task
+     * the task to run.
+     * @param delayMs
+     * the delay before the task is run.
+     */
+    public synchronized void schedule(TimerTask task, long delayMs) {
+        if (isShutdown) {
+            return;
+        }
+        if (timer == null) {
+            timer = new Timer(true);
+        }
+        timer.schedule(task, delayMs);
+    }
+
+    /**
+     * Stops the timer thread that sends hedged requests. Hedges that have already been 
+     * sent are not affected.
+     */
+    public synchronized void shutdown() {
+        isShutdown = true;
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * @return
+     * the number of hedgeable requests performed.
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return
+     * the number of hedged requests sent.
+     */
+    public synchronized long getHedgesIssued() {
+        return hedgesIssued;
+    }
+
+    /**
+     * @return
+     * the number of hedged requests that responded before the request they were hedging.
+     */
+    public synchronized long getHedgesWon() {
+        return hedgesWon;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.io.IOException;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+
+/**
+ * The default {@link HttpTransport}, which performs requests with an HttpClient and its
+ * connection manager. Each request in progress occupies a connection, and the thread that
+ * performs it, until its response has been read.
+ * <p>
+ * The HttpClient, including its connection manager and proxy settings, remains owned by the
+ * service that created it, so {@link #shutdown()} does not close its connections.
+ *
+ * @author James Murty
+ */
+public class HttpClientTransport implements HttpTransport {
+    private final HttpClient httpClient;
+
+    /**
+     * @param httpClient
+     * the client that will perform requests.
+     */
+    public HttpClientTransport(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * @return
+     * the client that performs requests.
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public HttpMethodBase createHttpMethod(String methodName, String url) {
+        if ("PUT".equals(methodName)) {
+            return new PutMethod(url);
+        } else if ("HEAD".equals(methodName)) {
+            return new HeadMethod(url);
+        } else if ("GET".equals(methodName)) {
+            return new GetMethod(url);
+        } else if ("DELETE".equals(methodName)) {
+            return new DeleteMethod(url);
+        } else if ("POST".equals(methodName)) {
+            return new PostMethod(url);
+        } else {
+            throw new IllegalArgumentException("Unrecognised HTTP method name: " + methodName);
+        }
+    }
+
+    public int executeMethod(HttpMethodBase httpMethod) throws IOException {
+        return httpClient.executeMethod(httpMethod);
+    }
+
+    public void releaseConnection(HttpMethodBase httpMethod) {
+        httpMethod.releaseConnection();
+    }
+
+    public void shutdown() {
+        // The HttpClient and its connections belong to the service.
+    }
+
+}
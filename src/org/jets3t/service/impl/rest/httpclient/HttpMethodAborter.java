@@ -0,0 +1,125 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.httpclient.HttpMethodBase;
+
+/**
+ * Allows the HTTP requests performed by a {@link RestS3Service} in one thread to be aborted
+ * from another thread.
+ * <p>
+ * An aborter is associated with a thread by
+ * {@link RestS3Service#setThreadHttpMethodAborter(HttpMethodAborter)}, after which the service
+ * registers each request it performs in that thread with the aborter. Calling {@link #abort()}
+ * aborts the request currently in progress, and any later requests as soon as they start,
+ * so a service operation that makes several requests or retries cannot continue.
+ * <p>
+ * Requests that a service performs in other threads on behalf of the registered thread, 
+ * such as hedged requests, are registered with {@link #addHttpMethod(HttpMethodBase)} 
+ * so they are aborted as well.
+ *
+ * @author James Murty
+ */
+public class HttpMethodAborter {
+    private HttpMethodBase httpMethod = null;
+    private Set additionalHttpMethods = new HashSet();
+    private boolean isAborted = false;
+
+    /**
+     * Registers the request that is about to be performed, aborting it immediately if
+     * this aborter has already been triggered.
+     *
+     * @param httpMethod
+     * the request object.
+     */
+    public void setHttpMethod(HttpMethodBase httpMethod) {
+        synchronized (this) {
+            this.httpMethod = httpMethod;
+            if (!isAborted) {
+                return;
+            }
+        }
+        // Requests are aborted outside the lock, as aborting closes the request's socket.
+        httpMethod.abort();
+    }
+
+    /**
+     * Registers a request that is about to be performed in another thread on behalf of
+     * the thread this aborter belongs to, aborting it immediately if this aborter has 
+     * already been triggered. 
+     *
+     * @param httpMethod
+     * the request object.
+     */
+    public void addHttpMethod(HttpMethodBase httpMethod) {
+        synchronized (this) {
+            if (!isAborted) {
+                additionalHttpMethods.add(httpMethod);
+                return;
+            }
+        }
+        httpMethod.abort();
+    }
+
+    /**
+     * Forgets a request registered with {@link #addHttpMethod(HttpMethodBase)} once it 
+     * has finished.
+     *
+     * @param httpMethod
+     * the request object.
+     */
+    public synchronized void removeHttpMethod(HttpMethodBase httpMethod) {
+        additionalHttpMethods.remove(httpMethod);
+    }
+
+    /**
+     * Aborts the current request, any requests performed on its behalf in other threads, 
+     * and any later requests registered with this aborter.
+     */
+    public void abort() {
+        List methodsToAbort = new ArrayList();
+        synchronized (this) {
+            isAborted = true;
+            if (httpMethod != null) {
+                methodsToAbort.add(httpMethod);
+            }
+            methodsToAbort.addAll(additionalHttpMethods);
+            additionalHttpMethods.clear();
+        }
+        Iterator methodIter = methodsToAbort.iterator();
+        while (methodIter.hasNext()) {
+            ((HttpMethodBase) methodIter.next()).abort();
+        }
+    }
+
+    /**
+     * @return
+     * true if {@link #abort()} has been called.
+     */
+    public synchronized boolean isAborted() {
+        return isAborted;
+    }
+
+}
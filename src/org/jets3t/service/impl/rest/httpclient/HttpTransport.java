@@ -0,0 +1,90 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.io.IOException;
+
+import org.apache.commons.httpclient.HttpMethodBase;
+
+/**
+ * The HTTP transport beneath {@link RestS3Service}, responsible for building the request
+ * objects for S3 operations, performing them, and releasing their connections.
+ * <p>
+ * Requests and responses are represented by HttpClient {@link HttpMethodBase} objects whatever
+ * the transport, so the service signs requests, reads response headers and streams response
+ * bodies the same way regardless of how the bytes travel over the network. A response body
+ * is read from {@link HttpMethodBase#getResponseBodyAsStream()}, and the connection must be
+ * given back with {@link #releaseConnection(HttpMethodBase)} once the body has been read or
+ * is no longer needed.
+ * <p>
+ * The transport used by a service is chosen with the property <code>httpclient.transport</code>:
+ * <code>httpclient</code> (the default) for {@link HttpClientTransport}, or <code>nio</code>
+ * for {@link NioHttpTransport}.
+ *
+ * @author James Murty
+ */
+public interface HttpTransport {
+
+    /**
+     * Builds a request object for an HTTP method.
+     *
+     * @param methodName
+     * the HTTP method name: PUT, POST, HEAD, GET or DELETE.
+     * @param url
+     * the complete, escaped URL of the request.
+     * @return
+     * the request object, which must be a {@link org.apache.commons.httpclient.methods.PutMethod}
+     * for PUT requests and a {@link org.apache.commons.httpclient.methods.PostMethod} for POST
+     * requests, so a request entity can be attached.
+     *
+     * @throws IllegalArgumentException
+     * if the method name is not recognised.
+     */
+    public HttpMethodBase createHttpMethod(String methodName, String url);
+
+    /**
+     * Performs a request and reads the response status and headers. The response body, if
+     * any, is left unread so it can be streamed to the caller.
+     *
+     * @param httpMethod
+     * a request object built by {@link #createHttpMethod(String, String)}.
+     * @return
+     * the HTTP response status code.
+     *
+     * @throws IOException
+     * if the request could not be sent or the response could not be read.
+     */
+    public int executeMethod(HttpMethodBase httpMethod) throws IOException;
+
+    /**
+     * Releases the connection used by a request, making it available for later requests
+     * if it can be reused.
+     *
+     * @param httpMethod
+     * a request object that has been performed by this transport.
+     */
+    public void releaseConnection(HttpMethodBase httpMethod);
+
+    /**
+     * Releases any resources held by the transport, such as threads and idle connections.
+     * The transport must not be used after it has been shut down.
+     */
+    public void shutdown();
+
+}
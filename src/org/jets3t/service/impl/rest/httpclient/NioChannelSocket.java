@@ -0,0 +1,305 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A socket backed by a non-blocking {@link SocketChannel}, for use by HttpClient's
+ * {@link org.apache.commons.httpclient.HttpConnection}.
+ * <p>
+ * Reads and writes go straight to the channel. When the channel is not ready, the calling
+ * thread waits to be signalled by a shared {@link NioSelectorLoop} rather than blocking in
+ * the operating system, so the only thread that watches the network is the selector thread.
+ * Socket timeouts are honoured by throwing {@link SocketTimeoutException}, as a blocking
+ * socket would.
+ *
+ * @author James Murty
+ */
+class NioChannelSocket extends Socket {
+    private final SocketChannel channel;
+    private final NioSelectorLoop selectorLoop;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    private volatile int soTimeoutMS = 0;
+    private volatile boolean isClosed = false;
+    private volatile NioSelectorLoop.Waiter currentWaiter = null;
+
+    /**
+     * @param channel
+     * an unconnected channel, which will be put into non-blocking mode.
+     * @param selectorLoop
+     * the loop that signals when the channel is ready.
+     * @throws IOException
+     */
+    public NioChannelSocket(SocketChannel channel, NioSelectorLoop selectorLoop) throws IOException {
+        this.channel = channel;
+        this.selectorLoop = selectorLoop;
+        channel.configureBlocking(false);
+
+        this.inputStream = new InputStream() {
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int count = read(b, 0, 1);
+                return (count <= 0 ? -1 : b[0] & 0xff);
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (true) {
+                    checkOpen();
+                    int count = NioChannelSocket.this.channel.read(buffer);
+                    if (count != 0) {
+                        return count;
+                    }
+                    awaitReady(SelectionKey.OP_READ, soTimeoutMS, "Read timed out");
+                }
+            }
+
+            public void close() throws IOException {
+                NioChannelSocket.this.close();
+            }
+        };
+
+        this.outputStream = new OutputStream() {
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    checkOpen();
+                    if (NioChannelSocket.this.channel.write(buffer) == 0) {
+                        awaitReady(SelectionKey.OP_WRITE, soTimeoutMS, "Write timed out");
+                    }
+                }
+            }
+
+            public void close() throws IOException {
+                NioChannelSocket.this.close();
+            }
+        };
+    }
+
+    private void checkOpen() throws SocketException {
+        if (isClosed) {
+            throw new SocketException("Socket is closed");
+        }
+    }
+
+    /**
+     * Waits until the selector loop reports the channel is ready for an operation.
+     *
+     * @throws SocketTimeoutException
+     * if the channel is not ready within the timeout.
+     */
+    private void awaitReady(int ops, int timeoutMS, String timeoutMessage) throws IOException {
+        NioSelectorLoop.Waiter waiter = new NioSelectorLoop.Waiter();
+        currentWaiter = waiter;
+        try {
+            checkOpen();
+            selectorLoop.register(channel, ops, waiter);
+            if (!waiter.await(timeoutMS)) {
+                throw new SocketTimeoutException(timeoutMessage);
+            }
+        } finally {
+            currentWaiter = null;
+        }
+        checkOpen();
+    }
+
+    public void connect(SocketAddress endpoint) throws IOException {
+        connect(endpoint, 0);
+    }
+
+    public void connect(SocketAddress endpoint, int timeoutMS) throws IOException {
+        try {
+            if (!channel.connect(endpoint)) {
+                long endTimeMS = System.currentTimeMillis() + timeoutMS;
+                while (!channel.finishConnect()) {
+                    int remainingMS = 0;
+                    if (timeoutMS > 0) {
+                        remainingMS = (int) (endTimeMS - System.currentTimeMillis());
+                        if (remainingMS <= 0) {
+                            throw new SocketTimeoutException("Connect timed out");
+                        }
+                    }
+                    awaitReady(SelectionKey.OP_CONNECT, remainingMS, "Connect timed out");
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public InputStream getInputStream() throws IOException {
+        checkOpen();
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        checkOpen();
+        return outputStream;
+    }
+
+    /**
+     * Closes the channel, and wakes any thread waiting for it to become ready.
+     */
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            channel.close();
+        } finally {
+            NioSelectorLoop.Waiter waiter = currentWaiter;
+            if (waiter != null) {
+                waiter.signal();
+            }
+            // The channel's key is only deregistered, and its socket released, by a select.
+            selectorLoop.wakeup();
+        }
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    public boolean isConnected() {
+        return channel.isConnected();
+    }
+
+    public boolean isBound() {
+        return channel.socket().isBound();
+    }
+
+    public void shutdownInput() throws IOException {
+        channel.socket().shutdownInput();
+    }
+
+    public void shutdownOutput() throws IOException {
+        channel.socket().shutdownOutput();
+    }
+
+    public boolean isInputShutdown() {
+        return channel.socket().isInputShutdown();
+    }
+
+    public boolean isOutputShutdown() {
+        return channel.socket().isOutputShutdown();
+    }
+
+    public void setSoTimeout(int timeout) throws SocketException {
+        this.soTimeoutMS = timeout;
+    }
+
+    public int getSoTimeout() throws SocketException {
+        return soTimeoutMS;
+    }
+
+    public void setTcpNoDelay(boolean on) throws SocketException {
+        channel.socket().setTcpNoDelay(on);
+    }
+
+    public boolean getTcpNoDelay() throws SocketException {
+        return channel.socket().getTcpNoDelay();
+    }
+
+    public void setSoLinger(boolean on, int linger) throws SocketException {
+        channel.socket().setSoLinger(on, linger);
+    }
+
+    public int getSoLinger() throws SocketException {
+        return channel.socket().getSoLinger();
+    }
+
+    public void setSendBufferSize(int size) throws SocketException {
+        channel.socket().setSendBufferSize(size);
+    }
+
+    public int getSendBufferSize() throws SocketException {
+        return channel.socket().getSendBufferSize();
+    }
+
+    public void setReceiveBufferSize(int size) throws SocketException {
+        channel.socket().setReceiveBufferSize(size);
+    }
+
+    public int getReceiveBufferSize() throws SocketException {
+        return channel.socket().getReceiveBufferSize();
+    }
+
+    public void setKeepAlive(boolean on) throws SocketException {
+        channel.socket().setKeepAlive(on);
+    }
+
+    public boolean getKeepAlive() throws SocketException {
+        return channel.socket().getKeepAlive();
+    }
+
+    public InetAddress getInetAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    public int getPort() {
+        return channel.socket().getPort();
+    }
+
+    public InetAddress getLocalAddress() {
+        return channel.socket().getLocalAddress();
+    }
+
+    public int getLocalPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    public SocketAddress getRemoteSocketAddress() {
+        return channel.socket().getRemoteSocketAddress();
+    }
+
+    public SocketAddress getLocalSocketAddress() {
+        return channel.socket().getLocalSocketAddress();
+    }
+
+    public void bind(SocketAddress bindpoint) throws IOException {
+        channel.socket().bind(bindpoint);
+    }
+
+    public String toString() {
+        return "NioChannelSocket[" + channel.socket() + "]";
+    }
+
+}
@@ -0,0 +1,317 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A pool of persistent HTTP connections whose sockets are serviced by a {@link NioSelectorLoop}.
+ * <p>
+ * Connections are limited per host and in total by the maximum connection settings of the
+ * pool's {@link HttpConnectionManagerParams}, as they are for HttpClient's
+ * <code>MultiThreadedHttpConnectionManager</code>. A connection is returned to the pool
+ * when its request releases it, which normally happens when the response body has been read
+ * or its stream closed.
+ *
+ * @author James Murty
+ */
+class NioConnectionPool implements HttpConnectionManager {
+    private static final Log log = LogFactory.getLog(NioConnectionPool.class);
+
+    private final Protocol protocol;
+    private HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+
+    /**
+     * Lists of {@link IdleConnection}s keyed by host and port, most recently used last.
+     */
+    private final Map idleConnectionsByHost = new HashMap();
+
+    /**
+     * Counts of open and leased connections keyed by host and port.
+     */
+    private final Map connectionCountsByHost = new HashMap();
+
+    private final Set leasedConnections = new HashSet();
+    private int totalConnectionCount = 0;
+    private boolean isShutdown = false;
+
+    private static class IdleConnection {
+        private final HttpConnection connection;
+        private final String hostKey;
+        private final long idleSinceMS;
+
+        public IdleConnection(HttpConnection connection, String hostKey) {
+            this.connection = connection;
+            this.hostKey = hostKey;
+            this.idleSinceMS = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @param protocol
+     * the protocol, including its socket factory, used by the pool's connections.
+     */
+    public NioConnectionPool(Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    private static String getHostKey(String host, int port) {
+        return host + ":" + port;
+    }
+
+    public HttpConnection getConnection(HostConfiguration hostConfiguration) {
+        try {
+            return getConnectionWithTimeout(hostConfiguration, 0);
+        } catch (ConnectionPoolTimeoutException e) {
+            // Cannot happen without a timeout.
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * @deprecated Use {@link #getConnectionWithTimeout(HostConfiguration, long)}
+     */
+    public HttpConnection getConnection(HostConfiguration hostConfiguration, long timeout)
+        throws HttpException
+    {
+        try {
+            return getConnectionWithTimeout(hostConfiguration, timeout);
+        } catch (ConnectionPoolTimeoutException e) {
+            throw new HttpException(e.getMessage());
+        }
+    }
+
+    /**
+     * Leases a connection to a host, reusing an idle connection if there is one. If the pool
+     * has reached its limits the calling thread waits for another connection to be released.
+     *
+     * @param hostConfiguration
+     * the host and port to connect to.
+     * @param timeout
+     * the maximum number of milliseconds to wait for a connection, or 0 to wait indefinitely.
+     * @return
+     * a connection, which may or may not be open.
+     *
+     * @throws ConnectionPoolTimeoutException
+     * if no connection became available within the timeout.
+     */
+    public synchronized HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration,
+        long timeout) throws ConnectionPoolTimeoutException
+    {
+        String host = hostConfiguration.getHost();
+        int port = hostConfiguration.getPort();
+        String hostKey = getHostKey(host, port);
+        long endTimeMS = System.currentTimeMillis() + timeout;
+
+        while (true) {
+            if (isShutdown) {
+                throw new IllegalStateException("Connection pool has been shut down");
+            }
+
+            LinkedList idleConnections = (LinkedList) idleConnectionsByHost.get(hostKey);
+            if (idleConnections != null && !idleConnections.isEmpty()) {
+                HttpConnection connection =
+                    ((IdleConnection) idleConnections.removeLast()).connection;
+                leasedConnections.add(connection);
+                return connection;
+            }
+
+            int maxPerHost = params.getMaxConnectionsPerHost(hostConfiguration);
+            if (getConnectionCount(hostKey) < maxPerHost) {
+                if (totalConnectionCount >= params.getMaxTotalConnections()) {
+                    // Make room by closing an idle connection to another host, if there is one.
+                    closeOldestIdleConnection();
+                }
+                if (totalConnectionCount < params.getMaxTotalConnections()) {
+                    HttpConnection connection = new HttpConnection(host, port, protocol);
+                    connection.getParams().setDefaults(params);
+                    connection.setHttpConnectionManager(this);
+                    adjustConnectionCount(hostKey, 1);
+                    leasedConnections.add(connection);
+                    return connection;
+                }
+            }
+
+            try {
+                if (timeout <= 0) {
+                    wait();
+                } else {
+                    long remainingMS = endTimeMS - System.currentTimeMillis();
+                    if (remainingMS <= 0) {
+                        throw new ConnectionPoolTimeoutException(
+                            "Timeout waiting for connection to " + hostKey);
+                    }
+                    wait(remainingMS);
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalThreadStateException(
+                    "Interrupted while waiting for connection to " + hostKey);
+            }
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool, after finishing any unread response on it.
+     * Connections that have been closed are discarded.
+     */
+    public void releaseConnection(HttpConnection connection) {
+        synchronized (this) {
+            // Reading the rest of a response may release the connection again, ignore that.
+            if (!leasedConnections.remove(connection)) {
+                return;
+            }
+        }
+
+        InputStream lastResponse = connection.getLastResponseInputStream();
+        if (lastResponse != null) {
+            connection.setLastResponseInputStream(null);
+            try {
+                lastResponse.close();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to finish response, closing connection", e);
+                }
+                connection.close();
+            }
+        }
+
+        String hostKey = getHostKey(connection.getHost(), connection.getPort());
+        synchronized (this) {
+            if (connection.isOpen() && !isShutdown) {
+                LinkedList idleConnections = (LinkedList) idleConnectionsByHost.get(hostKey);
+                if (idleConnections == null) {
+                    idleConnections = new LinkedList();
+                    idleConnectionsByHost.put(hostKey, idleConnections);
+                }
+                idleConnections.addLast(new IdleConnection(connection, hostKey));
+            } else {
+                connection.close();
+                adjustConnectionCount(hostKey, -1);
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes connections that have been idle for longer than the given time.
+     *
+     * @param idleTimeout
+     * the idle time, in milliseconds.
+     */
+    public synchronized void closeIdleConnections(long idleTimeout) {
+        long cutoffMS = System.currentTimeMillis() - idleTimeout;
+        Iterator listIter = idleConnectionsByHost.values().iterator();
+        while (listIter.hasNext()) {
+            Iterator idleIter = ((LinkedList) listIter.next()).iterator();
+            while (idleIter.hasNext()) {
+                IdleConnection idle = (IdleConnection) idleIter.next();
+                if (idle.idleSinceMS <= cutoffMS) {
+                    idleIter.remove();
+                    idle.connection.close();
+                    adjustConnectionCount(idle.hostKey, -1);
+                }
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Closes all idle connections, and any leased connections as they are released.
+     */
+    public synchronized void shutdown() {
+        isShutdown = true;
+        closeIdleConnections(-1);
+    }
+
+    public synchronized HttpConnectionManagerParams getParams() {
+        return params;
+    }
+
+    public synchronized void setParams(HttpConnectionManagerParams params) {
+        if (params == null) {
+            throw new IllegalArgumentException("Parameters may not be null");
+        }
+        this.params = params;
+    }
+
+    /**
+     * @return
+     * the number of connections leased or idle in the pool.
+     */
+    public synchronized int getConnectionsInPool() {
+        return totalConnectionCount;
+    }
+
+    private void closeOldestIdleConnection() {
+        IdleConnection oldest = null;
+        LinkedList oldestList = null;
+        Iterator listIter = idleConnectionsByHost.values().iterator();
+        while (listIter.hasNext()) {
+            LinkedList idleConnections = (LinkedList) listIter.next();
+            if (!idleConnections.isEmpty()) {
+                IdleConnection idle = (IdleConnection) idleConnections.getFirst();
+                if (oldest == null || idle.idleSinceMS < oldest.idleSinceMS) {
+                    oldest = idle;
+                    oldestList = idleConnections;
+                }
+            }
+        }
+        if (oldest != null) {
+            oldestList.removeFirst();
+            oldest.connection.close();
+            adjustConnectionCount(oldest.hostKey, -1);
+        }
+    }
+
+    private int getConnectionCount(String hostKey) {
+        int[] count = (int[]) connectionCountsByHost.get(hostKey);
+        return (count != null ? count[0] : 0);
+    }
+
+    private void adjustConnectionCount(String hostKey, int delta) {
+        int[] count = (int[]) connectionCountsByHost.get(hostKey);
+        if (count == null) {
+            count = new int[1];
+            connectionCountsByHost.put(hostKey, count);
+        }
+        count[0] += delta;
+        if (count[0] <= 0) {
+            connectionCountsByHost.remove(hostKey);
+        }
+        totalConnectionCount += delta;
+    }
+
+}
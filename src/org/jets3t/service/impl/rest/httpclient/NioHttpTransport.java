@@ -0,0 +1,165 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.io.IOException;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An {@link HttpTransport} that performs plain HTTP requests over non-blocking socket channels,
+ * all serviced by a single selector thread.
+ * <p>
+ * Requests are still written and parsed by HttpClient's method objects, so they behave as
+ * they do with {@link HttpClientTransport}, but the transport keeps its own pool of
+ * connections whose sockets never block in the operating system. Threads waiting on a slow
+ * network wait on a monitor and are woken by the selector thread, and idle connections hold
+ * no thread at all. The pool is limited by the maximum connection settings of the service's
+ * connection manager (the property <code>httpclient.max-connections</code>), and connection
+ * and socket timeouts apply as usual.
+ * <p>
+ * Java 1.4 offers no non-blocking SSL, and this transport does not talk to proxies, so HTTPS
+ * requests and requests through a proxy are passed to an {@link HttpClientTransport} instead.
+ * To use this transport for S3 requests, set <code>s3service.https-only</code> to false.
+ * Because HttpClient's request director is not involved, HTTP authentication challenges are
+ * not answered. Requests that fail with IO errors are retried by {@link RestS3Service} as
+ * directed by its retry policy, as they are with any transport, and in addition a request
+ * that fails on a reused connection before it was sent is retried once on a new connection.
+ * <p>
+ * Threads waiting on a monitor hold on to their carrier thread when they are virtual
+ * threads, so this transport should not be combined with virtual threads
+ * (<code>s3service.thread-mode=virtual</code>). The default transport suits them better, as
+ * a virtual thread blocked in socket I/O releases its carrier thread.
+ *
+ * @author James Murty
+ */
+public class NioHttpTransport implements HttpTransport {
+    private static final Log log = LogFactory.getLog(NioHttpTransport.class);
+
+    private final HttpClient httpClient;
+    private final HttpClientTransport fallbackTransport;
+    private final NioSelectorLoop selectorLoop;
+    private final NioConnectionPool connectionPool;
+    private final Protocol protocol;
+
+    /**
+     * @param httpClient
+     * the client whose parameters, including its user agent and connection limits, apply to
+     * requests, and which performs the requests this transport cannot.
+     * @throws IOException
+     * if the selector could not be opened.
+     */
+    public NioHttpTransport(HttpClient httpClient) throws IOException {
+        this.httpClient = httpClient;
+        this.fallbackTransport = new HttpClientTransport(httpClient);
+        this.selectorLoop = new NioSelectorLoop("jets3t-nio-selector");
+        this.protocol = new Protocol("http", new NioSocketFactory(selectorLoop), 80);
+        this.connectionPool = new NioConnectionPool(protocol);
+
+        HttpConnectionManagerParams connectionParams =
+            httpClient.getHttpConnectionManager().getParams();
+        if (connectionParams != null) {
+            connectionPool.setParams(connectionParams);
+        }
+    }
+
+    public HttpMethodBase createHttpMethod(String methodName, String url) {
+        return fallbackTransport.createHttpMethod(methodName, url);
+    }
+
+    /**
+     * @return
+     * true if this transport can perform the request itself, false if it must be passed to
+     * HttpClient because it uses HTTPS or a proxy.
+     */
+    protected boolean isNioCapable(HttpMethodBase httpMethod) throws IOException {
+        return "http".equalsIgnoreCase(httpMethod.getURI().getScheme())
+            && httpClient.getHostConfiguration().getProxyHost() == null;
+    }
+
+    public int executeMethod(HttpMethodBase httpMethod) throws IOException {
+        if (!isNioCapable(httpMethod)) {
+            return fallbackTransport.executeMethod(httpMethod);
+        }
+
+        // Apply the client's parameters, such as the user agent, as HttpClient would.
+        httpMethod.getParams().setDefaults(httpClient.getParams());
+
+        URI uri = httpMethod.getURI();
+        HostConfiguration hostConfig = new HostConfiguration();
+        hostConfig.setHost(uri.getHost(), (uri.getPort() < 0 ? 80 : uri.getPort()), protocol);
+
+        boolean isRetryAllowed = true;
+        while (true) {
+            HttpConnection connection = connectionPool.getConnectionWithTimeout(hostConfig,
+                httpClient.getParams().getConnectionManagerTimeout());
+            boolean isReusedConnection = connection.isOpen();
+            try {
+                if (isReusedConnection && connection.getParams().isStaleCheckingEnabled()) {
+                    isReusedConnection = !connection.closeIfStale();
+                }
+                if (!connection.isOpen()) {
+                    connection.open();
+                }
+                // The connection is released by the method once its response has been read.
+                return httpMethod.execute(new HttpState(), connection);
+            } catch (IOException e) {
+                connection.close();
+                connection.releaseConnection();
+                if (isRetryAllowed && isReusedConnection && !httpMethod.isRequestSent()
+                    && !httpMethod.isAborted())
+                {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Retrying " + httpMethod.getName() + " request on a new connection"
+                            + " after failure on a reused connection: " + e.getMessage());
+                    }
+                    isRetryAllowed = false;
+                    continue;
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                connection.close();
+                connection.releaseConnection();
+                throw e;
+            }
+        }
+    }
+
+    public void releaseConnection(HttpMethodBase httpMethod) {
+        httpMethod.releaseConnection();
+    }
+
+    /**
+     * Closes the transport's connections and stops its selector thread.
+     */
+    public void shutdown() {
+        connectionPool.shutdown();
+        selectorLoop.shutdown();
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A single thread that watches any number of non-blocking channels with a {@link Selector},
+ * waking the threads that are waiting for each channel to become ready for connecting,
+ * reading or writing.
+ * <p>
+ * Interest in a channel is registered for one readiness event at a time: once the event
+ * occurs the channel's interest is cleared and its {@link Waiter} is signalled, so an idle
+ * connection costs nothing but a selector key.
+ *
+ * @author James Murty
+ */
+class NioSelectorLoop implements Runnable {
+    private static final Log log = LogFactory.getLog(NioSelectorLoop.class);
+
+    private final Selector selector;
+    private final Thread selectorThread;
+
+    /**
+     * Registrations waiting to be applied by the selector thread, since channels cannot
+     * safely be registered with a selector while another thread is blocked selecting on it.
+     */
+    private final List pendingRegistrations = new ArrayList();
+    private boolean isShutdown = false;
+
+    /**
+     * The object a thread waits on until its channel is ready.
+     */
+    static class Waiter {
+        private boolean isSignalled = false;
+
+        public synchronized void signal() {
+            isSignalled = true;
+            notifyAll();
+        }
+
+        /**
+         * @param timeoutMS
+         * the maximum time to wait, or 0 to wait indefinitely.
+         * @return
+         * true if the waiter was signalled, false if the time ran out.
+         *
+         * @throws InterruptedIOException
+         * if the waiting thread was interrupted.
+         */
+        public synchronized boolean await(long timeoutMS) throws InterruptedIOException {
+            long endTimeMS = System.currentTimeMillis() + timeoutMS;
+            try {
+                while (!isSignalled) {
+                    if (timeoutMS <= 0) {
+                        wait();
+                    } else {
+                        long remainingMS = endTimeMS - System.currentTimeMillis();
+                        if (remainingMS <= 0) {
+                            return false;
+                        }
+                        wait(remainingMS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for channel");
+            }
+            return true;
+        }
+    }
+
+    private static class Registration {
+        private final SelectableChannel channel;
+        private final int ops;
+        private final Waiter waiter;
+
+        public Registration(SelectableChannel channel, int ops, Waiter waiter) {
+            this.channel = channel;
+            this.ops = ops;
+            this.waiter = waiter;
+        }
+    }
+
+    /**
+     * Opens the selector and starts its daemon thread.
+     *
+     * @param threadName
+     * the name of the selector thread.
+     * @throws IOException
+     */
+    public NioSelectorLoop(String threadName) throws IOException {
+        this.selector = Selector.open();
+        this.selectorThread = new Thread(this, threadName);
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * Asks for a waiter to be signalled once a channel is ready for an operation.
+     *
+     * @param channel
+     * a non-blocking channel.
+     * @param ops
+     * the operation of interest, such as {@link SelectionKey#OP_READ}.
+     * @param waiter
+     * the waiter to signal.
+     *
+     * @throws IOException
+     * if the loop has been shut down.
+     */
+    public void register(SelectableChannel channel, int ops, Waiter waiter) throws IOException {
+        synchronized (pendingRegistrations) {
+            if (isShutdown) {
+                throw new IOException("NIO selector loop has been shut down");
+            }
+            pendingRegistrations.add(new Registration(channel, ops, waiter));
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Makes the selector thread run a selection, which deregisters the keys of closed channels.
+     */
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the selector thread and closes the selector.
+     */
+    public void shutdown() {
+        synchronized (pendingRegistrations) {
+            isShutdown = true;
+        }
+        selector.wakeup();
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                synchronized (pendingRegistrations) {
+                    if (isShutdown) {
+                        break;
+                    }
+                }
+                applyPendingRegistrations();
+                selector.select();
+
+                Iterator keyIter = selector.selectedKeys().iterator();
+                while (keyIter.hasNext()) {
+                    SelectionKey key = (SelectionKey) keyIter.next();
+                    keyIter.remove();
+                    Waiter waiter = (Waiter) key.attachment();
+                    try {
+                        key.interestOps(0);
+                    } catch (CancelledKeyException e) {
+                        // Channel was closed, its waiter will find out when it is signalled.
+                    }
+                    key.attach(null);
+                    if (waiter != null) {
+                        waiter.signal();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error("NIO selector loop failed", e);
+            }
+        } finally {
+            synchronized (pendingRegistrations) {
+                isShutdown = true;
+            }
+            signalAll();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Unable to close NIO selector", e);
+                }
+            }
+        }
+    }
+
+    private void applyPendingRegistrations() {
+        List registrations = null;
+        synchronized (pendingRegistrations) {
+            registrations = new ArrayList(pendingRegistrations);
+            pendingRegistrations.clear();
+        }
+        Iterator regIter = registrations.iterator();
+        while (regIter.hasNext()) {
+            Registration registration = (Registration) regIter.next();
+            try {
+                SelectionKey key = registration.channel.keyFor(selector);
+                if (key == null) {
+                    registration.channel.register(selector, registration.ops, registration.waiter);
+                } else {
+                    key.interestOps(registration.ops);
+                    key.attach(registration.waiter);
+                }
+            } catch (ClosedChannelException e) {
+                // Wake the waiting thread so it discovers the channel is closed.
+                registration.waiter.signal();
+            } catch (CancelledKeyException e) {
+                registration.waiter.signal();
+            }
+        }
+    }
+
+    /**
+     * Wakes every waiting thread when the loop stops, so none are left waiting forever.
+     */
+    private void signalAll() {
+        synchronized (pendingRegistrations) {
+            Iterator regIter = pendingRegistrations.iterator();
+            while (regIter.hasNext()) {
+                ((Registration) regIter.next()).waiter.signal();
+            }
+            pendingRegistrations.clear();
+        }
+        try {
+            Iterator keyIter = selector.keys().iterator();
+            while (keyIter.hasNext()) {
+                Waiter waiter = (Waiter) ((SelectionKey) keyIter.next()).attachment();
+                if (waiter != null) {
+                    waiter.signal();
+                }
+            }
+        } catch (RuntimeException e) {
+            // Selector already closed.
+        }
+    }
+
+}
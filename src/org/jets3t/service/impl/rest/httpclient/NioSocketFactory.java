@@ -0,0 +1,79 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.impl.rest.httpclient;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
+
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+
+/**
+ * Creates plain HTTP sockets backed by non-blocking channels, which are connected and then
+ * serviced by a shared {@link NioSelectorLoop}.
+ *
+ * @author James Murty
+ */
+class NioSocketFactory implements ProtocolSocketFactory {
+    private final NioSelectorLoop selectorLoop;
+
+    /**
+     * @param selectorLoop
+     * the loop that services the sockets created by this factory.
+     */
+    public NioSocketFactory(NioSelectorLoop selectorLoop) {
+        this.selectorLoop = selectorLoop;
+    }
+
+    public Socket createSocket(String host, int port) throws IOException, UnknownHostException {
+        return createSocket(host, port, null, 0, null);
+    }
+
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort)
+        throws IOException, UnknownHostException
+    {
+        return createSocket(host, port, localAddress, localPort, null);
+    }
+
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort,
+        HttpConnectionParams params) throws IOException, UnknownHostException
+    {
+        InetSocketAddress remoteAddress = new InetSocketAddress(host, port);
+        if (remoteAddress.isUnresolved()) {
+            throw new UnknownHostException(host);
+        }
+
+        NioChannelSocket socket = new NioChannelSocket(SocketChannel.open(), selectorLoop);
+        try {
+            if (localAddress != null) {
+                socket.bind(new InetSocketAddress(localAddress, localPort));
+            }
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        socket.connect(remoteAddress, (params != null ? params.getConnectionTimeout() : 0));
+        return socket;
+    }
+
+}
@@ -28,25 +28,29 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.TimerTask;
 
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.URIException;
 import org.apache.commons.httpclient.auth.CredentialsProvider;
-import org.apache.commons.httpclient.methods.DeleteMethod;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jets3t.service.Constants;
@@ -59,12 +63,15 @@ import org.jets3t.service.impl.rest.HttpException;
 import org.jets3t.service.impl.rest.XmlResponsesSaxParser;
 import org.jets3t.service.impl.rest.XmlResponsesSaxParser.CopyObjectResultHandler;
 import org.jets3t.service.impl.rest.XmlResponsesSaxParser.ListBucketHandler;
+import org.jets3t.service.io.UnrecoverableIOException;
 import org.jets3t.service.model.CreateBucketConfiguration;
+import org.jets3t.service.model.MultipleDeleteResult;
 import org.jets3t.service.model.S3Bucket;
 import org.jets3t.service.model.S3BucketLoggingStatus;
 import org.jets3t.service.model.S3Object;
 import org.jets3t.service.model.S3Owner;
 import org.jets3t.service.mx.MxDelegate;
+import org.jets3t.service.retry.RetryPolicy;
 import org.jets3t.service.security.AWSCredentials;
 import org.jets3t.service.utils.Mimetypes;
 import org.jets3t.service.utils.RestUtils;
@@ -87,9 +94,17 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
 
     private static final Log log = LogFactory.getLog(RestS3Service.class);
     
+    /**
+     * The {@link HttpMethodAborter} with which requests performed in each thread are registered.
+     */
+    private static final ThreadLocal threadHttpMethodAborter = new ThreadLocal();
+    
     protected HttpClient httpClient = null;
     protected HttpConnectionManager connectionManager = null;
+    protected HttpTransport httpTransport = null;
     protected CredentialsProvider credentialsProvider = null;
+    protected HedgedRequestPolicy hedgedRequestPolicy = null;
+    protected BucketEndpointCache bucketEndpointCache = null;
     
     /**
      * Constructs the service and initialises the properties.
@@ -187,6 +202,9 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         this.setRequesterPaysEnabled(
             this.jets3tProperties.getBoolProperty("httpclient.requester-pays-buckets-enabled", false));
         
+        this.hedgedRequestPolicy = new HedgedRequestPolicy(this.jets3tProperties);
+        this.bucketEndpointCache = new BucketEndpointCache(this.jets3tProperties);
+        
         // Retrieve Proxy settings.
         if (this.jets3tProperties.getBoolProperty("httpclient.proxy-autodetect", true)) {
             RestUtils.initHttpProxy(httpClient);
@@ -198,13 +216,18 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
             String proxyDomain = this.jets3tProperties.getStringProperty("httpclient.proxy-domain", null);            
             RestUtils.initHttpProxy(httpClient, proxyHostAddress, proxyPort, proxyUser, proxyPassword, proxyDomain);
         }        
+        
+        this.httpTransport = initHttpTransport();
     }    
     
     /**
      * Initialise HttpClient and HttpConnectionManager objects with the configuration settings
      * appropriate for communicating with S3. By default, this method simply delegates the
      * configuration task to {@link RestUtils#initHttpConnection(AWSRequestAuthorizer, 
-     * HostConfiguration, Jets3tProperties, String, CredentialsProvider)}. 
+     * HostConfiguration, Jets3tProperties, String, CredentialsProvider)}, then disables 
+     * HttpClient's own retrying of requests that fail with IO errors. These requests are 
+     * retried by {@link #performRequest(HttpMethodBase, int)} instead, as directed by the 
+     * service's {@link RetryPolicy}.
      * <p>
      * To alter the low-level behaviour of the HttpClient library, override this method in 
      * a subclass and apply your own settings before returning the objects.
@@ -216,8 +239,66 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
      * configured HttpClient library client and connection manager objects. 
      */
     protected HttpClientAndConnectionManager initHttpConnection(HostConfiguration hostConfig) {
-        return RestUtils.initHttpConnection(this, hostConfig, jets3tProperties, 
-            getInvokingApplicationDescription(), credentialsProvider);
+        HttpClientAndConnectionManager initHttpResult = RestUtils.initHttpConnection(
+            this, hostConfig, jets3tProperties, getInvokingApplicationDescription(), 
+            credentialsProvider);
+        initHttpResult.getHttpClient().getParams().setParameter(
+            HttpClientParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(0, false));
+        return initHttpResult;
+    }
+    
+    /**
+     * Creates the transport that will build and perform this service's HTTP requests, as
+     * chosen by the property <code>httpclient.transport</code>: <code>httpclient</code>
+     * (the default) performs requests with the service's HttpClient, and <code>nio</code>
+     * performs plain HTTP requests with a {@link NioHttpTransport}.
+     * <p>
+     * To use a different transport, override this method in a subclass.
+     * 
+     * @return
+     * the transport for this service's requests.
+     */
+    protected HttpTransport initHttpTransport() {
+        String transportName = this.jets3tProperties.getStringProperty(
+            "httpclient.transport", "httpclient");
+        if ("nio".equalsIgnoreCase(transportName)) {
+            try {
+                return new NioHttpTransport(httpClient);
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Unable to start NIO HTTP transport, using HttpClient instead", e);
+                }
+            }
+        } else if (!"httpclient".equalsIgnoreCase(transportName)) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unrecognised HTTP transport '" + transportName 
+                    + "', using HttpClient instead");
+            }
+        }
+        return new HttpClientTransport(httpClient);
+    }
+    
+    /**
+     * @return
+     * the transport that builds and performs this service's HTTP requests.
+     */
+    public HttpTransport getHttpTransport() {
+        return this.httpTransport;
+    }
+    
+    /**
+     * Replaces the service's HTTP transport, shutting down the transport it replaces.
+     * This method should only be used by advanced users.
+     * 
+     * @param httpTransport
+     * the transport that will build and perform this service's HTTP requests.
+     */
+    public void setHttpTransport(HttpTransport httpTransport) {
+        HttpTransport previousTransport = this.httpTransport;
+        this.httpTransport = httpTransport;
+        if (previousTransport != null && previousTransport != httpTransport) {
+            previousTransport.shutdown();
+        }
     }
     
     /**
@@ -254,12 +335,53 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
      * 
      * @param httpClient
      * the client that will replace the default client created by
-     * the class constructor.
+     * the class constructor. The service's transport is re-created to use this client.
      */
     public void setHttpClient(HttpClient httpClient) {
         this.httpClient = httpClient;
+        setHttpTransport(initHttpTransport());
     }
 
+    /**
+     * Releases the resources held by this service: stops the thread that sends hedged 
+     * requests, shuts down the service's transport and closes its HTTP connections. 
+     * The service cannot be used after this method is called.
+     */
+    public void shutdown() {
+        hedgedRequestPolicy.shutdown();
+        httpTransport.shutdown();
+        if (connectionManager instanceof MultiThreadedHttpConnectionManager) {
+            ((MultiThreadedHttpConnectionManager) connectionManager).shutdown();
+        }
+    }
+    
+    /**
+     * @return
+     * the policy that decides when object GET and HEAD requests are hedged.
+     */
+    public HedgedRequestPolicy getHedgedRequestPolicy() {
+        return this.hedgedRequestPolicy;
+    }
+    
+    /**
+     * @return
+     * the cache of endpoint hosts for the buckets accessed by this service.
+     */
+    public BucketEndpointCache getBucketEndpointCache() {
+        return this.bucketEndpointCache;
+    }
+    
+    /**
+     * Associates an aborter with the current thread, so that requests performed by any
+     * <code>RestS3Service</code> in this thread can be aborted from another thread.
+     * 
+     * @param aborter
+     * the aborter with which requests will be registered, or null to remove the thread's aborter.
+     */
+    public static void setThreadHttpMethodAborter(HttpMethodAborter aborter) {
+        threadHttpMethodAborter.set(aborter);
+    }
+    
     /**
      * @return
      * the credentials provider this service will use to authenticate itself, or null
@@ -313,6 +435,8 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
     protected void performRequest(HttpMethodBase httpMethod, int expectedResponseCode) 
         throws S3ServiceException 
     {
+        String endpointBucketName = null;
+        boolean isUsingCachedEndpoint = false;
         try {
             if (log.isDebugEnabled()) {
                 log.debug("Performing " + httpMethod.getName() 
@@ -322,40 +446,93 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
             
             // Variables to manage S3 Internal Server 500 or 503 Service Unavailable errors.
             boolean completedWithoutRecoverableError = true;
+            int operationType = getRetryOperationType(httpMethod);
             int internalErrorCount = 0;
             int requestTimeoutErrorCount = 0;
+            int ioErrorCount = 0;
+            long retryDelayMs = 0;
             int redirectCount = 0;
             boolean wasRecentlyRedirected = false;
+            
+            // Variables to manage requests sent to a bucket's cached redirect endpoint.
+            URI originalURI = httpMethod.getURI();
+            endpointBucketName = getBucketNameForEndpointCache(originalURI.getHost());
+            boolean isURIChanged = false;
+            
+            // Register the request so it can be aborted from another thread, if necessary.
+            HttpMethodAborter aborter = (HttpMethodAborter) threadHttpMethodAborter.get();
+            if (aborter != null) {
+                aborter.setHttpMethod(httpMethod);
+            }
 
             // Perform the request, sleeping and retrying when S3 Internal Errors are encountered.
             int responseCode = -1;
             do {
                 // Build the authorization string for the method (Unless we have just been redirected).
                 if (!wasRecentlyRedirected) {
+                    // Requests are signed for the original URI, then sent to the bucket's 
+                    // cached endpoint if there is one.
+                    if (isURIChanged) {
+                        httpMethod.setURI(originalURI);
+                    }
                     authorizeHttpRequest(httpMethod);
+                    isUsingCachedEndpoint = applyCachedEndpoint(httpMethod, endpointBucketName);
+                    isURIChanged = isUsingCachedEndpoint;
                 } else {
                     // Reset redirection flag
                     wasRecentlyRedirected = false;
                 }
                 
-                responseCode = httpClient.executeMethod(httpMethod);
+                try {
+                    responseCode = httpTransport.executeMethod(httpMethod);
+                } catch (IOException e) {
+                    // Retry IO errors if the retry policy allows it for this kind of request.
+                    if (e instanceof UnrecoverableIOException || httpMethod.isAborted()) {
+                        throw e;
+                    }
+                    httpTransport.releaseConnection(httpMethod);
+                    retryDelayMs = sleepBeforeRetry(operationType, 
+                        RetryPolicy.ERROR_IO, ++ioErrorCount, retryDelayMs);
+                    if (retryDelayMs < 0) {
+                        throw e;
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("Retrying " + httpMethod.getName() + " request with path '" 
+                            + httpMethod.getPath() + "' after IO error, attempt number " 
+                            + ioErrorCount, e);
+                    }
+                    completedWithoutRecoverableError = false;
+                    continue;
+                }
 
                 if (responseCode == 307) {
                     // Retry on Temporary Redirects, using new URI from location header                    
                     Header locationHeader = httpMethod.getResponseHeader("location");
                     httpMethod.setURI(new URI(locationHeader.getValue(), true));
+                    isURIChanged = true;
+                    
+                    // Remember the redirected host for later requests to the same bucket.
+                    if (endpointBucketName != null) {
+                        bucketEndpointCache.putRedirectHost(
+                            endpointBucketName, httpMethod.getURI().getHost());
+                    }
                     
                     completedWithoutRecoverableError = false;
                     redirectCount++;
                     wasRecentlyRedirected = true;
                     
-                    if (redirectCount > 5) {
+                    if (redirectCount > getRetryPolicy().getMaxRedirects()) {
                         throw new S3ServiceException("Encountered too many 307 Redirects, aborting request.");
                     } 
                 } else if (responseCode == 500 || responseCode == 503) {
                     // Retry on S3 Internal Server 500 or 503 Service Unavailable errors.
                     completedWithoutRecoverableError = false;
-                    sleepOnInternalError(++internalErrorCount);
+                    retryDelayMs = sleepBeforeRetry(operationType, 
+                        RetryPolicy.ERROR_SERVER_UNAVAILABLE, ++internalErrorCount, retryDelayMs);
+                    if (retryDelayMs < 0) {
+                        throw new S3ServiceException("Encountered too many S3 Internal Server errors (" 
+                            + internalErrorCount + "), aborting request.");
+                    }
                 } else {
                     completedWithoutRecoverableError = true;                    
                 }
@@ -402,7 +579,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
                             }                            
                         }
                         
-                        httpMethod.releaseConnection();
+                        httpTransport.releaseConnection(httpMethod);
                         
                         // Throw exception containing the XML message document.
                         S3ServiceException exception = 
@@ -410,22 +587,21 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
                                 + " failed for '" + httpMethod.getPath() + "'", sb.toString());
                         
                         if ("RequestTimeout".equals(exception.getS3ErrorCode())) {
-                            int retryMaxCount = jets3tProperties.getIntProperty("httpclient.retry-max", 5);                            
-                            
-                            if (requestTimeoutErrorCount < retryMaxCount) {
-                                requestTimeoutErrorCount++;
+                            requestTimeoutErrorCount++;
+                            retryDelayMs = sleepBeforeRetry(operationType, 
+                                RetryPolicy.ERROR_REQUEST_TIMEOUT, requestTimeoutErrorCount, retryDelayMs);
+                            if (retryDelayMs >= 0) {
                                 if (log.isDebugEnabled()) {
                                     log.debug("Response '" + httpMethod.getPath() 
                                         + "' - Retrying connection that failed with RequestTimeout error"
-                                        + ", attempt number " + requestTimeoutErrorCount + " of " 
-                                        + retryMaxCount);
+                                        + ", attempt number " + requestTimeoutErrorCount);
                                 }
                                 completedWithoutRecoverableError = false;
                             } else {
                                 if (log.isWarnEnabled()) {
                                     log.warn("Response '" + httpMethod.getPath() 
-                                        + "' - Exceeded maximum number of retries for RequestTimeout errors: "
-                                        + retryMaxCount);
+                                        + "' - Will not retry after " + requestTimeoutErrorCount 
+                                        + " RequestTimeout error(s)");
                                 }
                                 throw exception;
                             }
@@ -458,7 +634,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
                         if (log.isDebugEnabled()) {
                             log.debug("Releasing error response without XML content");
                         }
-                        httpMethod.releaseConnection();
+                        httpTransport.releaseConnection(httpMethod);
                         
                         if (responseCode == 500 || responseCode == 503) {
                             // Retrying after InternalError 500, don't throw exception.
@@ -479,6 +655,8 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
                     }
                 }
             } while (!completedWithoutRecoverableError);
+            
+            recordRequestSuccess();
 
             // Release immediately any connections without response bodies.
             if ((httpMethod.getResponseBodyAsStream() == null 
@@ -492,14 +670,28 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
 
                 if (responseBody != null && responseBody.length > 0) 
                     throw new S3ServiceException("Oops, too keen to release connection with a non-empty response body");                
-                httpMethod.releaseConnection();
+                httpTransport.releaseConnection(httpMethod);
             }
             
         } catch (Throwable t) {
             if (log.isDebugEnabled()) {
                 log.debug("Releasing HttpClient connection after error: " + t.getMessage());
             }
-            httpMethod.releaseConnection();
+            httpTransport.releaseConnection(httpMethod);
+            
+            // Forget the bucket's cached endpoint if it may have caused the failure.
+            if (endpointBucketName != null) {
+                if ((isUsingCachedEndpoint && !(t instanceof S3ServiceException) 
+                        && !httpMethod.isAborted())
+                    || (t instanceof S3ServiceException 
+                        && isEndpointInvalidatingErrorCode(((S3ServiceException) t).getS3ErrorCode())))
+                {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Invalidating cached endpoint for bucket " + endpointBucketName);
+                    }
+                    bucketEndpointCache.invalidate(endpointBucketName);
+                }
+            }
 
             if (t instanceof S3ServiceException) {
                 throw (S3ServiceException) t;                
@@ -511,6 +703,99 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         } 
     }
     
+    /**
+     * Determines the name of the bucket a request is for from the request's hostname, for use
+     * as the key of the {@link BucketEndpointCache}. Requests that use the old-style bucket 
+     * reference URLs are not cached, as these go to the general S3 host; buckets outside the 
+     * US, and hence most redirects, always use DNS-compatible names.
+     * 
+     * @param hostname
+     * the hostname of the original request URI.
+     * @return
+     * the bucket name, or null if requests to this host should not use the cache.
+     */
+    private String getBucketNameForEndpointCache(String hostname) {
+        if (!bucketEndpointCache.isEnabled() 
+            || hostname == null || Constants.S3_HOSTNAME.equals(hostname)) 
+        {
+            return null;
+        }
+        int subdomainOffset = hostname.lastIndexOf("." + Constants.S3_HOSTNAME);
+        if (subdomainOffset > 0) {
+            return hostname.substring(0, subdomainOffset);
+        } else {
+            // Hostname represents a virtual host, so the bucket's name is identical to hostname
+            return hostname;
+        }
+    }
+    
+    /**
+     * Sends a request to the endpoint host cached for its bucket, if there is one, by
+     * replacing the host in the request's URI.
+     * 
+     * @return
+     * true if the request's URI was changed to use a cached endpoint.
+     */
+    private boolean applyCachedEndpoint(HttpMethodBase httpMethod, String bucketName) 
+        throws URIException 
+    {
+        if (bucketName == null) {
+            return false;
+        }
+        String redirectHost = bucketEndpointCache.getRedirectHost(bucketName);
+        URI uri = httpMethod.getURI();
+        if (redirectHost == null || redirectHost.equals(uri.getHost())) {
+            return false;
+        }
+        
+        String uriString = uri.getEscapedURI();
+        String hostPrefix = "//" + uri.getHost();
+        int hostOffset = uriString.indexOf(hostPrefix);
+        if (hostOffset < 0) {
+            return false;
+        }
+        uriString = uriString.substring(0, hostOffset) + "//" + redirectHost 
+            + uriString.substring(hostOffset + hostPrefix.length());
+        if (log.isDebugEnabled()) {
+            log.debug("Using cached endpoint for bucket " + bucketName + ": " + uriString);
+        }
+        httpMethod.setURI(new URI(uriString, true));
+        return true;
+    }
+    
+    /**
+     * @return
+     * true if an S3 error code indicates that a bucket's cached endpoint may be wrong.
+     */
+    private boolean isEndpointInvalidatingErrorCode(String s3ErrorCode) {
+        return "PermanentRedirect".equals(s3ErrorCode) 
+            || "TemporaryRedirect".equals(s3ErrorCode)
+            || "NoSuchBucket".equals(s3ErrorCode);
+    }
+    
+    /**
+     * Classifies an HTTP request by the kind of operation it performs, so the service's
+     * {@link RetryPolicy} can decide which errors may be retried for it.
+     * 
+     * @param httpMethod
+     * the request object
+     * @return
+     * one of the <code>RetryPolicy.OPERATION_</code> constants.
+     */
+    protected int getRetryOperationType(HttpMethod httpMethod) {
+        String methodName = httpMethod.getName();
+        if ("GET".equals(methodName) || "HEAD".equals(methodName)) {
+            return RetryPolicy.OPERATION_READ;
+        } else if ("DELETE".equals(methodName)) {
+            return RetryPolicy.OPERATION_DELETE;
+        } else if ("POST".equals(methodName) && "delete".equals(httpMethod.getQueryString())) {
+            // Multiple object deletes are idempotent, like single deletes.
+            return RetryPolicy.OPERATION_DELETE;
+        } else {
+            return RetryPolicy.OPERATION_WRITE;
+        }
+    }
+    
     /**
      * Authorizes an HTTP request by signing it. The signature is based on the target URL, and the
      * signed authorization string is added to the {@link HttpMethod} object as an Authorization header.
@@ -702,6 +987,11 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
     protected HttpMethodBase performRestHead(String bucketName, String objectKey, 
         Map requestParameters, Map requestHeaders) throws S3ServiceException 
     {
+        if (objectKey != null && hedgedRequestPolicy.isEnabled()) {
+            return performHedgedRequest("HEAD", bucketName, objectKey, 
+                requestParameters, requestHeaders, 200);
+        }
+        
         HttpMethodBase httpMethod = setupConnection("HEAD", bucketName, objectKey, requestParameters);
         
         // Add all request headers.
@@ -731,20 +1021,110 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
     protected HttpMethodBase performRestGet(String bucketName, String objectKey, 
         Map requestParameters, Map requestHeaders) throws S3ServiceException 
     {
-        HttpMethodBase httpMethod = setupConnection("GET", bucketName, objectKey, requestParameters);
-        
-        // Add all request headers.
-        addRequestHeadersToConnection(httpMethod, requestHeaders);
-        
         int expectedStatusCode = 200;
         if (requestHeaders != null && requestHeaders.containsKey("Range")) {
             // Partial data responses have a status code of 206. 
             expectedStatusCode = 206;
         }
+        
+        if (objectKey != null && hedgedRequestPolicy.isEnabled()) {
+            return performHedgedRequest("GET", bucketName, objectKey, 
+                requestParameters, requestHeaders, expectedStatusCode);
+        }
+        
+        HttpMethodBase httpMethod = setupConnection("GET", bucketName, objectKey, requestParameters);
+        
+        // Add all request headers.
+        addRequestHeadersToConnection(httpMethod, requestHeaders);
+        
         performRequest(httpMethod, expectedStatusCode);
         
         return httpMethod;
     }
+    
+    /**
+     * Performs an idempotent HTTP GET or HEAD request using the {@link #performRequest} method,
+     * hedging the request as directed by the service's {@link HedgedRequestPolicy}. If the request
+     * has not received a response after the policy's hedge delay, a second identical request is
+     * sent from a separate thread. The first request to receive a successful response is 
+     * returned, and the other request is aborted.
+     *  
+     * @param method
+     *        the HTTP method, GET or HEAD.
+     * @param bucketName
+     *        the bucket's name
+     * @param objectKey
+     *        the object's key name.
+     * @param requestParameters
+     *        parameters to add to the request URL as GET params
+     * @param requestHeaders
+     *        headers to add to the request
+     * @param expectedStatusCode
+     *        the HTTP response code that indicates a successful request.
+     * @return
+     *        the HTTP method object of the request that responded first.
+     * 
+     * @throws S3ServiceException
+     *        the exception thrown by the original request, if neither request succeeded.
+     */
+    protected HttpMethodBase performHedgedRequest(final String method, final String bucketName, 
+        final String objectKey, final Map requestParameters, final Map requestHeaders, 
+        final int expectedStatusCode) throws S3ServiceException 
+    {
+        HttpMethodBase primaryMethod = setupConnection(method, bucketName, objectKey, requestParameters);
+        addRequestHeadersToConnection(primaryMethod, requestHeaders);
+
+        final HedgedRequest hedgedRequest = new HedgedRequest(primaryMethod);
+        hedgedRequestPolicy.recordRequest();
+        
+        // A hedge is performed in its own thread, but must be aborted along with the caller's request.
+        final HttpMethodAborter aborter = (HttpMethodAborter) threadHttpMethodAborter.get();
+        
+        TimerTask hedgeTask = new TimerTask() {
+            public void run() {
+                if (hedgedRequest.isPrimaryDone() || !hedgedRequestPolicy.tryAcquireHedge()) {
+                    return;
+                }
+                try {
+                    final HttpMethodBase hedgeMethod = 
+                        setupConnection(method, bucketName, objectKey, requestParameters);
+                    addRequestHeadersToConnection(hedgeMethod, requestHeaders);
+                    if (!hedgedRequest.startHedge(hedgeMethod)) {
+                        return;
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("Hedging slow " + method + " request for '" 
+                            + hedgeMethod.getPath() + "'");
+                    }
+                    if (aborter != null) {
+                        aborter.addHttpMethod(hedgeMethod);
+                    }
+                    Thread hedgeThread = new Thread(new Runnable() {
+                        public void run() {
+                            try {
+                                hedgedRequest.performAttempt(hedgeMethod, expectedStatusCode);
+                            } finally {
+                                if (aborter != null) {
+                                    aborter.removeHttpMethod(hedgeMethod);
+                                }
+                            }
+                        }
+                    }, "jets3t-hedged-request");
+                    hedgeThread.setDaemon(true);
+                    hedgeThread.start();
+                } catch (S3ServiceException e) {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Unable to hedge " + method + " request", e);
+                    }
+                }
+            }
+        };
+        hedgedRequestPolicy.schedule(hedgeTask, hedgedRequestPolicy.getHedgeDelayMs());
+
+        hedgedRequest.performAttempt(primaryMethod, expectedStatusCode);
+        hedgeTask.cancel();
+        return hedgedRequest.waitForResult();
+    }
         
     /**
      * Performs an HTTP PUT request using the {@link #performRequest} method.
@@ -797,12 +1177,50 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         }
                 
         if (autoRelease) {
-            httpMethod.releaseConnection();
+            httpTransport.releaseConnection(httpMethod);
         }
         
         return new HttpMethodAndByteCount(httpMethod, contentLength);
     }
 
+    /**
+     * Performs an HTTP POST request using the {@link #performRequest} method.
+     *  
+     * @param bucketName
+     *        the bucket's name
+     * @param objectKey
+     *        the object's key name, may be null if the operation is on a bucket only.
+     * @param metadata
+     *        map of name/value pairs to add as headers to the request.
+     * @param requestParameters
+     *        parameters to add to the request URL as GET params
+     * @param requestEntity
+     *        an HttpClient object that encapsulates the data that will be posted. 
+     * @return
+     *        the HTTP method object used to perform the request, which has not been released.
+     * 
+     * @throws S3ServiceException
+     */
+    protected HttpMethodBase performRestPost(String bucketName, String objectKey, 
+        Map metadata, Map requestParameters, RequestEntity requestEntity) 
+        throws S3ServiceException 
+    {        
+        HttpMethodBase httpMethod = setupConnection("POST", bucketName, objectKey, requestParameters);
+        
+        Map renamedMetadata = RestUtils.renameMetadataKeys(metadata);
+        addMetadataToHeaders(httpMethod, renamedMetadata);
+
+        if (requestEntity != null) {
+            ((EntityEnclosingMethod)httpMethod).setRequestEntity(requestEntity);
+        } else {
+            httpMethod.setRequestHeader("Content-Length", "0");
+        }
+        
+        performRequest(httpMethod, 200);
+        
+        return httpMethod;
+    }
+
     /**
      * Performs an HTTP DELETE request using the {@link #performRequest} method.
      *  
@@ -824,7 +1242,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         if (log.isDebugEnabled()) {
             log.debug("Releasing HttpMethod after delete");
         }
-        httpMethod.releaseConnection();
+        httpTransport.releaseConnection(httpMethod);
 
         return httpMethod;
     }
@@ -833,7 +1251,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
      * Creates an {@link HttpMethod} object to handle a particular connection method.
      * 
      * @param method
-     *        the HTTP method/connection-type to use, must be one of: PUT, HEAD, GET, DELETE
+     *        the HTTP method/connection-type to use, must be one of: PUT, POST, HEAD, GET, DELETE
      * @param bucketName
      *        the bucket's name
 	 * @param objectKey
@@ -878,18 +1296,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         // Add additional request parameters to the URL for special cases (eg ACL operations)
         url = addRequestParametersToUrlPath(url, requestParameters);
 
-        HttpMethodBase httpMethod = null;
-        if ("PUT".equals(method)) {
-            httpMethod = new PutMethod(url);
-        } else if ("HEAD".equals(method)) {
-            httpMethod = new HeadMethod(url);
-        } else if ("GET".equals(method)) {
-            httpMethod = new GetMethod(url);            
-        } else if ("DELETE".equals(method)) {
-            httpMethod = new DeleteMethod(url);            
-        } else {
-            throw new IllegalArgumentException("Unrecognised HTTP method name: " + method);
-        }
+        HttpMethodBase httpMethod = httpTransport.createHttpMethod(method, url);
         
         // Set mandatory Request headers.
         if (httpMethod.getRequestHeader("Date") == null) {
@@ -937,7 +1344,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
     // Methods below this point implement S3Service abstract methods
     ////////////////////////////////////////////////////////////////    
     
-    public boolean isBucketAccessible(String bucketName) throws S3ServiceException {
+    protected boolean isBucketAccessibleImpl(String bucketName) throws S3ServiceException {
         if (log.isDebugEnabled()) {
             log.debug("Checking existence of bucket: " + bucketName);
         }
@@ -966,7 +1373,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
                 log.debug("Releasing un-wanted bucket HEAD response");
             }
             if (httpMethod != null) {
-                httpMethod.releaseConnection();
+                httpTransport.releaseConnection(httpMethod);
             }
         }
         
@@ -974,7 +1381,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         return true;
     }
     
-    public int checkBucketStatus(String bucketName) throws S3ServiceException {
+    protected int checkBucketStatusImpl(String bucketName) throws S3ServiceException {
         if (log.isDebugEnabled()) {
             log.debug("Checking availability of bucket name: " + bucketName);
         }
@@ -1014,7 +1421,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
                 log.debug("Releasing un-wanted bucket HEAD response");
             }
             if (httpMethod != null) {
-                httpMethod.releaseConnection();
+                httpTransport.releaseConnection(httpMethod);
             }
         }
         
@@ -1094,6 +1501,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         
         boolean incompleteListing = true;
         int ioErrorRetryCount = 0;
+        long ioErrorRetryDelayMs = 0;
             
         while (incompleteListing) {
             if (priorLastKey != null) {
@@ -1110,16 +1518,24 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
                     .parseListBucketObjectsResponse(
                         new HttpMethodReleaseInputStream(httpMethod));
                 ioErrorRetryCount = 0;
+                ioErrorRetryDelayMs = 0;
             } catch (S3ServiceException e) {
-                if (e.getCause() instanceof IOException && ioErrorRetryCount < 5) {
-                    ioErrorRetryCount++;
-                    if (log.isWarnEnabled()) {
-                        log.warn("Retrying bucket listing failure due to IO error", e);
-                    }
-                    continue;
-                } else {
+                if (!(e.getCause() instanceof IOException)) {
                     throw e;
                 }
+                try {
+                    ioErrorRetryDelayMs = sleepBeforeRetry(RetryPolicy.OPERATION_READ, 
+                        RetryPolicy.ERROR_IO, ++ioErrorRetryCount, ioErrorRetryDelayMs);
+                } catch (InterruptedException ie) {
+                    throw new S3ServiceException("Interrupted while retrying bucket listing", ie);
+                }
+                if (ioErrorRetryDelayMs < 0) {
+                    throw e;
+                }
+                if (log.isWarnEnabled()) {
+                    log.warn("Retrying bucket listing failure due to IO error", e);
+                }
+                continue;
             }
             
             S3Object[] partialObjects = listBucketHandler.getObjects();
@@ -1170,6 +1586,66 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         performRestDelete(bucketName, objectKey);
     }    
 
+    protected MultipleDeleteResult deleteMultipleObjectsImpl(String bucketName, String[] objectKeys,
+        boolean quiet) throws S3ServiceException 
+    {
+        if (log.isDebugEnabled()) {
+            log.debug("Deleting " + objectKeys.length + " objects from bucket " + bucketName 
+                + " with a multiple object delete request");
+        }
+        
+        HashMap requestParameters = new HashMap();
+        requestParameters.put("delete","");
+
+        StringBuffer deleteXml = new StringBuffer();
+        deleteXml.append("<Delete>");
+        if (quiet) {
+            deleteXml.append("<Quiet>true</Quiet>");
+        }
+        for (int i = 0; i < objectKeys.length; i++) {
+            deleteXml.append("<Object><Key>").append(RestUtils.encodeXmlString(objectKeys[i]))
+                .append("</Key></Object>");
+        }
+        deleteXml.append("</Delete>");
+        
+        HttpMethodBase httpMethod = null;
+        try {
+            byte[] deleteXmlData = deleteXml.toString().getBytes(Constants.DEFAULT_ENCODING);
+            
+            // S3 requires a Content-MD5 header for multiple object delete requests.
+            HashMap metadata = new HashMap();
+            metadata.put("Content-Type", "application/xml");
+            metadata.put("Content-MD5", ServiceUtils.toBase64(
+                ServiceUtils.computeMD5Hash(deleteXmlData)));
+            metadata.put("Content-Length", String.valueOf(deleteXmlData.length));
+
+            httpMethod = performRestPost(bucketName, null, metadata, requestParameters, 
+                new ByteArrayRequestEntity(deleteXmlData, "application/xml"));
+        } catch (S3ServiceException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new S3ServiceException("Unable to build multiple object delete request", e);
+        }
+        
+        MultipleDeleteResult result = (new XmlResponsesSaxParser()).parseMultipleDeleteResponse(
+            new HttpMethodReleaseInputStream(httpMethod));
+        
+        if (quiet) {
+            // In quiet mode S3 reports only the objects that could not be deleted.
+            HashSet failedObjectKeys = new HashSet();
+            MultipleDeleteResult.ErrorResult[] errorResults = result.getErrorResults();
+            for (int i = 0; i < errorResults.length; i++) {
+                failedObjectKeys.add(errorResults[i].getObjectKey());
+            }
+            for (int i = 0; i < objectKeys.length; i++) {
+                if (!failedObjectKeys.contains(objectKeys[i])) {
+                    result.addDeletedObjectKey(objectKeys[i]);
+                }
+            }
+        }
+        return result;
+    }
+
     protected AccessControlList getObjectAclImpl(String bucketName, String objectKey) throws S3ServiceException {
         if (log.isDebugEnabled()) {
             log.debug("Retrieving Access Control List for bucketName=" + bucketName + ", objectKkey=" + objectKey);
@@ -1263,6 +1739,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
     
     protected void deleteBucketImpl(String bucketName) throws S3ServiceException {
         performRestDelete(bucketName, null);
+        bucketEndpointCache.invalidate(bucketName);
     }    
     
     /**
@@ -1483,7 +1960,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         
         // Release HTTP connection manually. This should already have been done by the
         // HttpMethodReleaseInputStream class, but you can never be too sure...
-        methodAndByteCount.getHttpMethod().releaseConnection();
+        httpTransport.releaseConnection(methodAndByteCount.getHttpMethod());
         
         if (handler.isErrorResponse()) {
             throw new S3ServiceException(
@@ -1601,7 +2078,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
             if (log.isDebugEnabled()) {
                 log.debug("Releasing HttpMethod after HEAD");
             }
-            httpMethod.releaseConnection();
+            httpTransport.releaseConnection(httpMethod);
         }
         
         return responseObject;
@@ -1726,7 +2203,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
      * @throws S3ServiceException
      */
     public S3Object putObjectWithSignedUrl(String signedPutUrl, S3Object object) throws S3ServiceException {
-        PutMethod putMethod = new PutMethod(signedPutUrl);
+        PutMethod putMethod = (PutMethod) httpTransport.createHttpMethod("PUT", signedPutUrl);
         
         Map renamedMetadata = RestUtils.renameMetadataKeys(object.getMetadataMap());
         addMetadataToHeaders(putMethod, renamedMetadata);                
@@ -1753,7 +2230,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         performRequest(putMethod, 200);
 
         // Consume response data and release connection.
-        putMethod.releaseConnection();
+        httpTransport.releaseConnection(putMethod);
         
         // Confirm that the data was not corrupted in transit by checking S3's calculated 
         // hash value with the locally computed value. This is only necessary if the user
@@ -1820,11 +2297,11 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
      * @throws S3ServiceException
      */
     public void deleteObjectWithSignedUrl(String signedDeleteUrl) throws S3ServiceException {
-        DeleteMethod deleteMethod = new DeleteMethod(signedDeleteUrl);
+        HttpMethodBase deleteMethod = httpTransport.createHttpMethod("DELETE", signedDeleteUrl);
         
         performRequest(deleteMethod, 204);
 
-        deleteMethod.releaseConnection();
+        httpTransport.releaseConnection(deleteMethod);
     }
 
     /**
@@ -1882,7 +2359,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
     public AccessControlList getObjectAclWithSignedUrl(String signedAclUrl) 
 	    throws S3ServiceException 
 	{
-	    HttpMethodBase httpMethod = new GetMethod(signedAclUrl);        
+	    HttpMethodBase httpMethod = httpTransport.createHttpMethod("GET", signedAclUrl);        
         
         HashMap requestParameters = new HashMap();
         requestParameters.put("acl","");
@@ -1904,7 +2381,7 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
      * @throws S3ServiceException
      */
     public void putObjectAclWithSignedUrl(String signedAclUrl, AccessControlList acl) throws S3ServiceException {
-        PutMethod putMethod = new PutMethod(signedAclUrl);
+        PutMethod putMethod = (PutMethod) httpTransport.createHttpMethod("PUT", signedAclUrl);
         
         if (acl != null) {
             if (AccessControlList.REST_CANNED_PRIVATE.equals(acl)) {
@@ -1930,18 +2407,14 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
         performRequest(putMethod, 200);
 
         // Consume response data and release connection.
-        putMethod.releaseConnection();
+        httpTransport.releaseConnection(putMethod);
     }
     
     private S3Object getObjectWithSignedUrlImpl(String signedGetOrHeadUrl, boolean headOnly) 
         throws S3ServiceException 
     {
-        HttpMethodBase httpMethod = null;        
-        if (headOnly) {
-            httpMethod = new HeadMethod(signedGetOrHeadUrl);    
-        } else {
-            httpMethod = new GetMethod(signedGetOrHeadUrl);
-        }
+        HttpMethodBase httpMethod = httpTransport.createHttpMethod(
+            (headOnly ? "HEAD" : "GET"), signedGetOrHeadUrl);
         
         performRequest(httpMethod, 200);
 
@@ -1969,12 +2442,113 @@ public class RestS3Service extends S3Service implements SignedUrlHandler, AWSReq
             if (log.isDebugEnabled()) {
                 log.debug("Releasing HttpMethod after HEAD");
             }
-            httpMethod.releaseConnection();
+            httpTransport.releaseConnection(httpMethod);
         }
         
         return responseObject;
     }
     
+    /**
+     * Tracks the original and hedged requests for a single hedged GET or HEAD operation, and
+     * decides which of them wins. The first request to succeed wins; the other is aborted, and 
+     * if it had already succeeded its unused response is released. 
+     */
+    private class HedgedRequest {
+        private final HttpMethodBase primaryMethod;
+        private HttpMethodBase hedgeMethod = null;
+        private HttpMethodBase winningMethod = null;
+        private boolean isPrimaryDone = false;
+        private boolean isHedgeRunning = false;
+        private S3ServiceException primaryException = null;
+        private S3ServiceException hedgeException = null;
+        
+        public HedgedRequest(HttpMethodBase primaryMethod) {
+            this.primaryMethod = primaryMethod;
+        }
+
+        public synchronized boolean isPrimaryDone() {
+            return isPrimaryDone;
+        }
+        
+        /**
+         * @return
+         * true if the hedged request should be started, false if the original request
+         * has already finished.
+         */
+        public synchronized boolean startHedge(HttpMethodBase method) {
+            if (isPrimaryDone) {
+                return false;
+            }
+            hedgeMethod = method;
+            isHedgeRunning = true;
+            return true;
+        }
+        
+        public void performAttempt(HttpMethodBase method, int expectedStatusCode) {
+            long startTimeMS = System.currentTimeMillis();
+            S3ServiceException failure = null;
+            try {
+                performRequest(method, expectedStatusCode);
+                hedgedRequestPolicy.recordLatency(System.currentTimeMillis() - startTimeMS);
+            } catch (S3ServiceException e) {
+                failure = e;
+            }
+            
+            HttpMethodBase methodToAbort = null;
+            boolean isLoser = false;
+            synchronized (this) {
+                if (method == primaryMethod) {
+                    isPrimaryDone = true;
+                    primaryException = failure;
+                } else {
+                    isHedgeRunning = false;
+                    hedgeException = failure;
+                }
+                
+                if (failure == null) {
+                    if (winningMethod == null) {
+                        winningMethod = method;
+                        methodToAbort = (method == primaryMethod ? hedgeMethod : primaryMethod);
+                        if (method == hedgeMethod) {
+                            hedgedRequestPolicy.recordHedgeWon();
+                        }
+                    } else {
+                        isLoser = true;
+                    }
+                }
+                notifyAll();
+            }
+            
+            if (methodToAbort != null) {
+                // The other request may still be running in another thread, which will  
+                // release its connection when the abort interrupts it.
+                methodToAbort.abort();
+            }
+            if (isLoser) {
+                method.abort();
+                httpTransport.releaseConnection(method);
+            }
+        }
+        
+        public synchronized HttpMethodBase waitForResult() throws S3ServiceException {
+            while (winningMethod == null && (!isPrimaryDone || isHedgeRunning)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    primaryMethod.abort();
+                    if (hedgeMethod != null) {
+                        hedgeMethod.abort();
+                    }
+                    throw new S3ServiceException("Interrupted while waiting for hedged request", e);
+                }
+            }
+            if (winningMethod != null) {
+                return winningMethod;
+            }
+            throw (primaryException != null ? primaryException : hedgeException);
+        }
+    }
+    
     /**
      * Simple container object to store an HttpMethod object representing a request connection, and a 
      * count of the byte size of the S3 object associated with the request.
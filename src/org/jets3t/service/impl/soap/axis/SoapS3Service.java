@@ -399,7 +399,7 @@ public class SoapS3Service extends S3Service {
         return owner;
     }
 
-    public boolean isBucketAccessible(String bucketName) throws S3ServiceException {
+    protected boolean isBucketAccessibleImpl(String bucketName) throws S3ServiceException {
         if (log.isDebugEnabled()) {
         	log.debug("Checking existence of bucket: " + bucketName);
         }
@@ -421,7 +421,7 @@ public class SoapS3Service extends S3Service {
         }
     }
     
-    public int checkBucketStatus(String bucketName) throws S3ServiceException {
+    protected int checkBucketStatusImpl(String bucketName) throws S3ServiceException {
         throw new S3ServiceException("The method checkBucketStatus(String bucketName) "
             + "is not implemented in " + this.getClass().getName());
     }    
@@ -18,15 +18,18 @@
  */
 package org.jets3t.service.io;
 
-import java.util.Map;
-import java.util.TreeMap;
-
 /**
  * Utility class that tracks the number of bytes transferred from a source, and uses this 
  * information to calculate transfer rates and estimate end times. The watcher stores the 
  * number of bytes that will be transferred, the number of bytes that have been transferred
  * in the current session and the time this has taken, and the number of bytes and time taken
  * overal (eg for transfers that have been restarted).
+ * <p>
+ * Watchers are updated by the thread performing a transfer for every block of data, and are
+ * read by other threads to report progress, so updates do not allocate any objects and reads
+ * never block. The recent transfer rate is calculated from a fixed ring of per-second byte
+ * counts, and readers take a consistent snapshot of the ring without locking by checking that
+ * no update was in progress while they read it.
  * 
  * @author James Murty
  */
@@ -37,18 +40,35 @@ public class BytesProgressWatcher {
      */
     public static final int SECONDS_OF_HISTORY = 5;
     
-    private boolean isStarted = false;
+    /**
+     * The number of per-second slots in the history ring. One more slot than the seconds
+     * of history is kept so the slot for the current second never overwrites a second
+     * that may still be read.
+     */
+    private static final int HISTORY_RING_SIZE = SECONDS_OF_HISTORY + 1;
+    
+    private volatile boolean isStarted = false;
     private long bytesToTransfer = 0;
     
-    private long startTimeAllTransfersMS = -1;
-    private long totalBytesInAllTransfers = 0;
+    private volatile long startTimeAllTransfersMS = -1;
+    private volatile long totalBytesInAllTransfers = 0;
 
-    private long startTimeCurrentTransferMS = -1;
-    private long totalBytesInCurrentTransfer = 0;
-    private long endTimeCurrentTransferMS = -1;
+    private volatile long startTimeCurrentTransferMS = -1;
+    private volatile long totalBytesInCurrentTransfer = 0;
+    private volatile long endTimeCurrentTransferMS = -1;
 
-    private Map historyOfBytesBySecond = new TreeMap();
-    private long earliestHistorySecond = Long.MAX_VALUE;
+    /**
+     * The byte counts transferred in recent seconds, where each slot holds the count for the
+     * second recorded in the same slot of {@link #historySeconds}.
+     */
+    private final long[] historyBytes = new long[HISTORY_RING_SIZE];
+    private final long[] historySeconds = new long[HISTORY_RING_SIZE];
+    
+    /**
+     * Incremented before and after each update of the history ring, so the value is odd
+     * while an update is in progress. Readers use this to detect a torn snapshot.
+     */
+    private volatile int historyVersion = 0;
     
     /**
      * Construct a watcher for a transfer that will involve a given number of bytes.
@@ -58,6 +78,9 @@ public class BytesProgressWatcher {
      */
     public BytesProgressWatcher(long bytesToTransfer) {
         this.bytesToTransfer = bytesToTransfer;
+        for (int i = 0; i < HISTORY_RING_SIZE; i++) {
+            historySeconds[i] = -1;
+        }
     }
     
     /**
@@ -106,27 +129,18 @@ public class BytesProgressWatcher {
             endTimeCurrentTransferMS = System.currentTimeMillis();
         }
         
-        // Keep historical records of the byte counts transferred in a given second.
-        Long currentSecond = new Long(System.currentTimeMillis() / 1000);
-        Long bytesInSecond = (Long) historyOfBytesBySecond.get(currentSecond);
-        if (bytesInSecond != null) {
-            historyOfBytesBySecond.put(currentSecond, 
-                new Long(byteCount + bytesInSecond.longValue()));
+        // Keep historical records of the byte counts transferred in a given second. The slot
+        // for the current second is reset when it last held a second that is now too old.
+        long currentSecond = System.currentTimeMillis() / 1000;
+        int slot = (int) (currentSecond % HISTORY_RING_SIZE);
+        historyVersion++;
+        if (historySeconds[slot] != currentSecond) {
+            historySeconds[slot] = currentSecond;
+            historyBytes[slot] = byteCount;
         } else {
-            historyOfBytesBySecond.put(currentSecond, new Long(byteCount));            
+            historyBytes[slot] += byteCount;
         }
-
-        // Remember the earliest second value for which we have historical info.
-        if (currentSecond.longValue() < earliestHistorySecond) {
-            earliestHistorySecond = currentSecond.longValue();
-        }
-
-        // Remove any history records we are no longer interested in.
-        long removeHistoryBeforeSecond = currentSecond.longValue() - SECONDS_OF_HISTORY;
-        for (long sec = earliestHistorySecond; sec < removeHistoryBeforeSecond; sec++) {
-            historyOfBytesBySecond.remove(new Long(sec));
-        }
-        earliestHistorySecond = removeHistoryBeforeSecond;
+        historyVersion++;
     }
     
     /**
@@ -165,7 +179,7 @@ public class BytesProgressWatcher {
      * the byte rate (per second) based on the historical information for the last
      * {@link #SECONDS_OF_HISTORY} seconds before the current time. 
      */
-    public synchronized double getRecentByteRatePerSecond() {
+    public double getRecentByteRatePerSecond() {
         if (!isStarted) {
             return 0;
         }
@@ -178,20 +192,31 @@ public class BytesProgressWatcher {
         
         if (currentSecond - SECONDS_OF_HISTORY > endSecond) {
             // This item finished too long ago, ignore it now.
-            historyOfBytesBySecond.clear();
             return 0;
         }
 
-        // Count the number of bytes transferred from SECONDS_OF_HISTORY ago to the second before now.
+        // Count the number of bytes transferred from SECONDS_OF_HISTORY ago to the second before now,
+        // re-reading the history ring if it was updated while we were reading it.
         long sumOfBytes = 0;
         long numberOfSecondsInHistory = 0;
-        for (long sec = startSecond; sec <= endSecond; sec++) {            
-            numberOfSecondsInHistory++;
-            Long bytesInSecond = (Long) historyOfBytesBySecond.get(new Long(sec));
-            if (bytesInSecond != null) {
-                sumOfBytes += bytesInSecond.longValue();
+        int version = 0;
+        do {
+            version = historyVersion;
+            while ((version & 1) != 0) {
+                Thread.yield();
+                version = historyVersion;
             }
-        }
+            sumOfBytes = 0;
+            numberOfSecondsInHistory = 0;
+            for (long sec = startSecond; sec <= endSecond; sec++) {            
+                numberOfSecondsInHistory++;
+                int slot = (int) (sec % HISTORY_RING_SIZE);
+                if (historySeconds[slot] == sec) {
+                    sumOfBytes += historyBytes[slot];
+                }
+            }
+        } while (version != historyVersion);
+        
         return (numberOfSecondsInHistory == 0
             ? 0
             : (double)sumOfBytes / numberOfSecondsInHistory);
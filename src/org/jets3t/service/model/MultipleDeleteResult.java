@@ -0,0 +1,105 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a multiple object delete request, performed by 
+ * {@link org.jets3t.service.S3Service#deleteMultipleObjects(String, String[], boolean)}, 
+ * listing the keys of the objects that were deleted and the errors that prevented other
+ * objects from being deleted.
+ * 
+ * @author James Murty
+ */
+public class MultipleDeleteResult {
+    private final List deletedObjectKeys = new ArrayList();
+    private final List errorResults = new ArrayList();
+    
+    /**
+     * The error that prevented one object from being deleted.
+     */
+    public static class ErrorResult {
+        private String objectKey = null;
+        private String errorCode = null;
+        private String message = null;
+        
+        public ErrorResult(String objectKey, String errorCode, String message) {
+            this.objectKey = objectKey;
+            this.errorCode = errorCode;
+            this.message = message;
+        }
+
+        public String getObjectKey() {
+            return objectKey;
+        }
+
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+        
+        public String toString() {
+            return "ErrorResult [key=" + objectKey + ", code=" + errorCode 
+                + ", message=" + message + "]";
+        }
+    }
+    
+    public void addDeletedObjectKey(String objectKey) {
+        deletedObjectKeys.add(objectKey);
+    }
+    
+    public void addErrorResult(ErrorResult errorResult) {
+        errorResults.add(errorResult);
+    }
+    
+    /**
+     * @return
+     * the keys of the objects that were deleted.
+     */
+    public String[] getDeletedObjectKeys() {
+        return (String[]) deletedObjectKeys.toArray(new String[deletedObjectKeys.size()]);
+    }
+    
+    /**
+     * @return
+     * the errors that prevented objects from being deleted.
+     */
+    public ErrorResult[] getErrorResults() {
+        return (ErrorResult[]) errorResults.toArray(new ErrorResult[errorResults.size()]);
+    }
+    
+    /**
+     * @return
+     * true if any of the objects could not be deleted.
+     */
+    public boolean hasErrors() {
+        return errorResults.size() > 0;
+    }
+    
+    public String toString() {
+        return "MultipleDeleteResult [deleted=" + deletedObjectKeys.size() 
+            + ", errors=" + errorResults + "]";
+    }
+
+}
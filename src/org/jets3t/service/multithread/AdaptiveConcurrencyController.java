@@ -0,0 +1,341 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3Service;
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.mx.MxDelegate;
+import org.jets3t.service.retry.RetryMetrics;
+import org.jets3t.service.retry.RetryPolicy;
+
+/**
+ * Adjusts the number of tasks {@link S3ServiceMulti} performs at once, within configured bounds,
+ * based on how S3 responds.
+ * <p>
+ * The controller follows an additive increase, multiplicative decrease scheme. Each task that
+ * completes without a sign of congestion raises the limit by a fraction, so that the limit
+ * grows by one for every limit's worth of completed tasks. When S3 asks clients to slow down,
+ * with a 503 Service Unavailable or SlowDown response or an internal error, the limit is cut
+ * by a factor. It is cut at most once per typical task duration, so the responses to one
+ * burst of requests only count as one congestion event. Throttling responses are detected in
+ * failed task results and in the service's {@link RetryMetrics}, which also count responses
+ * that were retried successfully.
+ * <p>
+ * The controller tracks the latency of each task and the overall task throughput. Optionally,
+ * latency that grows well beyond the best recent latency can also be treated as congestion.
+ * This is off by default, because when object sizes vary latency reflects object size more
+ * than congestion.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>s3service.adaptive-concurrency-enabled</td><td>false</td></tr>
+ * <tr><td>s3service.adaptive-concurrency-min</td><td>1</td></tr>
+ * <tr><td>s3service.adaptive-concurrency-max</td><td>httpclient.max-connections</td></tr>
+ * <tr><td>s3service.adaptive-concurrency-initial</td><td>s3service.max-thread-count</td></tr>
+ * <tr><td>s3service.adaptive-concurrency-decrease-factor</td><td>0.5</td></tr>
+ * <tr><td>s3service.adaptive-concurrency-latency-tolerance</td><td>0 (disabled)</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class AdaptiveConcurrencyController {
+    private static final Log log = LogFactory.getLog(AdaptiveConcurrencyController.class);
+
+    /**
+     * The controller of each service, so all the multi-threaded services built on one
+     * service share what they learn about how S3 responds.
+     */
+    private static final Map serviceInstances = new WeakHashMap();
+
+    /**
+     * Weight given to each new latency sample in the smoothed latency.
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * The rate at which the best latency drifts towards the smoothed latency, so an
+     * unusually fast early sample does not set the baseline forever.
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private static final long THROUGHPUT_WINDOW_MS = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double decreaseFactor;
+    private final double latencyTolerance;
+    private final RetryMetrics retryMetrics;
+
+    private double limit = 0;
+    private double smoothedLatencyMs = -1;
+    private double baselineLatencyMs = -1;
+    private long lastThrottleCount = 0;
+    private long lastDecreaseTimeMS = 0;
+
+    private long completedTaskCount = 0;
+    private long throttledTaskCount = 0;
+    private long increaseCount = 0;
+    private long decreaseCount = 0;
+
+    private long throughputWindowStartMS = System.currentTimeMillis();
+    private long throughputWindowTasks = 0;
+    private double tasksPerSecond = 0;
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the controller.
+     * @param retryMetrics
+     * the retry metrics of the service performing the tasks, used to notice throttling
+     * responses that were retried. May be null.
+     */
+    public AdaptiveConcurrencyController(Jets3tProperties jets3tProperties, RetryMetrics retryMetrics) {
+        this(jets3tProperties.getIntProperty("s3service.adaptive-concurrency-min", 1),
+            jets3tProperties.getIntProperty("s3service.adaptive-concurrency-max",
+                jets3tProperties.getIntProperty("httpclient.max-connections", 4)),
+            jets3tProperties.getIntProperty("s3service.adaptive-concurrency-initial",
+                jets3tProperties.getIntProperty("s3service.max-thread-count", 4)),
+            getDoubleProperty(jets3tProperties,
+                "s3service.adaptive-concurrency-decrease-factor", 0.5),
+            getDoubleProperty(jets3tProperties,
+                "s3service.adaptive-concurrency-latency-tolerance", 0),
+            retryMetrics);
+    }
+
+    /**
+     * @param minLimit
+     * the lowest concurrency limit.
+     * @param maxLimit
+     * the highest concurrency limit.
+     * @param initialLimit
+     * the limit to start with.
+     * @param decreaseFactor
+     * the factor, between 0 and 1, by which the limit is multiplied when congestion is detected.
+     * @param latencyTolerance
+     * the ratio of smoothed latency to the best recent latency above which latency is treated
+     * as congestion, or 0 to ignore latency.
+     * @param retryMetrics
+     * the retry metrics of the service performing the tasks. May be null.
+     */
+    public AdaptiveConcurrencyController(int minLimit, int maxLimit, int initialLimit,
+        double decreaseFactor, double latencyTolerance, RetryMetrics retryMetrics)
+    {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.decreaseFactor = Math.min(Math.max(decreaseFactor, 0.1), 0.95);
+        this.latencyTolerance = latencyTolerance;
+        this.retryMetrics = retryMetrics;
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.lastThrottleCount = getThrottleCount();
+    }
+
+    /**
+     * @param s3Service
+     * the service that will perform the tasks, whose properties configure the controller if it
+     * has not been created yet.
+     * @return
+     * the controller shared by all tasks performed with the service.
+     */
+    public static synchronized AdaptiveConcurrencyController getServiceInstance(S3Service s3Service) {
+        AdaptiveConcurrencyController controller = 
+            (AdaptiveConcurrencyController) serviceInstances.get(s3Service);
+        if (controller == null) {
+            controller = new AdaptiveConcurrencyController(
+                s3Service.getJetS3tProperties(), s3Service.getRetryMetrics());
+            serviceInstances.put(s3Service, controller);
+        }
+        return controller;
+    }
+
+    private static double getDoubleProperty(Jets3tProperties jets3tProperties,
+        String propertyName, double defaultValue)
+    {
+        String value = jets3tProperties.getStringProperty(propertyName, String.valueOf(defaultValue));
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Invalid value '" + value + "' for property " + propertyName
+                    + ", using the default " + defaultValue);
+            }
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return
+     * the number of tasks that may currently be performed at once.
+     */
+    public synchronized int getConcurrencyLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Records the completion of a task, and adjusts the concurrency limit accordingly.
+     *
+     * @param latencyMs
+     * how long the task took.
+     * @param result
+     * the task's result, which is examined for throttling errors.
+     */
+    public void recordTaskCompleted(long latencyMs, Object result) {
+        long throttleCount = getThrottleCount();
+        int previousLimit = 0;
+        int newLimit = 0;
+        synchronized (this) {
+            previousLimit = (int) limit;
+            long now = System.currentTimeMillis();
+            completedTaskCount++;
+            updateThroughput(now);
+            updateLatency(latencyMs);
+
+            boolean isThrottled = isThrottlingResult(result) || throttleCount > lastThrottleCount;
+            lastThrottleCount = Math.max(lastThrottleCount, throttleCount);
+            if (isThrottled) {
+                throttledTaskCount++;
+            }
+            boolean isLatencyCongested = latencyTolerance > 0 && baselineLatencyMs > 0
+                && smoothedLatencyMs > baselineLatencyMs * latencyTolerance;
+
+            if (isThrottled || isLatencyCongested) {
+                // Decrease at most once per typical task duration.
+                if (now - lastDecreaseTimeMS > Math.max(smoothedLatencyMs, 100)) {
+                    limit = Math.max(minLimit, limit * decreaseFactor);
+                    lastDecreaseTimeMS = now;
+                    decreaseCount++;
+                }
+            } else if (limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+                if ((int) limit > previousLimit) {
+                    increaseCount++;
+                }
+            }
+            newLimit = (int) limit;
+        }
+        if (newLimit != previousLimit) {
+            MxDelegate.getInstance().registerConcurrencyLimitChangeEvent(newLimit);
+        }
+    }
+
+    private void updateLatency(long latencyMs) {
+        if (smoothedLatencyMs < 0) {
+            smoothedLatencyMs = latencyMs;
+            baselineLatencyMs = latencyMs;
+            return;
+        }
+        smoothedLatencyMs += (latencyMs - smoothedLatencyMs) * LATENCY_SMOOTHING;
+        if (smoothedLatencyMs < baselineLatencyMs) {
+            baselineLatencyMs = smoothedLatencyMs;
+        } else {
+            baselineLatencyMs += (smoothedLatencyMs - baselineLatencyMs) * BASELINE_DRIFT;
+        }
+    }
+
+    private void updateThroughput(long now) {
+        throughputWindowTasks++;
+        long elapsedMS = now - throughputWindowStartMS;
+        if (elapsedMS >= THROUGHPUT_WINDOW_MS) {
+            tasksPerSecond = throughputWindowTasks * 1000.0 / elapsedMS;
+            throughputWindowTasks = 0;
+            throughputWindowStartMS = now;
+        }
+    }
+
+    /**
+     * @return
+     * true if a task's result is an error showing that S3 is throttling requests.
+     */
+    protected boolean isThrottlingResult(Object result) {
+        if (!(result instanceof S3ServiceException)) {
+            return false;
+        }
+        S3ServiceException e = (S3ServiceException) result;
+        return e.getResponseCode() == 503 || "SlowDown".equals(e.getS3ErrorCode());
+    }
+
+    /**
+     * @return
+     * the number of server unavailable responses the service has seen, whether retried or not.
+     */
+    private long getThrottleCount() {
+        if (retryMetrics == null) {
+            return 0;
+        }
+        int errorType = RetryPolicy.ERROR_SERVER_UNAVAILABLE;
+        return retryMetrics.getRetriesTaken(errorType)
+            + retryMetrics.getRetriesRefusedByPolicy(errorType)
+            + retryMetrics.getRetriesRefusedByBudget(errorType);
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return
+     * the smoothed latency of recent tasks in milliseconds, or -1 if no task has completed.
+     */
+    public synchronized long getSmoothedLatencyMs() {
+        return (long) smoothedLatencyMs;
+    }
+
+    /**
+     * @return
+     * the number of tasks completed per second, measured over the last complete second.
+     */
+    public synchronized double getTasksPerSecond() {
+        return tasksPerSecond;
+    }
+
+    public synchronized long getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    public synchronized long getThrottledTaskCount() {
+        return throttledTaskCount;
+    }
+
+    public synchronized long getIncreaseCount() {
+        return increaseCount;
+    }
+
+    public synchronized long getDecreaseCount() {
+        return decreaseCount;
+    }
+
+    public synchronized String toString() {
+        return "AdaptiveConcurrencyController [limit=" + (int) limit
+            + ", bounds=" + minLimit + "-" + maxLimit
+            + ", latencyMs=" + (long) smoothedLatencyMs
+            + ", tasksPerSecond=" + (long) tasksPerSecond
+            + ", throttled=" + throttledTaskCount
+            + ", increases=" + increaseCount + ", decreases=" + decreaseCount + "]";
+    }
+
+}
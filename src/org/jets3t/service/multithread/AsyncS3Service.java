@@ -0,0 +1,347 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3Service;
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.impl.rest.httpclient.RestS3Service;
+import org.jets3t.service.model.S3Object;
+
+/**
+ * S3 service wrapper that performs individual S3 operations asynchronously, returning an
+ * {@link S3ServiceFuture} for each operation instead of blocking the caller.
+ * <p>
+ * Operations are performed by a fixed pool of worker threads using an underlying thread-safe
+ * {@link S3Service}, so they use the service's request signing and retry behaviour. Operations
+ * waiting for a worker are held in a bounded queue: once the queue is full, methods that start
+ * operations block until there is room, which limits the number of operations in flight.
+ * <p>
+ * Unlike {@link S3ServiceMulti}, which performs batches of similar operations and reports
+ * their progress with events, this class is suited to applications that need to combine
+ * single S3 operations with other work. Callers can wait for results with
+ * {@link S3ServiceFuture#get()}, or register a {@link S3ServiceFutureListener} to be notified
+ * when an operation finishes. Cancelling an operation in progress aborts its HTTP request
+ * when the underlying service is a {@link RestS3Service}.
+ * <p>
+ * This class uses the following properties when its pool sizes are not given explicitly:
+ * <table>
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>s3service.max-thread-count</td><td>4</td></tr>
+ * <tr><td>s3service.async-max-queued-operations</td><td>100</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class AsyncS3Service {
+    private static final Log log = LogFactory.getLog(AsyncS3Service.class);
+
+    private final S3Service s3Service;
+    private final BoundedBlockingQueue operationQueue;
+    private final Thread[] workerThreads;
+
+    /**
+     * An operation waiting to be performed by a worker thread.
+     */
+    private abstract class AsyncOperation {
+        private final S3ServiceFuture future;
+
+        public AsyncOperation(String description) {
+            this.future = new S3ServiceFuture(description);
+        }
+
+        public S3ServiceFuture getFuture() {
+            return future;
+        }
+
+        /**
+         * Performs the operation using the underlying service.
+         *
+         * @return
+         * the operation's result.
+         */
+        public abstract Object perform() throws S3ServiceException;
+    }
+
+    /**
+     * Construct an asynchronous service based on an S3Service, with a worker pool configured
+     * by the service's JetS3t properties.
+     *
+     * @param s3Service
+     * an S3Service implementation that will be used to perform S3 requests. This implementation
+     * <b>must</b> be thread-safe.
+     */
+    public AsyncS3Service(S3Service s3Service) {
+        this(s3Service,
+            s3Service.getJetS3tProperties().getIntProperty("s3service.max-thread-count", 4),
+            s3Service.getJetS3tProperties().getIntProperty("s3service.async-max-queued-operations", 100));
+    }
+
+    /**
+     * Construct an asynchronous service based on an S3Service.
+     *
+     * @param s3Service
+     * an S3Service implementation that will be used to perform S3 requests. This implementation
+     * <b>must</b> be thread-safe.
+     * @param threadCount
+     * the number of worker threads that perform operations.
+     * @param maxQueuedOperations
+     * the maximum number of operations that may be waiting for a worker thread before methods
+     * that start new operations will block.
+     */
+    public AsyncS3Service(S3Service s3Service, int threadCount, int maxQueuedOperations) {
+        this.s3Service = s3Service;
+        this.operationQueue = new BoundedBlockingQueue(Math.max(1, maxQueuedOperations));
+        this.workerThreads = new Thread[Math.max(1, threadCount)];
+        for (int i = 0; i < workerThreads.length; i++) {
+            workerThreads[i] = new Thread(new Runnable() {
+                public void run() {
+                    runWorker();
+                }
+            }, "jets3t-async-" + (i + 1));
+            workerThreads[i].setDaemon(true);
+            workerThreads[i].start();
+        }
+    }
+
+    /**
+     * @return
+     * the underlying service used to perform S3 requests.
+     */
+    public S3Service getS3Service() {
+        return s3Service;
+    }
+
+    /**
+     * Performs queued operations until the queue is closed and empty.
+     */
+    private void runWorker() {
+        try {
+            AsyncOperation operation = null;
+            while ((operation = (AsyncOperation) operationQueue.take()) != null) {
+                performOperation(operation);
+            }
+        } catch (InterruptedException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Asynchronous service worker thread was interrupted", e);
+            }
+        }
+    }
+
+    private void performOperation(AsyncOperation operation) {
+        S3ServiceFuture future = operation.getFuture();
+        if (future.isDone()) {
+            // Operation was cancelled before it started.
+            return;
+        }
+
+        RestS3Service.setThreadHttpMethodAborter(future.getAborter());
+        try {
+            Object result = operation.perform();
+            if (!future.complete(result)) {
+                releaseUnusedResult(result);
+            }
+        } catch (S3ServiceException e) {
+            future.fail(e);
+        } catch (RuntimeException e) {
+            future.fail(new S3ServiceException("Asynchronous operation failed", e));
+        } finally {
+            RestS3Service.setThreadHttpMethodAborter(null);
+        }
+    }
+
+    /**
+     * Closes the data stream of an object retrieved by an operation that was cancelled
+     * while it was in progress, which releases the underlying HTTP connection.
+     */
+    private void releaseUnusedResult(Object result) {
+        if (result instanceof S3Object) {
+            try {
+                ((S3Object) result).closeDataInputStream();
+            } catch (IOException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Unable to close data stream of cancelled operation's object", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues an operation, waiting for room in the queue if it is full.
+     */
+    private S3ServiceFuture submit(AsyncOperation operation) {
+        S3ServiceFuture future = operation.getFuture();
+        try {
+            if (!operationQueue.put(operation)) {
+                future.fail(new S3ServiceException(
+                    "Asynchronous service has been shut down, operation was not performed"));
+            }
+        } catch (InterruptedException e) {
+            future.fail(new S3ServiceException(
+                "Interrupted while waiting to queue asynchronous operation", e));
+        }
+        return future;
+    }
+
+    /**
+     * Retrieves an object, including its data.
+     *
+     * @param bucketName
+     * the name of the bucket containing the object.
+     * @param objectKey
+     * the key identifying the object.
+     * @return
+     * a future whose result is the {@link S3Object}, with an open data input stream
+     * that the caller must close.
+     */
+    public S3ServiceFuture getObject(final String bucketName, final String objectKey) {
+        return submit(new AsyncOperation("GET " + bucketName + "/" + objectKey) {
+            public Object perform() throws S3ServiceException {
+                return s3Service.getObject(bucketName, objectKey, null, null, null, null, null, null);
+            }
+        });
+    }
+
+    /**
+     * Retrieves an object's details, without its data.
+     *
+     * @param bucketName
+     * the name of the bucket containing the object.
+     * @param objectKey
+     * the key identifying the object.
+     * @return
+     * a future whose result is the {@link S3Object}.
+     */
+    public S3ServiceFuture getObjectDetails(final String bucketName, final String objectKey) {
+        return submit(new AsyncOperation("HEAD " + bucketName + "/" + objectKey) {
+            public Object perform() throws S3ServiceException {
+                return s3Service.getObjectDetails(bucketName, objectKey, null, null, null, null);
+            }
+        });
+    }
+
+    /**
+     * Stores an object.
+     *
+     * @param bucketName
+     * the name of the bucket in which the object will be stored.
+     * @param object
+     * the object to store.
+     * @return
+     * a future whose result is the {@link S3Object} as stored in S3.
+     */
+    public S3ServiceFuture putObject(final String bucketName, final S3Object object) {
+        return submit(new AsyncOperation("PUT " + bucketName + "/" + object.getKey()) {
+            public Object perform() throws S3ServiceException {
+                return s3Service.putObject(bucketName, object);
+            }
+        });
+    }
+
+    /**
+     * Deletes an object.
+     *
+     * @param bucketName
+     * the name of the bucket containing the object.
+     * @param objectKey
+     * the key identifying the object.
+     * @return
+     * a future with a null result.
+     */
+    public S3ServiceFuture deleteObject(final String bucketName, final String objectKey) {
+        return submit(new AsyncOperation("DELETE " + bucketName + "/" + objectKey) {
+            public Object perform() throws S3ServiceException {
+                s3Service.deleteObject(bucketName, objectKey);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Copies an object within S3.
+     *
+     * @param sourceBucketName
+     * the name of the bucket containing the source object.
+     * @param sourceObjectKey
+     * the key of the source object.
+     * @param destinationBucketName
+     * the name of the bucket in which the copy will be stored.
+     * @param destinationObject
+     * the object that will be created by the copy.
+     * @param replaceMetadata
+     * if true, the copy is given the metadata of the destination object, otherwise it
+     * retains the source object's metadata.
+     * @return
+     * a future whose result is the map of copy result details returned by
+     * {@link S3Service#copyObject(String, String, String, S3Object, boolean)}.
+     */
+    public S3ServiceFuture copyObject(final String sourceBucketName, final String sourceObjectKey,
+        final String destinationBucketName, final S3Object destinationObject,
+        final boolean replaceMetadata)
+    {
+        return submit(new AsyncOperation("COPY " + sourceBucketName + "/" + sourceObjectKey
+            + " to " + destinationBucketName + "/" + destinationObject.getKey())
+        {
+            public Object perform() throws S3ServiceException {
+                return s3Service.copyObject(sourceBucketName, sourceObjectKey,
+                    destinationBucketName, destinationObject, replaceMetadata);
+            }
+        });
+    }
+
+    /**
+     * Lists one chunk of the objects in a bucket.
+     *
+     * @param bucketName
+     * the name of the bucket to list.
+     * @param prefix
+     * only objects with a key that starts with this prefix will be listed, may be null.
+     * @param delimiter
+     * only list objects with key names up to this delimiter, may be null.
+     * @param maxListingLength
+     * the maximum number of objects to include in the chunk.
+     * @param priorLastKey
+     * the last object key received in a prior chunk, or null to list from the start.
+     * @return
+     * a future whose result is the {@link org.jets3t.service.S3ObjectsChunk}.
+     */
+    public S3ServiceFuture listObjectsChunked(final String bucketName, final String prefix,
+        final String delimiter, final long maxListingLength, final String priorLastKey)
+    {
+        return submit(new AsyncOperation("LIST " + bucketName + "/" + (prefix != null ? prefix : "")) {
+            public Object perform() throws S3ServiceException {
+                return s3Service.listObjectsChunked(bucketName, prefix, delimiter,
+                    maxListingLength, priorLastKey);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new operations. Operations already queued are still performed, after
+     * which the worker threads exit.
+     */
+    public void shutdown() {
+        operationQueue.close();
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+import java.util.Collection;
+import java.util.LinkedList;
+
+/**
+ * A first-in first-out queue with a fixed capacity, used to pass work items between
+ * threads that act as the stages of a processing pipeline.
+ * <p>
+ * Producers block in {@link #put(Object)} while the queue is full, and consumers block
+ * in {@link #take()} or {@link #drainTo(Collection, int)} while it is empty. This provides
+ * back-pressure between stages: a fast stage can never get more than the queue's capacity
+ * ahead of a slower stage that follows it.
+ * <p>
+ * A producer signals that it has no more items by calling {@link #close()}. Once a closed
+ * queue has been drained, consumers receive a null (or zero count) result instead of
+ * blocking. A queue can also be aborted with {@link #abort()}, which discards any pending
+ * items and releases all blocked producers and consumers immediately.
+ *
+ * @author James Murty
+ */
+public class BoundedBlockingQueue {
+    private final LinkedList items = new LinkedList();
+    private final int capacity;
+    private boolean closed = false;
+    private boolean aborted = false;
+
+    /**
+     * @param capacity
+     * the maximum number of items the queue will hold before producers are blocked.
+     * This value must be at least 1.
+     */
+    public BoundedBlockingQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds an item to the end of the queue, waiting for space to become available if
+     * the queue is full.
+     *
+     * @param item
+     * the item to add, which must not be null.
+     *
+     * @return
+     * true if the item was added, false if the queue has been closed or aborted and the
+     * item was not added.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized boolean put(Object item) throws InterruptedException {
+        if (item == null) {
+            throw new IllegalArgumentException("Null items cannot be added to the queue");
+        }
+        while (!closed && !aborted && items.size() >= capacity) {
+            wait();
+        }
+        if (closed || aborted) {
+            return false;
+        }
+        items.addLast(item);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Removes the item at the head of the queue, waiting for an item to become available
+     * if the queue is empty.
+     *
+     * @return
+     * the item at the head of the queue, or null if the queue has been closed and
+     * has no more items, or has been aborted.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized Object take() throws InterruptedException {
+        while (!closed && !aborted && items.isEmpty()) {
+            wait();
+        }
+        if (aborted || items.isEmpty()) {
+            return null;
+        }
+        Object item = items.removeFirst();
+        notifyAll();
+        return item;
+    }
+
+    /**
+     * Removes up to <code>maxItems</code> items from the head of the queue and adds them
+     * to the given collection. This method waits until at least one item is available,
+     * but does not wait for the queue to fill up.
+     *
+     * @param target
+     * the collection to which removed items are added.
+     * @param maxItems
+     * the maximum number of items to remove.
+     *
+     * @return
+     * the number of items removed, which will be zero only if the queue has been closed and
+     * has no more items, or has been aborted.
+     *
+     * @throws InterruptedException
+     */
+    public int drainTo(Collection target, int maxItems) throws InterruptedException {
+        return drainTo(target, 1, maxItems, 0);
+    }
+
+    /**
+     * Removes up to <code>maxItems</code> items from the head of the queue and adds them
+     * to the given collection. This method waits until at least one item is available, then
+     * waits up to <code>maxWaitMS</code> milliseconds more for at least <code>minItems</code>
+     * items to become available, so consumers that process items in batches are not handed
+     * a series of tiny batches by a producer that is only slightly slower than they are.
+     *
+     * @param target
+     * the collection to which removed items are added.
+     * @param minItems
+     * the number of items to wait for before returning, unless the wait time expires or the
+     * queue is closed.
+     * @param maxItems
+     * the maximum number of items to remove.
+     * @param maxWaitMS
+     * the maximum number of milliseconds to wait for <code>minItems</code> items once the
+     * first item is available.
+     *
+     * @return
+     * the number of items removed, which will be zero only if the queue has been closed and
+     * has no more items, or has been aborted.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized int drainTo(Collection target, int minItems, int maxItems, long maxWaitMS)
+        throws InterruptedException
+    {
+        while (!closed && !aborted && items.isEmpty()) {
+            wait();
+        }
+        minItems = Math.min(minItems, Math.min(maxItems, capacity));
+        long endTimeMS = System.currentTimeMillis() + maxWaitMS;
+        long remainingMS = maxWaitMS;
+        while (!closed && !aborted && items.size() < minItems && remainingMS > 0) {
+            wait(remainingMS);
+            remainingMS = endTimeMS - System.currentTimeMillis();
+        }
+        if (aborted) {
+            return 0;
+        }
+        int count = 0;
+        while (count < maxItems && !items.isEmpty()) {
+            target.add(items.removeFirst());
+            count++;
+        }
+        notifyAll();
+        return count;
+    }
+
+    /**
+     * Flags that no more items will be added to the queue. Items already in the queue
+     * remain available to consumers.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Discards all items in the queue and releases any producers or consumers that are
+     * waiting on it. Once aborted, a queue will not accept or return any more items.
+     */
+    public synchronized void abort() {
+        aborted = true;
+        items.clear();
+        notifyAll();
+    }
+
+    /**
+     * @return
+     * true if the queue has been aborted.
+     */
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return
+     * the number of items currently waiting in the queue.
+     */
+    public synchronized int size() {
+        return items.size();
+    }
+
+    /**
+     * @return
+     * the maximum number of items the queue will hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jets3t.service.Jets3tProperties;
+
+/**
+ * Limits the total number of tasks performed at once by all the {@link S3ServiceMulti}
+ * operations that share it, however many service objects start those operations.
+ * <p>
+ * Each operation registers with the governor and asks for a permit before starting each task,
+ * returning the permit when the task finishes. Permits are granted as follows:
+ * <ul>
+ * <li>No more than the governor's maximum number of tasks are in flight at once.</li>
+ * <li>An operation waiting for a permit is served before any operation of a lower priority,
+ * so interactive work overtakes background work.</li>
+ * <li>Operations of the same priority share the permits equally: an operation that already
+ * has its fair share of tasks in flight is refused while another operation of that priority
+ * is waiting.</li>
+ * </ul>
+ * A process-wide governor is shared by every S3ServiceMulti when the property
+ * <code>s3service.governor-enabled</code> is true, with a maximum set by the property
+ * <code>s3service.governor-max-in-flight</code> (default <code>httpclient.max-connections</code>).
+ * A governor can also be shared explicitly, for example by the services using one S3Service,
+ * with {@link S3ServiceMulti#setConcurrencyGovernor(ConcurrencyGovernor)}.
+ *
+ * @author James Murty
+ */
+public class ConcurrencyGovernor {
+    public static final int PRIORITY_BACKGROUND = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_INTERACTIVE = 2;
+
+    private static ConcurrencyGovernor processInstance = null;
+
+    private final int maxInFlight;
+    private final List operations = new ArrayList();
+    private int inFlight = 0;
+
+    /**
+     * An operation registered with a governor.
+     */
+    public static class Operation {
+        private final String description;
+        private final int priority;
+        private int inFlight = 0;
+        private boolean isWaiting = false;
+
+        private Operation(String description, int priority) {
+            this.description = description;
+            this.priority = priority;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public String toString() {
+            return description + " [priority=" + priority + ", inFlight=" + inFlight
+                + ", waiting=" + isWaiting + "]";
+        }
+    }
+
+    /**
+     * @param maxInFlight
+     * the maximum number of tasks that may be in flight at once.
+     */
+    public ConcurrencyGovernor(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the governor's maximum number of tasks.
+     */
+    public ConcurrencyGovernor(Jets3tProperties jets3tProperties) {
+        this(jets3tProperties.getIntProperty("s3service.governor-max-in-flight",
+            jets3tProperties.getIntProperty("httpclient.max-connections", 4)));
+    }
+
+    /**
+     * @param jets3tProperties
+     * the properties used to configure the governor if it has not been created yet.
+     * @return
+     * the governor shared by the whole process.
+     */
+    public static synchronized ConcurrencyGovernor getProcessInstance(Jets3tProperties jets3tProperties) {
+        if (processInstance == null) {
+            processInstance = new ConcurrencyGovernor(jets3tProperties);
+        }
+        return processInstance;
+    }
+
+    /**
+     * Converts a priority name, as used in the property <code>s3service.task-priority</code>,
+     * to a priority value.
+     *
+     * @param priorityName
+     * one of <code>background</code>, <code>normal</code> or <code>interactive</code>.
+     * @return
+     * the priority, which is {@link #PRIORITY_NORMAL} if the name is not recognised.
+     */
+    public static int parsePriority(String priorityName) {
+        if ("background".equalsIgnoreCase(priorityName)) {
+            return PRIORITY_BACKGROUND;
+        } else if ("interactive".equalsIgnoreCase(priorityName)) {
+            return PRIORITY_INTERACTIVE;
+        }
+        return PRIORITY_NORMAL;
+    }
+
+    /**
+     * Registers an operation that will ask for permits.
+     *
+     * @param description
+     * a description of the operation, for logging.
+     * @param priority
+     * the operation's priority, such as {@link #PRIORITY_INTERACTIVE}.
+     * @return
+     * the registered operation.
+     */
+    public synchronized Operation register(String description, int priority) {
+        Operation operation = new Operation(description, priority);
+        operations.add(operation);
+        return operation;
+    }
+
+    /**
+     * Removes an operation that will not ask for more permits. Permits it still holds are
+     * returned as its tasks finish.
+     *
+     * @param operation
+     */
+    public synchronized void unregister(Operation operation) {
+        operation.isWaiting = false;
+        operations.remove(operation);
+    }
+
+    /**
+     * Asks for a permit to start a task, without waiting.
+     *
+     * @param operation
+     * the registered operation that will perform the task.
+     * @return
+     * true if the task may start, in which case {@link #release(Operation)} must be called
+     * when it finishes, or false if the operation must ask again later.
+     */
+    public synchronized boolean tryAcquire(Operation operation) {
+        if (inFlight >= maxInFlight || !isOperationsTurn(operation)) {
+            operation.isWaiting = true;
+            return false;
+        }
+        operation.isWaiting = false;
+        operation.inFlight++;
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Records that an operation has no more tasks waiting to start, so it no longer
+     * competes for permits.
+     *
+     * @param operation
+     */
+    public synchronized void clearWaiting(Operation operation) {
+        operation.isWaiting = false;
+    }
+
+    /**
+     * Returns the permit of a finished task.
+     *
+     * @param operation
+     * the operation that performed the task.
+     */
+    public synchronized void release(Operation operation) {
+        if (operation.inFlight > 0) {
+            operation.inFlight--;
+            inFlight--;
+        }
+    }
+
+    private boolean isOperationsTurn(Operation operation) {
+        int activeAtPriority = 0;
+        boolean isOtherWaitingAtPriority = false;
+        Iterator opIter = operations.iterator();
+        while (opIter.hasNext()) {
+            Operation other = (Operation) opIter.next();
+            if (other.priority > operation.priority && other.isWaiting) {
+                // A more important operation is waiting for a permit.
+                return false;
+            }
+            if (other.priority == operation.priority
+                && (other.inFlight > 0 || other.isWaiting || other == operation))
+            {
+                activeAtPriority++;
+                if (other != operation && other.isWaiting) {
+                    isOtherWaitingAtPriority = true;
+                }
+            }
+        }
+        int fairShare = Math.max(1, maxInFlight / Math.max(1, activeAtPriority));
+        return !(isOtherWaitingAtPriority && operation.inFlight >= fairShare);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return
+     * the number of tasks currently in flight across all operations.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return
+     * the number of registered operations.
+     */
+    public synchronized int getOperationCount() {
+        return operations.size();
+    }
+
+    public synchronized String toString() {
+        return "ConcurrencyGovernor [inFlight=" + inFlight + "/" + maxInFlight
+            + ", operations=" + operations + "]";
+    }
+
+}
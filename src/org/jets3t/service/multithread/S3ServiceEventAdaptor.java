@@ -100,4 +100,12 @@ public class S3ServiceEventAdaptor implements S3ServiceEventListener {
         return t[0];
     }
 
+    /**
+     * Forgets any error stored by this adaptor, so the adaptor can be used to detect errors
+     * in later operations.
+     */
+    public void clearErrorThrown() {
+        t[0] = null;
+    }
+
 }
@@ -0,0 +1,234 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.impl.rest.httpclient.HttpMethodAborter;
+
+/**
+ * The pending result of an asynchronous operation started by {@link AsyncS3Service}.
+ * <p>
+ * The result can be obtained by blocking in {@link #get()}, or by registering a
+ * {@link S3ServiceFutureListener} that is notified when the operation finishes, which allows
+ * S3 operations to be chained with other work without a thread waiting on each of them.
+ * <p>
+ * An operation can be cancelled with {@link #cancel()}. An operation that has not yet started
+ * will never be performed, and an operation in progress has its HTTP request aborted.
+ *
+ * @author James Murty
+ */
+public class S3ServiceFuture {
+    private static final Log log = LogFactory.getLog(S3ServiceFuture.class);
+
+    private final String description;
+    private final HttpMethodAborter aborter = new HttpMethodAborter();
+    private final List listeners = new ArrayList();
+
+    private boolean isDone = false;
+    private boolean isCancelled = false;
+    private Object result = null;
+    private S3ServiceException exception = null;
+
+    /**
+     * @param description
+     * a description of the operation, for use in log and error messages.
+     */
+    public S3ServiceFuture(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return
+     * the aborter with which the operation's HTTP requests are registered.
+     */
+    HttpMethodAborter getAborter() {
+        return aborter;
+    }
+
+    /**
+     * Completes the future with the operation's result, unless it was cancelled.
+     *
+     * @return
+     * true if the result was accepted, false if the future had already been cancelled.
+     */
+    boolean complete(Object result) {
+        synchronized (this) {
+            if (isDone) {
+                return false;
+            }
+            this.result = result;
+            this.isDone = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * Completes the future with the error thrown by the operation, unless it was cancelled.
+     */
+    void fail(S3ServiceException exception) {
+        synchronized (this) {
+            if (isDone) {
+                return;
+            }
+            this.exception = exception;
+            this.isDone = true;
+            notifyAll();
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Cancels the operation. If the operation has not started it will not be performed, and
+     * if it is in progress its HTTP request is aborted. Cancelling a completed operation
+     * has no effect.
+     *
+     * @return
+     * true if the operation was cancelled, false if it had already completed.
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (isDone) {
+                return false;
+            }
+            this.isCancelled = true;
+            this.exception = new S3ServiceException("Operation was cancelled: " + description);
+            this.isDone = true;
+            notifyAll();
+        }
+        aborter.abort();
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * @return
+     * true if the operation has completed, failed, or been cancelled.
+     */
+    public synchronized boolean isDone() {
+        return isDone;
+    }
+
+    /**
+     * @return
+     * true if the operation was cancelled before it completed.
+     */
+    public synchronized boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Waits for the operation to finish, and returns its result.
+     *
+     * @return
+     * the result of the operation, which may be null for operations with no result.
+     *
+     * @throws S3ServiceException
+     * the error thrown by the operation, or an error reporting that the operation was cancelled.
+     * @throws InterruptedException
+     */
+    public synchronized Object get() throws S3ServiceException, InterruptedException {
+        while (!isDone) {
+            wait();
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the operation to finish for up to the given time, and returns its result.
+     *
+     * @param timeoutMS
+     * the maximum number of milliseconds to wait.
+     *
+     * @return
+     * the result of the operation, which may be null for operations with no result.
+     *
+     * @throws S3ServiceException
+     * the error thrown by the operation, an error reporting that the operation was cancelled,
+     * or an error reporting that the operation did not finish in time. An operation that
+     * did not finish in time is not cancelled.
+     * @throws InterruptedException
+     */
+    public synchronized Object get(long timeoutMS) throws S3ServiceException, InterruptedException {
+        long endTimeMS = System.currentTimeMillis() + timeoutMS;
+        while (!isDone) {
+            long remainingMS = endTimeMS - System.currentTimeMillis();
+            if (remainingMS <= 0) {
+                throw new S3ServiceException("Timed out after " + timeoutMS
+                    + "ms waiting for operation: " + description);
+            }
+            wait(remainingMS);
+        }
+        return get();
+    }
+
+    /**
+     * Registers a listener to be notified when the operation finishes. If the operation has
+     * already finished, the listener is notified immediately by the calling thread.
+     *
+     * @param listener
+     */
+    public void addListener(S3ServiceFutureListener listener) {
+        synchronized (this) {
+            if (!isDone) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    private void notifyListeners() {
+        List listenersToNotify = null;
+        synchronized (this) {
+            listenersToNotify = new ArrayList(listeners);
+            listeners.clear();
+        }
+        Iterator listenerIter = listenersToNotify.iterator();
+        while (listenerIter.hasNext()) {
+            notifyListener((S3ServiceFutureListener) listenerIter.next());
+        }
+    }
+
+    private void notifyListener(S3ServiceFutureListener listener) {
+        try {
+            listener.futureCompleted(this);
+        } catch (RuntimeException e) {
+            if (log.isErrorEnabled()) {
+                log.error("Listener failed for completed operation: " + description, e);
+            }
+        }
+    }
+
+    public String toString() {
+        return "S3ServiceFuture [" + description + ", done=" + isDone()
+            + ", cancelled=" + isCancelled() + "]";
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+import java.util.EventListener;
+
+/**
+ * Listener notified when an asynchronous operation started by {@link AsyncS3Service}
+ * completes, fails, or is cancelled.
+ *
+ * @author James Murty
+ */
+public interface S3ServiceFutureListener extends EventListener {
+
+    /**
+     * Called once the future's operation has finished. The result or error is available
+     * from the future without blocking.
+     * <p>
+     * This method is usually called by the thread that performed the operation, so it
+     * should not perform lengthy work itself.
+     *
+     * @param future
+     * the completed future.
+     */
+    public void futureCompleted(S3ServiceFuture future);
+
+}
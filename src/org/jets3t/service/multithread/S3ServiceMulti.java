@@ -28,9 +28,13 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,13 +44,18 @@ import org.jets3t.service.S3ObjectsChunk;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.acl.AccessControlList;
+import org.jets3t.service.cache.AccessControlListCache;
+import org.jets3t.service.impl.rest.httpclient.HttpMethodAborter;
+import org.jets3t.service.impl.rest.httpclient.RestS3Service;
 import org.jets3t.service.io.BytesProgressWatcher;
 import org.jets3t.service.io.InterruptableInputStream;
 import org.jets3t.service.io.ProgressMonitoredInputStream;
 import org.jets3t.service.io.TempFile;
+import org.jets3t.service.model.MultipleDeleteResult;
 import org.jets3t.service.model.S3Bucket;
 import org.jets3t.service.model.S3Object;
 import org.jets3t.service.security.AWSCredentials;
+import org.jets3t.service.utils.RestUtils;
 import org.jets3t.service.utils.ServiceUtils;
 import org.jets3t.service.utils.signedurl.SignedUrlAndObject;
 import org.jets3t.service.utils.signedurl.SignedUrlHandler;
@@ -81,6 +90,16 @@ public class S3ServiceMulti implements Serializable {
     private S3Service s3Service = null;
     private ArrayList serviceEventListeners = new ArrayList();
     private final long sleepTime;
+    private TaskThreadFactory taskThreadFactory = null;
+    private AdaptiveConcurrencyController adaptiveConcurrencyController = null;
+    private ConcurrencyGovernor concurrencyGovernor = null;
+    private int taskPriority = ConcurrencyGovernor.PRIORITY_NORMAL;
+    
+    /**
+     * Set to false once the service reports that it does not support multiple object deletes,
+     * after which objects are deleted individually.
+     */
+    private volatile boolean isMultipleDeleteSupported = true;
     
     /**
      * Construct a multi-threaded service based on an S3Service and which sends event notifications
@@ -117,27 +136,61 @@ public class S3ServiceMulti implements Serializable {
         addServiceEventListener(listener);
         this.sleepTime = threadSleepTimeMS;
         
+        String threadMode = this.s3Service.getJetS3tProperties()
+            .getStringProperty("s3service.thread-mode", "platform");
+        if ("virtual".equalsIgnoreCase(threadMode)) {
+            if (!VirtualTaskThreadFactory.isSupported() && log.isWarnEnabled()) {
+                log.warn("Virtual threads are not supported by this Java runtime "
+                    + "(s3service.thread-mode=virtual), platform threads will be used instead");
+            }
+            this.taskThreadFactory = new VirtualTaskThreadFactory();
+        } else {
+            if (!"platform".equalsIgnoreCase(threadMode) && log.isWarnEnabled()) {
+                log.warn("Unrecognised thread mode '" + threadMode 
+                    + "' (s3service.thread-mode), platform threads will be used");
+            }
+            this.taskThreadFactory = new PlatformTaskThreadFactory();
+        }
+        
+        if (this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.adaptive-concurrency-enabled", false)) 
+        {
+            this.adaptiveConcurrencyController = 
+                AdaptiveConcurrencyController.getServiceInstance(this.s3Service);
+        }
+        
+        if (this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.governor-enabled", false)) 
+        {
+            this.concurrencyGovernor = ConcurrencyGovernor.getProcessInstance(
+                this.s3Service.getJetS3tProperties());
+        }
+        this.taskPriority = ConcurrencyGovernor.parsePriority(this.s3Service.getJetS3tProperties()
+            .getStringProperty("s3service.task-priority", "normal"));
+        
         // Sanity-check the maximum thread and connection settings to ensure the maximum number
         // of connections is at least equal to the largest of the maximum thread counts, and warn
-        // the use of potential problems.
-        int adminMaxThreadCount = this.s3Service.getJetS3tProperties()
-            .getIntProperty("s3service.admin-max-thread-count", 4);        
-        int maxThreadCount = this.s3Service.getJetS3tProperties()
-            .getIntProperty("s3service.max-thread-count", 4);
-        int maxConnectionCount = this.s3Service.getJetS3tProperties()
-            .getIntProperty("httpclient.max-connections", 4);
-        if (maxConnectionCount < maxThreadCount) {
-            if (log.isWarnEnabled()) {
-                log.warn("Insufficient connections available (httpclient.max-connections="
-                    + maxConnectionCount + ") to run " + maxThreadCount 
-                    + " simultaneous threads (s3service.max-thread-count) - please adjust JetS3t settings");
-            }
-        } 
-        if (maxConnectionCount < adminMaxThreadCount) {
-            if (log.isWarnEnabled()) {
-                log.warn("Insufficient connections available (httpclient.max-connections="
-                    + maxConnectionCount + ") to run " + adminMaxThreadCount 
-                    + " simultaneous admin threads (s3service.admin-max-thread-count) - please adjust JetS3t settings");
+        // the use of potential problems. Lightweight threads are limited by the connection count.
+        if (!this.taskThreadFactory.isLightweight()) {
+            int adminMaxThreadCount = this.s3Service.getJetS3tProperties()
+                .getIntProperty("s3service.admin-max-thread-count", 4);        
+            int maxThreadCount = this.s3Service.getJetS3tProperties()
+                .getIntProperty("s3service.max-thread-count", 4);
+            int maxConnectionCount = this.s3Service.getJetS3tProperties()
+                .getIntProperty("httpclient.max-connections", 4);
+            if (maxConnectionCount < maxThreadCount) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Insufficient connections available (httpclient.max-connections="
+                        + maxConnectionCount + ") to run " + maxThreadCount 
+                        + " simultaneous threads (s3service.max-thread-count) - please adjust JetS3t settings");
+                }
+            } 
+            if (maxConnectionCount < adminMaxThreadCount) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Insufficient connections available (httpclient.max-connections="
+                        + maxConnectionCount + ") to run " + adminMaxThreadCount 
+                        + " simultaneous admin threads (s3service.admin-max-thread-count) - please adjust JetS3t settings");
+                }
             }
         }
     }    
@@ -150,6 +203,104 @@ public class S3ServiceMulti implements Serializable {
         return s3Service;
     }
     
+    /**
+     * @return
+     * the factory that creates the threads used to perform this service's tasks.
+     */
+    public TaskThreadFactory getTaskThreadFactory() {
+        return taskThreadFactory;
+    }
+    
+    /**
+     * Replaces the factory that creates the threads used to perform this service's tasks,
+     * which is otherwise chosen by the property <code>s3service.thread-mode</code>.
+     * 
+     * @param taskThreadFactory
+     */
+    public void setTaskThreadFactory(TaskThreadFactory taskThreadFactory) {
+        this.taskThreadFactory = taskThreadFactory;
+    }
+    
+    /**
+     * @return
+     * the controller that adjusts the number of tasks performed at once, or null if the
+     * number is fixed by the thread count properties.
+     */
+    public AdaptiveConcurrencyController getAdaptiveConcurrencyController() {
+        return adaptiveConcurrencyController;
+    }
+    
+    /**
+     * Sets the controller that adjusts the number of tasks performed at once, which is
+     * otherwise the controller shared by all users of the underlying S3Service when the property
+     * <code>s3service.adaptive-concurrency-enabled</code> is true.
+     * 
+     * @param adaptiveConcurrencyController
+     * the controller, or null to use the fixed limits set by the thread count properties.
+     */
+    public void setAdaptiveConcurrencyController(
+        AdaptiveConcurrencyController adaptiveConcurrencyController) 
+    {
+        this.adaptiveConcurrencyController = adaptiveConcurrencyController;
+    }
+    
+    /**
+     * @return
+     * the governor that limits the tasks performed at once by this and other services, 
+     * or null if there is none.
+     */
+    public ConcurrencyGovernor getConcurrencyGovernor() {
+        return concurrencyGovernor;
+    }
+    
+    /**
+     * Sets the governor that limits the tasks performed at once by this and other services 
+     * that share it. When the property <code>s3service.governor-enabled</code> is true a 
+     * process-wide governor is used by default.
+     * 
+     * @param concurrencyGovernor
+     * the governor, or null to limit tasks by this service's own settings only.
+     */
+    public void setConcurrencyGovernor(ConcurrencyGovernor concurrencyGovernor) {
+        this.concurrencyGovernor = concurrencyGovernor;
+    }
+    
+    /**
+     * @return
+     * the priority of this service's operations when competing for the governor's permits.
+     */
+    public int getTaskPriority() {
+        return taskPriority;
+    }
+    
+    /**
+     * Sets the priority of this service's operations when competing for the permits of a 
+     * shared {@link ConcurrencyGovernor}, which is otherwise set by the property 
+     * <code>s3service.task-priority</code> (background, normal or interactive).
+     * 
+     * @param taskPriority
+     * a priority such as {@link ConcurrencyGovernor#PRIORITY_INTERACTIVE}.
+     */
+    public void setTaskPriority(int taskPriority) {
+        this.taskPriority = taskPriority;
+    }
+    
+    /**
+     * Returns the number of tasks that may be performed at once for an operation. When the
+     * service's threads are lightweight this is the number of HTTP connections available, 
+     * otherwise it is the configured maximum thread count for the operation.
+     * 
+     * @param maxThreadCount
+     * the configured maximum thread count for the operation.
+     */
+    protected int getTaskConcurrencyLimit(int maxThreadCount) {
+        if (taskThreadFactory.isLightweight()) {
+            return Math.max(1, this.s3Service.getJetS3tProperties()
+                .getIntProperty("httpclient.max-connections", 4));
+        }
+        return maxThreadCount;
+    }
+    
     /**
      * Adds a service event listener to the set of listeners that will be notified of events.
      * 
@@ -466,6 +617,101 @@ public class S3ServiceMulti implements Serializable {
         return success[0];
     }
 
+    /**
+     * Copies multiple objects within or between buckets, reading the objects to copy from
+     * iterators as threads become available, while sending {@link CopyObjectsEvent} notification 
+     * events.
+     * <p>
+     * Unlike {@link #copyObjects(String, String, String[], S3Object[], boolean)} this method 
+     * does not need every object in memory at once. Because the total is not known in advance,
+     * the {@link ThreadWatcher} in this method's events reports the number of objects read so 
+     * far, and the completed event does not list the source keys and destination objects. 
+     * If the operation is cancelled, the cancelled event reports only the destination objects 
+     * that were being copied; objects not yet read remain in the iterators.
+     * <p>
+     * The maximum number of threads is controlled by the JetS3t configuration property 
+     * <tt>s3service.admin-max-thread-count</tt>.
+     * 
+     * @param sourceBucketName
+     * the name of the bucket containing the objects that will be copied.
+     * @param destinationBucketName        
+     * the name of the bucket to which the objects will be copied. The destination
+     * bucket may be the same as the source bucket.
+     * @param sourceObjectKeys
+     * an iterator of the key names, as Strings, of the objects that will be copied.
+     * @param destinationObjects
+     * an iterator of the {@link S3Object}s that will be created by the copy operation, in the
+     * same order as, and the same number as, the source object keys. 
+     * @param replaceMetadata
+     * if true, the metadata items in the destination objects will be stored 
+     * in S3 by using the REPLACE metadata copying option. If false, the metadata
+     * items will be copied unchanged from the original objects using the COPY
+     * metadata copying option.
+     * 
+     * @return
+     * true if all the threaded tasks completed successfully, false otherwise.
+     */
+    public boolean copyObjects(final String sourceBucketName, final String destinationBucketName,        
+        final Iterator sourceObjectKeys, Iterator destinationObjects, final boolean replaceMetadata) 
+    {            
+        final Object uniqueOperationId = new Object(); // Special object used to identify this operation.
+        final boolean[] success = new boolean[] {true};
+                
+        // Build each copy only when a thread is ready to perform it.
+        final IteratorRunnableSource runnableSource = new IteratorRunnableSource(destinationObjects) {
+            protected AbstractRunnable createRunnable(Object workItem) throws S3ServiceException {
+                if (!sourceObjectKeys.hasNext()) {
+                    throw new S3ServiceException("There are fewer source object keys than "
+                        + "destination objects to copy");
+                }
+                return new CopyObjectRunnable(sourceBucketName, destinationBucketName, 
+                    (String) sourceObjectKeys.next(), (S3Object) workItem, replaceMetadata);
+            }
+        };
+        
+        int maxThreadCount = this.s3Service.getJetS3tProperties()
+            .getIntProperty("s3service.admin-max-thread-count", 4);
+        
+        boolean ignoreExceptions = this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.ignore-exceptions-in-multi", false);
+                            
+        // Wait for threads to finish, or be cancelled.
+        (new ThreadGroupManager(runnableSource, maxThreadCount, new ThreadWatcher(0), 
+            ignoreExceptions) 
+        {
+            public void fireStartEvent(ThreadWatcher threadWatcher) {
+                fireServiceEvent(CopyObjectsEvent.newStartedEvent(threadWatcher, uniqueOperationId));        
+            }
+            public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
+                Map[] copyResults = (Map[]) completedResults
+                    .toArray(new Map[completedResults.size()]);
+                fireServiceEvent(CopyObjectsEvent.newInProgressEvent(threadWatcher, 
+                    copyResults, uniqueOperationId));
+            }
+            public void fireCancelEvent() {
+                List incompletedObjectsList = runnableSource.getInFlightWorkItems();
+                S3Object[] incompletedObjects = (S3Object[]) incompletedObjectsList
+                    .toArray(new S3Object[incompletedObjectsList.size()]);
+                success[0] = false;
+                fireServiceEvent(CopyObjectsEvent.newCancelledEvent(incompletedObjects, uniqueOperationId));
+            }
+            public void fireCompletedEvent() {
+                fireServiceEvent(CopyObjectsEvent.newCompletedEvent(uniqueOperationId, 
+                    new String[] {}, new S3Object[] {}));
+            }
+            public void fireErrorEvent(Throwable throwable) {
+                success[0] = false;
+                fireServiceEvent(CopyObjectsEvent.newErrorEvent(throwable, uniqueOperationId));
+            }
+            public void fireIgnoredErrorsEvent(ThreadWatcher threadWatcher, Throwable[] ignoredErrors) {
+                success[0] = false;
+                fireServiceEvent(CopyObjectsEvent.newIgnoredErrorsEvent(threadWatcher, ignoredErrors, uniqueOperationId));
+            }
+        }).run();
+        
+        return success[0];
+    }
+
     /**
      * Creates multiple objects in a bucket, and sends {@link CreateObjectsEvent} notification events.
      * <p>
@@ -536,10 +782,96 @@ public class S3ServiceMulti implements Serializable {
         
         return success[0];
     }
+
+    /**
+     * Creates multiple objects in a bucket, reading the objects from an iterator as threads 
+     * become available to upload them, and sends {@link CreateObjectsEvent} notification events.
+     * <p>
+     * Unlike {@link #putObjects(S3Bucket, S3Object[])} this method does not need every object 
+     * in memory at once, so the memory it uses is bounded by the number of threads rather 
+     * than by the number of objects. Because the total is not known in advance, the 
+     * {@link ThreadWatcher} in this method's events reports the number of objects read so far
+     * and does not include bytes transferred information. If the operation is cancelled, the 
+     * cancelled event reports only the objects that were being uploaded; objects not yet read 
+     * remain in the iterator.
+     * <p>
+     * The maximum number of threads is controlled by the JetS3t configuration property 
+     * <tt>s3service.max-thread-count</tt>.
+     * 
+     * @param bucket
+     * the bucket to create the objects in 
+     * @param objects
+     * an iterator of the {@link S3Object}s to create/upload.
+     * 
+     * @return
+     * true if all the threaded tasks completed successfully, false otherwise.
+     */
+    public boolean putObjects(final S3Bucket bucket, Iterator objects) {    
+        final Object uniqueOperationId = new Object(); // Special object used to identify this operation.
+        final boolean[] success = new boolean[] {true};
+        
+        // Build each upload only when a thread is ready to perform it.
+        final IteratorRunnableSource runnableSource = new IteratorRunnableSource(objects) {
+            protected AbstractRunnable createRunnable(Object workItem) {
+                S3Object object = (S3Object) workItem;
+                return new CreateObjectRunnable(bucket, object, 
+                    new BytesProgressWatcher(object.getContentLength()));
+            }
+        };
+        
+        int maxThreadCount = this.s3Service.getJetS3tProperties()
+            .getIntProperty("s3service.max-thread-count", 4);
+        
+        boolean ignoreExceptions = this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.ignore-exceptions-in-multi", false);
+                            
+        // Wait for threads to finish, or be cancelled.
+        (new ThreadGroupManager(runnableSource, maxThreadCount, new ThreadWatcher(0), 
+            ignoreExceptions) 
+        {
+            public void fireStartEvent(ThreadWatcher threadWatcher) {
+                fireServiceEvent(CreateObjectsEvent.newStartedEvent(threadWatcher, uniqueOperationId));        
+            }
+            public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
+                S3Object[] completedObjects = (S3Object[]) completedResults
+                    .toArray(new S3Object[completedResults.size()]);
+                fireServiceEvent(CreateObjectsEvent.newInProgressEvent(threadWatcher, 
+                    completedObjects, uniqueOperationId));
+            }
+            public void fireCancelEvent() {
+                List incompletedObjectsList = runnableSource.getInFlightWorkItems();
+                S3Object[] incompletedObjects = (S3Object[]) incompletedObjectsList
+                    .toArray(new S3Object[incompletedObjectsList.size()]);
+                success[0] = false;
+                fireServiceEvent(CreateObjectsEvent.newCancelledEvent(incompletedObjects, uniqueOperationId));
+            }
+            public void fireCompletedEvent() {
+                fireServiceEvent(CreateObjectsEvent.newCompletedEvent(uniqueOperationId));
+            }
+            public void fireErrorEvent(Throwable throwable) {
+                success[0] = false;
+                fireServiceEvent(CreateObjectsEvent.newErrorEvent(throwable, uniqueOperationId));
+            }
+            public void fireIgnoredErrorsEvent(ThreadWatcher threadWatcher, Throwable[] ignoredErrors) {
+                success[0] = false;
+                fireServiceEvent(CreateObjectsEvent.newIgnoredErrorsEvent(threadWatcher, ignoredErrors, uniqueOperationId));
+            }
+        }).run();
+        
+        return success[0];
+    }
     
     /**
      * Deletes multiple objects from a bucket, and sends {@link DeleteObjectsEvent} notification events.
      * <p>
+     * Objects are deleted in batches with multiple object delete requests, with up to 
+     * <tt>s3service.multiple-delete-batch-size</tt> objects per request (default 1000), and the
+     * batches are performed concurrently. The {@link ThreadWatcher} in this method's events
+     * counts objects, and advances by a whole batch when each batch completes. Cancelling the
+     * operation aborts the batched requests in progress. Objects are deleted
+     * individually if the batch size is 1 or less, if the service does not support multiple
+     * object deletes, or if a batched delete reports that it could not delete an object.
+     * <p>
      * The maximum number of threads is controlled by the JetS3t configuration property 
      * <tt>s3service.admin-max-thread-count</tt>.
      * 
@@ -557,11 +889,23 @@ public class S3ServiceMulti implements Serializable {
         final boolean[] success = new boolean[] {true};
 
         // Start all queries in the background.
-        DeleteObjectRunnable[] runnables = new DeleteObjectRunnable[objects.length];
-        for (int i = 0; i < runnables.length; i++) {
-            objectsToDeleteList.add(objects[i]);
-            runnables[i] = new DeleteObjectRunnable(bucket, objects[i]);
+        int batchSize = getMultipleDeleteBatchSize();
+        AbstractRunnable[] runnables = null;
+        if (batchSize > 1) {
+            runnables = new AbstractRunnable[(objects.length + batchSize - 1) / batchSize];
+            for (int i = 0; i < runnables.length; i++) {
+                S3Object[] batch = new S3Object[
+                    Math.min(batchSize, objects.length - i * batchSize)];
+                System.arraycopy(objects, i * batchSize, batch, 0, batch.length);
+                runnables[i] = new DeleteObjectBatchRunnable(bucket, batch);
+            }
+        } else {
+            runnables = new AbstractRunnable[objects.length];
+            for (int i = 0; i < runnables.length; i++) {
+                runnables[i] = new DeleteObjectRunnable(bucket, objects[i]);
+            }
         }
+        objectsToDeleteList.addAll(Arrays.asList(objects));
         
         int adminMaxThreadCount = this.s3Service.getJetS3tProperties()
             .getIntProperty("s3service.admin-max-thread-count", 4);
@@ -570,16 +914,15 @@ public class S3ServiceMulti implements Serializable {
             .getBoolProperty("s3service.ignore-exceptions-in-multi", false);
                             
         // Wait for threads to finish, or be cancelled.        
-        (new ThreadGroupManager(runnables, adminMaxThreadCount, new ThreadWatcher(runnables.length),
+        (new ThreadGroupManager(runnables, adminMaxThreadCount, new ThreadWatcher(objects.length),
             ignoreExceptions) 
         {
             public void fireStartEvent(ThreadWatcher threadWatcher) {
                 fireServiceEvent(DeleteObjectsEvent.newStartedEvent(threadWatcher, uniqueOperationId));        
             }
             public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
-                objectsToDeleteList.removeAll(completedResults);
-                S3Object[] deletedObjects = (S3Object[]) completedResults
-                    .toArray(new S3Object[completedResults.size()]);                    
+                S3Object[] deletedObjects = flattenDeleteResults(completedResults);
+                objectsToDeleteList.removeAll(Arrays.asList(deletedObjects));
                 fireServiceEvent(DeleteObjectsEvent.newInProgressEvent(threadWatcher, deletedObjects, uniqueOperationId));
             }
             public void fireCancelEvent() {
@@ -603,6 +946,119 @@ public class S3ServiceMulti implements Serializable {
         
         return success[0];
     }
+
+    /**
+     * Deletes multiple objects from a bucket, reading the objects from an iterator as threads 
+     * become available to delete them, and sends {@link DeleteObjectsEvent} notification events.
+     * <p>
+     * Unlike {@link #deleteObjects(S3Bucket, S3Object[])} this method does not need every object 
+     * in memory at once, so it is suited to deleting very large numbers of objects. Because the
+     * total is not known in advance, the {@link ThreadWatcher} in this method's events reports
+     * the number of objects read so far. If the operation is cancelled, the cancelled event 
+     * reports only the objects that were being deleted; objects not yet read remain in the iterator.
+     * <p>
+     * Objects are read from the iterator and deleted in batches, as described for 
+     * {@link #deleteObjects(S3Bucket, S3Object[])}.
+     * <p>
+     * The maximum number of threads is controlled by the JetS3t configuration property 
+     * <tt>s3service.admin-max-thread-count</tt>.
+     * 
+     * @param bucket
+     * the bucket containing the objects to be deleted
+     * @param objects
+     * an iterator of the {@link S3Object}s to delete
+     * 
+     * @return
+     * true if all the threaded tasks completed successfully, false otherwise.
+     */
+    public boolean deleteObjects(final S3Bucket bucket, Iterator objects) {
+        final Object uniqueOperationId = new Object(); // Special object used to identify this operation.
+        final boolean[] success = new boolean[] {true};
+
+        // Build each deletion, or batch of deletions, only when a thread is ready to perform it.
+        final int batchSize = getMultipleDeleteBatchSize();
+        final IteratorRunnableSource runnableSource = new IteratorRunnableSource(
+            batchSize > 1 ? new BatchingIterator(objects, batchSize) : objects) 
+        {
+            protected AbstractRunnable createRunnable(Object workItem) {
+                if (batchSize > 1) {
+                    return new DeleteObjectBatchRunnable(bucket, (S3Object[]) workItem);
+                } else {
+                    return new DeleteObjectRunnable(bucket, (S3Object) workItem);
+                }
+            }
+        };
+        
+        int adminMaxThreadCount = this.s3Service.getJetS3tProperties()
+            .getIntProperty("s3service.admin-max-thread-count", 4);
+        
+        boolean ignoreExceptions = this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.ignore-exceptions-in-multi", false);
+                            
+        // Wait for threads to finish, or be cancelled.        
+        (new ThreadGroupManager(runnableSource, adminMaxThreadCount, new ThreadWatcher(0),
+            ignoreExceptions) 
+        {
+            public void fireStartEvent(ThreadWatcher threadWatcher) {
+                fireServiceEvent(DeleteObjectsEvent.newStartedEvent(threadWatcher, uniqueOperationId));        
+            }
+            public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
+                S3Object[] deletedObjects = flattenDeleteResults(completedResults);
+                fireServiceEvent(DeleteObjectsEvent.newInProgressEvent(threadWatcher, deletedObjects, uniqueOperationId));
+            }
+            public void fireCancelEvent() {
+                S3Object[] remainingObjects = flattenDeleteResults(runnableSource.getInFlightWorkItems());
+                success[0] = false;
+                fireServiceEvent(DeleteObjectsEvent.newCancelledEvent(remainingObjects, uniqueOperationId));
+            }
+            public void fireCompletedEvent() {
+                fireServiceEvent(DeleteObjectsEvent.newCompletedEvent(uniqueOperationId));                    
+            }
+            public void fireErrorEvent(Throwable throwable) {
+                success[0] = false;
+                fireServiceEvent(DeleteObjectsEvent.newErrorEvent(throwable, uniqueOperationId));
+            }
+            public void fireIgnoredErrorsEvent(ThreadWatcher threadWatcher, Throwable[] ignoredErrors) {
+                success[0] = false;
+                fireServiceEvent(DeleteObjectsEvent.newIgnoredErrorsEvent(threadWatcher, ignoredErrors, uniqueOperationId));
+            }
+        }).run();
+        
+        return success[0];
+    }
+    
+    /**
+     * @return
+     * the number of objects to delete with each multiple object delete request, as set by the
+     * property <tt>s3service.multiple-delete-batch-size</tt>, or 1 if objects should be deleted
+     * individually.
+     */
+    protected int getMultipleDeleteBatchSize() {
+        if (!isMultipleDeleteSupported) {
+            return 1;
+        }
+        int batchSize = this.s3Service.getJetS3tProperties()
+            .getIntProperty("s3service.multiple-delete-batch-size", Constants.MULTIPLE_DELETE_MAX_KEYS);
+        return Math.max(1, Math.min(batchSize, Constants.MULTIPLE_DELETE_MAX_KEYS));
+    }
+    
+    /**
+     * Combines the results of delete runnables, which are either single objects or arrays of
+     * objects deleted together in a batch, into a single array.
+     */
+    private S3Object[] flattenDeleteResults(List results) {
+        List deletedObjects = new ArrayList();
+        Iterator resultIter = results.iterator();
+        while (resultIter.hasNext()) {
+            Object result = resultIter.next();
+            if (result instanceof S3Object[]) {
+                deletedObjects.addAll(Arrays.asList((S3Object[]) result));
+            } else {
+                deletedObjects.add(result);
+            }
+        }
+        return (S3Object[]) deletedObjects.toArray(new S3Object[deletedObjects.size()]);
+    }
     
     /**
      * Retrieves multiple objects (details and data) from a bucket, and sends 
@@ -736,6 +1192,33 @@ public class S3ServiceMulti implements Serializable {
      * true if all the threaded tasks completed successfully, false otherwise.
      */
     public boolean getObjectsHeads(final S3Bucket bucket, final String[] objectKeys) {
+        return getObjectsHeads(bucket, objectKeys, false);
+    }
+
+    /**
+     * Retrieves details (but no data) about multiple objects from a bucket, and sends 
+     * {@link GetObjectHeadsEvent} notification events.
+     * <p>
+     * If <code>isMissingObjectIgnored</code> is true, keys that do not exist in the bucket
+     * are left out of the completed objects reported by the events instead of causing an
+     * error, so the existence of many objects can be checked in one operation. 
+     * <p>
+     * The maximum number of threads is controlled by the JetS3t configuration property 
+     * <tt>s3service.admin-max-thread-count</tt>.
+     * 
+     * @param bucket
+     * the bucket containing the objects whose details will be retrieved.
+     * @param objectKeys
+     * the key names of the objects with details to retrieve.
+     * @param isMissingObjectIgnored
+     * if true, objects that do not exist are not treated as errors.
+     * 
+     * @return
+     * true if all the threaded tasks completed successfully, false otherwise.
+     */
+    public boolean getObjectsHeads(final S3Bucket bucket, final String[] objectKeys, 
+        boolean isMissingObjectIgnored) 
+    {
         final List pendingObjectKeysList = new ArrayList();
         final Object uniqueOperationId = new Object(); // Special object used to identify this operation.
         final boolean[] success = new boolean[] {true};
@@ -745,6 +1228,7 @@ public class S3ServiceMulti implements Serializable {
         for (int i = 0; i < runnables.length; i++) {
             pendingObjectKeysList.add(objectKeys[i]);
             runnables[i] = new GetObjectRunnable(bucket, objectKeys[i], true);
+            runnables[i].isMissingObjectIgnored = isMissingObjectIgnored;
         }
 
         int adminMaxThreadCount = this.s3Service.getJetS3tProperties()
@@ -761,6 +1245,8 @@ public class S3ServiceMulti implements Serializable {
                 fireServiceEvent(GetObjectHeadsEvent.newStartedEvent(threadWatcher, uniqueOperationId));        
             }
             public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
+                // Missing objects that are ignored have no result.
+                completedResults.removeAll(Collections.singleton(null));
                 S3Object[] completedObjects = (S3Object[]) completedResults
                     .toArray(new S3Object[completedResults.size()]);
                 for (int i = 0; i < completedObjects.length; i++) {
@@ -795,6 +1281,85 @@ public class S3ServiceMulti implements Serializable {
         
         return success[0];
     }
+
+    /**
+     * Retrieves details (but no data) about multiple objects from a bucket, reading the object
+     * keys from an iterator as threads become available, and sends 
+     * {@link GetObjectHeadsEvent} notification events.
+     * <p>
+     * Unlike {@link #getObjectsHeads(S3Bucket, String[])} this method does not need every key 
+     * in memory at once. Because the total is not known in advance, the {@link ThreadWatcher} 
+     * in this method's events reports the number of keys read so far. If the operation is 
+     * cancelled, the cancelled event reports only the objects whose details were being 
+     * retrieved; keys not yet read remain in the iterator.
+     * <p>
+     * The maximum number of threads is controlled by the JetS3t configuration property 
+     * <tt>s3service.admin-max-thread-count</tt>.
+     * 
+     * @param bucket
+     * the bucket containing the objects whose details will be retrieved.
+     * @param objectKeys
+     * an iterator of the key names, as Strings, of the objects with details to retrieve.
+     * 
+     * @return
+     * true if all the threaded tasks completed successfully, false otherwise.
+     */
+    public boolean getObjectsHeads(final S3Bucket bucket, Iterator objectKeys) {
+        final Object uniqueOperationId = new Object(); // Special object used to identify this operation.
+        final boolean[] success = new boolean[] {true};
+
+        // Build each query only when a thread is ready to perform it.
+        final IteratorRunnableSource runnableSource = new IteratorRunnableSource(objectKeys) {
+            protected AbstractRunnable createRunnable(Object workItem) {
+                return new GetObjectRunnable(bucket, (String) workItem, true);
+            }
+        };
+
+        int adminMaxThreadCount = this.s3Service.getJetS3tProperties()
+            .getIntProperty("s3service.admin-max-thread-count", 4);
+        
+        boolean ignoreExceptions = this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.ignore-exceptions-in-multi", false);
+                            
+        // Wait for threads to finish, or be cancelled.        
+        (new ThreadGroupManager(runnableSource, adminMaxThreadCount, new ThreadWatcher(0),
+            ignoreExceptions) 
+        {
+            public void fireStartEvent(ThreadWatcher threadWatcher) {
+                fireServiceEvent(GetObjectHeadsEvent.newStartedEvent(threadWatcher, uniqueOperationId));        
+            }
+            public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
+                S3Object[] completedObjects = (S3Object[]) completedResults
+                    .toArray(new S3Object[completedResults.size()]);
+                fireServiceEvent(GetObjectHeadsEvent.newInProgressEvent(threadWatcher, completedObjects, uniqueOperationId));
+            }
+            public void fireCancelEvent() {
+                List cancelledObjectsList = new ArrayList();
+                Iterator iter = runnableSource.getInFlightWorkItems().iterator();
+                while (iter.hasNext()) {
+                    String key = (String) iter.next();
+                    cancelledObjectsList.add(new S3Object(key));
+                }
+                S3Object[] cancelledObjects = (S3Object[]) cancelledObjectsList
+                    .toArray(new S3Object[cancelledObjectsList.size()]);
+                success[0] = false;
+                fireServiceEvent(GetObjectHeadsEvent.newCancelledEvent(cancelledObjects, uniqueOperationId));
+            }
+            public void fireCompletedEvent() {
+                fireServiceEvent(GetObjectHeadsEvent.newCompletedEvent(uniqueOperationId));                    
+            }
+            public void fireErrorEvent(Throwable throwable) {
+                success[0] = false;
+                fireServiceEvent(GetObjectHeadsEvent.newErrorEvent(throwable, uniqueOperationId));
+            }
+            public void fireIgnoredErrorsEvent(ThreadWatcher threadWatcher, Throwable[] ignoredErrors) {
+                success[0] = false;
+                fireServiceEvent(GetObjectHeadsEvent.newIgnoredErrorsEvent(threadWatcher, ignoredErrors, uniqueOperationId));
+            }
+        }).run();
+        
+        return success[0];
+    }
     
     /**
      * Retrieves Access Control List (ACL) information for multiple objects from a bucket, and sends 
@@ -802,6 +1367,10 @@ public class S3ServiceMulti implements Serializable {
      * <p>
      * The maximum number of threads is controlled by the JetS3t configuration property 
      * <tt>s3service.admin-max-thread-count</tt>.
+     * <p>
+     * If the service's {@link AccessControlListCache} is enabled, ACLs are served from the cache
+     * where possible, and objects with identical ACLs are given the same shared ACL instance.
+     * These shared ACLs must not be modified; build a new ACL to apply changes. 
      * 
      * @param bucket
      * the bucket containing the objects
@@ -880,6 +1449,39 @@ public class S3ServiceMulti implements Serializable {
      * true if all the threaded tasks completed successfully, false otherwise.
      */
     public boolean putACLs(final S3Bucket bucket, final S3Object[] objects) {
+        return putACLs(bucket, objects, this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.acl-skip-unchanged", false));
+    }
+
+    /**
+     * Updates/sets Access Control List (ACL) information for multiple objects in a bucket, and sends 
+     * {@link UpdateACLEvent} notification events.
+     * <p>
+     * In bulk update mode the current ACL of each object is retrieved from S3 first, and the
+     * object's ACL is only updated if the current ACL differs from the object's new ACL. This 
+     * saves a PUT request for each object that already has the new ACL, which is a large saving
+     * when an ACL change applies to many objects that mostly share the same permissions. Objects
+     * that are skipped are reported as completed like any other.
+     * <p>
+     * The current ACL is never taken from the service's {@link AccessControlListCache}, as a 
+     * cached ACL may be out of date and a necessary ACL change could then be skipped.
+     * <p>
+     * The maximum number of threads is controlled by the JetS3t configuration property 
+     * <tt>s3service.admin-max-thread-count</tt>.
+     * 
+     * @param bucket
+     * the bucket containing the objects
+     * @param objects
+     * the objects to update/set ACL details for.
+     * @param skipUnchangedACLs
+     * if true, ACLs are only updated for objects whose current ACL differs from their new ACL.
+     * 
+     * @return
+     * true if all the threaded tasks completed successfully, false otherwise.
+     */
+    public boolean putACLs(final S3Bucket bucket, final S3Object[] objects, 
+        boolean skipUnchangedACLs) 
+    {
         final List pendingObjectsList = new ArrayList();
         final Object uniqueOperationId = new Object(); // Special object used to identify this operation.
         final boolean[] success = new boolean[] {true};
@@ -888,7 +1490,7 @@ public class S3ServiceMulti implements Serializable {
         PutACLRunnable[] runnables = new PutACLRunnable[objects.length];
         for (int i = 0; i < runnables.length; i++) {
             pendingObjectsList.add(objects[i]);
-            runnables[i] = new PutACLRunnable(bucket, objects[i]);
+            runnables[i] = new PutACLRunnable(bucket, objects[i], skipUnchangedACLs);
         }
         
         int adminMaxThreadCount = this.s3Service.getJetS3tProperties()
@@ -948,56 +1550,131 @@ public class S3ServiceMulti implements Serializable {
      * item. 
      * 
      * @param bucket
-     * the bucket containing the objects
+     * the bucket containing the objects
+     * @param downloadPackages
+     * an array of download packages containing the object to be downloaded, and able to build
+     * an output stream where the object's contents will be written to.
+     * 
+     * @return
+     * true if all the threaded tasks completed successfully, false otherwise.
+     * @throws S3ServiceException 
+     */
+    public boolean downloadObjects(final S3Bucket bucket, 
+        final DownloadPackage[] downloadPackages) throws S3ServiceException
+    {
+        final List progressWatchers = new ArrayList();        
+        final List incompleteObjectDownloadList = new ArrayList();
+        final Object uniqueOperationId = new Object(); // Special object used to identify this operation.        
+        final boolean[] success = new boolean[] {true};
+
+        boolean restoreLastModifiedDate = this.s3Service.getJetS3tProperties()
+            .getBoolProperty("downloads.restoreLastModifiedDate", false);                
+
+        // Start all queries in the background.
+        DownloadObjectRunnable[] runnables = new DownloadObjectRunnable[downloadPackages.length];
+        final S3Object[] objects = new S3Object[downloadPackages.length];
+        for (int i = 0; i < runnables.length; i++) {
+            objects[i] = getDownloadPackageObject(downloadPackages[i]);
+            
+            BytesProgressWatcher progressMonitor = new BytesProgressWatcher(objects[i].getContentLength());
+                        
+            incompleteObjectDownloadList.add(objects[i]);
+            progressWatchers.add(progressMonitor);
+            
+            runnables[i] = createDownloadObjectRunnable(bucket, downloadPackages[i], objects[i],
+                progressMonitor, restoreLastModifiedDate);
+        }
+
+        int maxThreadCount = this.s3Service.getJetS3tProperties()
+            .getIntProperty("s3service.max-thread-count", 4);
+        
+        boolean ignoreExceptions = this.s3Service.getJetS3tProperties()
+            .getBoolProperty("s3service.ignore-exceptions-in-multi", false);
+                            
+        // Wait for threads to finish, or be cancelled.        
+        ThreadWatcher threadWatcher = new ThreadWatcher(
+            (BytesProgressWatcher[]) progressWatchers.toArray(new BytesProgressWatcher[progressWatchers.size()]));
+        (new ThreadGroupManager(runnables, maxThreadCount, threadWatcher, ignoreExceptions) {
+            public void fireStartEvent(ThreadWatcher threadWatcher) {
+                fireServiceEvent(DownloadObjectsEvent.newStartedEvent(threadWatcher, uniqueOperationId));
+            }
+            public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
+                incompleteObjectDownloadList.removeAll(completedResults);                
+                S3Object[] completedObjects = (S3Object[]) completedResults
+                    .toArray(new S3Object[completedResults.size()]);
+                fireServiceEvent(DownloadObjectsEvent.newInProgressEvent(threadWatcher, completedObjects, uniqueOperationId));
+            }
+            public void fireCancelEvent() {
+                S3Object[] incompleteObjects = (S3Object[]) incompleteObjectDownloadList
+                    .toArray(new S3Object[incompleteObjectDownloadList.size()]);
+                success[0] = false;
+                fireServiceEvent(DownloadObjectsEvent.newCancelledEvent(incompleteObjects, uniqueOperationId));
+            }
+            public void fireCompletedEvent() {
+                fireServiceEvent(DownloadObjectsEvent.newCompletedEvent(uniqueOperationId));                    
+            }
+            public void fireErrorEvent(Throwable throwable) {
+                success[0] = false;
+                fireServiceEvent(DownloadObjectsEvent.newErrorEvent(throwable, uniqueOperationId));
+            }
+            public void fireIgnoredErrorsEvent(ThreadWatcher threadWatcher, Throwable[] ignoredErrors) {
+                success[0] = false;
+                fireServiceEvent(DownloadObjectsEvent.newIgnoredErrorsEvent(threadWatcher, ignoredErrors, uniqueOperationId));
+            }
+        }).run();
+        
+        return success[0];
+    }
+
+    /**
+     * A convenience method to download multiple objects from S3 to pre-existing output streams, 
+     * reading the download packages from an iterator as threads become available, and sends 
+     * {@link DownloadObjectsEvent} notification events.
+     * <p>
+     * Unlike {@link #downloadObjects(S3Bucket, DownloadPackage[])} this method does not need 
+     * every download package in memory at once. Because the total is not known in advance, the 
+     * {@link ThreadWatcher} in this method's events reports the number of packages read so far
+     * and does not include bytes transferred information. If the operation is cancelled, the 
+     * cancelled event reports only the objects that were being downloaded; packages not yet read
+     * remain in the iterator.
+     * <p>
+     * The maximum number of threads is controlled by the JetS3t configuration property 
+     * <tt>s3service.max-thread-count</tt>.
+     * <p>
+     * If the JetS3t configuration property <tt>downloads.restoreLastModifiedDate</tt> is set
+     * to true, any files created by this method will have their last modified date set according
+     * to the value of the S3 object's {@link Constants#METADATA_JETS3T_LOCAL_FILE_DATE} metadata
+     * item. 
+     * 
+     * @param bucket
+     * the bucket containing the objects, which may be null if every download package is based
+     * on a signed URL.
      * @param downloadPackages
-     * an array of download packages containing the object to be downloaded, and able to build
-     * an output stream where the object's contents will be written to.
+     * an iterator of {@link DownloadPackage}s containing the object to be downloaded, and able 
+     * to build an output stream where the object's contents will be written to.
      * 
      * @return
      * true if all the threaded tasks completed successfully, false otherwise.
-     * @throws S3ServiceException 
      */
-    public boolean downloadObjects(final S3Bucket bucket, 
-        final DownloadPackage[] downloadPackages) throws S3ServiceException
-    {
-        final List progressWatchers = new ArrayList();        
-        final List incompleteObjectDownloadList = new ArrayList();
+    public boolean downloadObjects(final S3Bucket bucket, Iterator downloadPackages) {
         final Object uniqueOperationId = new Object(); // Special object used to identify this operation.        
         final boolean[] success = new boolean[] {true};
 
-        boolean restoreLastModifiedDate = this.s3Service.getJetS3tProperties()
+        final boolean restoreLastModifiedDate = this.s3Service.getJetS3tProperties()
             .getBoolProperty("downloads.restoreLastModifiedDate", false);                
 
-        // Start all queries in the background.
-        DownloadObjectRunnable[] runnables = new DownloadObjectRunnable[downloadPackages.length];
-        final S3Object[] objects = new S3Object[downloadPackages.length];
-        for (int i = 0; i < runnables.length; i++) {
-            if (downloadPackages[i].isSignedDownload()) {
-                // For signed URL downloads, we create a surrogate S3Object purely for monitoring purposes.
-                try {
-                    URL url = new URL(downloadPackages[i].getSignedUrl());            
-                    objects[i] = ServiceUtils.buildObjectFromUrl(url.getHost(), url.getPath());
-                } catch (Exception e) {
-                    throw new S3ServiceException("Unable to determine S3 Object key name from signed URL: " + 
-                        downloadPackages[i].getSignedUrl());
-                }
-            } else {
-                objects[i] = downloadPackages[i].getObject();                
+        // Build each download only when a thread is ready to perform it.
+        final IteratorRunnableSource runnableSource = new IteratorRunnableSource(downloadPackages) {
+            protected AbstractRunnable createRunnable(Object workItem) throws S3ServiceException {
+                DownloadPackage downloadPackage = (DownloadPackage) workItem;
+                S3Object object = getDownloadPackageObject(downloadPackage);
+                return createDownloadObjectRunnable(bucket, downloadPackage, object,
+                    new BytesProgressWatcher(object.getContentLength()), restoreLastModifiedDate);
             }
-            
-            BytesProgressWatcher progressMonitor = new BytesProgressWatcher(objects[i].getContentLength());
-                        
-            incompleteObjectDownloadList.add(objects[i]);
-            progressWatchers.add(progressMonitor);
-            
-            if (downloadPackages[i].isSignedDownload()) {
-                runnables[i] = new DownloadObjectRunnable( 
-                    downloadPackages[i], progressMonitor, restoreLastModifiedDate);                
-            } else {
-                runnables[i] = new DownloadObjectRunnable(bucket, objects[i].getKey(), 
-                    downloadPackages[i], progressMonitor, restoreLastModifiedDate);
+            protected Object getInFlightWorkItem(Object workItem) throws S3ServiceException {
+                return getDownloadPackageObject((DownloadPackage) workItem);
             }
-        }
+        };
 
         int maxThreadCount = this.s3Service.getJetS3tProperties()
             .getIntProperty("s3service.max-thread-count", 4);
@@ -1006,19 +1683,19 @@ public class S3ServiceMulti implements Serializable {
             .getBoolProperty("s3service.ignore-exceptions-in-multi", false);
                             
         // Wait for threads to finish, or be cancelled.        
-        ThreadWatcher threadWatcher = new ThreadWatcher(
-            (BytesProgressWatcher[]) progressWatchers.toArray(new BytesProgressWatcher[progressWatchers.size()]));
-        (new ThreadGroupManager(runnables, maxThreadCount, threadWatcher, ignoreExceptions) {
+        (new ThreadGroupManager(runnableSource, maxThreadCount, new ThreadWatcher(0), 
+            ignoreExceptions) 
+        {
             public void fireStartEvent(ThreadWatcher threadWatcher) {
                 fireServiceEvent(DownloadObjectsEvent.newStartedEvent(threadWatcher, uniqueOperationId));
             }
             public void fireProgressEvent(ThreadWatcher threadWatcher, List completedResults) {
-                incompleteObjectDownloadList.removeAll(completedResults);                
                 S3Object[] completedObjects = (S3Object[]) completedResults
                     .toArray(new S3Object[completedResults.size()]);
                 fireServiceEvent(DownloadObjectsEvent.newInProgressEvent(threadWatcher, completedObjects, uniqueOperationId));
             }
             public void fireCancelEvent() {
+                List incompleteObjectDownloadList = runnableSource.getInFlightWorkItems();
                 S3Object[] incompleteObjects = (S3Object[]) incompleteObjectDownloadList
                     .toArray(new S3Object[incompleteObjectDownloadList.size()]);
                 success[0] = false;
@@ -1040,6 +1717,44 @@ public class S3ServiceMulti implements Serializable {
         return success[0];
     }
 
+    /**
+     * @param downloadPackage
+     * @return
+     * the object to be downloaded by a download package. For signed URL downloads this is a
+     * surrogate object created purely for monitoring purposes.
+     * @throws S3ServiceException
+     * if the object's key name cannot be determined from a signed URL.
+     */
+    private S3Object getDownloadPackageObject(DownloadPackage downloadPackage) 
+        throws S3ServiceException 
+    {
+        if (downloadPackage.isSignedDownload()) {
+            // For signed URL downloads, we create a surrogate S3Object purely for monitoring purposes.
+            try {
+                URL url = new URL(downloadPackage.getSignedUrl());            
+                return ServiceUtils.buildObjectFromUrl(url.getHost(), url.getPath());
+            } catch (Exception e) {
+                throw new S3ServiceException("Unable to determine S3 Object key name from signed URL: " + 
+                    downloadPackage.getSignedUrl());
+            }
+        } else {
+            return downloadPackage.getObject();                
+        }
+    }
+    
+    private DownloadObjectRunnable createDownloadObjectRunnable(S3Bucket bucket, 
+        DownloadPackage downloadPackage, S3Object object, BytesProgressWatcher progressMonitor,
+        boolean restoreLastModifiedDate) 
+    {
+        if (downloadPackage.isSignedDownload()) {
+            return new DownloadObjectRunnable( 
+                downloadPackage, progressMonitor, restoreLastModifiedDate);                
+        } else {
+            return new DownloadObjectRunnable(bucket, object.getKey(), 
+                downloadPackage, progressMonitor, restoreLastModifiedDate);
+        }
+    }
+
     /**
      * A convenience method to download multiple objects from S3 to pre-existing 
      * output streams, which is particularly useful for downloading objects to files.
@@ -1625,6 +2340,15 @@ public class S3ServiceMulti implements Serializable {
             }
             return true;
         }        
+        
+        /**
+         * @return
+         * the number of items, such as objects, this thread works on. An operation's 
+         * {@link ThreadWatcher} counts these items rather than threads.
+         */
+        protected long getWorkItemCount() {
+            return 1;
+        }
     }
     
     /**
@@ -1635,11 +2359,13 @@ public class S3ServiceMulti implements Serializable {
         private S3Object s3Object = null;        
         private String signedUrl = null;
         private AccessControlList signedUrlAcl = null;
+        private boolean skipUnchangedACL = false;
         private Object result = null;
         
-        public PutACLRunnable(S3Bucket bucket, S3Object s3Object) {
+        public PutACLRunnable(S3Bucket bucket, S3Object s3Object, boolean skipUnchangedACL) {
             this.bucket = bucket;
             this.s3Object = s3Object;
+            this.skipUnchangedACL = skipUnchangedACL;
         }
 
         public PutACLRunnable(String signedAclUrl, AccessControlList signedUrlAcl) {
@@ -1654,6 +2380,11 @@ public class S3ServiceMulti implements Serializable {
                 if (signedUrl == null) {
                     if (s3Object == null) {
                         s3Service.putBucketAcl(bucket);                    
+                    } else if (skipUnchangedACL && isObjectAclUnchanged()) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Skipping ACL update for object with unchanged ACL: " 
+                                + bucket.getName() + "/" + s3Object.getKey());
+                        }
                     } else {
                         s3Service.putObjectAcl(bucket, s3Object);                                        
                     }                
@@ -1674,6 +2405,17 @@ public class S3ServiceMulti implements Serializable {
             }            
         }
         
+        private boolean isObjectAclUnchanged() throws S3ServiceException {
+            if (s3Object.getAcl() == null) {
+                // Let the update fail in the usual way.
+                return false;
+            }
+            // Compare with the ACL in S3, never a cached ACL that may be out of date.
+            s3Service.getAccessControlListCache().invalidate(bucket.getName(), s3Object.getKey());
+            AccessControlList currentAcl = s3Service.getObjectAcl(bucket, s3Object.getKey());
+            return AccessControlListCache.isEquivalent(currentAcl, s3Object.getAcl());
+        }
+        
         public Object getResult() {
             return result;
         }        
@@ -1707,7 +2449,7 @@ public class S3ServiceMulti implements Serializable {
             try {
                 if (signedAclUrl == null) {
                     AccessControlList acl = s3Service.getObjectAcl(bucket, object.getKey());
-                    object.setAcl(acl);
+                    object.setAcl(s3Service.getAccessControlListCache().intern(acl));
                     result = object;
                 } else {
                     SignedUrlHandler handler = (SignedUrlHandler) s3Service;
@@ -1783,6 +2525,134 @@ public class S3ServiceMulti implements Serializable {
         }
     }
 
+    /**
+     * Thread for deleting a batch of objects with a multiple object delete request.
+     * <p>
+     * Objects are deleted individually if their keys cannot be included in the request's XML 
+     * document, if the service does not support multiple object deletes, or if the batched 
+     * delete reports that it could not delete them. Deleting these objects individually retries
+     * transient failures and reports permanent ones with the service's usual exceptions.
+     */
+    private class DeleteObjectBatchRunnable extends AbstractRunnable {
+        private S3Bucket bucket = null;
+        private S3Object[] objects = null;
+        private Object result = null;
+        private HttpMethodAborter aborter = new HttpMethodAborter();
+        
+        public DeleteObjectBatchRunnable(S3Bucket bucket, S3Object[] objects) {
+            this.bucket = bucket;
+            this.objects = objects;
+        }
+
+        public void run() {
+            // Register this thread's requests so a cancellation can abort the batched request.
+            RestS3Service.setThreadHttpMethodAborter(aborter);
+            try {
+                List batchedObjects = new ArrayList();
+                List individualObjects = new ArrayList();
+                for (int i = 0; i < objects.length; i++) {
+                    if (isMultipleDeleteSupported && RestUtils.isXmlEncodable(objects[i].getKey())) {
+                        batchedObjects.add(objects[i]);
+                    } else {
+                        individualObjects.add(objects[i]);
+                    }
+                }
+                
+                List deletedObjects = new ArrayList();
+                if (batchedObjects.size() > 0) {
+                    deleteBatchedObjects(batchedObjects, deletedObjects, individualObjects);
+                }
+                
+                Iterator objectIter = individualObjects.iterator();
+                while (objectIter.hasNext() && notInterrupted()) {
+                    S3Object object = (S3Object) objectIter.next();
+                    s3Service.deleteObject(bucket, object.getKey());
+                    deletedObjects.add(object);
+                }
+                result = deletedObjects.toArray(new S3Object[deletedObjects.size()]);
+            } catch (RuntimeException e) {
+                result = e;
+                throw e;
+            } catch (Exception e) {
+                result = e;
+            } finally {
+                RestS3Service.setThreadHttpMethodAborter(null);
+            }
+        }
+        
+        /**
+         * Deletes objects with a multiple object delete request, adding the objects that were
+         * deleted to one list and the objects that must be deleted individually to another.
+         */
+        private void deleteBatchedObjects(List batchedObjects, List deletedObjects, 
+            List individualObjects) throws S3ServiceException 
+        {
+            String[] objectKeys = new String[batchedObjects.size()];
+            for (int i = 0; i < objectKeys.length; i++) {
+                objectKeys[i] = ((S3Object) batchedObjects.get(i)).getKey();
+            }
+            
+            MultipleDeleteResult deleteResult = null;
+            try {
+                deleteResult = s3Service.deleteMultipleObjects(bucket.getName(), objectKeys, true);
+            } catch (S3ServiceException e) {
+                if (!isMultipleDeleteUnsupportedError(e)) {
+                    throw e;
+                }
+                if (log.isWarnEnabled()) {
+                    log.warn("Multiple object deletes are not supported by the service, "
+                        + "objects will be deleted individually", e);
+                }
+                isMultipleDeleteSupported = false;
+                individualObjects.addAll(batchedObjects);
+                return;
+            }
+            
+            HashSet failedObjectKeys = new HashSet();
+            MultipleDeleteResult.ErrorResult[] errorResults = deleteResult.getErrorResults();
+            for (int i = 0; i < errorResults.length; i++) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Batched delete failed, object will be deleted individually: " 
+                        + errorResults[i]);
+                }
+                failedObjectKeys.add(errorResults[i].getObjectKey());
+            }
+            Iterator objectIter = batchedObjects.iterator();
+            while (objectIter.hasNext()) {
+                S3Object object = (S3Object) objectIter.next();
+                if (failedObjectKeys.contains(object.getKey())) {
+                    individualObjects.add(object);
+                } else {
+                    deletedObjects.add(object);
+                }
+            }
+        }
+        
+        /**
+         * @return
+         * true if the exception indicates that the service does not support multiple 
+         * object delete requests, rather than that the request failed.
+         */
+        private boolean isMultipleDeleteUnsupportedError(S3ServiceException e) {
+            return e.getResponseCode() == 501 || e.getResponseCode() == 405
+                || "NotImplemented".equals(e.getS3ErrorCode())
+                || "MethodNotAllowed".equals(e.getS3ErrorCode());
+        }
+        
+        public Object getResult() {
+            return result;
+        }        
+        
+        protected long getWorkItemCount() {
+            return objects.length;
+        }
+        
+        public void forceInterruptCalled() {            
+            // Abort the request in progress. Individual deletes also stop at the next object.
+            aborter.abort();
+        }
+    }
+
     /**
      * Thread for creating a bucket.
      */
@@ -1964,6 +2834,7 @@ public class S3ServiceMulti implements Serializable {
         private String objectKey = null;
         private String signedGetOrHeadUrl = null;
         private boolean headOnly = false;
+        private boolean isMissingObjectIgnored = false;
         
         private Object result = null;
         
@@ -1999,7 +2870,11 @@ public class S3ServiceMulti implements Serializable {
                     }
                 }
             } catch (S3ServiceException e) {
-                result = e;
+                if (isMissingObjectIgnored && e.getResponseCode() == 404) {
+                    result = null;
+                } else {
+                    result = e;
+                }
             }            
         }
         
@@ -2208,6 +3083,160 @@ public class S3ServiceMulti implements Serializable {
 
     
 
+    /**
+     * Groups the objects read from an iterator into arrays of up to a given size.
+     */
+    private static class BatchingIterator implements Iterator {
+        private Iterator objects = null;
+        private int batchSize = 0;
+        
+        public BatchingIterator(Iterator objects, int batchSize) {
+            this.objects = objects;
+            this.batchSize = batchSize;
+        }
+        
+        public boolean hasNext() {
+            return objects.hasNext();
+        }
+        
+        public Object next() {
+            List batch = new ArrayList(batchSize);
+            while (batch.size() < batchSize && objects.hasNext()) {
+                batch.add(objects.next());
+            }
+            if (batch.size() == 0) {
+                throw new NoSuchElementException();
+            }
+            return batch.toArray(new S3Object[batch.size()]);
+        }
+        
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    /**
+     * Supplies the runnables performed by a {@link ThreadGroupManager}. The manager reads
+     * each runnable from its source only when it is ready to start it.
+     */
+    private abstract class RunnableSource {
+        
+        /**
+         * @return
+         * true if the source has more runnables to perform.
+         */
+        public abstract boolean hasNextRunnable();
+        
+        /**
+         * @return
+         * the next runnable to perform.
+         * @throws S3ServiceException
+         * if the next work item cannot be converted into a runnable.
+         */
+        public abstract AbstractRunnable nextRunnable() throws S3ServiceException;
+        
+        /**
+         * Notifies the source that a runnable it supplied has finished, and its result has been
+         * passed to the operation's event notifications.
+         * 
+         * @param runnable
+         */
+        public void runnableFinished(AbstractRunnable runnable) {
+        }
+    }
+    
+    /**
+     * Supplies runnables from an array that was built before the operation started.
+     */
+    private class ArrayRunnableSource extends RunnableSource {
+        private AbstractRunnable[] runnables = null;
+        private int nextIndex = 0;
+        
+        public ArrayRunnableSource(AbstractRunnable[] runnables) {
+            this.runnables = runnables;
+        }
+        
+        public boolean hasNextRunnable() {
+            return nextIndex < runnables.length;
+        }
+        
+        public AbstractRunnable nextRunnable() {
+            AbstractRunnable runnable = runnables[nextIndex];
+            // Release the array's reference so the runnable can be garbage collected once it completes.
+            runnables[nextIndex++] = null;
+            return runnable;
+        }
+    }
+    
+    /**
+     * Supplies runnables built on demand from work items read from an iterator, so the number 
+     * of work items held in memory is bounded by the number of threads running rather than by
+     * the size of the operation. 
+     * <p>
+     * The source remembers the work items whose runnables have started but not yet finished,
+     * so they can be reported if the operation is cancelled.
+     */
+    private abstract class IteratorRunnableSource extends RunnableSource {
+        private Iterator workItems = null;
+        private final Map inFlightWorkItems = new HashMap();
+        
+        public IteratorRunnableSource(Iterator workItems) {
+            this.workItems = workItems;
+        }
+        
+        /**
+         * @param workItem
+         * a work item read from the iterator.
+         * @return
+         * the runnable that will perform the work item.
+         * @throws S3ServiceException
+         */
+        protected abstract AbstractRunnable createRunnable(Object workItem) throws S3ServiceException;
+        
+        public boolean hasNextRunnable() {
+            return workItems.hasNext();
+        }
+        
+        /**
+         * @param workItem
+         * a work item read from the iterator.
+         * @return
+         * the object that represents the work item in the list of in-flight work items, 
+         * which is the work item itself unless this method is overridden.
+         * @throws S3ServiceException
+         */
+        protected Object getInFlightWorkItem(Object workItem) throws S3ServiceException {
+            return workItem;
+        }
+        
+        public AbstractRunnable nextRunnable() throws S3ServiceException {
+            Object workItem = workItems.next();
+            AbstractRunnable runnable = createRunnable(workItem);
+            Object inFlightWorkItem = getInFlightWorkItem(workItem);
+            synchronized (inFlightWorkItems) {
+                inFlightWorkItems.put(runnable, inFlightWorkItem);
+            }
+            return runnable;
+        }
+        
+        public void runnableFinished(AbstractRunnable runnable) {
+            synchronized (inFlightWorkItems) {
+                inFlightWorkItems.remove(runnable);
+            }
+        }
+        
+        /**
+         * @return
+         * the work items whose runnables have been started but have not finished, as 
+         * represented by {@link #getInFlightWorkItem(Object)}.
+         */
+        public List getInFlightWorkItems() {
+            synchronized (inFlightWorkItems) {
+                return new ArrayList(inFlightWorkItems.values());
+            }
+        }
+    }
+
     /**
      * The thread group manager is responsible for starting, running and stopping the set of threads
      * required to perform an S3 operation.
@@ -2215,52 +3244,100 @@ public class S3ServiceMulti implements Serializable {
      * The manager starts all the threads, monitors their progress and stops threads when they are   
      * cancelled or an error occurs - all the while firing the appropriate {@link ServiceEvent} event
      * notifications.
+     * <p>
+     * Runnables are read from a {@link RunnableSource} only as threads become available to run 
+     * them, and the manager forgets each runnable once its result has been reported, so the 
+     * memory used by an operation whose runnables are built on demand does not grow with the 
+     * operation's size.
      */
     private abstract class ThreadGroupManager {
         private final Log log = LogFactory.getLog(ThreadGroupManager.class);
         private int maxThreadCount = 1;
         
         /**
-         * the set of runnable objects to execute.
+         * the source of the runnable objects to execute.
          */
-        private AbstractRunnable[] runnables = null;
+        private RunnableSource runnableSource = null;
         
         /**
-         * Thread objects that are currently running, where the index corresponds to the 
-         * runnables index. Any AbstractThread runnable that is not started, or has completed,
-         * will have a null value in this array.
+         * the total number of runnables to execute, or -1 if the total is not known in advance.
          */
-        private Thread[] threads = null;
+        private long expectedTaskCount = -1;
         
-        private boolean ignoreExceptions = false;
+        private long startedTaskCount = 0;
+        
+        private long completedTaskCount = 0;
         
         /**
-         * set of flags indicating which runnable items have been started
+         * the number of work items, such as objects, in the runnables started and completed.
          */
-        private boolean started[] = null;
+        private long startedWorkItemCount = 0;
+        
+        private long completedWorkItemCount = 0;
         
         /**
-         * set of flags indicating which threads have already had In Progress events fired on
-         * their behalf. These threads have finished running.
+         * Tasks that have been started, but have not yet had In Progress events fired on their 
+         * behalf. Access to this list is synchronized, as tasks may be interrupted by a 
+         * cancellation in another thread. 
          */
-        private boolean alreadyFired[] = null;
+        private final List activeTasks = new ArrayList();
+        
+        private boolean ignoreExceptions = false;
         
         private ThreadWatcher threadWatcher = null;
         
         private long lastProgressEventFiredTime = 0;
         
+        /**
+         * the shared concurrency governor, if there is one, and this operation's registration with it.
+         */
+        private ConcurrencyGovernor governor = null;
+        private ConcurrencyGovernor.Operation governorOperation = null;
+        
+        /**
+         * A runnable that has been started, and the thread running it.
+         */
+        private class ActiveTask {
+            private long taskNumber = 0;
+            private AbstractRunnable runnable = null;
+            private Thread thread = null;
+            
+            public ActiveTask(long taskNumber, AbstractRunnable runnable, Thread thread) {
+                this.taskNumber = taskNumber;
+                this.runnable = runnable;
+                this.thread = thread;
+            }
+        }
         
         public ThreadGroupManager(AbstractRunnable[] runnables, int maxThreadCount, 
             ThreadWatcher threadWatcher, boolean ignoreExceptions) 
         {            
-            this.runnables = runnables;
-            this.maxThreadCount = maxThreadCount;
+            this(new ArrayRunnableSource(runnables), runnables.length, maxThreadCount, 
+                threadWatcher, ignoreExceptions);
+        }
+        
+        public ThreadGroupManager(RunnableSource runnableSource, int maxThreadCount, 
+            ThreadWatcher threadWatcher, boolean ignoreExceptions) 
+        {            
+            this(runnableSource, -1, maxThreadCount, threadWatcher, ignoreExceptions);
+        }
+        
+        private ThreadGroupManager(RunnableSource runnableSource, long expectedTaskCount, 
+            int maxThreadCount, ThreadWatcher threadWatcher, boolean ignoreExceptions) 
+        {            
+            this.runnableSource = runnableSource;
+            this.expectedTaskCount = expectedTaskCount;
+            this.maxThreadCount = getTaskConcurrencyLimit(maxThreadCount);
             this.threadWatcher = threadWatcher;
             this.ignoreExceptions = ignoreExceptions;
-            
-            this.threads = new Thread[runnables.length];
-            started = new boolean[runnables.length]; // All values initialized to false.
-            alreadyFired = new boolean[runnables.length]; // All values initialized to false.
+        }
+        
+        private String describeTask(long taskNumber) {
+            if (expectedTaskCount >= 0) {
+                return "Thread " + taskNumber + " of " + expectedTaskCount;
+            } else {
+                return "Thread " + taskNumber;
+            }
         }
         
         /**
@@ -2278,18 +3355,24 @@ public class S3ServiceMulti implements Serializable {
             ArrayList completedResults = new ArrayList();
             ArrayList errorResults = new ArrayList();
             
-            for (int i = 0; i < threads.length; i++) {
-                if (!alreadyFired[i] && started[i] && !threads[i].isAlive()) {
-                    alreadyFired[i] = true;
+            synchronized (activeTasks) {
+                Iterator taskIter = activeTasks.iterator();
+                while (taskIter.hasNext()) {
+                    ActiveTask task = (ActiveTask) taskIter.next();
+                    if (task.thread.isAlive()) {
+                        continue;
+                    }
+                    taskIter.remove();
+                    completedTaskCount++;
+                    completedWorkItemCount += task.runnable.getWorkItemCount();
+                    runnableSource.runnableFinished(task.runnable);
                     if (log.isDebugEnabled()) {
-                        log.debug("Thread " + (i+1) + " of " + threads.length 
+                        log.debug(describeTask(task.taskNumber) 
                             + " has recently completed, releasing resources");
                     }
 
-                    if (runnables[i].getResult() instanceof Throwable) {
-                        Throwable throwable = (Throwable) runnables[i].getResult();
-                        runnables[i] = null;
-                        threads[i] = null;
+                    if (task.runnable.getResult() instanceof Throwable) {
+                        Throwable throwable = (Throwable) task.runnable.getResult();
                         
                         if (ignoreExceptions) {
                             // Ignore exceptions
@@ -2303,9 +3386,7 @@ public class S3ServiceMulti implements Serializable {
                             throw throwable;
                         }                        
                     } else {
-                        completedResults.add(runnables[i].getResult());
-                        runnables[i] = null;
-                        threads[i] = null;
+                        completedResults.add(task.runnable.getResult());
                     }                    
                 }
             }
@@ -2320,47 +3401,113 @@ public class S3ServiceMulti implements Serializable {
         
         /**
          * Starts pending threads such that the total of running threads never exceeds the 
-         * maximum count set in the jets3t property <i>s3service.max-thread-count</i>.
+         * maximum count set in the jets3t property <i>s3service.max-thread-count</i>, or
+         * the number of HTTP connections available when threads are lightweight.
          *        
          * @throws Throwable
          */
         private void startPendingThreads() 
             throws Throwable 
         {
-            // Count active threads that are running (i.e. have been started but final event not fired)
+            // Active threads are running (i.e. have been started but final event not fired)
             int runningThreadCount = 0;
-            for (int i = 0; i < runnables.length; i++) {
-                if (started[i] && !alreadyFired[i]) {
-                    runningThreadCount++;
-                }
+            synchronized (activeTasks) {
+                runningThreadCount = activeTasks.size();
             }
 
             // Start threads until we are running the maximum number allowed.
-            for (int i = 0; runningThreadCount < maxThreadCount && i < started.length; i++) {
-                if (!started[i]) {
-                    threads[i] = new Thread(runnables[i]);                    
-                    threads[i].start();
-                    started[i] = true;
-                    runningThreadCount++;
-                    if (log.isDebugEnabled()) {
-                        log.debug("Thread " + (i+1) + " of " + runnables.length + " has started");
+            // Threads also need a permit from the shared concurrency governor, if there is one.
+            int concurrencyLimit = getCurrentConcurrencyLimit();
+            boolean isRefusedByGovernor = false;
+            while (runningThreadCount < concurrencyLimit && runnableSource.hasNextRunnable()) {
+                if (governorOperation != null 
+                    && !governor.tryAcquire(governorOperation)) 
+                {
+                    isRefusedByGovernor = true;
+                    break;
+                }
+                AbstractRunnable runnable = null;
+                try {
+                    runnable = runnableSource.nextRunnable();
+                } catch (Throwable t) {
+                    if (governorOperation != null) {
+                        governor.release(governorOperation);
                     }
+                    throw t;
+                }
+                ActiveTask task = new ActiveTask(++startedTaskCount, runnable, 
+                    taskThreadFactory.newThread(wrapTask(runnable)));
+                startedWorkItemCount += runnable.getWorkItemCount();
+                synchronized (activeTasks) {
+                    activeTasks.add(task);
+                }
+                task.thread.start();
+                runningThreadCount++;
+                if (log.isDebugEnabled()) {
+                    log.debug(describeTask(task.taskNumber) + " has started");
                 }
             }
+            if (governorOperation != null && !isRefusedByGovernor) {
+                // This operation is not waiting on the governor, so it should not hold back others.
+                governor.clearWaiting(governorOperation);
+            }
         }
         
         /**
          * @return
-         * the number of threads that have not finished running (sum of those currently running, and those awaiting start)
+         * the number of threads that may run at once, as chosen by the adaptive concurrency
+         * controller if there is one, otherwise the fixed maximum thread count.
          */
-        private int getPendingThreadCount() {
-            int pendingThreadCount = 0;
-            for (int i = 0; i < runnables.length; i++) {
-                if (!alreadyFired[i]) {
-                    pendingThreadCount++;
+        private int getCurrentConcurrencyLimit() {
+            AdaptiveConcurrencyController controller = adaptiveConcurrencyController;
+            if (controller != null) {
+                return controller.getConcurrencyLimit();
+            }
+            return maxThreadCount;
+        }
+        
+        /**
+         * Wraps a runnable so its latency and result are reported to the adaptive concurrency
+         * controller, and its governor permit is returned when it finishes, if there is a
+         * controller or governor.
+         */
+        private Runnable wrapTask(final AbstractRunnable runnable) {
+            final AdaptiveConcurrencyController controller = adaptiveConcurrencyController;
+            final ConcurrencyGovernor operationGovernor = governor;
+            final ConcurrencyGovernor.Operation operation = governorOperation;
+            if (controller == null && operation == null) {
+                return runnable;
+            }
+            return new Runnable() {
+                public void run() {
+                    long startTimeMS = System.currentTimeMillis();
+                    try {
+                        runnable.run();
+                    } finally {
+                        if (operation != null) {
+                            operationGovernor.release(operation);
+                        }
+                        if (controller != null) {
+                            controller.recordTaskCompleted(
+                                System.currentTimeMillis() - startTimeMS, runnable.getResult());
+                        }
+                    }
+                }
+            };
+        }
+        
+        /**
+         * @return
+         * true if there are threads that have not finished running, or work that has not yet 
+         * been started.
+         */
+        private boolean hasPendingTasks() {
+            synchronized (activeTasks) {
+                if (activeTasks.size() > 0) {
+                    return true;
                 }
             }
-            return pendingThreadCount;
+            return runnableSource.hasNextRunnable();
         }
         
         /**
@@ -2371,14 +3518,27 @@ public class S3ServiceMulti implements Serializable {
             if (log.isDebugEnabled()) {
                 log.debug("Setting force interrupt flag on all runnables");
             }
-            for (int i = 0; i < runnables.length; i++) {
-                if (runnables[i] != null) {
-                    runnables[i].forceInterrupt();
-                    runnables[i] = null;
+            synchronized (activeTasks) {
+                Iterator taskIter = activeTasks.iterator();
+                while (taskIter.hasNext()) {
+                    ((ActiveTask) taskIter.next()).runnable.forceInterrupt();
                 }
             }
         }
         
+        /**
+         * Updates the thread watcher with the operation's current progress, counted in work 
+         * items rather than runnables. When the total number of runnables is not known in 
+         * advance, the watcher's thread count is the number of work items started so far.
+         */
+        private void updateThreadWatcher(CancelEventTrigger cancelEventTrigger) {
+            if (expectedTaskCount < 0) {
+                threadWatcher.updateThreadCount(startedWorkItemCount);
+            }
+            threadWatcher.updateThreadsCompletedCount(completedWorkItemCount, cancelEventTrigger);
+            threadWatcher.updateConcurrencyLimit(getCurrentConcurrencyLimit());
+        }
+        
         /**
          * Runs and manages all the threads involved in an S3 multi-operation.
          *
@@ -2390,6 +3550,13 @@ public class S3ServiceMulti implements Serializable {
             
             final boolean[] interrupted = new boolean[] { false };
             
+            governor = concurrencyGovernor;
+            if (governor != null) {
+                governorOperation = governor.register("S3ServiceMulti operation with " 
+                    + (expectedTaskCount >= 0 ? String.valueOf(expectedTaskCount) : "streamed")
+                    + " tasks", taskPriority);
+            }
+            
             /*
              * Create a cancel event trigger, so all the managed threads can be cancelled if required.
              */
@@ -2414,12 +3581,12 @@ public class S3ServiceMulti implements Serializable {
                 // Start some threads
                 startPendingThreads();                
                 
-                threadWatcher.updateThreadsCompletedCount(0, cancelEventTrigger); 
+                updateThreadWatcher(cancelEventTrigger);
                 fireStartEvent(threadWatcher);
                 
                 // Loop while threads haven't been interrupted/cancelled, and at least one thread is 
                 // still active (ie hasn't finished its work)
-                while (!interrupted[0] && getPendingThreadCount() > 0) {
+                while (!interrupted[0] && hasPendingTasks()) {
                     try {
                         Thread.sleep(100);
     
@@ -2428,8 +3595,7 @@ public class S3ServiceMulti implements Serializable {
                         } else {
                             if (System.currentTimeMillis() - lastProgressEventFiredTime > sleepTime) {                                
                                 // Fire progress event.
-                                int completedThreads = runnables.length - getPendingThreadCount();                    
-                                threadWatcher.updateThreadsCompletedCount(completedThreads, cancelEventTrigger);
+                                updateThreadWatcher(cancelEventTrigger);
                                 ResultsTuple results = getNewlyCompletedResults();
                                 
                                 lastProgressEventFiredTime = System.currentTimeMillis();
@@ -2452,8 +3618,7 @@ public class S3ServiceMulti implements Serializable {
                 if (interrupted[0]) {
                     fireCancelEvent();
                 } else {
-                    int completedThreads = runnables.length - getPendingThreadCount();                    
-                    threadWatcher.updateThreadsCompletedCount(completedThreads, cancelEventTrigger);
+                    updateThreadWatcher(cancelEventTrigger);
                     ResultsTuple results = getNewlyCompletedResults();
 
                     fireProgressEvent(threadWatcher, results.completedResults);
@@ -2477,6 +3642,10 @@ public class S3ServiceMulti implements Serializable {
                 forceInterruptAllRunnables();
                 
                 fireErrorEvent(t);                
+            } finally {
+                if (governorOperation != null) {
+                    governor.unregister(governorOperation);
+                }
             }
         }
         
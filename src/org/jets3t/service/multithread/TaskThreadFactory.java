@@ -0,0 +1,50 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+/**
+ * Creates the threads that {@link S3ServiceMulti} uses to perform its tasks.
+ * <p>
+ * The factory used by a service is chosen with the property <code>s3service.thread-mode</code>:
+ * <code>platform</code> (the default) for {@link PlatformTaskThreadFactory}, or
+ * <code>virtual</code> for {@link VirtualTaskThreadFactory}.
+ *
+ * @author James Murty
+ */
+public interface TaskThreadFactory {
+
+    /**
+     * @param runnable
+     * the task the thread will perform.
+     * @return
+     * an unstarted thread that will perform the task.
+     */
+    public Thread newThread(Runnable runnable);
+
+    /**
+     * @return
+     * true if the threads created by this factory are cheap enough that the number of tasks
+     * performed at once should be limited only by the number of HTTP connections available
+     * (the property <code>httpclient.max-connections</code>), rather than by the thread count
+     * properties <code>s3service.max-thread-count</code> and
+     * <code>s3service.admin-max-thread-count</code>.
+     */
+    public boolean isLightweight();
+
+}
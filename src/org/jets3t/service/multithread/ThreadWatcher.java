@@ -26,7 +26,8 @@ import org.jets3t.service.io.BytesProgressWatcher;
  * <p>
  * As a minimum, this object will contain a count of the total number of threads involved in the operation
  * (via {@link #getThreadCount}) and the count of threads that have already finished 
- * (via {@link #getCompletedThreads}).
+ * (via {@link #getCompletedThreads}). For operations that read their work from an iterator,
+ * the total is not known in advance so the thread count is the number of threads started so far.
  * <p>
  * For operations involving data transfer, such as uploads or downloads, this object may
  * also include a count of the total bytes being transferred (via {@link #getBytesTotal}) and a count 
@@ -42,6 +43,10 @@ import org.jets3t.service.io.BytesProgressWatcher;
  * include a {@link CancelEventTrigger} (available from {@link #getCancelEventListener()}) which can 
  * be used to trigger a cancellation. Whether the operation can be cancelled is indicated by
  * {@link #isCancelTaskSupported()}.
+ * <p>
+ * The number of threads the operation may run at once is available from 
+ * {@link #getConcurrencyLimit()}. This limit changes during the operation when it is chosen 
+ * by an {@link AdaptiveConcurrencyController}.
  * 
  * @author James Murty
  */
@@ -50,6 +55,7 @@ public class ThreadWatcher {
     private long threadCount = 0;
     private CancelEventTrigger cancelEventListener = null;
     private BytesProgressWatcher[] progressWatchers = null;
+    private int concurrencyLimit = 0;
 
     protected ThreadWatcher(BytesProgressWatcher[] progressWatchers) {
         this.progressWatchers = progressWatchers;
@@ -60,6 +66,18 @@ public class ThreadWatcher {
         this.threadCount = threadCount;
     }
     
+    /**
+     * Sets the total number of threads involved in the operation. This is used by operations
+     * that read their work from an iterator, for which the total is the number of threads
+     * started so far and grows as the operation proceeds.
+     * 
+     * @param threadCount
+     * the total number of threads involved in the operation.
+     */
+    protected void updateThreadCount(long threadCount) {
+        this.threadCount = threadCount;
+    }
+    
     /**
      * Sets information about the number of threads completed and the total number of threads. 
      * 
@@ -93,6 +111,23 @@ public class ThreadWatcher {
         return completedThreads;
     }
 
+    /**
+     * Sets the number of threads the operation may currently run at once.
+     * 
+     * @param concurrencyLimit
+     */
+    protected void updateConcurrencyLimit(int concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+    
+    /**
+     * @return
+     * the number of threads the operation may currently run at once.
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
     /**
      * @return
      * the total number of threads involved in an operation.
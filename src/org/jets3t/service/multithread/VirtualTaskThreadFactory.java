@@ -0,0 +1,104 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.multithread;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Creates a virtual thread for each task when the Java runtime supports virtual threads
+ * (Java 21 or later), so thousands of tasks can be performed at once with little memory.
+ * On older runtimes this factory creates ordinary platform threads instead.
+ * <p>
+ * Virtual threads are created by reflection, so JetS3t can still be built for and run on
+ * older Java versions. A virtual thread blocked in socket I/O or sleeping releases its
+ * carrier thread, but one waiting for a monitor, or in {@link Object#wait()}, may not.
+ * For this reason, when this factory is in use {@link S3ServiceMulti} limits the tasks it
+ * runs at once to the number of HTTP connections available, so tasks do not wait inside
+ * the HttpClient connection manager for a connection.
+ *
+ * @author James Murty
+ */
+public class VirtualTaskThreadFactory implements TaskThreadFactory, Serializable {
+    private static final long serialVersionUID = 2893307516212435846L;
+
+    private static final Log log = LogFactory.getLog(VirtualTaskThreadFactory.class);
+
+    /**
+     * The method <code>Thread.ofVirtual()</code>, or null if virtual threads are not supported.
+     */
+    private static final Method ofVirtualMethod;
+
+    /**
+     * The method <code>Thread.Builder.unstarted(Runnable)</code>.
+     */
+    private static final Method unstartedMethod;
+
+    static {
+        Method ofVirtual = null;
+        Method unstarted = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual", new Class[0]);
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod(
+                "unstarted", new Class[] {Runnable.class});
+            // Confirm virtual threads are available, not merely a disabled preview feature.
+            unstarted.invoke(ofVirtual.invoke(null, new Object[0]), new Object[] {
+                new Runnable() {
+                    public void run() {
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            ofVirtual = null;
+            unstarted = null;
+        }
+        ofVirtualMethod = ofVirtual;
+        unstartedMethod = unstarted;
+    }
+
+    /**
+     * @return
+     * true if the Java runtime supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return ofVirtualMethod != null;
+    }
+
+    public Thread newThread(Runnable runnable) {
+        if (isSupported()) {
+            try {
+                Object builder = ofVirtualMethod.invoke(null, new Object[0]);
+                return (Thread) unstartedMethod.invoke(builder, new Object[] {runnable});
+            } catch (Exception e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Unable to create virtual thread, using a platform thread instead", e);
+                }
+            }
+        }
+        return new Thread(runnable);
+    }
+
+    public boolean isLightweight() {
+        return isSupported();
+    }
+
+}
@@ -128,5 +128,11 @@ public class MxDelegate implements MxInterface {
             handler.registerS3ObjectCopyEvent(bucketName, key);
         }
     }
+
+    public void registerConcurrencyLimitChangeEvent(int concurrencyLimit) {
+        if (handler != null) {
+            handler.registerConcurrencyLimitChangeEvent(concurrencyLimit);
+        }
+    }
     
 }
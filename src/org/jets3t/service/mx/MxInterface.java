@@ -49,4 +49,6 @@ public interface MxInterface {
 
     public abstract void registerS3ObjectCopyEvent(String bucketName, String key);
 
+    public abstract void registerConcurrencyLimitChangeEvent(int concurrencyLimit);
+
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.retry;
+
+import java.util.Random;
+
+import org.jets3t.service.Jets3tProperties;
+
+/**
+ * The retry policy used by default, configured by JetS3t properties.
+ * <p>
+ * Delays follow an exponential backoff with "decorrelated jitter": each delay is chosen at
+ * random between the base delay and three times the previous delay, up to a maximum. The
+ * delays grow quickly for a request that keeps failing, but because they are random the
+ * retries of many threads that failed at the same moment are spread out instead of arriving
+ * at S3 together.
+ * <p>
+ * Server and RequestTimeout errors are retryable for all operations. IO errors are only
+ * retryable for reads and deletes, as the data of a write request may not be repeatable.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th></tr>
+ * <tr><td>s3service.retry-base-delay-ms</td><td>50</td></tr>
+ * <tr><td>s3service.retry-max-delay-ms</td><td>20000</td></tr>
+ * <tr><td>s3service.internal-error-retry-max</td><td>5</td></tr>
+ * <tr><td>s3service.io-error-retry-max</td><td>5</td></tr>
+ * <tr><td>s3service.redirect-max</td><td>5</td></tr>
+ * <tr><td>httpclient.retry-max</td><td>5</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class DefaultRetryPolicy implements RetryPolicy {
+    private final Random random = new Random();
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int internalErrorRetryMax;
+    private final int requestTimeoutRetryMax;
+    private final int ioErrorRetryMax;
+    private final int redirectMax;
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the policy.
+     */
+    public DefaultRetryPolicy(Jets3tProperties jets3tProperties) {
+        this.baseDelayMs = Math.max(1,
+            jets3tProperties.getLongProperty("s3service.retry-base-delay-ms", 50));
+        this.maxDelayMs = Math.max(baseDelayMs,
+            jets3tProperties.getLongProperty("s3service.retry-max-delay-ms", 20000));
+        this.internalErrorRetryMax =
+            jets3tProperties.getIntProperty("s3service.internal-error-retry-max", 5);
+        this.requestTimeoutRetryMax =
+            jets3tProperties.getIntProperty("httpclient.retry-max", 5);
+        this.ioErrorRetryMax =
+            jets3tProperties.getIntProperty("s3service.io-error-retry-max", 5);
+        this.redirectMax =
+            jets3tProperties.getIntProperty("s3service.redirect-max", 5);
+    }
+
+    public int getMaxRetries(int operationType, int errorType) {
+        switch (errorType) {
+        case ERROR_SERVER_UNAVAILABLE:
+            return internalErrorRetryMax;
+        case ERROR_REQUEST_TIMEOUT:
+            return requestTimeoutRetryMax;
+        case ERROR_IO:
+            return (operationType == OPERATION_WRITE ? 0 : ioErrorRetryMax);
+        default:
+            return 0;
+        }
+    }
+
+    public long getRetryDelayMs(int retryCount, long previousDelayMs) {
+        long upperBoundMs = Math.min(maxDelayMs, Math.max(baseDelayMs, previousDelayMs) * 3);
+        long range = upperBoundMs - baseDelayMs;
+        long delayMs = baseDelayMs;
+        if (range > 0) {
+            delayMs += (long) (random.nextDouble() * (range + 1));
+        }
+        return Math.min(maxDelayMs, delayMs);
+    }
+
+    public int getMaxRedirects() {
+        return redirectMax;
+    }
+
+}
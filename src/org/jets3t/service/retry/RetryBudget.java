@@ -0,0 +1,114 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.retry;
+
+import org.jets3t.service.Jets3tProperties;
+
+/**
+ * A budget of retries shared by all the requests performed by a service, which stops the
+ * service from multiplying its load on S3 with retries when most requests are failing.
+ * <p>
+ * The budget holds a number of tokens, initially its full capacity. Each retry spends one
+ * token, and each request that succeeds earns back a fraction of a token, so retries are
+ * always available while most requests succeed. When S3 is shedding load and requests keep
+ * failing, the tokens run out and failed requests are reported immediately instead of being
+ * retried, until enough requests succeed to refill the budget.
+ * <p>
+ * This class uses the following properties:
+ * <table>
+ * <tr><th>Property</th><th>Default</th><th>Description</th></tr>
+ * <tr><td>s3service.retry-budget-capacity</td><td>100</td>
+ * <td>The maximum number of tokens, 0 or less to disable the budget</td></tr>
+ * <tr><td>s3service.retry-budget-successes-per-token</td><td>10</td>
+ * <td>The number of successful requests that earn back one token</td></tr>
+ * </table>
+ *
+ * @author James Murty
+ */
+public class RetryBudget {
+    private final boolean isEnabled;
+    private final long successesPerToken;
+    private final long capacityUnits;
+
+    /**
+     * The available budget, counted in fractions of a token such that each success earns
+     * one unit and each retry costs {@link #successesPerToken} units.
+     */
+    private long availableUnits;
+
+    /**
+     * @param jets3tProperties
+     * the properties that configure the budget.
+     */
+    public RetryBudget(Jets3tProperties jets3tProperties) {
+        this(jets3tProperties.getIntProperty("s3service.retry-budget-capacity", 100),
+            jets3tProperties.getIntProperty("s3service.retry-budget-successes-per-token", 10));
+    }
+
+    /**
+     * @param capacity
+     * the maximum number of retry tokens, or 0 or less for an unlimited budget.
+     * @param successesPerToken
+     * the number of successful requests that earn back one token.
+     */
+    public RetryBudget(int capacity, int successesPerToken) {
+        this.isEnabled = capacity > 0;
+        this.successesPerToken = Math.max(1, successesPerToken);
+        this.capacityUnits = Math.max(0, capacity) * this.successesPerToken;
+        this.availableUnits = this.capacityUnits;
+    }
+
+    /**
+     * Spends one token for a retry, if one is available.
+     *
+     * @return
+     * true if the retry may be performed, false if the budget is exhausted.
+     */
+    public synchronized boolean tryAcquireRetry() {
+        if (!isEnabled) {
+            return true;
+        }
+        if (availableUnits < successesPerToken) {
+            return false;
+        }
+        availableUnits -= successesPerToken;
+        return true;
+    }
+
+    /**
+     * Earns back a fraction of a token for a request that succeeded.
+     */
+    public synchronized void recordSuccess() {
+        if (isEnabled && availableUnits < capacityUnits) {
+            availableUnits++;
+        }
+    }
+
+    /**
+     * @return
+     * the number of whole retry tokens currently available, or -1 if the budget is unlimited.
+     */
+    public synchronized long getAvailableTokens() {
+        if (!isEnabled) {
+            return -1;
+        }
+        return availableUnits / successesPerToken;
+    }
+
+}
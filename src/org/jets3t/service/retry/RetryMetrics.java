@@ -0,0 +1,131 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.retry;
+
+/**
+ * Counts the retries performed and refused by a service, by kind of error.
+ *
+ * @author James Murty
+ */
+public class RetryMetrics {
+    private static final int ERROR_TYPE_COUNT = 3;
+
+    private final long[] retriesTaken = new long[ERROR_TYPE_COUNT];
+    private final long[] retriesRefusedByPolicy = new long[ERROR_TYPE_COUNT];
+    private final long[] retriesRefusedByBudget = new long[ERROR_TYPE_COUNT];
+    private long totalRetryDelayMs = 0;
+
+    /**
+     * Records a retry that was performed.
+     *
+     * @param errorType
+     * the kind of error that caused the retry, one of the
+     * <code>RetryPolicy.ERROR_</code> constants.
+     * @param delayMs
+     * the delay before the retry.
+     */
+    public synchronized void recordRetryTaken(int errorType, long delayMs) {
+        retriesTaken[errorType]++;
+        totalRetryDelayMs += delayMs;
+    }
+
+    /**
+     * Records a retry that was refused because the error was not retryable, or the request
+     * had already been retried the maximum number of times.
+     */
+    public synchronized void recordRetryRefusedByPolicy(int errorType) {
+        retriesRefusedByPolicy[errorType]++;
+    }
+
+    /**
+     * Records a retry that was refused because the service's retry budget was exhausted.
+     */
+    public synchronized void recordRetryRefusedByBudget(int errorType) {
+        retriesRefusedByBudget[errorType]++;
+    }
+
+    /**
+     * @param errorType
+     * one of the <code>RetryPolicy.ERROR_</code> constants.
+     * @return
+     * the number of retries performed for the kind of error.
+     */
+    public synchronized long getRetriesTaken(int errorType) {
+        return retriesTaken[errorType];
+    }
+
+    /**
+     * @param errorType
+     * one of the <code>RetryPolicy.ERROR_</code> constants.
+     * @return
+     * the number of retries refused by the retry policy for the kind of error.
+     */
+    public synchronized long getRetriesRefusedByPolicy(int errorType) {
+        return retriesRefusedByPolicy[errorType];
+    }
+
+    /**
+     * @param errorType
+     * one of the <code>RetryPolicy.ERROR_</code> constants.
+     * @return
+     * the number of retries refused by the retry budget for the kind of error.
+     */
+    public synchronized long getRetriesRefusedByBudget(int errorType) {
+        return retriesRefusedByBudget[errorType];
+    }
+
+    /**
+     * @return
+     * the total number of retries performed for all kinds of error.
+     */
+    public synchronized long getTotalRetriesTaken() {
+        return sum(retriesTaken);
+    }
+
+    /**
+     * @return
+     * the total number of retries refused, by the policy or the budget, for all kinds of error.
+     */
+    public synchronized long getTotalRetriesRefused() {
+        return sum(retriesRefusedByPolicy) + sum(retriesRefusedByBudget);
+    }
+
+    /**
+     * @return
+     * the total time spent waiting before retries, in milliseconds.
+     */
+    public synchronized long getTotalRetryDelayMs() {
+        return totalRetryDelayMs;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    public synchronized String toString() {
+        return "RetryMetrics [taken=" + getTotalRetriesTaken()
+            + ", refused=" + getTotalRetriesRefused()
+            + ", totalDelayMs=" + totalRetryDelayMs + "]";
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.retry;
+
+/**
+ * Decides whether, and after what delay, a service request that failed with a recoverable
+ * error should be retried.
+ * <p>
+ * Errors are classified by the kind of operation that failed and the kind of error that
+ * occurred, so a policy can treat idempotent reads differently from writes whose request
+ * data may not be repeatable. Whether a retry is actually performed is also subject to the
+ * service's shared {@link RetryBudget}.
+ * <p>
+ * Implementations must be thread-safe, as a single policy is shared by all the threads
+ * using a service.
+ *
+ * @author James Murty
+ */
+public interface RetryPolicy {
+
+    /**
+     * Operations that retrieve data without changing it, such as GET, HEAD and bucket listings.
+     */
+    public static final int OPERATION_READ = 0;
+
+    /**
+     * Operations that create or change data, such as PUT, copy and POST.
+     */
+    public static final int OPERATION_WRITE = 1;
+
+    /**
+     * Operations that delete data.
+     */
+    public static final int OPERATION_DELETE = 2;
+
+    /**
+     * S3 Internal Server (500) or Service Unavailable (503) errors.
+     */
+    public static final int ERROR_SERVER_UNAVAILABLE = 0;
+
+    /**
+     * RequestTimeout errors, reported when a request's data was not received quickly enough.
+     */
+    public static final int ERROR_REQUEST_TIMEOUT = 1;
+
+    /**
+     * IO errors while communicating with S3 or reading a response.
+     */
+    public static final int ERROR_IO = 2;
+
+    /**
+     * @param operationType
+     * the kind of operation that failed, one of the <code>OPERATION_</code> constants.
+     * @param errorType
+     * the kind of error that occurred, one of the <code>ERROR_</code> constants.
+     *
+     * @return
+     * the maximum number of times a single request may be retried for this kind of error,
+     * or 0 if the error is not retryable for the operation.
+     */
+    public int getMaxRetries(int operationType, int errorType);
+
+    /**
+     * @param retryCount
+     * the number of the retry about to be performed, starting at 1.
+     * @param previousDelayMs
+     * the delay before the previous retry of the same request, or 0 if this is the first retry.
+     *
+     * @return
+     * the number of milliseconds to wait before retrying the request.
+     */
+    public long getRetryDelayMs(int retryCount, long previousDelayMs);
+
+    /**
+     * @return
+     * the maximum number of Temporary Redirect (307) responses a single request may follow.
+     */
+    public int getMaxRedirects();
+
+}
@@ -0,0 +1,220 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jets3t.service.Constants;
+
+/**
+ * A manifest describing how a file's data has been split into content-addressed chunks
+ * by a {@link ContentDefinedChunker}.
+ * <p>
+ * Each chunk is stored once in a chunk store, as an object named after the SHA-1 hash of the
+ * chunk's data. The manifest lists the chunks that make up the file in order, along with the
+ * total length and MD5 hash of the file, so the file can be re-assembled from its chunks and
+ * verified. Files that share content share chunks, so when a large file changes only the
+ * chunks containing the changed bytes need to be stored again.
+ * <p>
+ * Chunk stores are kept in a sub-directory named {@link #CHUNK_DIRECTORY_NAME} of the
+ * S3 path the files belong to.
+ *
+ * @author James Murty
+ */
+public class ChunkManifest {
+    /**
+     * The name of the sub-directory in which chunk objects are stored.
+     */
+    public static final String CHUNK_DIRECTORY_NAME = ".jets3t-chunks";
+
+    /**
+     * The content type of objects containing a chunk manifest.
+     */
+    public static final String MIMETYPE_CHUNK_MANIFEST = "application/x-jets3t-chunk-manifest";
+
+    private static final String MANIFEST_HEADER = "jets3t-chunk-manifest 1";
+
+    private final long fileLength;
+    private final String md5HashAsBase64;
+    private final List chunks;
+
+    /**
+     * A single chunk of a file's data.
+     */
+    public static class Chunk {
+        private final String hashAsHex;
+        private final long offset;
+        private final int length;
+
+        /**
+         * @param hashAsHex
+         * the hex-encoded SHA-1 hash of the chunk's data.
+         * @param offset
+         * the offset of the chunk within the file.
+         * @param length
+         * the length of the chunk.
+         */
+        public Chunk(String hashAsHex, long offset, int length) {
+            this.hashAsHex = hashAsHex;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getHashAsHex() {
+            return hashAsHex;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * @param fileLength
+     * the total length of the file.
+     * @param md5HashAsBase64
+     * the Base64-encoded MD5 hash of the file's data.
+     * @param chunks
+     * the file's chunks, in order.
+     */
+    public ChunkManifest(long fileLength, String md5HashAsBase64, List chunks) {
+        this.fileLength = fileLength;
+        this.md5HashAsBase64 = md5HashAsBase64;
+        this.chunks = Collections.unmodifiableList(new ArrayList(chunks));
+    }
+
+    /**
+     * @param rootObjectPath
+     * the S3 path that the chunked files belong to, which may be empty.
+     *
+     * @return
+     * the key name prefix of the chunk store for the given path, including a trailing '/'.
+     */
+    public static String getChunkDirectoryPath(String rootObjectPath) {
+        String path = rootObjectPath;
+        if (path.length() > 0 && !path.endsWith(Constants.FILE_PATH_DELIM)) {
+            path += Constants.FILE_PATH_DELIM;
+        }
+        return path + CHUNK_DIRECTORY_NAME + Constants.FILE_PATH_DELIM;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public String getMd5HashAsBase64() {
+        return md5HashAsBase64;
+    }
+
+    /**
+     * @return
+     * an unmodifiable list of the file's {@link Chunk}s, in order.
+     */
+    public List getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Serializes the manifest as UTF-8 text, with one line per chunk.
+     *
+     * @return
+     * the serialized manifest data.
+     *
+     * @throws UnsupportedEncodingException
+     */
+    public byte[] toByteArray() throws UnsupportedEncodingException {
+        StringBuffer sb = new StringBuffer();
+        sb.append(MANIFEST_HEADER).append('\n');
+        sb.append(fileLength).append('\t').append(md5HashAsBase64).append('\n');
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = (Chunk) chunks.get(i);
+            sb.append(chunk.getHashAsHex()).append('\t').append(chunk.getLength()).append('\n');
+        }
+        return sb.toString().getBytes(Constants.DEFAULT_ENCODING);
+    }
+
+    /**
+     * Parses a manifest previously serialized with {@link #toByteArray()}. The input stream
+     * is closed by this method.
+     *
+     * @param is
+     * the serialized manifest data.
+     *
+     * @return
+     * the manifest.
+     *
+     * @throws IOException
+     * if the data cannot be read, or is not a valid manifest.
+     */
+    public static ChunkManifest parse(InputStream is) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(is, Constants.DEFAULT_ENCODING));
+        try {
+            String line = reader.readLine();
+            if (!MANIFEST_HEADER.equals(line)) {
+                throw new IOException("Unrecognised chunk manifest format: " + line);
+            }
+            line = reader.readLine();
+            String[] fields = (line == null ? new String[0] : line.split("\t"));
+            if (fields.length != 2) {
+                throw new IOException("Invalid chunk manifest summary: " + line);
+            }
+            try {
+                long fileLength = Long.parseLong(fields[0]);
+                String md5HashAsBase64 = fields[1];
+
+                List chunks = new ArrayList();
+                long offset = 0;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0) {
+                        continue;
+                    }
+                    fields = line.split("\t");
+                    if (fields.length != 2) {
+                        throw new IOException("Invalid chunk manifest entry: " + line);
+                    }
+                    int length = Integer.parseInt(fields[1]);
+                    chunks.add(new Chunk(fields[0], offset, length));
+                    offset += length;
+                }
+                if (offset != fileLength) {
+                    throw new IOException("Chunk manifest lengths do not add up to the file length "
+                        + fileLength + ": " + offset);
+                }
+                return new ChunkManifest(fileLength, md5HashAsBase64, chunks);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk manifest entry: " + line);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+}
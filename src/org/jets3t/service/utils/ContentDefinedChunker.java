@@ -0,0 +1,151 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Splits files into chunks at boundaries determined by their content, rather than at fixed
+ * offsets, so that inserting or removing bytes in a file only changes the chunks around the
+ * edit. Unchanged regions of the file produce the same chunks as before, even if they have
+ * moved, which allows chunks to be de-duplicated between versions of a file.
+ * <p>
+ * Boundaries are found with a "gear" rolling hash over the most recent bytes of the file: a
+ * chunk ends where the top bits of the hash are all zero, subject to minimum and maximum chunk
+ * sizes. The number of bits tested sets the average chunk size. The hash table is generated
+ * from a fixed seed, so the same data always produces the same chunks.
+ *
+ * @author James Murty
+ */
+public class ContentDefinedChunker {
+    private static final long[] GEAR_TABLE = new long[256];
+
+    static {
+        Random random = new Random(0x6a65747333744c4cL);
+        for (int i = 0; i < GEAR_TABLE.length; i++) {
+            GEAR_TABLE[i] = random.nextLong();
+        }
+    }
+
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final int boundaryShift;
+
+    /**
+     * @param minChunkSize
+     * the minimum size of a chunk, except the last chunk of a file.
+     * @param averageChunkSize
+     * the target average size of chunks, which must be a power of 2.
+     * @param maxChunkSize
+     * the maximum size of a chunk.
+     */
+    public ContentDefinedChunker(int minChunkSize, int averageChunkSize, int maxChunkSize) {
+        if (averageChunkSize <= 0 || (averageChunkSize & (averageChunkSize - 1)) != 0) {
+            throw new IllegalArgumentException(
+                "Average chunk size must be a power of 2: " + averageChunkSize);
+        }
+        if (minChunkSize <= 0 || minChunkSize > averageChunkSize || averageChunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < minimum ("
+                + minChunkSize + ") <= average (" + averageChunkSize + ") <= maximum ("
+                + maxChunkSize + ")");
+        }
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+
+        int bits = 0;
+        while ((1 << bits) < averageChunkSize) {
+            bits++;
+        }
+        this.boundaryShift = 64 - bits;
+    }
+
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    /**
+     * Splits a file into content-defined chunks.
+     *
+     * @param file
+     * the file to split.
+     *
+     * @return
+     * a manifest listing the file's chunks, identified by the SHA-1 hashes of their data,
+     * and the MD5 hash of the whole file.
+     *
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     */
+    public ChunkManifest chunkFile(File file) throws NoSuchAlgorithmException, IOException {
+        MessageDigest fileDigest = MessageDigest.getInstance("MD5");
+        MessageDigest chunkDigest = MessageDigest.getInstance("SHA-1");
+        List chunks = new ArrayList();
+
+        long hash = 0;
+        long chunkOffset = 0;
+        int chunkLength = 0;
+        long fileLength = 0;
+
+        byte[] buffer = new byte[65536];
+        InputStream is = new FileInputStream(file);
+        try {
+            int read = -1;
+            while ((read = is.read(buffer)) != -1) {
+                fileDigest.update(buffer, 0, read);
+
+                int segmentStart = 0;
+                for (int i = 0; i < read; i++) {
+                    hash = (hash << 1) + GEAR_TABLE[buffer[i] & 0xff];
+                    chunkLength++;
+
+                    if (chunkLength >= maxChunkSize
+                        || (chunkLength >= minChunkSize && (hash >>> boundaryShift) == 0))
+                    {
+                        chunkDigest.update(buffer, segmentStart, i + 1 - segmentStart);
+                        chunks.add(new ChunkManifest.Chunk(
+                            ServiceUtils.toHex(chunkDigest.digest()), chunkOffset, chunkLength));
+                        chunkOffset += chunkLength;
+                        chunkLength = 0;
+                        hash = 0;
+                        segmentStart = i + 1;
+                    }
+                }
+                chunkDigest.update(buffer, segmentStart, read - segmentStart);
+                fileLength += read;
+            }
+        } finally {
+            is.close();
+        }
+
+        if (chunkLength > 0) {
+            chunks.add(new ChunkManifest.Chunk(
+                ServiceUtils.toHex(chunkDigest.digest()), chunkOffset, chunkLength));
+        }
+        return new ChunkManifest(fileLength, ServiceUtils.toBase64(fileDigest.digest()), chunks);
+    }
+
+}
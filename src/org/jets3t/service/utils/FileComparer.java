@@ -74,6 +74,25 @@ public class FileComparer {
     private static final Log log = LogFactory.getLog(FileComparer.class);
     
     private Jets3tProperties jets3tProperties = null;
+
+    /**
+     * Hashes of local files computed while deciding which objects need their metadata
+     * retrieved, keyed by file path, so the files need not be hashed again when they
+     * are compared. Entries are removed as they are used.
+     */
+    private final Map precomputedFileHashes = Collections.synchronizedMap(new HashMap());
+
+    private static class PrecomputedFileHash {
+        private final long lastModified;
+        private final long length;
+        private final byte[] hash;
+
+        public PrecomputedFileHash(File file, byte[] hash) {
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.hash = hash;
+        }
+    }
     
     /**
      * Constructs the class.
@@ -597,6 +616,12 @@ public class FileComparer {
      * <p>
      * If the method is asked to perform only a partial listing, no bucket name
      * partitioning will be applied. 
+     * <p>
+     * Objects in the {@link PackIndex#PACK_DIRECTORY_NAME} and 
+     * {@link ChunkManifest#CHUNK_DIRECTORY_NAME} sub-directories of the target path are
+     * not included in the map, as they contain packed or chunked file data rather than 
+     * individual files. Use {@link #loadPackIndex(S3Service, S3Bucket, String)} to compare 
+     * packed files.
      * 
      * @see #buildDiscrepancyLists(Map, Map)
      * @see #buildFileMap(File, String, boolean)
@@ -620,6 +645,46 @@ public class FileComparer {
         String targetPath, String priorLastKey, boolean completeListing, 
         boolean skipMetadata, S3ServiceEventListener s3ServiceEventListener) 
         throws S3ServiceException
+    {
+        return buildS3ObjectMapPartial(s3Service, bucket, targetPath, priorLastKey,
+            completeListing, skipMetadata, null, true, s3ServiceEventListener);
+    }
+
+    /**
+     * Builds an S3 Object Map containing a partial set of objects within the given target path,
+     * retrieving metadata only for the objects whose listing details are not sufficient to
+     * compare them with the given local files.
+     * 
+     * @see #buildS3ObjectMapPartial(S3Service, S3Bucket, String, String, boolean, boolean, S3ServiceEventListener)
+     * @see #isMetadataRequired(String, S3Object, Map, boolean)
+     * 
+     * @param s3Service
+     * @param bucket
+     * @param targetPath
+     * @param priorLastKey 
+     * the prior last key value returned by a prior invocation of this method, if any.
+     * @param completeListing
+     * if true, this method will perform a complete listing of an S3 target. 
+     * If false, the method will list a partial set of objects commencing from the
+     * given prior last key.
+     * @param skipMetadata
+     * @param filesMap
+     * a map of keys/Files built using the method {@link #buildFileMap(File, String, boolean)}
+     * that the objects will be compared with, or null to retrieve metadata for all objects.
+     * @param serverOnlyMetadataRequired
+     * if true, metadata is retrieved for objects that have no corresponding local file.
+     * @param s3ServiceEventListener
+     * 
+     * @return
+     * an object containing a mapping of key names to S3Objects, and the prior last
+     * key (if any) that should be used to perform follow-up method calls.
+     * @throws S3ServiceException
+     */
+    public PartialObjectListing buildS3ObjectMapPartial(S3Service s3Service, S3Bucket bucket, 
+        String targetPath, String priorLastKey, boolean completeListing, 
+        boolean skipMetadata, Map filesMap, boolean serverOnlyMetadataRequired,
+        S3ServiceEventListener s3ServiceEventListener) 
+        throws S3ServiceException
     {
         String prefix = (targetPath.length() > 0 ? targetPath : null);
         S3Object[] objects = null;
@@ -633,9 +698,25 @@ public class FileComparer {
             objects = chunk.getObjects();
             resultPriorLastKey = chunk.getPriorLastKey();
         }
+        
+        // Objects in the pack and chunk directories hold the data of packed or chunked 
+        // files, they do not correspond to files themselves.
+        String packDirectoryPath = PackIndex.getPackDirectoryPath(targetPath);
+        String chunkDirectoryPath = ChunkManifest.getChunkDirectoryPath(targetPath);
+        List fileObjects = new ArrayList(objects.length);
+        for (int i = 0; i < objects.length; i++) {
+            if (!objects[i].getKey().startsWith(packDirectoryPath)
+                && !objects[i].getKey().startsWith(chunkDirectoryPath)) 
+            {
+                fileObjects.add(objects[i]);
+            }
+        }
+        if (fileObjects.size() < objects.length) {
+            objects = (S3Object[]) fileObjects.toArray(new S3Object[fileObjects.size()]);
+        }
 
         Map objectsMap = buildS3ObjectMap(s3Service, bucket, targetPath, 
-            objects, skipMetadata, s3ServiceEventListener);
+            objects, skipMetadata, filesMap, serverOnlyMetadataRequired, s3ServiceEventListener);
         return new PartialObjectListing(objectsMap, resultPriorLastKey);
     }
 
@@ -660,14 +741,77 @@ public class FileComparer {
         S3Object[] s3ObjectsIncomplete, boolean skipMetadata,
         S3ServiceEventListener s3ServiceEventListener) 
         throws S3ServiceException
+    {
+        return buildS3ObjectMap(s3Service, bucket, targetPath, s3ObjectsIncomplete, 
+            skipMetadata, null, true, s3ServiceEventListener);
+    }
+
+    /**
+     * Builds an S3 Object Map containing all the given objects, retrieving HEAD details only 
+     * for the objects whose listing details are not sufficient to compare them with the 
+     * given local files. Objects whose HEAD details are not retrieved are included in the map
+     * as they were listed, and are not flagged as having complete metadata.
+     * <p>
+     * This selective behaviour can be disabled by setting the property 
+     * <code>filecomparer.selective-metadata</code> to false, in which case HEAD details are
+     * retrieved for all the objects.
+     * 
+     * @see #isMetadataRequired(String, S3Object, Map, boolean)
+     * 
+     * @param s3Service
+     * @param bucket
+     * @param targetPath
+     * @param s3ObjectsIncomplete
+     * @param skipMetadata
+     * @param filesMap
+     * a map of keys/Files built using the method {@link #buildFileMap(File, String, boolean)}
+     * that the objects will be compared with, or null to retrieve metadata for all objects.
+     * @param serverOnlyMetadataRequired
+     * if true, metadata is retrieved for objects that have no corresponding local file.
+     * @param s3ServiceEventListener
+     * @return
+     * mapping of keys/S3Objects
+     * @throws S3ServiceException
+     */
+    public Map buildS3ObjectMap(S3Service s3Service, S3Bucket bucket,  String targetPath, 
+        S3Object[] s3ObjectsIncomplete, boolean skipMetadata, Map filesMap, 
+        boolean serverOnlyMetadataRequired, S3ServiceEventListener s3ServiceEventListener) 
+        throws S3ServiceException
     {
         S3Object[] s3Objects = null;
         
         if (skipMetadata) {
             s3Objects = s3ObjectsIncomplete;            
         } else {
-            // Retrieve the complete information about all objects listed via GetObjectsHeads.
+            // Identify the objects whose listing details are insufficient for comparison.
+            S3Object[] s3ObjectsForHead = s3ObjectsIncomplete;
             final ArrayList s3ObjectsCompleteList = new ArrayList(s3ObjectsIncomplete.length);
+            if (filesMap != null 
+                && jets3tProperties.getBoolProperty("filecomparer.selective-metadata", true)) 
+            {
+                List objectsForHeadList = new ArrayList();
+                Iterator listedIter = populateS3ObjectMap(targetPath, s3ObjectsIncomplete)
+                    .entrySet().iterator();
+                while (listedIter.hasNext()) {
+                    Map.Entry entry = (Map.Entry) listedIter.next();
+                    S3Object listedObject = (S3Object) entry.getValue();
+                    if (isMetadataRequired((String) entry.getKey(), listedObject, 
+                        filesMap, serverOnlyMetadataRequired)) 
+                    {
+                        objectsForHeadList.add(listedObject);
+                    } else {
+                        s3ObjectsCompleteList.add(listedObject);
+                    }
+                }
+                s3ObjectsForHead = (S3Object[]) objectsForHeadList
+                    .toArray(new S3Object[objectsForHeadList.size()]);
+                if (log.isDebugEnabled()) {
+                    log.debug("Retrieving metadata for " + s3ObjectsForHead.length + " of " 
+                        + s3ObjectsIncomplete.length + " listed objects");
+                }
+            }
+            
+            // Retrieve the complete information about the objects via GetObjectsHeads.
             final S3ServiceException s3ServiceExceptions[] = new S3ServiceException[1];
             S3ServiceMulti s3ServiceMulti = new S3ServiceMulti(s3Service, new S3ServiceEventAdaptor() {
                 public void s3ServiceEventPerformed(GetObjectHeadsEvent event) {
@@ -686,7 +830,9 @@ public class FileComparer {
             if (s3ServiceEventListener != null) {
                 s3ServiceMulti.addServiceEventListener(s3ServiceEventListener);
             }
-            s3ServiceMulti.getObjectsHeads(bucket, s3ObjectsIncomplete);
+            if (s3ObjectsForHead.length > 0) {
+                s3ServiceMulti.getObjectsHeads(bucket, s3ObjectsForHead);
+            }
             if (s3ServiceExceptions[0] != null) {
                 throw s3ServiceExceptions[0];
             }        
@@ -697,6 +843,129 @@ public class FileComparer {
         return populateS3ObjectMap(targetPath, s3Objects);
     }
 
+    /**
+     * Decides whether the details of an object obtained from a bucket listing are sufficient
+     * to compare the object with its corresponding local file, or whether the object's 
+     * metadata must be retrieved with a HEAD request. 
+     * <p>
+     * A listing includes an object's size and ETag but not its metadata, so the listing
+     * details are only sufficient when the object's data is identical to the local file. 
+     * Metadata is required for objects that are empty, as these may be directory placeholders 
+     * that can only be recognised by their content type, and for objects whose size or ETag 
+     * do not match the local file, as these may have been compressed or encrypted, and their 
+     * comparison depends on the original hash and local file date metadata items.
+     * <p>
+     * Local file hashes computed by this method are kept and re-used when the files are 
+     * compared by {@link #buildDiscrepancyLists(Map, Map, BytesProgressWatcher)}.
+     * 
+     * @param relativeKey
+     * the object's key relative to the target path.
+     * @param listedObject
+     * the object as it was listed.
+     * @param filesMap
+     * a map of keys/Files built using the method {@link #buildFileMap(File, String, boolean)}
+     * @param serverOnlyMetadataRequired
+     * if true, metadata is required for objects that have no corresponding local file.
+     * @return
+     * true if the object's metadata must be retrieved.
+     */
+    protected boolean isMetadataRequired(String relativeKey, S3Object listedObject, 
+        Map filesMap, boolean serverOnlyMetadataRequired) 
+    {
+        if (listedObject.getContentLength() == 0) {
+            return true;
+        }
+        File file = (File) filesMap.get(relativeKey);
+        if (file == null) {
+            return serverOnlyMetadataRequired;
+        }
+        if (file.isDirectory()) {
+            return false;
+        }
+        String etag = listedObject.getETag();
+        if (file.length() != listedObject.getContentLength()
+            || etag == null || etag.length() != 32) 
+        {
+            return true;
+        }
+        try {
+            byte[] computedHash = computeFileHash(file, null);
+            precomputedFileHashes.put(file.getPath(), new PrecomputedFileHash(file, computedHash));
+            return !ServiceUtils.toHex(computedHash).equalsIgnoreCase(etag);
+        } catch (Exception e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Unable to compute hash of local file " + file 
+                    + ", object metadata will be retrieved", e);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Computes the MD5 hash of a local file, or reads it from a pre-computed MD5 hash file
+     * if the <code>filecomparer.use-md5-files</code> property is set, and generates the hash 
+     * file if the <code>filecomparer.generate-md5-files</code> property is set.
+     */
+    private byte[] computeFileHash(File file, BytesProgressWatcher progressWatcher) 
+        throws NoSuchAlgorithmException, FileNotFoundException, IOException
+    {
+        boolean useMd5Files = jets3tProperties
+            .getBoolProperty("filecomparer.use-md5-files", false);
+
+        boolean generateMd5Files = jets3tProperties
+            .getBoolProperty("filecomparer.generate-md5-files", false);                                        
+        
+        byte[] computedHash = null;
+        
+        // Check whether a pre-computed MD5 hash file is available
+        File computedHashFile = new File(file.getPath() + ".md5");
+        if (useMd5Files
+            && computedHashFile.canRead()
+            && computedHashFile.lastModified() > file.lastModified())
+        {
+            try {
+                // A pre-computed MD5 hash file is available, try to read this hash value
+                BufferedReader br = new BufferedReader(new FileReader(computedHashFile));
+                computedHash = ServiceUtils.fromHex(br.readLine().split("\\s")[0]);
+                br.close();
+            } catch (Exception e) {
+            	if (log.isWarnEnabled()) {
+            		log.warn("Unable to read hash from computed MD5 file", e);
+            	}
+            }
+        }
+        
+        if (computedHash == null) {
+            // A pre-computed hash file was not available, or could not be read. 
+            // Calculate the hash value anew.
+            InputStream hashInputStream = null;
+            if (progressWatcher != null) {
+                hashInputStream = new ProgressMonitoredInputStream( // Report on MD5 hash progress.
+                    new FileInputStream(file), progressWatcher);
+            } else {
+                hashInputStream = new FileInputStream(file);
+            }
+            computedHash = ServiceUtils.computeMD5Hash(hashInputStream);
+        }
+                                                                    
+        if (generateMd5Files && !file.getName().endsWith(".md5") &&
+            (!computedHashFile.exists() 
+            || computedHashFile.lastModified() < file.lastModified()))
+        {
+            // Create or update a pre-computed MD5 hash file.
+            try {
+                FileWriter fw = new FileWriter(computedHashFile);                            
+                fw.write(ServiceUtils.toHex(computedHash));
+                fw.close();
+            } catch (Exception e) {
+            	if (log.isWarnEnabled()) {
+            		log.warn("Unable to write computed MD5 hash to a file", e);
+            	}
+            }
+        }
+        return computedHash;
+    }
+
     /**
      * Builds a map of key/object pairs each object is associated with a key based on its location
      * in the S3 target path. 
@@ -735,6 +1004,38 @@ public class FileComparer {
         }
         return map;
     }
+    
+    /**
+     * Retrieves the index of small files that have been packed into pack objects below the
+     * given target path.
+     * 
+     * @see PackIndex
+     * 
+     * @param s3Service
+     * @param bucket
+     * @param targetPath
+     * 
+     * @return
+     * the pack index, which will be empty if no files have been packed in the target path.
+     * 
+     * @throws S3ServiceException
+     * @throws IOException
+     */
+    public PackIndex loadPackIndex(S3Service s3Service, S3Bucket bucket, String targetPath) 
+        throws S3ServiceException, IOException
+    {
+        String indexKey = PackIndex.getPackDirectoryPath(targetPath) + PackIndex.INDEX_OBJECT_NAME;
+        S3Object indexObject = null;
+        try {
+            indexObject = s3Service.getObject(bucket, indexKey);
+        } catch (S3ServiceException e) {
+            if (e.getResponseCode() == 404) {
+                return new PackIndex();
+            }
+            throw e;
+        }
+        return PackIndex.parse(indexObject.getDataInputStream());
+    }
 
     /**
      * Compares the contents of a directory on the local file system with the contents of an
@@ -837,64 +1138,23 @@ public class FileComparer {
                     // We don't care about directory date changes, as long as it's present.
                     alreadySynchronisedKeys.add(keyPath);
                 } else {
-                    // Compare file hashes.
-                    boolean useMd5Files = jets3tProperties
-                        .getBoolProperty("filecomparer.use-md5-files", false);
-
-                    boolean generateMd5Files = jets3tProperties
-                        .getBoolProperty("filecomparer.generate-md5-files", false);                                        
-                    
+                    // Compare file hashes, re-using any hash computed while listing objects.
                     byte[] computedHash = null;
-                    
-                    // Check whether a pre-computed MD5 hash file is available
-                    File computedHashFile = new File(file.getPath() + ".md5");
-                    if (useMd5Files
-                        && computedHashFile.canRead()
-                        && computedHashFile.lastModified() > file.lastModified())
+                    PrecomputedFileHash precomputed = (PrecomputedFileHash) 
+                        precomputedFileHashes.remove(file.getPath());
+                    if (precomputed != null 
+                        && precomputed.lastModified == file.lastModified()
+                        && precomputed.length == file.length())
                     {
-                        try {
-                            // A pre-computed MD5 hash file is available, try to read this hash value
-                            BufferedReader br = new BufferedReader(new FileReader(computedHashFile));
-                            computedHash = ServiceUtils.fromHex(br.readLine().split("\\s")[0]);
-                            br.close();
-                        } catch (Exception e) {
-                        	if (log.isWarnEnabled()) {
-                        		log.warn("Unable to read hash from computed MD5 file", e);
-                        	}
-                        }
-                    }
-                    
-                    if (computedHash == null) {
-                        // A pre-computed hash file was not available, or could not be read. 
-                        // Calculate the hash value anew.
-                        InputStream hashInputStream = null;
+                        computedHash = precomputed.hash;
                         if (progressWatcher != null) {
-                            hashInputStream = new ProgressMonitoredInputStream( // Report on MD5 hash progress.
-                                new FileInputStream(file), progressWatcher);
-                        } else {
-                            hashInputStream = new FileInputStream(file);
+                            progressWatcher.updateBytesTransferred(file.length());
                         }
-                        computedHash = ServiceUtils.computeMD5Hash(hashInputStream);
+                    } else {
+                        computedHash = computeFileHash(file, progressWatcher);
                     }
-                                                                                
                     String fileHashAsBase64 = ServiceUtils.toBase64(computedHash);
                     
-                    if (generateMd5Files && !file.getName().endsWith(".md5") &&
-                        (!computedHashFile.exists() 
-                        || computedHashFile.lastModified() < file.lastModified()))
-                    {
-                        // Create or update a pre-computed MD5 hash file.
-                        try {
-                            FileWriter fw = new FileWriter(computedHashFile);                            
-                            fw.write(ServiceUtils.toHex(computedHash));
-                            fw.close();
-                        } catch (Exception e) {
-                        	if (log.isWarnEnabled()) {
-                        		log.warn("Unable to write computed MD5 hash to a file", e);
-                        	}
-                        }
-                    }
-                    
                     // Get the S3 object's Base64 hash.
                     String objectHash = null;
                     if (s3Object.containsMetadata(S3Object.METADATA_HEADER_ORIGINAL_HASH_MD5)) {
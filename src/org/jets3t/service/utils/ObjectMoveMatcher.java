@@ -0,0 +1,174 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.Constants;
+import org.jets3t.service.model.S3Object;
+
+/**
+ * Matches local files that exist only on the client with objects that exist only in S3,
+ * based on the MD5 hash of their contents. This allows files that have been renamed or
+ * moved locally to be re-created in S3 with a server-side copy of the existing object,
+ * rather than by uploading the file's data again.
+ * <p>
+ * Objects are matched on their MD5 hash and size when they were uploaded without
+ * transformation, or on the original MD5 hash of the file (stored in the metadata item
+ * {@link S3Object#METADATA_HEADER_ORIGINAL_HASH_MD5}) when they were gzipped or encrypted.
+ * Transformed objects only match when the matcher is configured with the same gzip and
+ * encryption options, so copied objects are always stored the same way an upload would
+ * store them. Directory place-holders and empty objects are never matched.
+ *
+ * @author James Murty
+ */
+public class ObjectMoveMatcher {
+    private static final Log log = LogFactory.getLog(ObjectMoveMatcher.class);
+
+    private final boolean isGzipEnabled;
+    private final boolean isEncryptionEnabled;
+
+    /**
+     * Candidate objects keyed by their Base64 MD5 hash, and by size if they are untransformed.
+     */
+    private final Map candidateObjects = new HashMap();
+
+    /**
+     * Sizes of untransformed candidate objects, used to avoid hashing local files that
+     * cannot possibly match.
+     */
+    private final Set candidateSizes = new HashSet();
+
+    /**
+     * @param isGzipEnabled
+     * true if files will be gzipped when uploaded.
+     * @param isEncryptionEnabled
+     * true if files will be encrypted when uploaded.
+     */
+    public ObjectMoveMatcher(boolean isGzipEnabled, boolean isEncryptionEnabled) {
+        this.isGzipEnabled = isGzipEnabled;
+        this.isEncryptionEnabled = isEncryptionEnabled;
+    }
+
+    /**
+     * @return
+     * true if files will be transformed by gzipping or encryption when uploaded.
+     */
+    private boolean isTransformedMode() {
+        return isGzipEnabled || isEncryptionEnabled;
+    }
+
+    /**
+     * Adds objects that exist only in S3 as candidate sources for server-side copies.
+     *
+     * @param s3ObjectsMap
+     * a map of relative keys to S3Objects, as built by
+     * {@link FileComparer#populateS3ObjectMap(String, S3Object[])}.
+     * @param onlyOnServerKeys
+     * the relative keys of objects in the map that exist only in S3.
+     */
+    public void addCandidates(Map s3ObjectsMap, Collection onlyOnServerKeys) {
+        Iterator keyIter = onlyOnServerKeys.iterator();
+        while (keyIter.hasNext()) {
+            S3Object object = (S3Object) s3ObjectsMap.get(keyIter.next());
+            if (object == null
+                || object.getContentLength() == 0
+                || Mimetypes.MIMETYPE_JETS3T_DIRECTORY.equals(object.getContentType()))
+            {
+                continue;
+            }
+
+            String candidateKey = null;
+            if (object.containsMetadata(S3Object.METADATA_HEADER_ORIGINAL_HASH_MD5)) {
+                boolean isGzipped = object.containsMetadata(Constants.METADATA_JETS3T_COMPRESSED);
+                boolean isEncrypted = object.containsMetadata(Constants.METADATA_JETS3T_CRYPTO_ALGORITHM);
+                if (isGzipped == isGzipEnabled && isEncrypted == isEncryptionEnabled) {
+                    candidateKey = (String) object.getMetadata(S3Object.METADATA_HEADER_ORIGINAL_HASH_MD5);
+                }
+            } else if (!isTransformedMode()) {
+                String etag = object.getETag();
+                // Only ETags that are plain hex-encoded MD5 hashes can be compared.
+                if (etag != null && etag.length() == 32) {
+                    candidateKey = object.getMd5HashAsBase64() + ":" + object.getContentLength();
+                    candidateSizes.add(new Long(object.getContentLength()));
+                }
+            }
+
+            if (candidateKey != null && !candidateObjects.containsKey(candidateKey)) {
+                candidateObjects.put(candidateKey, object);
+            }
+        }
+    }
+
+    /**
+     * @return
+     * true if there are no candidate objects that local files could be matched with.
+     */
+    public boolean isEmpty() {
+        return candidateObjects.isEmpty();
+    }
+
+    /**
+     * Finds an object in S3 with the same contents as the given local file. The local file
+     * is only hashed if there is a candidate object it could match.
+     *
+     * @param file
+     * a local file that exists only on the client.
+     *
+     * @return
+     * an object in S3 with the same content as the local file, or null if there is none.
+     *
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     */
+    public S3Object findMatchingObject(File file) throws NoSuchAlgorithmException, IOException {
+        if (isEmpty() || file.isDirectory() || file.length() == 0) {
+            return null;
+        }
+        if (!isTransformedMode() && !candidateSizes.contains(new Long(file.length()))) {
+            return null;
+        }
+
+        String fileHashAsBase64 = ServiceUtils.toBase64(
+            ServiceUtils.computeMD5Hash(new FileInputStream(file)));
+
+        String candidateKey = fileHashAsBase64;
+        if (!isTransformedMode()) {
+            candidateKey += ":" + file.length();
+        }
+        S3Object match = (S3Object) candidateObjects.get(candidateKey);
+        if (match != null && log.isDebugEnabled()) {
+            log.debug("Local file " + file.getPath() + " has the same content as object "
+                + match.getKey());
+        }
+        return match;
+    }
+
+}
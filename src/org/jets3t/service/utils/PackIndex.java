@@ -0,0 +1,303 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jets3t.service.Constants;
+import org.jets3t.service.model.S3Object;
+
+/**
+ * An index of small files that have been packed together into larger pack objects in S3.
+ * <p>
+ * Storing many small files as individual objects is dominated by the overhead of a request
+ * per file. When files are packed, their data is concatenated into pack objects and this index
+ * records where each file can be found: the pack object's key name, the offset and length of
+ * the file's data within the pack, the MD5 hash of the data and the file's last-modified date.
+ * A file can be restored with a ranged GET of its bytes from the pack.
+ * <p>
+ * The index and pack objects are stored in a sub-directory named {@link #PACK_DIRECTORY_NAME}
+ * of the S3 path they belong to. Pack objects are never modified once they are created.
+ *
+ * @author James Murty
+ */
+public class PackIndex {
+    /**
+     * The name of the sub-directory in which the index and pack objects are stored.
+     */
+    public static final String PACK_DIRECTORY_NAME = ".jets3t-packs";
+
+    /**
+     * The name of the index object within the pack directory.
+     */
+    public static final String INDEX_OBJECT_NAME = "index";
+
+    private static final String INDEX_HEADER = "jets3t-pack-index 1";
+
+    /**
+     * Index entries, keyed and sorted by the relative key path of the packed file.
+     */
+    private final TreeMap entries = new TreeMap();
+
+    /**
+     * The location of a single file's data within a pack object.
+     */
+    public static class Entry {
+        private final String packKey;
+        private final long offset;
+        private final long length;
+        private final String md5HashAsBase64;
+        private final long lastModified;
+
+        /**
+         * @param packKey
+         * the full key name of the pack object containing the file's data.
+         * @param offset
+         * the offset of the file's data within the pack object.
+         * @param length
+         * the length of the file's data.
+         * @param md5HashAsBase64
+         * the Base64-encoded MD5 hash of the file's data.
+         * @param lastModified
+         * the last-modified date of the file, in milliseconds.
+         */
+        public Entry(String packKey, long offset, long length, String md5HashAsBase64,
+            long lastModified)
+        {
+            this.packKey = packKey;
+            this.offset = offset;
+            this.length = length;
+            this.md5HashAsBase64 = md5HashAsBase64;
+            this.lastModified = lastModified;
+        }
+
+        public String getPackKey() {
+            return packKey;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getMd5HashAsBase64() {
+            return md5HashAsBase64;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * @param rootObjectPath
+     * the S3 path that the packed files belong to, which may be empty.
+     *
+     * @return
+     * the key name prefix of the pack directory for the given path, including a trailing '/'.
+     */
+    public static String getPackDirectoryPath(String rootObjectPath) {
+        String path = rootObjectPath;
+        if (path.length() > 0 && !path.endsWith(Constants.FILE_PATH_DELIM)) {
+            path += Constants.FILE_PATH_DELIM;
+        }
+        return path + PACK_DIRECTORY_NAME + Constants.FILE_PATH_DELIM;
+    }
+
+    /**
+     * @param relativeKeyPath
+     * the relative key path of a file or object.
+     *
+     * @return
+     * true if the key path refers to the pack directory, or an object inside it.
+     */
+    public static boolean isPackDirectoryKey(String relativeKeyPath) {
+        return relativeKeyPath.equals(PACK_DIRECTORY_NAME)
+            || relativeKeyPath.startsWith(PACK_DIRECTORY_NAME + Constants.FILE_PATH_DELIM);
+    }
+
+    public void putEntry(String relativeKeyPath, Entry entry) {
+        entries.put(relativeKeyPath, entry);
+    }
+
+    public Entry getEntry(String relativeKeyPath) {
+        return (Entry) entries.get(relativeKeyPath);
+    }
+
+    public Entry removeEntry(String relativeKeyPath) {
+        return (Entry) entries.remove(relativeKeyPath);
+    }
+
+    public boolean containsKey(String relativeKeyPath) {
+        return entries.containsKey(relativeKeyPath);
+    }
+
+    /**
+     * @return
+     * the relative key paths of all the packed files, in sorted order.
+     */
+    public Set getKeys() {
+        return entries.keySet();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return
+     * the key names of all the pack objects that contain data for at least one file in the index.
+     */
+    public Set getReferencedPackKeys() {
+        Set packKeys = new HashSet();
+        Iterator entryIter = entries.values().iterator();
+        while (entryIter.hasNext()) {
+            packKeys.add(((Entry) entryIter.next()).getPackKey());
+        }
+        return packKeys;
+    }
+
+    /**
+     * Builds a map of placeholder objects representing the packed files, suitable for comparison
+     * with local files by {@link FileComparer#buildDiscrepancyLists(Map, Map)}. Each object carries
+     * the file's MD5 hash as its original hash metadata and the file's date as its local file date
+     * metadata, so packed files are compared exactly like files stored as individual objects.
+     *
+     * @return
+     * a map of relative key paths to S3Objects.
+     */
+    public Map buildS3ObjectMap() {
+        Map objectsMap = new HashMap();
+        Iterator entryIter = entries.entrySet().iterator();
+        while (entryIter.hasNext()) {
+            Map.Entry mapEntry = (Map.Entry) entryIter.next();
+            String relativeKeyPath = (String) mapEntry.getKey();
+            Entry entry = (Entry) mapEntry.getValue();
+
+            S3Object object = new S3Object(relativeKeyPath);
+            object.setContentLength(entry.getLength());
+            object.addMetadata(S3Object.METADATA_HEADER_ORIGINAL_HASH_MD5,
+                entry.getMd5HashAsBase64());
+            object.addMetadata(Constants.METADATA_JETS3T_LOCAL_FILE_DATE,
+                ServiceUtils.formatIso8601Date(new Date(entry.getLastModified())));
+            object.setMetadataComplete(true);
+            objectsMap.put(relativeKeyPath, object);
+        }
+        return objectsMap;
+    }
+
+    /**
+     * Serializes the index as UTF-8 text, with one tab-delimited line per packed file.
+     *
+     * @return
+     * the serialized index data.
+     *
+     * @throws UnsupportedEncodingException
+     */
+    public byte[] toByteArray() throws UnsupportedEncodingException {
+        StringBuffer sb = new StringBuffer();
+        sb.append(INDEX_HEADER).append('\n');
+        Iterator entryIter = entries.entrySet().iterator();
+        while (entryIter.hasNext()) {
+            Map.Entry mapEntry = (Map.Entry) entryIter.next();
+            Entry entry = (Entry) mapEntry.getValue();
+            sb.append(URLEncoder.encode((String) mapEntry.getKey(), Constants.DEFAULT_ENCODING))
+                .append('\t').append(URLEncoder.encode(entry.getPackKey(), Constants.DEFAULT_ENCODING))
+                .append('\t').append(entry.getOffset())
+                .append('\t').append(entry.getLength())
+                .append('\t').append(entry.getMd5HashAsBase64())
+                .append('\t').append(entry.getLastModified())
+                .append('\n');
+        }
+        return sb.toString().getBytes(Constants.DEFAULT_ENCODING);
+    }
+
+    /**
+     * Parses an index previously serialized with {@link #toByteArray()}. The input stream
+     * is closed by this method.
+     *
+     * @param is
+     * the serialized index data.
+     *
+     * @return
+     * the index.
+     *
+     * @throws IOException
+     * if the data cannot be read, or is not a valid index.
+     */
+    public static PackIndex parse(InputStream is) throws IOException {
+        PackIndex index = new PackIndex();
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(is, Constants.DEFAULT_ENCODING));
+        try {
+            String line = reader.readLine();
+            if (!INDEX_HEADER.equals(line)) {
+                throw new IOException("Unrecognised pack index format: " + line);
+            }
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != 6) {
+                    throw new IOException("Invalid pack index entry: " + line);
+                }
+                try {
+                    index.putEntry(URLDecoder.decode(fields[0], Constants.DEFAULT_ENCODING),
+                        new Entry(URLDecoder.decode(fields[1], Constants.DEFAULT_ENCODING),
+                            Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                            fields[4], Long.parseLong(fields[5])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid pack index entry: " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return index;
+    }
+
+    /**
+     * Removes all the entries whose relative key paths are in the given collection.
+     *
+     * @param relativeKeyPaths
+     * the keys of entries to remove.
+     */
+    public void removeEntries(Collection relativeKeyPaths) {
+        entries.keySet().removeAll(relativeKeyPaths);
+    }
+
+}
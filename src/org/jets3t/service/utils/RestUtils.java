@@ -117,6 +117,53 @@ public class RestUtils {
         }
     }
 
+    /**
+     * Escapes the characters in a string that have special meaning in XML text content.
+     * 
+     * @param text
+     * @return
+     * the text with the characters &amp;, &lt;, &gt;, &quot; and &apos; replaced by entities,
+     * and tabs, line feeds and carriage returns replaced by character references so XML parsers
+     * do not normalise them.
+     */
+    public static String encodeXmlString(String text) {
+        StringBuffer sb = new StringBuffer(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&': sb.append("&amp;"); break;
+            case '<': sb.append("&lt;"); break;
+            case '>': sb.append("&gt;"); break;
+            case '"': sb.append("&quot;"); break;
+            case '\'': sb.append("&apos;"); break;
+            case '\t': sb.append("&#9;"); break;
+            case '\n': sb.append("&#10;"); break;
+            case '\r': sb.append("&#13;"); break;
+            default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * @param text
+     * @return
+     * true if the text contains only characters that can be represented in an XML 1.0 
+     * document, false if it contains control characters that XML 1.0 does not allow.
+     */
+    public static boolean isXmlEncodable(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+            if (c == 0xFFFE || c == 0xFFFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Encodes a URL string but leaves a delimiter string unencoded.
      * Spaces are encoded as "%20" instead of "+".
@@ -213,7 +260,7 @@ public class RestUtils {
             buf.append(resource.substring(0, queryIndex));
         }
 
-        // ...unless there is an acl, torrent, logging or requestPayment parameter.
+        // ...unless there is an acl, torrent, logging, location, requestPayment or delete parameter.
         if (resource.matches(".*[&?]acl($|=|&).*")) {
             buf.append("?acl");
         } else if (resource.matches(".*[&?]torrent($|=|&).*")) {
@@ -224,6 +271,8 @@ public class RestUtils {
             buf.append("?location");
         } else if (resource.matches(".*[&?]requestPayment($|=|&).*")) {
             buf.append("?requestPayment");
+        } else if (resource.matches(".*[&?]delete($|=|&).*")) {
+            buf.append("?delete");
         }
 
         return buf.toString();
@@ -59,6 +59,19 @@ import org.jets3t.service.model.S3Object;
  */
 public class ServiceUtils {
     private static final Log log = LogFactory.getLog(ServiceUtils.class);
+    
+    /**
+     * The HMAC/SHA1 signing state of threads that have enabled MAC reuse with 
+     * {@link #setThreadMacReuseEnabled(boolean)}. Other threads, such as those of an 
+     * application server, create a new MAC for every signature, so they never hold on to
+     * a secret key or to this class.
+     */
+    private static final ThreadLocal threadSigningMac = new ThreadLocal();
+    
+    private static class SigningMac {
+        private String awsSecretKey = null;
+        private Mac mac = null;
+    }
 
     protected static final SimpleDateFormat iso8601DateParser = new SimpleDateFormat(
         "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
@@ -115,6 +128,43 @@ public class ServiceUtils {
             return null;
         }
         
+        // Reuse this thread's MAC if it was initialised with the same key, as a MAC is reset
+        // after each signature is computed.
+        Mac mac = null;
+        SigningMac signingMac = (SigningMac) threadSigningMac.get();
+        if (signingMac == null) {
+            mac = initHmacSha1(awsSecretKey);
+        } else {
+            if (signingMac.mac == null || !awsSecretKey.equals(signingMac.awsSecretKey)) {
+                signingMac.mac = initHmacSha1(awsSecretKey);
+                signingMac.awsSecretKey = awsSecretKey;
+            }
+            mac = signingMac.mac;
+        }
+
+        // Compute the HMAC on the digest, and set it.
+        try {
+            byte[] b64 = Base64.encodeBase64(mac.doFinal(
+                canonicalString.getBytes(Constants.DEFAULT_ENCODING))); 
+            return new String(b64);
+        } catch (UnsupportedEncodingException e) {
+            throw new S3ServiceException("Unable to get bytes from canonical string", e);
+        }
+    }
+    
+    /**
+     * Enables or disables the reuse of an initialised HMAC/SHA1 MAC by the current thread, 
+     * which avoids the cost of creating a new MAC for every signature while the thread keeps
+     * signing with the same secret key. Only threads owned by the caller should enable reuse,
+     * and they should disable it again before they finish so the secret key is released.
+     * 
+     * @param enabled
+     */
+    public static void setThreadMacReuseEnabled(boolean enabled) {
+        threadSigningMac.set(enabled ? new SigningMac() : null);
+    }
+    
+    private static Mac initHmacSha1(String awsSecretKey) throws S3ServiceException {
         // The following HMAC/SHA1 code for the signature is taken from the
         // AWS Platform's implementation of RFC2104 (amazon.webservices.common.Signature)
         //
@@ -141,15 +191,7 @@ public class ServiceUtils {
             // also should not happen
             throw new RuntimeException("Could not initialize the MAC algorithm", e);
         }
-
-        // Compute the HMAC on the digest, and set it.
-        try {
-            byte[] b64 = Base64.encodeBase64(mac.doFinal(
-                canonicalString.getBytes(Constants.DEFAULT_ENCODING))); 
-            return new String(b64);
-        } catch (UnsupportedEncodingException e) {
-            throw new S3ServiceException("Unable to get bytes from canonical string", e);
-        }
+        return mac;
     }
 
     /**
@@ -18,6 +18,13 @@
  */
 package org.jets3t.service.utils.gatekeeper;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -28,12 +35,20 @@ import java.util.StringTokenizer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.Constants;
 
 /**
  * Represents a set of properties that will be sent to or received from a Gatekeeper service as
  * a message document. This class includes utility methods to generate and parse plain text 
  * encodings of messages.
  * <p>
+ * Messages can be encoded in two formats: as a set of properties, which is understood by all
+ * Gatekeeper clients and servers, or in a compact binary format identified by the content type
+ * {@link #COMPACT_CONTENT_TYPE}. The compact format is written and read as a stream, without
+ * building an intermediate set of properties, which makes it much cheaper to encode and decode 
+ * messages that contain thousands of signature requests. Each string in the compact format is
+ * written as its length in bytes followed by its UTF-8 encoding, so no escaping is necessary.
+ * <p>
  * For more information about the Gatekeeper message format, please see:
  * <a href="http://jets3t.s3.amazonaws.com/applications/gatekeeper-concepts.html">
  * Gatekeeper Concepts</a>
@@ -83,6 +98,47 @@ public class GatekeeperMessage {
      */
     public static final String LIST_OBJECTS_IN_BUCKET_FLAG = "list-objects-in-bucket";
 
+    /**
+     * An application property name a client includes in a bucket listing request to continue
+     * a listing after the given object key, as returned in a prior listing response by
+     * the {@link #LIST_OBJECTS_NEXT_MARKER} property.
+     */
+    public static final String LIST_OBJECTS_MARKER = "list-objects-marker";
+
+    /**
+     * An application property name a client can include in a bucket listing request to limit 
+     * the number of objects in the response. A client that includes this property, or the
+     * {@link #LIST_OBJECTS_MARKER} property, must follow the {@link #LIST_OBJECTS_NEXT_MARKER}
+     * property to list the remaining objects. Without either property, the response lists
+     * every object.
+     */
+    public static final String LIST_OBJECTS_MAX_KEYS = "list-objects-max-keys";
+
+    /**
+     * An application property name included in a bucket listing response when more objects 
+     * remain to be listed. Its value is the marker the client sends with the 
+     * {@link #LIST_OBJECTS_MARKER} property to list the next page of objects.
+     */
+    public static final String LIST_OBJECTS_NEXT_MARKER = "list-objects-next-marker";
+
+    /**
+     * The content type of messages in the compact binary format. Clients request responses in 
+     * this format by including this content type in the request's <tt>Accept</tt> header.
+     */
+    public static final String COMPACT_CONTENT_TYPE = "application/x-jets3t-gatekeeper-message";
+    
+    /**
+     * The value that starts every message in the compact format, which identifies the format
+     * and its version: the characters "GKM" followed by the version number 1.
+     */
+    private static final int COMPACT_FORMAT_MAGIC = 0x474B4D01;
+    
+    /**
+     * The largest string length accepted when decoding a message in the compact format, 
+     * to guard against corrupt messages.
+     */
+    private static final int COMPACT_FORMAT_MAX_STRING_BYTES = 1024 * 1024;
+
     private Properties applicationProperties = new Properties();
     private Properties messageProperties = new Properties(); 
     private List signatureRequestList = new ArrayList();
@@ -344,6 +400,146 @@ public class GatekeeperMessage {
         return gatekeeperMessage;
     }
     
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(Constants.DEFAULT_ENCODING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > COMPACT_FORMAT_MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length in compact Gatekeeper message: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Constants.DEFAULT_ENCODING);
+    }
+    
+    private static void writeProperties(DataOutputStream out, Map properties) throws IOException {
+        out.writeInt(properties.size());
+        Iterator iter = properties.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            writeString(out, (String) entry.getKey());
+            writeString(out, (entry.getValue() != null ? entry.getValue().toString() : null));
+        }
+    }
+    
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid item count in compact Gatekeeper message: " + count);
+        }
+        return count;
+    }
+    
+    /**
+     * Encodes a Gatekeeper message in the compact binary format, writing it directly to 
+     * the given stream. The stream is flushed but not closed.
+     * 
+     * @param outputStream
+     * the stream to which the message is written.
+     * @throws IOException
+     */
+    public void encodeToStream(OutputStream outputStream) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Encoding GatekeeperMessage to compact stream");
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(COMPACT_FORMAT_MAGIC);
+        writeProperties(out, applicationProperties);
+        writeProperties(out, messageProperties);
+        
+        out.writeInt(signatureRequestList.size());
+        Iterator iter = signatureRequestList.iterator();
+        while (iter.hasNext()) {
+            SignatureRequest request = (SignatureRequest) iter.next();
+            writeString(out, request.getSignatureType());
+            writeString(out, request.getObjectKey());
+            writeString(out, request.getBucketName());
+            writeString(out, request.getSignedUrl());
+            writeString(out, request.getDeclineReason());
+            
+            // Metadata items with null values are omitted, as in the properties format.
+            Map metadata = new HashMap();
+            Iterator metadataIter = request.getObjectMetadata().entrySet().iterator();
+            while (metadataIter.hasNext()) {
+                Map.Entry entry = (Map.Entry) metadataIter.next();
+                if (entry.getValue() != null) {
+                    metadata.put(entry.getKey(), entry.getValue());
+                }
+            }
+            writeProperties(out, metadata);
+        }
+        out.flush();
+    }
+    
+    /**
+     * Decodes (parses) a Gatekeeper message in the compact binary format, reading it directly
+     * from the given stream. The stream is not closed.
+     * 
+     * @param inputStream
+     * the stream from which the message is read.
+     * @return
+     * a Gatekeeper message object representing the contents of the stream.
+     * @throws IOException
+     * if the stream does not contain a valid message in the compact format.
+     */
+    public static GatekeeperMessage decodeFromStream(InputStream inputStream) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Decoding GatekeeperMessage from compact stream");
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        int magic = in.readInt();
+        if (magic != COMPACT_FORMAT_MAGIC) {
+            throw new IOException("Unrecognised compact Gatekeeper message format: 0x" 
+                + Integer.toHexString(magic));
+        }
+        
+        GatekeeperMessage gatekeeperMessage = new GatekeeperMessage();
+        int count = readCount(in);
+        for (int i = 0; i < count; i++) {
+            gatekeeperMessage.addApplicationProperty(readString(in), readString(in));
+        }
+        count = readCount(in);
+        for (int i = 0; i < count; i++) {
+            gatekeeperMessage.addMessageProperty(readString(in), readString(in));
+        }
+        
+        count = readCount(in);
+        for (int i = 0; i < count; i++) {
+            SignatureRequest request = new SignatureRequest();
+            request.setSignatureType(readString(in));
+            request.setObjectKey(readString(in));
+            request.setBucketName(readString(in));
+            request.signRequest(readString(in));
+            request.declineRequest(readString(in));
+            int metadataCount = readCount(in);
+            for (int j = 0; j < metadataCount; j++) {
+                request.addObjectMetadata(readString(in), readString(in));
+            }
+            gatekeeperMessage.addSignatureRequest(request);
+        }
+        return gatekeeperMessage;
+    }
+    
+    /**
+     * @param contentType
+     * the value of a <tt>Content-Type</tt> or <tt>Accept</tt> header, may be null.
+     * @return
+     * true if the header value includes the compact message format's content type. 
+     */
+    public static boolean isCompactContentType(String contentType) {
+        return contentType != null && contentType.indexOf(COMPACT_CONTENT_TYPE) >= 0;
+    }
     
 //    public static void main(String[] args) {        
 //        SignatureRequest requests[] = new SignatureRequest[12];
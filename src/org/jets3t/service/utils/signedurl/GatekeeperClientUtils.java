@@ -18,6 +18,7 @@
  */
 package org.jets3t.service.utils.signedurl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -25,6 +26,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HostConfiguration;
@@ -32,9 +34,11 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpMethodRetryHandler;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.ProxyHost;
 import org.apache.commons.httpclient.auth.CredentialsProvider;
 import org.apache.commons.httpclient.contrib.proxy.PluginProxyUtil;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
@@ -48,6 +52,16 @@ import org.jets3t.service.utils.gatekeeper.SignatureRequest;
 
 /**
  * Utility class to handle common operations performed by Gatekeeper client applications.
+ * <p>
+ * Requests ask the Gatekeeper to respond in the compact message format described in 
+ * {@link GatekeeperMessage}. Once the Gatekeeper has responded in this format, later requests
+ * are also sent in the compact format, gzip-compressed. Gatekeepers that do not support the 
+ * compact format respond with properties as usual, and are always sent properties.
+ * <p>
+ * This class is thread-safe. Requests share a pool of persistent connections to the Gatekeeper,
+ * and proxy settings are detected once, when the first request is made. Applications that make
+ * many small requests from several threads can merge them with a 
+ * {@link GatekeeperRequestCoalescer}.
  * 
  * @author James Murty
  */
@@ -68,6 +82,9 @@ public class GatekeeperClientUtils {
     private int maxRetryCount;
     private int connectionTimeout;
     private CredentialsProvider credentialsProvider = null;
+    private boolean isCompactMessagesEnabled = true;
+    private volatile boolean isCompactRequestSupported = false;
+    private int maxConnections = 4;
 
     /**
      * @param gatekeeperUrl
@@ -86,6 +103,26 @@ public class GatekeeperClientUtils {
         this.credentialsProvider = credentialsProvider; 
     }
 	
+    /**
+     * Enables or disables use of the compact message format, which is enabled by default.
+     * 
+     * @param isCompactMessagesEnabled
+     * if false, messages are always exchanged as properties.
+     */
+    public void setCompactMessagesEnabled(boolean isCompactMessagesEnabled) {
+        this.isCompactMessagesEnabled = isCompactMessagesEnabled;
+    }
+	
+    /**
+     * Sets the maximum number of connections to the Gatekeeper that may be open at once, 
+     * which is 4 by default. This setting has no effect once the first request has been made.
+     * 
+     * @param maxConnections
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+	
     /**
      * Prepares objects for HTTP communications with the Gatekeeper servlet.
      * @return
@@ -120,15 +157,47 @@ public class GatekeeperClientUtils {
         connectionParams.setConnectionTimeout(connectionTimeout);
         connectionParams.setSoTimeout(connectionTimeout);        
         connectionParams.setStaleCheckingEnabled(false);
+        connectionParams.setMaxConnectionsPerHost(
+            HostConfiguration.ANY_HOST_CONFIGURATION, maxConnections);
+        connectionParams.setMaxTotalConnections(maxConnections);
+        
+        // Pool connections, so concurrent requests are safe and each reuses an open connection.
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.setParams(connectionParams);
         
-        HttpClient httpClient = new HttpClient(clientParams);
-        httpClient.getHttpConnectionManager().setParams(connectionParams);
+        HttpClient httpClient = new HttpClient(clientParams, connectionManager);
         
         // httpClient.getParams().setAuthenticationPreemptive(true);
         httpClient.getParams().setParameter(CredentialsProvider.PROVIDER, credentialsProvider);                     
 
+        // Try to detect any necessary proxy configurations. Detection can be slow in an
+        // applet, so it is only performed once.
+        try {
+            ProxyHost proxyHost = PluginProxyUtil.detectProxy(new URL(gatekeeperUrl));
+            if (proxyHost != null) {
+                HostConfiguration hostConfig = new HostConfiguration();
+                hostConfig.setProxyHost(proxyHost);
+                httpClient.setHostConfiguration(hostConfig);
+            }
+        } catch (Throwable t) {
+            if (log.isDebugEnabled()) {
+                log.debug("No proxy detected");
+            }
+        }            
+
         return httpClient;
     }
+    
+    /**
+     * @return
+     * the HTTP client used for all Gatekeeper requests, created when first required.
+     */
+    private synchronized HttpClient getHttpClient() {
+        if (httpClientGatekeeper == null) {
+            httpClientGatekeeper = initHttpConnection(); 
+        }
+        return httpClientGatekeeper;
+    }
 
     /**
      * Request permission from the Gatekeeper for a particular operation.
@@ -153,11 +222,13 @@ public class GatekeeperClientUtils {
         		GatekeeperMessage.PROPERTY_CLIENT_VERSION_ID, userAgentDescription);
 
         // If a prior failure has occurred, add information about this failure.
-        if (priorFailureException != null) {
-            gatekeeperMessage.addApplicationProperty(GatekeeperMessage.PROPERTY_PRIOR_FAILURE_MESSAGE, 
-                priorFailureException.getMessage());
-            // Now reset the prior failure variable.
-            priorFailureException = null;
+        synchronized (this) {
+            if (priorFailureException != null) {
+                gatekeeperMessage.addApplicationProperty(GatekeeperMessage.PROPERTY_PRIOR_FAILURE_MESSAGE, 
+                    priorFailureException.getMessage());
+                // Now reset the prior failure variable.
+                priorFailureException = null;
+            }
         }
         
         // Add all S3 objects as candiates for PUT signing.
@@ -174,42 +245,41 @@ public class GatekeeperClientUtils {
          *  Build HttpClient POST message.
          */
         
-        // Add all properties/parameters to credentials POST request.
         PostMethod postMethod = new PostMethod(gatekeeperUrl);
-        Properties properties = gatekeeperMessage.encodeToProperties();
-        Iterator propsIter = properties.entrySet().iterator();
-        while (propsIter.hasNext()) { 
-            Map.Entry entry = (Map.Entry) propsIter.next();
-            String fieldName = (String) entry.getKey();
-            String fieldValue = (String) entry.getValue();
-            postMethod.setParameter(fieldName, fieldValue);
+        if (isCompactMessagesEnabled && isCompactRequestSupported) {
+            // Send the message in the compact format, which the Gatekeeper has shown it supports.
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(baos);
+            gatekeeperMessage.encodeToStream(gzipOutputStream);
+            gzipOutputStream.close();
+            postMethod.setRequestEntity(new ByteArrayRequestEntity(
+                baos.toByteArray(), GatekeeperMessage.COMPACT_CONTENT_TYPE));
+            postMethod.setRequestHeader("Content-Encoding", "gzip");
+        } else {
+            // Add all properties/parameters to credentials POST request.
+            Properties properties = gatekeeperMessage.encodeToProperties();
+            Iterator propsIter = properties.entrySet().iterator();
+            while (propsIter.hasNext()) { 
+                Map.Entry entry = (Map.Entry) propsIter.next();
+                String fieldName = (String) entry.getKey();
+                String fieldValue = (String) entry.getValue();
+                postMethod.setParameter(fieldName, fieldValue);
+            }
+        }
+        if (isCompactMessagesEnabled) {
+            postMethod.setRequestHeader("Accept", GatekeeperMessage.COMPACT_CONTENT_TYPE + ", text/plain");
+            postMethod.setRequestHeader("Accept-Encoding", "gzip");
         }
 
         // Create Http Client if necessary, and include User Agent information.
-        if (httpClientGatekeeper == null) {
-            httpClientGatekeeper = initHttpConnection(); 
-        }
-        
-        // Try to detect any necessary proxy configurations.
-        try {
-            ProxyHost proxyHost = PluginProxyUtil.detectProxy(new URL(gatekeeperUrl));
-            if (proxyHost != null) {
-                HostConfiguration hostConfig = new HostConfiguration();
-                hostConfig.setProxyHost(proxyHost);
-                httpClientGatekeeper.setHostConfiguration(hostConfig);
-            }
-        } catch (Throwable t) {
-            if (log.isDebugEnabled()) {
-                log.debug("No proxy detected");
-            }
-        }            
+        HttpClient httpClient = getHttpClient();
 
         // Perform Gateway request.
         if (log.isDebugEnabled()) {
             log.debug("Contacting Gatekeeper at: " + gatekeeperUrl);
         }
         try {                        
-            int responseCode = httpClientGatekeeper.executeMethod(postMethod);            
+            int responseCode = httpClient.executeMethod(postMethod);            
             String contentType = postMethod.getResponseHeader("Content-Type").getValue();
             if (responseCode == 200) {
                 InputStream responseInputStream = null;
@@ -228,15 +298,25 @@ public class GatekeeperClientUtils {
                     throw new IOException("No response input stream available from Gatekeeper");                    
                 }         
                 
-                Properties responseProperties = new Properties();
-                try {
-                    responseProperties.load(responseInputStream);
-                } finally {
-                    responseInputStream.close();
+                GatekeeperMessage gatekeeperResponseMessage = null;
+                if (GatekeeperMessage.isCompactContentType(contentType)) {
+                    try {
+                        gatekeeperResponseMessage = 
+                            GatekeeperMessage.decodeFromStream(responseInputStream);
+                    } finally {
+                        responseInputStream.close();
+                    }
+                    isCompactRequestSupported = true;
+                } else {
+                    Properties responseProperties = new Properties();
+                    try {
+                        responseProperties.load(responseInputStream);
+                    } finally {
+                        responseInputStream.close();
+                    }
+                    gatekeeperResponseMessage = 
+                        GatekeeperMessage.decodeFromProperties(responseProperties);
                 }
-
-                GatekeeperMessage gatekeeperResponseMessage = 
-                    GatekeeperMessage.decodeFromProperties(responseProperties);
                 
                 // Check for Gatekeeper Error Code in response.
                 String gatekeeperErrorCode = gatekeeperResponseMessage.getApplicationProperties()
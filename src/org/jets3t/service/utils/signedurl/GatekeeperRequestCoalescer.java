@@ -0,0 +1,648 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.service.utils.signedurl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.model.S3Object;
+import org.jets3t.service.utils.gatekeeper.GatekeeperMessage;
+import org.jets3t.service.utils.gatekeeper.SignatureRequest;
+
+/**
+ * Reduces the number of round-trips to a Gatekeeper by merging signature requests, and by
+ * obtaining signed requests before they are needed.
+ * <p>
+ * Requests made at about the same time by different threads, for the same operation type,
+ * bucket and application properties, are merged into a single Gatekeeper request. The first
+ * request waits for a short batch window, or until the batch is full, for other requests to join
+ * it. Each caller receives a response message containing only its own signature requests.
+ * <p>
+ * Applications that know which objects they will work with shortly, such as an uploader that
+ * is still preparing files, can call {@link #prefetch(String, String, S3Object[], Map)} to
+ * obtain signed requests in the background. Prefetches are sent by a single background thread,
+ * which merges them into batches in the same way as other requests. Later requests for the same
+ * objects, with the same metadata and application properties, use the prefetched signed 
+ * requests instead of contacting the Gatekeeper, provided they have not expired. Each 
+ * prefetched signed request is used at most once, and requests that the Gatekeeper declined 
+ * are always requested again.
+ *
+ * @author James Murty
+ */
+public class GatekeeperRequestCoalescer {
+    private static final Log log = LogFactory.getLog(GatekeeperRequestCoalescer.class);
+
+    private final GatekeeperClientUtils gatekeeperClient;
+    private final long batchWindowMS;
+    private final int maxBatchSize;
+    private final long prefetchExpiryMS;
+
+    /**
+     * Batches that are still accepting requests.
+     */
+    private final List openBatches = new ArrayList();
+
+    /**
+     * Prefetched signed requests, keyed by the string built by {@link #buildPrefetchKey}.
+     */
+    private final Map prefetchedRequests = new HashMap();
+
+    /**
+     * Prefetches waiting to be sent by the prefetch thread.
+     */
+    private final List prefetchQueue = new LinkedList();
+    private boolean isPrefetchThreadRunning = false;
+
+    private long requestCount = 0;
+    private long gatekeeperRequestCount = 0;
+    private long prefetchHitCount = 0;
+
+    /**
+     * A caller's signature requests, and the response the caller is waiting for.
+     */
+    private static class PendingRequest {
+        private final S3Object[] objects;
+        private GatekeeperMessage response = null;
+        private Exception failure = null;
+        private boolean isDone = false;
+
+        public PendingRequest(S3Object[] objects) {
+            this.objects = objects;
+        }
+
+        public S3Object[] getObjects() {
+            return objects;
+        }
+
+        public synchronized void complete(GatekeeperMessage response) {
+            this.response = response;
+            this.isDone = true;
+            notifyAll();
+        }
+
+        public synchronized void fail(Exception failure) {
+            this.failure = failure;
+            this.isDone = true;
+            notifyAll();
+        }
+
+        public synchronized GatekeeperMessage waitForResponse() throws Exception {
+            while (!isDone) {
+                wait();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Requests that will be sent to the Gatekeeper together.
+     */
+    private static class Batch {
+        private final String operationType;
+        private final String bucketName;
+        private final Map applicationPropertiesMap;
+        private final List requests = new ArrayList();
+        private final long createdTimeMS = System.currentTimeMillis();
+        private int objectCount = 0;
+        private boolean isClosed = false;
+
+        public Batch(String operationType, String bucketName, Map applicationPropertiesMap) {
+            this.operationType = operationType;
+            this.bucketName = bucketName;
+            this.applicationPropertiesMap = applicationPropertiesMap;
+        }
+
+        public boolean accepts(String operationType, String bucketName,
+            Map applicationPropertiesMap, int objectCount, int maxBatchSize)
+        {
+            return this.operationType.equals(operationType)
+                && (this.bucketName == null
+                    ? bucketName == null : this.bucketName.equals(bucketName))
+                && (this.applicationPropertiesMap == null
+                    ? applicationPropertiesMap == null
+                    : this.applicationPropertiesMap.equals(applicationPropertiesMap))
+                && this.objectCount + objectCount <= maxBatchSize;
+        }
+
+        public void add(PendingRequest request) {
+            requests.add(request);
+            objectCount += request.getObjects().length;
+        }
+    }
+
+    /**
+     * A prefetch waiting to be sent by the prefetch thread.
+     */
+    private static class PrefetchTask {
+        private final PendingRequest request;
+        private final String operationType;
+        private final String bucketName;
+        private final Map applicationPropertiesMap;
+
+        public PrefetchTask(PendingRequest request, String operationType, String bucketName,
+            Map applicationPropertiesMap)
+        {
+            this.request = request;
+            this.operationType = operationType;
+            this.bucketName = bucketName;
+            this.applicationPropertiesMap = applicationPropertiesMap;
+        }
+    }
+
+    /**
+     * A signed request obtained by a prefetch, which may still be in progress.
+     */
+    private static class PrefetchedRequest {
+        private final PendingRequest request;
+        private final int index;
+        private final Map objectMetadata;
+        private final Map applicationPropertiesMap;
+        private final long expiryTimeMS;
+
+        public PrefetchedRequest(PendingRequest request, int index, Map objectMetadata,
+            Map applicationPropertiesMap, long expiryTimeMS)
+        {
+            this.request = request;
+            this.index = index;
+            this.objectMetadata = objectMetadata;
+            this.applicationPropertiesMap = applicationPropertiesMap;
+            this.expiryTimeMS = expiryTimeMS;
+        }
+
+        /**
+         * @return
+         * true if the request was prefetched for an object with the given metadata, and with
+         * the given application properties.
+         */
+        public boolean matches(Map objectMetadata, Map applicationPropertiesMap) {
+            return this.objectMetadata.equals(objectMetadata)
+                && (this.applicationPropertiesMap == null
+                    ? applicationPropertiesMap == null
+                    : this.applicationPropertiesMap.equals(applicationPropertiesMap));
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expiryTimeMS;
+        }
+
+        /**
+         * Waits for the prefetch to finish.
+         *
+         * @return
+         * the prefetch response, or null if the prefetch failed, the Gatekeeper reported an
+         * error, or the request was not signed.
+         */
+        public GatekeeperMessage waitForSignedResponse() throws InterruptedException {
+            GatekeeperMessage response = null;
+            try {
+                response = request.waitForResponse();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                return null;
+            }
+            if (response.getApplicationProperties().getProperty(
+                    GatekeeperMessage.APP_PROPERTY_GATEKEEPER_ERROR_CODE) != null
+                || !response.getSignatureRequests()[index].isSigned())
+            {
+                return null;
+            }
+            return response;
+        }
+    }
+
+    /**
+     * @param gatekeeperClient
+     * the client used to contact the Gatekeeper.
+     * @param batchWindowMS
+     * the number of milliseconds a request waits for other requests to join its batch. If this
+     * value is 0 or less, requests are not merged.
+     * @param maxBatchSize
+     * the maximum number of signature requests sent to the Gatekeeper in one merged batch.
+     * A single caller's request is never split, so it may exceed this size.
+     * @param prefetchExpiryMS
+     * the number of milliseconds for which prefetched signed requests may be used. This
+     * should be shorter than the time for which the Gatekeeper's signed URLs remain valid.
+     */
+    public GatekeeperRequestCoalescer(GatekeeperClientUtils gatekeeperClient,
+        long batchWindowMS, int maxBatchSize, long prefetchExpiryMS)
+    {
+        this.gatekeeperClient = gatekeeperClient;
+        this.batchWindowMS = batchWindowMS;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.prefetchExpiryMS = prefetchExpiryMS;
+    }
+
+    /**
+     * @return
+     * the client used to contact the Gatekeeper.
+     */
+    public GatekeeperClientUtils getGatekeeperClient() {
+        return gatekeeperClient;
+    }
+
+    /**
+     * Requests permission from the Gatekeeper for a particular operation, in the same way as
+     * {@link GatekeeperClientUtils#requestActionThroughGatekeeper(String, String, S3Object[], Map)}.
+     * The request may be merged with requests from other threads, or served with prefetched
+     * signed requests.
+     *
+     * @param operationType
+     * @param bucketName
+     * @param objects
+     * @param applicationPropertiesMap
+     * @return
+     * a response message containing a signature request for each of the given objects, in
+     * the same order.
+     * @throws Exception
+     */
+    public GatekeeperMessage requestActionThroughGatekeeper(String operationType,
+        String bucketName, S3Object[] objects, Map applicationPropertiesMap) throws Exception
+    {
+        synchronized (this) {
+            requestCount += objects.length;
+        }
+
+        // Use any prefetched signed requests for these objects.
+        SignatureRequest[] signatureRequests = new SignatureRequest[objects.length];
+        GatekeeperMessage prefetchResponse = null;
+        List missingObjectList = new ArrayList();
+        for (int i = 0; i < objects.length; i++) {
+            PrefetchedRequest prefetched = takePrefetchedRequest(
+                operationType, bucketName, objects[i], applicationPropertiesMap);
+            GatekeeperMessage response = (prefetched != null
+                ? prefetched.waitForSignedResponse() : null);
+            if (response != null) {
+                signatureRequests[i] = response.getSignatureRequests()[prefetched.index];
+                prefetchResponse = response;
+            } else {
+                missingObjectList.add(objects[i]);
+            }
+        }
+        int hitCount = objects.length - missingObjectList.size();
+        if (hitCount > 0) {
+            synchronized (this) {
+                prefetchHitCount += hitCount;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Using " + hitCount + " of " + objects.length
+                    + " prefetched signature requests");
+            }
+        }
+
+        GatekeeperMessage response = prefetchResponse;
+        if (missingObjectList.size() > 0) {
+            S3Object[] missingObjects = (S3Object[])
+                missingObjectList.toArray(new S3Object[missingObjectList.size()]);
+            PendingRequest request = new PendingRequest(missingObjects);
+            submit(request, operationType, bucketName, applicationPropertiesMap);
+            response = request.waitForResponse();
+
+            SignatureRequest[] missingRequests = response.getSignatureRequests();
+            int missingIndex = 0;
+            for (int i = 0; i < signatureRequests.length; i++) {
+                if (signatureRequests[i] == null) {
+                    signatureRequests[i] = missingRequests[missingIndex++];
+                }
+            }
+        }
+        return buildResponseMessage(response, signatureRequests);
+    }
+
+    /**
+     * Starts obtaining signed requests for objects in the background, so that later requests
+     * for the same objects with the same metadata do not need to contact the Gatekeeper.
+     * This method does not block, and failures are only logged: the later requests will
+     * contact the Gatekeeper again. Prefetches are sent by a single background thread, which
+     * runs only while there are prefetches to send.
+     *
+     * @param operationType
+     * @param bucketName
+     * @param objects
+     * objects whose metadata will not change before they are requested.
+     * @param applicationPropertiesMap
+     */
+    public void prefetch(String operationType, String bucketName, S3Object[] objects, 
+        Map applicationPropertiesMap)
+    {
+        PendingRequest request = new PendingRequest(objects);
+        Map applicationPropertiesCopy = (applicationPropertiesMap != null
+            ? new HashMap(applicationPropertiesMap) : null);
+        long expiryTimeMS = System.currentTimeMillis() + prefetchExpiryMS;
+        synchronized (prefetchedRequests) {
+            // Discard expired prefetches that were never used.
+            Iterator prefetchIter = prefetchedRequests.values().iterator();
+            while (prefetchIter.hasNext()) {
+                if (((PrefetchedRequest) prefetchIter.next()).isExpired()) {
+                    prefetchIter.remove();
+                }
+            }
+            for (int i = 0; i < objects.length; i++) {
+                prefetchedRequests.put(buildPrefetchKey(operationType, bucketName, objects[i]),
+                    new PrefetchedRequest(request, i, new HashMap(objects[i].getMetadataMap()), 
+                        applicationPropertiesCopy, expiryTimeMS));
+            }
+        }
+
+        synchronized (prefetchQueue) {
+            prefetchQueue.add(new PrefetchTask(
+                request, operationType, bucketName, applicationPropertiesMap));
+            if (isPrefetchThreadRunning) {
+                return;
+            }
+            isPrefetchThreadRunning = true;
+        }
+        Thread prefetchThread = new Thread(new Runnable() {
+            public void run() {
+                sendPrefetches();
+            }
+        }, "jets3t-gatekeeper-prefetch");
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    /**
+     * Sends queued prefetches until the queue is empty. All the prefetches queued at a time 
+     * are added to batches before any batch is sent, so they share Gatekeeper requests.
+     */
+    private void sendPrefetches() {
+        while (true) {
+            List tasks = null;
+            synchronized (prefetchQueue) {
+                if (prefetchQueue.isEmpty()) {
+                    isPrefetchThreadRunning = false;
+                    return;
+                }
+                tasks = new ArrayList(prefetchQueue);
+                prefetchQueue.clear();
+            }
+
+            List startedBatches = new ArrayList();
+            Iterator taskIter = tasks.iterator();
+            while (taskIter.hasNext()) {
+                PrefetchTask task = (PrefetchTask) taskIter.next();
+                Batch batch = addToBatch(task.request, task.operationType, task.bucketName,
+                    task.applicationPropertiesMap);
+                if (batch != null) {
+                    startedBatches.add(batch);
+                }
+            }
+            Iterator batchIter = startedBatches.iterator();
+            while (batchIter.hasNext()) {
+                sendWhenReady((Batch) batchIter.next());
+            }
+
+            taskIter = tasks.iterator();
+            while (taskIter.hasNext()) {
+                PrefetchTask task = (PrefetchTask) taskIter.next();
+                try {
+                    task.request.waitForResponse();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Unable to prefetch " + task.request.getObjects().length
+                            + " signature requests from Gatekeeper", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String buildPrefetchKey(String operationType, String bucketName, S3Object object) {
+        return operationType + " " + bucketName + "/" + object.getKey();
+    }
+
+    /**
+     * Removes and returns the prefetched request for an object, if there is one that has not
+     * expired and was obtained with the object's current metadata and the same application
+     * properties.
+     */
+    private PrefetchedRequest takePrefetchedRequest(String operationType, String bucketName,
+        S3Object object, Map applicationPropertiesMap)
+    {
+        PrefetchedRequest prefetched = null;
+        synchronized (prefetchedRequests) {
+            if (prefetchedRequests.isEmpty()) {
+                return null;
+            }
+            prefetched = (PrefetchedRequest) prefetchedRequests.remove(
+                buildPrefetchKey(operationType, bucketName, object));
+        }
+        if (prefetched == null || prefetched.isExpired()
+            || !prefetched.matches(object.getMetadataMap(), applicationPropertiesMap))
+        {
+            return null;
+        }
+        return prefetched;
+    }
+
+    /**
+     * Adds a request to a batch. If the request starts a new batch, the calling thread waits
+     * for the batch window and then sends the batch to the Gatekeeper. Otherwise the thread
+     * that started the batch sends it, and this method returns immediately.
+     */
+    private void submit(PendingRequest request, String operationType, String bucketName,
+        Map applicationPropertiesMap)
+    {
+        Batch batch = addToBatch(request, operationType, bucketName, applicationPropertiesMap);
+        if (batch != null) {
+            sendWhenReady(batch);
+        }
+    }
+
+    /**
+     * Adds a request to an open batch, or to a new batch if no open batch accepts it.
+     * 
+     * @return
+     * the new batch if the request started one, which the caller must send with
+     * {@link #sendWhenReady(Batch)}, or null if the request joined a batch started by 
+     * another caller.
+     */
+    private Batch addToBatch(PendingRequest request, String operationType, String bucketName,
+        Map applicationPropertiesMap)
+    {
+        int objectCount = request.getObjects().length;
+        Batch batch = null;
+        boolean isBatchStarter = false;
+        synchronized (this) {
+            if (batchWindowMS > 0) {
+                Iterator batchIter = openBatches.iterator();
+                while (batch == null && batchIter.hasNext()) {
+                    Batch openBatch = (Batch) batchIter.next();
+                    if (openBatch.accepts(operationType, bucketName, applicationPropertiesMap,
+                        objectCount, maxBatchSize))
+                    {
+                        batch = openBatch;
+                    }
+                }
+            }
+            if (batch == null) {
+                batch = new Batch(operationType, bucketName, applicationPropertiesMap);
+                isBatchStarter = true;
+                if (batchWindowMS > 0) {
+                    openBatches.add(batch);
+                }
+            }
+            batch.add(request);
+
+            if (batch.objectCount >= maxBatchSize) {
+                closeBatch(batch);
+            }
+        }
+        return (isBatchStarter ? batch : null);
+    }
+
+    /**
+     * Waits until a batch is full or its batch window has passed, then sends it.
+     */
+    private void sendWhenReady(Batch batch) {
+        if (batchWindowMS > 0) {
+            // Wait for other requests to join the batch.
+            synchronized (this) {
+                long endTimeMS = batch.createdTimeMS + batchWindowMS;
+                long remainingMS = endTimeMS - System.currentTimeMillis();
+                try {
+                    while (!batch.isClosed && remainingMS > 0) {
+                        wait(remainingMS);
+                        remainingMS = endTimeMS - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    // Send the batch immediately.
+                    Thread.currentThread().interrupt();
+                }
+                closeBatch(batch);
+            }
+        }
+        sendBatch(batch);
+    }
+
+    /**
+     * Stops a batch from accepting requests. Must be called while synchronized on this object.
+     */
+    private void closeBatch(Batch batch) {
+        if (!batch.isClosed) {
+            batch.isClosed = true;
+            openBatches.remove(batch);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Sends all the requests in a batch to the Gatekeeper in one message, and gives each
+     * request its part of the response.
+     */
+    private void sendBatch(Batch batch) {
+        List objectList = new ArrayList();
+        Iterator requestIter = batch.requests.iterator();
+        while (requestIter.hasNext()) {
+            PendingRequest request = (PendingRequest) requestIter.next();
+            for (int i = 0; i < request.getObjects().length; i++) {
+                objectList.add(request.getObjects()[i]);
+            }
+        }
+        S3Object[] objects = (S3Object[]) objectList.toArray(new S3Object[objectList.size()]);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Sending " + objects.length + " signature requests from "
+                + batch.requests.size() + " callers to Gatekeeper");
+        }
+        synchronized (this) {
+            gatekeeperRequestCount++;
+        }
+
+        try {
+            GatekeeperMessage response = gatekeeperClient.requestActionThroughGatekeeper(
+                batch.operationType, batch.bucketName, objects, batch.applicationPropertiesMap);
+
+            SignatureRequest[] signatureRequests = response.getSignatureRequests();
+            if (signatureRequests.length != objects.length) {
+                throw new Exception("The Gatekeeper service did not provide the necessary "
+                    + objects.length + " response items");
+            }
+
+            int offset = 0;
+            requestIter = batch.requests.iterator();
+            while (requestIter.hasNext()) {
+                PendingRequest request = (PendingRequest) requestIter.next();
+                SignatureRequest[] requestSignatures =
+                    new SignatureRequest[request.getObjects().length];
+                System.arraycopy(signatureRequests, offset, requestSignatures, 0,
+                    requestSignatures.length);
+                offset += requestSignatures.length;
+                request.complete(buildResponseMessage(response, requestSignatures));
+            }
+        } catch (Exception e) {
+            requestIter = batch.requests.iterator();
+            while (requestIter.hasNext()) {
+                ((PendingRequest) requestIter.next()).fail(e);
+            }
+        }
+    }
+
+    private GatekeeperMessage buildResponseMessage(GatekeeperMessage response,
+        SignatureRequest[] signatureRequests)
+    {
+        GatekeeperMessage message = new GatekeeperMessage();
+        message.addApplicationProperties(response.getApplicationProperties());
+        message.addMessageProperties(response.getMessageProperties());
+        message.addSignatureRequests(signatureRequests);
+        return message;
+    }
+
+    /**
+     * @return
+     * the number of signature requests made through this coalescer.
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return
+     * the number of requests this coalescer has sent to the Gatekeeper, including prefetches.
+     */
+    public synchronized long getGatekeeperRequestCount() {
+        return gatekeeperRequestCount;
+    }
+
+    /**
+     * @return
+     * the number of signature requests that were served by prefetched signed requests.
+     */
+    public synchronized long getPrefetchHitCount() {
+        return prefetchHitCount;
+    }
+
+    public String toString() {
+        return "GatekeeperRequestCoalescer [requests=" + getRequestCount()
+            + ", gatekeeperRequests=" + getGatekeeperRequestCount()
+            + ", prefetchHits=" + getPrefetchHitCount() + "]";
+    }
+
+}
@@ -65,6 +65,35 @@ public abstract class Authorizer {
     public abstract boolean allowSignatureRequest(GatekeeperMessage requestMessage, 
         ClientInformation clientInformation, SignatureRequest signatureRequest);
 
+    /**
+     * Authorizes or disallows each of a batch of signature requests from a single request 
+     * message. 
+     * <p>
+     * This implementation calls {@link #allowSignatureRequest} for each request in turn. 
+     * Implementations that can make authorization decisions more efficiently for many requests 
+     * at once, for example by looking up a user's permissions only once, may override it.
+     * 
+     * @param requestMessage
+     * the Gatekeeper request message.
+     * @param clientInformation
+     * information about the client end-point this request was received from.
+     * @param signatureRequests
+     * the signature requests to allow or disallow.
+     * 
+     * @return
+     * an array with an item for each signature request, which is true if the request is 
+     * allowed and false otherwise.
+     */
+    public boolean[] allowSignatureRequests(GatekeeperMessage requestMessage, 
+        ClientInformation clientInformation, SignatureRequest[] signatureRequests)
+    {
+        boolean[] allowed = new boolean[signatureRequests.length];
+        for (int i = 0; i < signatureRequests.length; i++) {
+            allowed[i] = allowSignatureRequest(requestMessage, clientInformation, signatureRequests[i]);
+        }
+        return allowed;
+    }
+
     /**
      * Authorizes a bucket listing operation for a client as represented by a the gatekeeper
      * request message.
@@ -20,8 +20,13 @@ package org.jets3t.servlets.gatekeeper;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -31,6 +36,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jets3t.service.multithread.BoundedBlockingQueue;
+import org.jets3t.service.utils.ServiceUtils;
 import org.jets3t.service.utils.gatekeeper.GatekeeperMessage;
 import org.jets3t.service.utils.gatekeeper.SignatureRequest;
 import org.jets3t.servlets.gatekeeper.impl.DefaultAuthorizer;
@@ -57,6 +64,19 @@ import org.jets3t.servlets.gatekeeper.impl.DefaultUrlSigner;
  * These pluggable interfaces are configured in the servlet's configuration file, or if left
  * unconfigured the default JetS3t implementations are used.
  * <p>
+ * Messages are exchanged as properties, unless the client indicates that it understands
+ * the compact message format described in {@link GatekeeperMessage}, in which case responses 
+ * are sent in the compact format and gzip-compressed if the client accepts gzip encoding.
+ * Clients may also send requests in the compact format. The compact format can be disabled by
+ * setting the servlet's <tt>CompactMessagesEnabled</tt> init parameter to false.
+ * <p>
+ * Signature requests are authorized and signed in batches, using the bulk methods of the
+ * {@link Authorizer} and {@link UrlSigner}. Messages containing at least 
+ * <tt>SigningParallelThreshold</tt> allowed requests (default 200) are split into batches that 
+ * are signed in parallel by a pool of <tt>SigningThreadCount</tt> threads (default 4, or 1 to 
+ * sign all requests in the thread handling the message) shared by all requests to the servlet. 
+ * Counts and timings of the signed requests are published as {@link SigningMetrics}.
+ * <p>
  * For more information about this servlet please refer to:
  * <a href="http://jets3t.s3.amazonaws.com/applications/gatekeeper.html">
  * JetS3t Gatekeeper</a>
@@ -76,6 +96,69 @@ public class GatekeeperServlet extends HttpServlet {
     private BucketLister bucketLister = null;
     
     private boolean isInitCompleted = false;
+    private boolean isCompactMessagesEnabled = true;
+    
+    private int signingParallelThreshold = 200;
+    private BoundedBlockingQueue signingQueue = null;
+    private Thread[] signingThreads = null;
+    private SigningMetrics signingMetrics = new SigningMetrics();
+    
+    /**
+     * Tracks the completion of the signing tasks for one message signed in parallel.
+     */
+    private static class ParallelSigning {
+        private int remainingTasks = 0;
+        private Exception failure = null;
+        
+        private ParallelSigning(int taskCount) {
+            this.remainingTasks = taskCount;
+        }
+        
+        private synchronized void taskCompleted(Exception e) {
+            if (failure == null) {
+                failure = e;
+            }
+            remainingTasks--;
+            notifyAll();
+        }
+        
+        private synchronized void waitForCompletion() throws Exception {
+            while (remainingTasks > 0) {
+                wait();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+    
+    /**
+     * Signs a batch of allowed signature requests, as one part of a message signed in parallel.
+     */
+    private class SigningTask implements Runnable {
+        private final GatekeeperMessage gatekeeperMessage;
+        private final ClientInformation clientInformation;
+        private final SignatureRequest[] signatureRequests;
+        private final ParallelSigning parallelSigning;
+        
+        private SigningTask(GatekeeperMessage gatekeeperMessage, ClientInformation clientInformation,
+            SignatureRequest[] signatureRequests, ParallelSigning parallelSigning)
+        {
+            this.gatekeeperMessage = gatekeeperMessage;
+            this.clientInformation = clientInformation;
+            this.signatureRequests = signatureRequests;
+            this.parallelSigning = parallelSigning;
+        }
+        
+        public void run() {
+            try {
+                signBatch(gatekeeperMessage, clientInformation, signatureRequests);
+                parallelSigning.taskCompleted(null);
+            } catch (Exception e) {
+                parallelSigning.taskCompleted(e);
+            }
+        }
+    }
 
 
     /**
@@ -119,8 +202,70 @@ public class GatekeeperServlet extends HttpServlet {
         authorizer = initAuthorizer();
         urlSigner = initUrlSigner();
         bucketLister = initBucketLister();
+        isCompactMessagesEnabled = !"false".equalsIgnoreCase(
+            servletConfig.getInitParameter("CompactMessagesEnabled"));
+        signingParallelThreshold = getIntInitParameter("SigningParallelThreshold", 200);
+        initSigningThreads(getIntInitParameter("SigningThreadCount", 4));
+        servletConfig.getServletContext().setAttribute(
+            SigningMetrics.class.getName(), signingMetrics);
         isInitCompleted = true;
     }
+    
+    private int getIntInitParameter(String name, int defaultValue) throws ServletException {
+        String value = servletConfig.getInitParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid servlet init param: " + name, e);
+        }
+    }
+    
+    /**
+     * Starts the pool of threads that sign large messages in parallel, unless the thread count
+     * is 1 or less.
+     */
+    private void initSigningThreads(int threadCount) {
+        if (threadCount <= 1) {
+            return;
+        }
+        signingQueue = new BoundedBlockingQueue(threadCount * 2);
+        signingThreads = new Thread[threadCount];
+        for (int i = 0; i < signingThreads.length; i++) {
+            signingThreads[i] = new Thread(new Runnable() {
+                public void run() {
+                    // This thread signs many requests, so it keeps its MAC between them.
+                    ServiceUtils.setThreadMacReuseEnabled(true);
+                    try {
+                        Runnable task = null;
+                        while ((task = (Runnable) signingQueue.take()) != null) {
+                            task.run();
+                        }
+                    } catch (InterruptedException e) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Gatekeeper signing thread was interrupted", e);
+                        }
+                    } finally {
+                        ServiceUtils.setThreadMacReuseEnabled(false);
+                    }
+                }
+            }, "jets3t-gatekeeper-signer-" + (i + 1));
+            signingThreads[i].setDaemon(true);
+            signingThreads[i].start();
+        }
+    }
+    
+    /**
+     * Stops the signing threads once any signing tasks already queued are completed.
+     */
+    public void destroy() {
+        if (signingQueue != null) {
+            signingQueue.close();
+        }
+        super.destroy();
+    }
 
     /**
      * Initialises the Authorizer implementation that will be used by the servlet.
@@ -234,22 +379,124 @@ public class GatekeeperServlet extends HttpServlet {
         response.getWriter().println("<html><head><title>JetS3t Gatekeeper</title><body>");
         response.getWriter().println("<p>JetS3t Gatekeeper is running " + 
     		(isInitCompleted? "and initialized successfully" : "but <b>initialization failed</b>")
-    		+ "</p></body></html>");
+    		+ "</p>");
+        response.getWriter().println("<p>" + signingMetrics + "</p></body></html>");
     }
     
     /**
-     * Handles POST requests that contain Gatekeeper messages encoded as POST form properties, and 
-     * sends a plain text response document containing the Gatekeeper response message encoded as
-     * a properties file. 
+     * Authorizes the signature requests in a message, and signs those that are allowed. 
+     * When the request is signed the signed URL is made available in the SignatureRequest 
+     * object, and when it is not allowed the reason may be made available in the object 
+     * (with signatureRequest.declineRequest()).
+     */
+    private void signRequests(GatekeeperMessage gatekeeperMessage, 
+        ClientInformation clientInformation) throws Exception 
+    {
+        long startTimeMS = System.currentTimeMillis();
+        SignatureRequest[] signatureRequests = gatekeeperMessage.getSignatureRequests();
+        if (log.isDebugEnabled()) {
+            log.debug("Processing " + signatureRequests.length + " object signature requests");
+        }
+        
+        // Determine which requests will be allowed.
+        boolean[] allowed = authorizer.allowSignatureRequests(
+            gatekeeperMessage, clientInformation, signatureRequests);
+        List allowedRequestList = new ArrayList();
+        for (int i = 0; i < signatureRequests.length; i++) {
+            if (allowed[i]) {
+                allowedRequestList.add(signatureRequests[i]);
+            }
+        }
+        SignatureRequest[] allowedRequests = (SignatureRequest[]) allowedRequestList
+            .toArray(new SignatureRequest[allowedRequestList.size()]);
+        
+        // Sign the allowed requests, in parallel if there are enough of them.
+        boolean isParallel = signingQueue != null 
+            && allowedRequests.length >= Math.max(signingParallelThreshold, 2);
+        if (isParallel) {
+            signInParallel(gatekeeperMessage, clientInformation, allowedRequests);
+        } else {
+            signBatch(gatekeeperMessage, clientInformation, allowedRequests);
+        }
+        
+        long elapsedMS = System.currentTimeMillis() - startTimeMS;
+        signingMetrics.recordBatch(signatureRequests.length, allowedRequests.length, 
+            elapsedMS, isParallel);
+        if (log.isDebugEnabled()) {
+            log.debug("Signed " + allowedRequests.length + " of " + signatureRequests.length 
+                + " requests in " + elapsedMS + "ms" + (isParallel ? " in parallel" : ""));
+        }
+    }
+    
+    /**
+     * Signs a batch of allowed signature requests in the current thread.
+     */
+    private void signBatch(GatekeeperMessage gatekeeperMessage, 
+        ClientInformation clientInformation, SignatureRequest[] signatureRequests) throws Exception 
+    {
+        if (signatureRequests.length == 0) {
+            return;
+        }
+        String[] signedUrls = urlSigner.signRequests(
+            gatekeeperMessage, clientInformation, signatureRequests);
+        for (int i = 0; i < signatureRequests.length; i++) {
+            signatureRequests[i].signRequest(signedUrls[i]);
+        }
+    }
+    
+    /**
+     * Splits allowed signature requests into a batch for each signing thread, and waits for 
+     * the signing threads to sign them.
+     */
+    private void signInParallel(GatekeeperMessage gatekeeperMessage, 
+        ClientInformation clientInformation, SignatureRequest[] signatureRequests) throws Exception 
+    {
+        int batchSize = (signatureRequests.length + signingThreads.length - 1) / signingThreads.length;
+        int taskCount = (signatureRequests.length + batchSize - 1) / batchSize;
+        ParallelSigning parallelSigning = new ParallelSigning(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            int offset = i * batchSize;
+            SignatureRequest[] batch = new SignatureRequest[
+                Math.min(batchSize, signatureRequests.length - offset)];
+            System.arraycopy(signatureRequests, offset, batch, 0, batch.length);
+            SigningTask task = new SigningTask(
+                gatekeeperMessage, clientInformation, batch, parallelSigning);
+            if (!signingQueue.put(task)) {
+                // The servlet is being destroyed, sign the batch in this thread instead.
+                task.run();
+            }
+        }
+        parallelSigning.waitForCompletion();
+    }
+    
+    /**
+     * Decodes the Gatekeeper message in a POST request, which is either in the compact message
+     * format or encoded as POST form properties.
+     */
+    private GatekeeperMessage decodeRequestMessage(HttpServletRequest request) throws IOException {
+        if (isCompactMessagesEnabled && GatekeeperMessage.isCompactContentType(request.getContentType())) {
+            InputStream inputStream = request.getInputStream();
+            if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            return GatekeeperMessage.decodeFromStream(inputStream);
+        }
+        return GatekeeperMessage.decodeFromProperties(request.getParameterMap());
+    }
+    
+    /**
+     * Handles POST requests that contain Gatekeeper messages encoded as POST form properties or
+     * in the compact message format, and sends a response document containing the Gatekeeper 
+     * response message in the compact format if the client accepts it, otherwise as a plain 
+     * text properties file. 
      */
     public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         if (log.isDebugEnabled()) {
             log.debug("Handling POST request");
         }
         try {
-            // Build Gatekeeper request from POST form parameters.
-            GatekeeperMessage gatekeeperMessage = 
-                GatekeeperMessage.decodeFromProperties(request.getParameterMap());
+            // Build Gatekeeper request from the POST request.
+            GatekeeperMessage gatekeeperMessage = decodeRequestMessage(request);
                     
             // Obtain client information
             ClientInformation clientInformation = new ClientInformation(
@@ -282,40 +529,33 @@ public class GatekeeperServlet extends HttpServlet {
             		bucketLister.listObjects(gatekeeperMessage, clientInformation);
             	}
             } else {
+                signRequests(gatekeeperMessage, clientInformation);
+            }
+            
+            if (isCompactMessagesEnabled 
+                && GatekeeperMessage.isCompactContentType(request.getHeader("Accept"))) 
+            {
+                // Stream the response in the compact format, compressed if the client allows.
                 if (log.isDebugEnabled()) {
-                	log.debug("Processing " + gatekeeperMessage.getSignatureRequests().length 
-                			+ " object signature requests");
+                    log.debug("Sending response message in compact format with " 
+                        + gatekeeperMessage.getSignatureRequests().length + " signature requests");
+                }
+                String acceptEncoding = request.getHeader("Accept-Encoding");
+                boolean isGzipAccepted = acceptEncoding != null 
+                    && acceptEncoding.toLowerCase().indexOf("gzip") >= 0;
+                response.setStatus(200);
+                response.setContentType(GatekeeperMessage.COMPACT_CONTENT_TYPE);
+                if (isGzipAccepted) {
+                    response.setHeader("Content-Encoding", "gzip");
+                    GZIPOutputStream gzipOutputStream = new GZIPOutputStream(response.getOutputStream());
+                    gatekeeperMessage.encodeToStream(gzipOutputStream);
+                    gzipOutputStream.finish();
+                } else {
+                    gatekeeperMessage.encodeToStream(response.getOutputStream());
                 }
-	            // Process each signature request.
-	            for (int i = 0; i < gatekeeperMessage.getSignatureRequests().length; i++) {
-	                SignatureRequest signatureRequest = (SignatureRequest) gatekeeperMessage.getSignatureRequests()[i];
-	                
-	                // Determine whether the request will be allowed. If the request is not allowed, the
-	                // reason will be made available in the signature request object (with signatureRequest.declineRequest())
-	                boolean allowed = authorizer.allowSignatureRequest(gatekeeperMessage, clientInformation, signatureRequest);
-	
-	                // Sign requests when they are allowed. When a request is signed, the signed URL is made available
-	                // in the SignatureRequest object.
-	                if (allowed) {
-	                    String signedUrl = null;
-	                    if (SignatureRequest.SIGNATURE_TYPE_GET.equals(signatureRequest.getSignatureType())) {
-	                        signedUrl = urlSigner.signGet(gatekeeperMessage, clientInformation, signatureRequest);                        
-	                    } else if (SignatureRequest.SIGNATURE_TYPE_HEAD.equals(signatureRequest.getSignatureType())) {
-	                        signedUrl = urlSigner.signHead(gatekeeperMessage, clientInformation, signatureRequest);
-	                    } else if (SignatureRequest.SIGNATURE_TYPE_PUT.equals(signatureRequest.getSignatureType())) {
-	                        signedUrl = urlSigner.signPut(gatekeeperMessage, clientInformation, signatureRequest);
-	                    } else if (SignatureRequest.SIGNATURE_TYPE_DELETE.equals(signatureRequest.getSignatureType())) {
-	                        signedUrl = urlSigner.signDelete(gatekeeperMessage, clientInformation, signatureRequest);                        
-	                    } else if (SignatureRequest.SIGNATURE_TYPE_ACL_LOOKUP.equals(signatureRequest.getSignatureType())) {
-	                        signedUrl = urlSigner.signGetAcl(gatekeeperMessage, clientInformation, signatureRequest);                        
-	                    } else if (SignatureRequest.SIGNATURE_TYPE_ACL_UPDATE.equals(signatureRequest.getSignatureType())) {
-	                        signedUrl = urlSigner.signPutAcl(gatekeeperMessage, clientInformation, signatureRequest);                        
-	                    }
-	                    signatureRequest.signRequest(signedUrl);
-	                }                 
-	            }
+                return;
             }
-                        
+            
             // Build response as a set of properties, and return this document.
             Properties responseProperties = gatekeeperMessage.encodeToProperties();
             if (log.isDebugEnabled()) {
@@ -0,0 +1,156 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.servlets.gatekeeper;
+
+/**
+ * Counts the signature requests handled by a {@link GatekeeperServlet}, and the time taken to
+ * authorize and sign them.
+ * <p>
+ * The servlet publishes its metrics as a servlet context attribute named with this class's
+ * name, so they can be monitored by other components of the web application, and includes 
+ * them in the status page it returns for GET requests.
+ *
+ * @author James Murty
+ */
+public class SigningMetrics {
+    private long batchCount = 0;
+    private long parallelBatchCount = 0;
+    private long requestCount = 0;
+    private long signedCount = 0;
+    private long totalBatchTimeMS = 0;
+    private int lastBatchSize = 0;
+    private int maxBatchSize = 0;
+    private long maxBatchTimeMS = 0;
+
+    /**
+     * Records a batch of signature requests from one request message that has been handled.
+     *
+     * @param batchSize
+     * the number of signature requests in the batch.
+     * @param signedCount
+     * the number of requests that were allowed and signed.
+     * @param elapsedMS
+     * the time taken to authorize and sign the batch.
+     * @param isParallel
+     * true if the batch was signed by several threads in parallel.
+     */
+    public synchronized void recordBatch(int batchSize, int signedCount, long elapsedMS, 
+        boolean isParallel) 
+    {
+        batchCount++;
+        if (isParallel) {
+            parallelBatchCount++;
+        }
+        requestCount += batchSize;
+        this.signedCount += signedCount;
+        totalBatchTimeMS += elapsedMS;
+        lastBatchSize = batchSize;
+        maxBatchSize = Math.max(maxBatchSize, batchSize);
+        maxBatchTimeMS = Math.max(maxBatchTimeMS, elapsedMS);
+    }
+
+    /**
+     * @return
+     * the number of batches of signature requests handled.
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return
+     * the number of batches signed by several threads in parallel.
+     */
+    public synchronized long getParallelBatchCount() {
+        return parallelBatchCount;
+    }
+
+    /**
+     * @return
+     * the total number of signature requests handled.
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return
+     * the number of signature requests that were allowed and signed.
+     */
+    public synchronized long getSignedCount() {
+        return signedCount;
+    }
+
+    /**
+     * @return
+     * the total time spent authorizing and signing batches, in milliseconds.
+     */
+    public synchronized long getTotalBatchTimeMS() {
+        return totalBatchTimeMS;
+    }
+
+    /**
+     * @return
+     * the number of signature requests in the most recent batch.
+     */
+    public synchronized int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * @return
+     * the largest number of signature requests in a batch.
+     */
+    public synchronized int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return
+     * the longest time taken to authorize and sign a batch, in milliseconds.
+     */
+    public synchronized long getMaxBatchTimeMS() {
+        return maxBatchTimeMS;
+    }
+
+    /**
+     * @return
+     * the average number of signature requests in a batch.
+     */
+    public synchronized double getAverageBatchSize() {
+        return (batchCount > 0 ? (double) requestCount / batchCount : 0);
+    }
+
+    /**
+     * @return
+     * the average time taken to authorize and sign each signature request, in milliseconds.
+     */
+    public synchronized double getAverageRequestLatencyMS() {
+        return (requestCount > 0 ? (double) totalBatchTimeMS / requestCount : 0);
+    }
+
+    public synchronized String toString() {
+        return "SigningMetrics [batches=" + batchCount + ", parallelBatches=" + parallelBatchCount
+            + ", requests=" + requestCount + ", signed=" + signedCount 
+            + ", averageBatchSize=" + getAverageBatchSize() + ", maxBatchSize=" + maxBatchSize
+            + ", averageRequestLatencyMS=" + getAverageRequestLatencyMS() 
+            + ", maxBatchTimeMS=" + maxBatchTimeMS + "]";
+    }
+
+}
@@ -172,6 +172,76 @@ public abstract class UrlSigner {
         ClientInformation clientInformation, SignatureRequest signatureRequest)
         throws S3ServiceException;
 
+    /**
+     * Generates a signed URL for the operation specified by a signature request's type.
+     *  
+     * @param requestMessage
+     * the request message received from the client. 
+     * @param clientInformation
+     * information about the client's end-point, and any Session or Principal associated with the client. 
+     * @param signatureRequest
+     * a pre-approved signature request.
+     * 
+     * @return
+     * a signed URL string that will allow the operation specified in the signature request
+     * on the object specified in the signature request, or null if the signature request's 
+     * type is not recognised. 
+     * 
+     * @throws S3ServiceException
+     */
+    public String signRequest(GatekeeperMessage requestMessage,
+        ClientInformation clientInformation, SignatureRequest signatureRequest)
+        throws S3ServiceException
+    {
+        String signatureType = signatureRequest.getSignatureType();
+        if (SignatureRequest.SIGNATURE_TYPE_GET.equals(signatureType)) {
+            return signGet(requestMessage, clientInformation, signatureRequest);                        
+        } else if (SignatureRequest.SIGNATURE_TYPE_HEAD.equals(signatureType)) {
+            return signHead(requestMessage, clientInformation, signatureRequest);
+        } else if (SignatureRequest.SIGNATURE_TYPE_PUT.equals(signatureType)) {
+            return signPut(requestMessage, clientInformation, signatureRequest);
+        } else if (SignatureRequest.SIGNATURE_TYPE_DELETE.equals(signatureType)) {
+            return signDelete(requestMessage, clientInformation, signatureRequest);                        
+        } else if (SignatureRequest.SIGNATURE_TYPE_ACL_LOOKUP.equals(signatureType)) {
+            return signGetAcl(requestMessage, clientInformation, signatureRequest);                        
+        } else if (SignatureRequest.SIGNATURE_TYPE_ACL_UPDATE.equals(signatureType)) {
+            return signPutAcl(requestMessage, clientInformation, signatureRequest);                        
+        }
+        return null;
+    }
+
+    /**
+     * Generates signed URLs for a batch of pre-approved signature requests from a single 
+     * request message.
+     * <p>
+     * This implementation calls {@link #signRequest} for each request in turn. Implementations
+     * that can sign many requests more efficiently at once may override it. The Gatekeeper 
+     * servlet may call this method for several batches from the same message in parallel, so
+     * implementations must be thread-safe.
+     *  
+     * @param requestMessage
+     * the request message received from the client. 
+     * @param clientInformation
+     * information about the client's end-point, and any Session or Principal associated with the client. 
+     * @param signatureRequests
+     * pre-approved signature requests.
+     * 
+     * @return
+     * an array with the signed URL string for each signature request, or null for requests
+     * whose type is not recognised.
+     * 
+     * @throws S3ServiceException
+     */
+    public String[] signRequests(GatekeeperMessage requestMessage,
+        ClientInformation clientInformation, SignatureRequest[] signatureRequests)
+        throws S3ServiceException
+    {
+        String[] signedUrls = new String[signatureRequests.length];
+        for (int i = 0; i < signatureRequests.length; i++) {
+            signedUrls[i] = signRequest(requestMessage, clientInformation, signatureRequests[i]);
+        }
+        return signedUrls;
+    }
     
     /**
      * @return
@@ -18,9 +18,17 @@
  */
 package org.jets3t.servlets.gatekeeper.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 
+import org.jets3t.service.S3ObjectsChunk;
+import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.impl.rest.httpclient.RestS3Service;
 import org.jets3t.service.model.S3Object;
@@ -33,6 +41,19 @@ import org.jets3t.servlets.gatekeeper.ClientInformation;
 
 /**
  * Default BucketLister implementation that lists all objects in the configured bucket. 
+ * <p>
+ * A client that includes the {@link GatekeeperMessage#LIST_OBJECTS_MAX_KEYS} or 
+ * {@link GatekeeperMessage#LIST_OBJECTS_MARKER} application property in its request is sent the 
+ * listing a page at a time, with at most the configured maximum number of objects per page. When 
+ * more objects remain the response includes the {@link GatekeeperMessage#LIST_OBJECTS_NEXT_MARKER}
+ * property, which the client sends back as the marker property to request the next page. Clients
+ * that include neither property are sent the complete listing in one response.
+ * <p>
+ * All listings are performed by a single service, and its pool of HTTP connections, that is 
+ * shared by every request the Gatekeeper handles. Listing pages are cached for a short period,
+ * so that many clients listing the same objects at about the same time cause only one request
+ * to S3. Changes made to the bucket may therefore not appear in listings until the cached
+ * pages expire.
  *  
  * @author James Murty
  */
@@ -41,6 +62,26 @@ public class DefaultBucketLister extends BucketLister {
 	protected AWSCredentials awsCredentials = null;
 	private String s3BucketName = null;
 	
+    private S3Service s3Service = null;
+    private int listingMaxKeys = 1000;
+    private long listingCacheMS = 0;
+    private int listingCacheMaxEntries = 0;
+    
+    /**
+     * Cached listing pages keyed by prefix, marker and page size, in least-recently-used order.
+     */
+    private Map listingCache = null;
+    
+    private static class CachedListing {
+        private final S3ObjectsChunk chunk;
+        private final long expiryMS;
+        
+        private CachedListing(S3ObjectsChunk chunk, long expiryMS) {
+            this.chunk = chunk;
+            this.expiryMS = expiryMS;
+        }
+    }
+    
     /**
      * Constructs the Bucket lister with the required parameters.
      * <p>
@@ -51,6 +92,16 @@ public class DefaultBucketLister extends BucketLister {
      * <li><tt>S3BucketName</tt>: The bucket all objects are stored in (regardless of what bucket
      * name the client provided).</li>
      * </ul>
+     * <p>
+     * The optional parameters are:
+     * <ul>
+     * <li><tt>ListingMaxKeys</tt>: The maximum number of objects returned in each listing page
+     * (default 1000)</li>
+     * <li><tt>ListingCacheSeconds</tt>: How many seconds listing pages are cached for, or 0 to
+     * disable the cache (default 5)</li>
+     * <li><tt>ListingCacheMaxEntries</tt>: The maximum number of listing pages cached 
+     * (default 100)</li>
+     * </ul>
      * 
      * @param servletConfig
      * @throws ServletException
@@ -83,6 +134,85 @@ public class DefaultBucketLister extends BucketLister {
             throw new ServletException("Missing required servlet init parameters for DefaultBucketLister: "
                 + "S3BucketName");
         }
+        
+        listingMaxKeys = getIntInitParameter(servletConfig, "ListingMaxKeys", 1000);
+        listingCacheMS = getIntInitParameter(servletConfig, "ListingCacheSeconds", 5) * 1000L;
+        listingCacheMaxEntries = getIntInitParameter(servletConfig, "ListingCacheMaxEntries", 100);
+        listingCache = new LinkedHashMap(16, 0.75f, true) {
+            private static final long serialVersionUID = -5301867140224718623L;
+
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > listingCacheMaxEntries;
+            }
+        };
+        
+        // Construct a single authorized service to be shared by all requests.
+        try {
+            s3Service = new RestS3Service(awsCredentials);
+        } catch (S3ServiceException e) {
+            throw new ServletException("Unable to create S3 service for DefaultBucketLister", e);
+        }
+    }
+    
+    private int getIntInitParameter(ServletConfig servletConfig, String name, int defaultValue) 
+        throws ServletException
+    {
+        String value = servletConfig.getInitParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid servlet init param: " + name, e);
+        }
+    }
+    
+    /**
+     * @return
+     * the service shared by all requests to list objects.
+     */
+    protected S3Service getS3Service() {
+        return s3Service;
+    }
+    
+    /**
+     * Lists a page of objects in the configured bucket, using a cached page if one is available.
+     * 
+     * @param prefix
+     * only objects with a key that starts with this prefix will be listed, may be null.
+     * @param marker
+     * the last object key in the prior page, or null to list from the start.
+     * @param maxKeys
+     * the maximum number of objects in the page.
+     * @return
+     * the page of objects.
+     * @throws S3ServiceException
+     */
+    protected S3ObjectsChunk listObjectsPage(String prefix, String marker, int maxKeys) 
+        throws S3ServiceException
+    {
+        String cacheKey = (prefix != null ? prefix : "") + "\n" 
+            + (marker != null ? marker : "") + "\n" + maxKeys;
+        if (listingCacheMS > 0) {
+            synchronized (listingCache) {
+                CachedListing cachedListing = (CachedListing) listingCache.get(cacheKey);
+                if (cachedListing != null && System.currentTimeMillis() <= cachedListing.expiryMS) {
+                    return cachedListing.chunk;
+                }
+            }
+        }
+        
+        S3ObjectsChunk chunk = s3Service.listObjectsChunked(
+            s3BucketName, prefix, null, maxKeys, marker);
+        
+        if (listingCacheMS > 0) {
+            synchronized (listingCache) {
+                listingCache.put(cacheKey, 
+                    new CachedListing(chunk, System.currentTimeMillis() + listingCacheMS));
+            }
+        }
+        return chunk;
     }
 
     public void listObjects(GatekeeperMessage gatekeeperMessage, 
@@ -94,11 +224,32 @@ public class DefaultBucketLister extends BucketLister {
             prefix = gatekeeperMessage.getApplicationProperties().getProperty("Prefix");
         }
 
-        // Construct an authorized service.
-        RestS3Service service = new RestS3Service(awsCredentials);
+        // Continue a prior listing, and limit the page size, as requested by the client.
+        String marker = gatekeeperMessage.getApplicationProperties().getProperty(
+            GatekeeperMessage.LIST_OBJECTS_MARKER);
+        int maxKeys = listingMaxKeys;
+        String requestedMaxKeys = gatekeeperMessage.getApplicationProperties().getProperty(
+            GatekeeperMessage.LIST_OBJECTS_MAX_KEYS);
+        if (requestedMaxKeys != null) {
+            try {
+                maxKeys = Math.max(1, Math.min(listingMaxKeys, Integer.parseInt(requestedMaxKeys)));
+            } catch (NumberFormatException e) {
+                // Ignore invalid page sizes and use the default.
+            }
+        }
+        
+        // Only clients that ask for pages know to follow the next marker, so other clients
+        // are sent every page at once.
+        boolean isPagedListing = (marker != null || requestedMaxKeys != null);
 
         // List objects in the configured bucket.
-    	S3Object[] objects = service.listObjects(s3BucketName, prefix, null, 1000);
+        S3ObjectsChunk chunk = listObjectsPage(prefix, marker, maxKeys);
+        List objectsList = new ArrayList(Arrays.asList(chunk.getObjects()));
+        while (!isPagedListing && chunk.getPriorLastKey() != null) {
+            chunk = listObjectsPage(prefix, chunk.getPriorLastKey(), maxKeys);
+            objectsList.addAll(Arrays.asList(chunk.getObjects()));
+        }
+    	S3Object[] objects = (S3Object[]) objectsList.toArray(new S3Object[objectsList.size()]);
         
         // Package object information in SignatureRequest objects. This data will be 
         // automatically encoded and sent across the wire back to the client.
@@ -111,6 +262,12 @@ public class DefaultBucketLister extends BucketLister {
     		gatekeeperMessage.addSignatureRequest(sr);
     	}
         
+        // Tell the client where to continue if the listing is incomplete.
+        if (chunk.getPriorLastKey() != null) {
+            gatekeeperMessage.addApplicationProperty(
+                GatekeeperMessage.LIST_OBJECTS_NEXT_MARKER, chunk.getPriorLastKey());
+        }
+        
         gatekeeperMessage.addApplicationProperty("AccountDescription", 
             "<html>Bucket: <b>" + s3BucketName + "</b></html>");
 
@@ -0,0 +1,175 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.multithread.BoundedBlockingQueue;
+
+/**
+ * Tests the producer/consumer queue used by the Synchronize pipeline and the Gatekeeper
+ * signing threads.
+ *
+ * @author James Murty
+ */
+public class BoundedBlockingQueueTest extends TestCase {
+
+    public void testItemsAreTakenInOrder() throws Exception {
+        BoundedBlockingQueue queue = new BoundedBlockingQueue(10);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.put(new Integer(i)));
+        }
+        assertEquals(5, queue.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new Integer(i), queue.take());
+        }
+        assertEquals(0, queue.size());
+    }
+
+    public void testInvalidCapacityAndNullItemsAreRejected() throws Exception {
+        try {
+            new BoundedBlockingQueue(0);
+            fail("Expected a queue with no capacity to be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new BoundedBlockingQueue(1).put(null);
+            fail("Expected a null item to be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testProducerWaitsWhileQueueIsFull() throws Exception {
+        final BoundedBlockingQueue queue = new BoundedBlockingQueue(2);
+        queue.put("a");
+        queue.put("b");
+        final boolean[] isAdded = new boolean[1];
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    isAdded[0] = queue.put("c");
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        producer.start();
+        producer.join(200);
+        assertTrue("Producer should wait for space", producer.isAlive());
+        assertEquals(2, queue.size());
+
+        assertEquals("a", queue.take());
+        producer.join(2000);
+        assertTrue(isAdded[0]);
+        assertEquals("b", queue.take());
+        assertEquals("c", queue.take());
+    }
+
+    public void testCloseReleasesConsumerAfterRemainingItems() throws Exception {
+        BoundedBlockingQueue queue = new BoundedBlockingQueue(5);
+        queue.put("a");
+        queue.close();
+        assertFalse("Closed queue should not accept items", queue.put("b"));
+        assertEquals("a", queue.take());
+        assertNull(queue.take());
+        assertEquals(0, queue.drainTo(new ArrayList(), 10));
+    }
+
+    public void testAbortDiscardsItemsAndReleasesProducer() throws Exception {
+        final BoundedBlockingQueue queue = new BoundedBlockingQueue(1);
+        queue.put("a");
+        final boolean[] isAdded = new boolean[] {true};
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    isAdded[0] = queue.put("b");
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        producer.start();
+        producer.join(100);
+        queue.abort();
+        producer.join(2000);
+        assertFalse(producer.isAlive());
+        assertFalse(isAdded[0]);
+        assertTrue(queue.isAborted());
+        assertEquals(0, queue.size());
+        assertNull(queue.take());
+    }
+
+    public void testDrainToReturnsAvailableItemsUpToMaximum() throws Exception {
+        BoundedBlockingQueue queue = new BoundedBlockingQueue(10);
+        for (int i = 0; i < 7; i++) {
+            queue.put(new Integer(i));
+        }
+        List batch = new ArrayList();
+        assertEquals(5, queue.drainTo(batch, 5));
+        assertEquals(new Integer(0), batch.get(0));
+        assertEquals(new Integer(4), batch.get(4));
+
+        batch.clear();
+        assertEquals("Should not wait for more items", 2, queue.drainTo(batch, 5));
+    }
+
+    public void testDrainToWaitsForMinimumBatch() throws Exception {
+        final BoundedBlockingQueue queue = new BoundedBlockingQueue(10);
+        queue.put("first");
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 3; i++) {
+                        Thread.sleep(20);
+                        queue.put("item" + i);
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        producer.start();
+        List batch = new ArrayList();
+        assertEquals(4, queue.drainTo(batch, 4, 10, 5000));
+        assertEquals("first", batch.get(0));
+        producer.join();
+    }
+
+    public void testDrainToStopsWaitingAfterMaximumWait() throws Exception {
+        BoundedBlockingQueue queue = new BoundedBlockingQueue(10);
+        queue.put("only");
+        List batch = new ArrayList();
+        long startMS = System.currentTimeMillis();
+        assertEquals(1, queue.drainTo(batch, 5, 10, 100));
+        long elapsedMS = System.currentTimeMillis() - startMS;
+        assertTrue("Waited " + elapsedMS + "ms", elapsedMS >= 90 && elapsedMS < 2000);
+    }
+
+    public void testDrainToMinimumIsLimitedByCapacity() throws Exception {
+        BoundedBlockingQueue queue = new BoundedBlockingQueue(2);
+        queue.put("a");
+        queue.put("b");
+        List batch = new ArrayList();
+        long startMS = System.currentTimeMillis();
+        assertEquals(2, queue.drainTo(batch, 10, 10, 5000));
+        assertTrue("A full queue should not wait for more items",
+            System.currentTimeMillis() - startMS < 1000);
+    }
+
+}
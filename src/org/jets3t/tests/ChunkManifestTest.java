@@ -0,0 +1,100 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.utils.ChunkManifest;
+
+/**
+ * Tests the serialization of the manifests that describe chunked files.
+ *
+ * @author James Murty
+ */
+public class ChunkManifestTest extends TestCase {
+
+    private static final String HASH_A = "a94a8fe5ccb19ba61c4c0873d391e987982fbbd3";
+    private static final String HASH_B = "62cdb7020ff920e5aa642c3d4066950dd1f01f4d";
+
+    private ChunkManifest buildManifest() {
+        List chunks = new ArrayList();
+        chunks.add(new ChunkManifest.Chunk(HASH_A, 0, 300));
+        chunks.add(new ChunkManifest.Chunk(HASH_B, 300, 200));
+        chunks.add(new ChunkManifest.Chunk(HASH_A, 500, 300));
+        return new ChunkManifest(800, "XrY7u+Ae7tCTyyK7j1rNww==", chunks);
+    }
+
+    private ChunkManifest parse(String data) throws Exception {
+        return ChunkManifest.parse(new ByteArrayInputStream(data.getBytes("UTF-8")));
+    }
+
+    public void testSerializedManifestCanBeParsed() throws Exception {
+        ChunkManifest parsed = ChunkManifest.parse(
+            new ByteArrayInputStream(buildManifest().toByteArray()));
+
+        assertEquals(800, parsed.getFileLength());
+        assertEquals("XrY7u+Ae7tCTyyK7j1rNww==", parsed.getMd5HashAsBase64());
+        assertEquals(3, parsed.getChunks().size());
+        ChunkManifest.Chunk chunk = (ChunkManifest.Chunk) parsed.getChunks().get(1);
+        assertEquals(HASH_B, chunk.getHashAsHex());
+        assertEquals(300, chunk.getOffset());
+        assertEquals(200, chunk.getLength());
+        assertEquals(500, ((ChunkManifest.Chunk) parsed.getChunks().get(2)).getOffset());
+    }
+
+    public void testChunksAreUnmodifiable() throws Exception {
+        try {
+            buildManifest().getChunks().clear();
+            fail("Expected the chunk list to be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    public void testInvalidManifestDataIsRejected() throws Exception {
+        String valid = new String(buildManifest().toByteArray(), "UTF-8");
+        String header = valid.substring(0, valid.indexOf('\n') + 1);
+
+        String[] invalidData = new String[] {
+            "not a manifest\n",
+            header,
+            header + "800\n",
+            header + "800\tXrY7u+Ae7tCTyyK7j1rNww==\n" + HASH_A + "\tlots\n",
+            header + "800\tXrY7u+Ae7tCTyyK7j1rNww==\n" + HASH_A + "\t300\n",
+        };
+        for (int i = 0; i < invalidData.length; i++) {
+            try {
+                parse(invalidData[i]);
+                fail("Expected invalid manifest to be rejected: " + invalidData[i]);
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public void testChunkDirectoryPaths() throws Exception {
+        assertEquals(".jets3t-chunks/", ChunkManifest.getChunkDirectoryPath(""));
+        assertEquals("root/.jets3t-chunks/", ChunkManifest.getChunkDirectoryPath("root"));
+        assertEquals("root/.jets3t-chunks/", ChunkManifest.getChunkDirectoryPath("root/"));
+    }
+
+}
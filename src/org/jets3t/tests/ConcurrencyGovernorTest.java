@@ -0,0 +1,142 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.multithread.ConcurrencyGovernor;
+
+/**
+ * Tests the limits, priorities and fair sharing of permits by the governor that limits
+ * the tasks performed by S3ServiceMulti operations.
+ *
+ * @author James Murty
+ */
+public class ConcurrencyGovernorTest extends TestCase {
+
+    private int acquireAll(ConcurrencyGovernor governor, ConcurrencyGovernor.Operation operation) {
+        int acquired = 0;
+        while (governor.tryAcquire(operation)) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    public void testMaximumInFlightIsEnforced() throws Exception {
+        ConcurrencyGovernor governor = new ConcurrencyGovernor(3);
+        ConcurrencyGovernor.Operation operation =
+            governor.register("op", ConcurrencyGovernor.PRIORITY_NORMAL);
+
+        assertEquals(3, acquireAll(governor, operation));
+        assertEquals(3, governor.getInFlight());
+
+        governor.release(operation);
+        assertEquals(2, governor.getInFlight());
+        assertTrue(governor.tryAcquire(operation));
+        assertFalse(governor.tryAcquire(operation));
+    }
+
+    public void testReleaseWithoutPermitIsIgnored() throws Exception {
+        ConcurrencyGovernor governor = new ConcurrencyGovernor(2);
+        ConcurrencyGovernor.Operation operation =
+            governor.register("op", ConcurrencyGovernor.PRIORITY_NORMAL);
+        governor.release(operation);
+        assertEquals(0, governor.getInFlight());
+        assertEquals(2, acquireAll(governor, operation));
+    }
+
+    public void testWaitingHigherPriorityOperationIsServedFirst() throws Exception {
+        ConcurrencyGovernor governor = new ConcurrencyGovernor(2);
+        ConcurrencyGovernor.Operation background =
+            governor.register("background", ConcurrencyGovernor.PRIORITY_BACKGROUND);
+        ConcurrencyGovernor.Operation interactive =
+            governor.register("interactive", ConcurrencyGovernor.PRIORITY_INTERACTIVE);
+
+        assertEquals(2, acquireAll(governor, background));
+        assertFalse(governor.tryAcquire(interactive));
+
+        governor.release(background);
+        assertFalse("Background work should not overtake waiting interactive work",
+            governor.tryAcquire(background));
+        assertTrue(governor.tryAcquire(interactive));
+
+        // Once the interactive operation has nothing waiting, background work proceeds.
+        governor.clearWaiting(interactive);
+        governor.release(background);
+        assertTrue(governor.tryAcquire(background));
+    }
+
+    public void testOperationsOfSamePriorityShareEqually() throws Exception {
+        ConcurrencyGovernor governor = new ConcurrencyGovernor(4);
+        ConcurrencyGovernor.Operation first =
+            governor.register("first", ConcurrencyGovernor.PRIORITY_NORMAL);
+        ConcurrencyGovernor.Operation second =
+            governor.register("second", ConcurrencyGovernor.PRIORITY_NORMAL);
+
+        // Without competition, one operation may use every permit.
+        assertEquals(4, acquireAll(governor, first));
+        assertFalse(governor.tryAcquire(second));
+
+        // As tasks finish, permits go to the waiting operation until it has its share.
+        governor.release(first);
+        assertFalse("An operation over its share should yield to a waiting operation",
+            governor.tryAcquire(first));
+        assertTrue(governor.tryAcquire(second));
+        assertFalse(governor.tryAcquire(second));
+
+        governor.release(first);
+        assertFalse(governor.tryAcquire(first));
+        assertTrue(governor.tryAcquire(second));
+        assertEquals(4, governor.getInFlight());
+
+        // Each operation now has its fair share, so neither yields to the other.
+        assertFalse(governor.tryAcquire(second));
+        governor.release(first);
+        assertTrue("An operation below its share should not yield",
+            governor.tryAcquire(first));
+    }
+
+    public void testUnregisteredOperationNoLongerCompetes() throws Exception {
+        ConcurrencyGovernor governor = new ConcurrencyGovernor(2);
+        ConcurrencyGovernor.Operation first =
+            governor.register("first", ConcurrencyGovernor.PRIORITY_NORMAL);
+        ConcurrencyGovernor.Operation second =
+            governor.register("second", ConcurrencyGovernor.PRIORITY_INTERACTIVE);
+
+        assertEquals(2, acquireAll(governor, first));
+        assertFalse(governor.tryAcquire(second));
+        governor.unregister(second);
+        assertEquals(1, governor.getOperationCount());
+
+        governor.release(first);
+        assertTrue(governor.tryAcquire(first));
+    }
+
+    public void testPriorityNamesAreParsed() throws Exception {
+        assertEquals(ConcurrencyGovernor.PRIORITY_BACKGROUND,
+            ConcurrencyGovernor.parsePriority("Background"));
+        assertEquals(ConcurrencyGovernor.PRIORITY_INTERACTIVE,
+            ConcurrencyGovernor.parsePriority("interactive"));
+        assertEquals(ConcurrencyGovernor.PRIORITY_NORMAL,
+            ConcurrencyGovernor.parsePriority("normal"));
+        assertEquals(ConcurrencyGovernor.PRIORITY_NORMAL,
+            ConcurrencyGovernor.parsePriority("unknown"));
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.utils.ChunkManifest;
+import org.jets3t.service.utils.ContentDefinedChunker;
+import org.jets3t.service.utils.ServiceUtils;
+
+/**
+ * Tests the content-defined chunking of files used to de-duplicate uploads.
+ *
+ * @author James Murty
+ */
+public class ContentDefinedChunkerTest extends TestCase {
+
+    private static final int MIN_CHUNK_SIZE = 1024;
+    private static final int AVERAGE_CHUNK_SIZE = 4096;
+    private static final int MAX_CHUNK_SIZE = 16384;
+
+    private ContentDefinedChunker chunker = new ContentDefinedChunker(
+        MIN_CHUNK_SIZE, AVERAGE_CHUNK_SIZE, MAX_CHUNK_SIZE);
+
+    private byte[] buildRandomData(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private File writeTempFile(byte[] data) throws Exception {
+        File file = File.createTempFile("jets3t-chunker", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+
+    private Set getChunkHashes(ChunkManifest manifest) {
+        Set hashes = new HashSet();
+        for (int i = 0; i < manifest.getChunks().size(); i++) {
+            hashes.add(((ChunkManifest.Chunk) manifest.getChunks().get(i)).getHashAsHex());
+        }
+        return hashes;
+    }
+
+    public void testInvalidChunkSizesAreRejected() throws Exception {
+        try {
+            new ContentDefinedChunker(1024, 3000, 16384);
+            fail("Expected an average chunk size that is not a power of 2 to be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new ContentDefinedChunker(8192, 4096, 16384);
+            fail("Expected a minimum chunk size above the average to be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new ContentDefinedChunker(1024, 4096, 2048);
+            fail("Expected a maximum chunk size below the average to be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testChunksCoverFileAndMatchTheirData() throws Exception {
+        byte[] data = buildRandomData(1, 500000);
+        ChunkManifest manifest = chunker.chunkFile(writeTempFile(data));
+
+        assertEquals(data.length, manifest.getFileLength());
+        assertEquals(ServiceUtils.toBase64(ServiceUtils.computeMD5Hash(data)),
+            manifest.getMd5HashAsBase64());
+
+        List chunks = manifest.getChunks();
+        assertTrue("Expected many chunks, got " + chunks.size(), chunks.size() > 20);
+        long expectedOffset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkManifest.Chunk chunk = (ChunkManifest.Chunk) chunks.get(i);
+            assertEquals(expectedOffset, chunk.getOffset());
+            assertTrue(chunk.getLength() <= MAX_CHUNK_SIZE);
+            if (i < chunks.size() - 1) {
+                assertTrue(chunk.getLength() >= MIN_CHUNK_SIZE);
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(data, (int) chunk.getOffset(), chunk.getLength());
+            assertEquals(ServiceUtils.toHex(digest.digest()), chunk.getHashAsHex());
+            expectedOffset += chunk.getLength();
+        }
+        assertEquals(data.length, expectedOffset);
+    }
+
+    public void testMaximumChunkSizeIsEnforced() throws Exception {
+        // Data without content boundaries is split at the maximum size.
+        byte[] data = new byte[MAX_CHUNK_SIZE * 3 + 10];
+        List chunks = chunker.chunkFile(writeTempFile(data)).getChunks();
+        assertEquals(4, chunks.size());
+        assertEquals(MAX_CHUNK_SIZE, ((ChunkManifest.Chunk) chunks.get(0)).getLength());
+        assertEquals(10, ((ChunkManifest.Chunk) chunks.get(3)).getLength());
+    }
+
+    public void testEmptyFileHasNoChunks() throws Exception {
+        ChunkManifest manifest = chunker.chunkFile(writeTempFile(new byte[0]));
+        assertEquals(0, manifest.getFileLength());
+        assertEquals(0, manifest.getChunks().size());
+    }
+
+    public void testInsertedBytesOnlyChangeNearbyChunks() throws Exception {
+        byte[] original = buildRandomData(2, 500000);
+        byte[] edited = new byte[original.length + 100];
+        System.arraycopy(original, 0, edited, 0, 1000);
+        System.arraycopy(buildRandomData(3, 100), 0, edited, 1000, 100);
+        System.arraycopy(original, 1000, edited, 1100, original.length - 1000);
+
+        Set originalHashes = getChunkHashes(chunker.chunkFile(writeTempFile(original)));
+        Set editedHashes = getChunkHashes(chunker.chunkFile(writeTempFile(edited)));
+        assertEquals("Chunking should be deterministic", originalHashes,
+            getChunkHashes(chunker.chunkFile(writeTempFile(original))));
+
+        Set sharedHashes = new HashSet(editedHashes);
+        sharedHashes.retainAll(originalHashes);
+        assertTrue("Only chunks near the edit should change: " + sharedHashes.size()
+            + " of " + originalHashes.size() + " shared",
+            sharedHashes.size() >= originalHashes.size() - 3);
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.utils.gatekeeper.GatekeeperMessage;
+import org.jets3t.service.utils.gatekeeper.SignatureRequest;
+
+/**
+ * Tests the compact binary format of Gatekeeper messages, and its equivalence with the
+ * properties format.
+ *
+ * @author James Murty
+ */
+public class GatekeeperMessageTest extends TestCase {
+
+    private GatekeeperMessage buildMessage() {
+        GatekeeperMessage message = new GatekeeperMessage();
+        message.addApplicationProperty("user", "j\u00f6rg");
+        message.addApplicationProperty("empty", "");
+        message.addMessageProperty(GatekeeperMessage.PROPERTY_TRANSACTION_ID, "tx-1");
+
+        SignatureRequest put = new SignatureRequest(
+            SignatureRequest.SIGNATURE_TYPE_PUT, "dir/file with spaces|and pipe.txt");
+        put.setBucketName("bucket");
+        put.addObjectMetadata("Content-Type", "text/plain");
+        put.addObjectMetadata("x-amz-meta-note", "line one\nline two");
+        put.signRequest("https://bucket.s3.amazonaws.com/dir/file?Signature=abc%2B");
+        message.addSignatureRequest(put);
+
+        SignatureRequest get = new SignatureRequest(SignatureRequest.SIGNATURE_TYPE_GET, "other");
+        get.declineRequest("Unrecognised user");
+        message.addSignatureRequest(get);
+        return message;
+    }
+
+    private GatekeeperMessage roundTrip(GatekeeperMessage message) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        message.encodeToStream(baos);
+        return GatekeeperMessage.decodeFromStream(new ByteArrayInputStream(baos.toByteArray()));
+    }
+
+    private void assertEquivalent(GatekeeperMessage expected, GatekeeperMessage actual) {
+        assertEquals(expected.getApplicationProperties(), actual.getApplicationProperties());
+        assertEquals(expected.getMessageProperties(), actual.getMessageProperties());
+        SignatureRequest[] expectedRequests = expected.getSignatureRequests();
+        SignatureRequest[] actualRequests = actual.getSignatureRequests();
+        assertEquals(expectedRequests.length, actualRequests.length);
+        for (int i = 0; i < expectedRequests.length; i++) {
+            SignatureRequest expectedRequest = expectedRequests[i];
+            SignatureRequest actualRequest = actualRequests[i];
+            assertEquals(expectedRequest.getSignatureType(), actualRequest.getSignatureType());
+            assertEquals(expectedRequest.getObjectKey(), actualRequest.getObjectKey());
+            assertEquals(expectedRequest.getBucketName(), actualRequest.getBucketName());
+            assertEquals(expectedRequest.getSignedUrl(), actualRequest.getSignedUrl());
+            assertEquals(expectedRequest.getDeclineReason(), actualRequest.getDeclineReason());
+            assertEquals(expectedRequest.getObjectMetadata(), actualRequest.getObjectMetadata());
+        }
+    }
+
+    public void testCompactMessageRoundTrip() throws Exception {
+        GatekeeperMessage message = buildMessage();
+        GatekeeperMessage decoded = roundTrip(message);
+        assertEquivalent(message, decoded);
+
+        SignatureRequest[] requests = decoded.getSignatureRequests();
+        assertTrue(requests[0].isSigned());
+        assertNull(requests[0].getDeclineReason());
+        assertFalse(requests[1].isSigned());
+        assertNull(requests[1].getBucketName());
+        assertEquals("j\u00f6rg", decoded.getApplicationProperties().getProperty("user"));
+    }
+
+    public void testCompactAndPropertiesFormatsAreEquivalent() throws Exception {
+        GatekeeperMessage message = buildMessage();
+        GatekeeperMessage fromProperties =
+            GatekeeperMessage.decodeFromProperties(message.encodeToProperties());
+        assertEquivalent(fromProperties, roundTrip(message));
+    }
+
+    public void testEmptyMessageRoundTrip() throws Exception {
+        GatekeeperMessage decoded = roundTrip(new GatekeeperMessage());
+        assertEquals(0, decoded.getApplicationProperties().size());
+        assertEquals(0, decoded.getMessageProperties().size());
+        assertEquals(0, decoded.getSignatureRequests().length);
+    }
+
+    public void testInvalidCompactDataIsRejected() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        buildMessage().encodeToStream(baos);
+        byte[] valid = baos.toByteArray();
+
+        byte[] badMagic = (byte[]) valid.clone();
+        badMagic[0] = 0;
+        byte[] truncated = new byte[valid.length - 5];
+        System.arraycopy(valid, 0, truncated, 0, truncated.length);
+
+        baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.write(valid, 0, 4);
+        out.writeInt(-2);
+        byte[] negativeCount = baos.toByteArray();
+
+        baos = new ByteArrayOutputStream();
+        out = new DataOutputStream(baos);
+        out.write(valid, 0, 4);
+        out.writeInt(1);
+        out.writeInt(Integer.MAX_VALUE);
+        byte[] hugeString = baos.toByteArray();
+
+        byte[][] invalidData = new byte[][] {badMagic, truncated, negativeCount, hugeString};
+        for (int i = 0; i < invalidData.length; i++) {
+            try {
+                GatekeeperMessage.decodeFromStream(new ByteArrayInputStream(invalidData[i]));
+                fail("Expected invalid compact message data to be rejected: case " + i);
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public void testCompactContentTypeIsRecognised() throws Exception {
+        assertTrue(GatekeeperMessage.isCompactContentType(GatekeeperMessage.COMPACT_CONTENT_TYPE));
+        assertTrue(GatekeeperMessage.isCompactContentType(
+            "text/plain, " + GatekeeperMessage.COMPACT_CONTENT_TYPE + ";q=0.9"));
+        assertFalse(GatekeeperMessage.isCompactContentType("application/x-www-form-urlencoded"));
+        assertFalse(GatekeeperMessage.isCompactContentType(null));
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.impl.rest.XmlResponsesSaxParser;
+import org.jets3t.service.model.MultipleDeleteResult;
+import org.jets3t.service.utils.RestUtils;
+
+/**
+ * Tests the encoding of object keys in multiple object delete requests, and the parsing
+ * of the service's responses to these requests.
+ *
+ * @author James Murty
+ */
+public class MultipleDeleteTest extends TestCase {
+
+    private MultipleDeleteResult parse(String xml) throws Exception {
+        return new XmlResponsesSaxParser().parseMultipleDeleteResponse(
+            new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    public void testSpecialCharactersAreEncoded() throws Exception {
+        assertEquals("plain/key.txt", RestUtils.encodeXmlString("plain/key.txt"));
+        assertEquals("a&amp;b&lt;c&gt;d&quot;e&apos;f",
+            RestUtils.encodeXmlString("a&b<c>d\"e'f"));
+        assertEquals("tab&#9;lf&#10;cr&#13;", RestUtils.encodeXmlString("tab\tlf\ncr\r"));
+        assertEquals("", RestUtils.encodeXmlString(""));
+    }
+
+    public void testKeysWithControlCharactersAreNotEncodable() throws Exception {
+        assertTrue(RestUtils.isXmlEncodable("dir/file name.txt"));
+        assertTrue(RestUtils.isXmlEncodable("tab\tlf\ncr\r"));
+        assertTrue(RestUtils.isXmlEncodable("caf\u00e9"));
+        assertFalse(RestUtils.isXmlEncodable("bell\u0007"));
+        assertFalse(RestUtils.isXmlEncodable("nul\u0000"));
+        assertFalse(RestUtils.isXmlEncodable("\uFFFE"));
+    }
+
+    public void testDeletedKeysAndErrorsAreParsed() throws Exception {
+        MultipleDeleteResult result = parse(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+            + "<Deleted><Key>first.txt</Key></Deleted>"
+            + "<Error><Key>locked.txt</Key><Code>AccessDenied</Code>"
+            + "<Message>Access Denied</Message></Error>"
+            + "<Deleted><Key>dir/second.txt</Key></Deleted>"
+            + "</DeleteResult>");
+
+        assertEquals(2, result.getDeletedObjectKeys().length);
+        assertEquals("first.txt", result.getDeletedObjectKeys()[0]);
+        assertEquals("dir/second.txt", result.getDeletedObjectKeys()[1]);
+        assertTrue(result.hasErrors());
+        MultipleDeleteResult.ErrorResult error = result.getErrorResults()[0];
+        assertEquals("locked.txt", error.getObjectKey());
+        assertEquals("AccessDenied", error.getErrorCode());
+        assertEquals("Access Denied", error.getMessage());
+    }
+
+    public void testQuietResponseWithoutErrorsIsEmpty() throws Exception {
+        MultipleDeleteResult result = parse(
+            "<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"></DeleteResult>");
+        assertEquals(0, result.getDeletedObjectKeys().length);
+        assertFalse(result.hasErrors());
+    }
+
+    public void testEncodedKeysAreParsedUnchanged() throws Exception {
+        String key = "  a&b <c>\t\"quoted\"\r\n'line'  ";
+        MultipleDeleteResult result = parse(
+            "<DeleteResult><Deleted><Key>" + RestUtils.encodeXmlString(key)
+            + "</Key></Deleted></DeleteResult>");
+        assertEquals(key, result.getDeletedObjectKeys()[0]);
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.cache.ObjectDataCache;
+import org.jets3t.service.model.S3Object;
+import org.jets3t.service.utils.ServiceUtils;
+
+/**
+ * Tests the storage, eviction and reuse across cache instances of the object data cached
+ * on the local disk.
+ *
+ * @author James Murty
+ */
+public class ObjectDataCacheTest extends TestCase {
+
+    private File baseDirectory = null;
+
+    protected void setUp() throws Exception {
+        baseDirectory = File.createTempFile("jets3t-data-cache", ".test");
+        baseDirectory.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        deleteRecursively(baseDirectory);
+    }
+
+    private void deleteRecursively(File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            deleteRecursively(files[i]);
+        }
+        file.delete();
+    }
+
+    private S3Object buildObject(String key, String data) throws Exception {
+        S3Object object = new S3Object(null, key, data);
+        object.setETag(ServiceUtils.toHex(ServiceUtils.computeMD5Hash(data.getBytes("UTF-8"))));
+        object.addMetadata("x-amz-meta-color", "blue");
+        return object;
+    }
+
+    private String readData(ObjectDataCache.Entry entry) throws Exception {
+        S3Object object = entry.openObject();
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int byteCount = -1;
+            while ((byteCount = object.getDataInputStream().read(buffer)) != -1) {
+                baos.write(buffer, 0, byteCount);
+            }
+            return new String(baos.toByteArray(), "UTF-8");
+        } finally {
+            object.closeDataInputStream();
+        }
+    }
+
+    public void testCachedDataIsServed() throws Exception {
+        ObjectDataCache cache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        try {
+            cache.put("bucket", buildObject("dir/key.txt", "Hello World"));
+
+            ObjectDataCache.Entry entry = cache.get("bucket", "dir/key.txt");
+            assertNotNull(entry);
+            assertFalse(entry.isExpired());
+            assertEquals("Hello World", readData(entry));
+            assertEquals("blue", entry.openObject().getMetadata("x-amz-meta-color"));
+            assertNull(cache.get("other-bucket", "dir/key.txt"));
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testDataThatDoesNotMatchETagIsRejected() throws Exception {
+        ObjectDataCache cache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        try {
+            S3Object object = buildObject("key", "Hello World");
+            object.setETag("00000000000000000000000000000000");
+            try {
+                cache.put("bucket", object);
+                fail("Expected data that does not match its ETag to be rejected");
+            } catch (S3ServiceException e) {
+            }
+            assertNull(cache.get("bucket", "key"));
+            assertEquals(1, cache.getCacheDirectory().list().length);
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testLeastRecentlyUsedDataIsEvicted() throws Exception {
+        ObjectDataCache cache = new ObjectDataCache(baseDirectory, 25, 60000);
+        try {
+            cache.put("bucket", buildObject("a", "0123456789"));
+            cache.put("bucket", buildObject("b", "0123456789"));
+            cache.get("bucket", "a");
+            cache.put("bucket", buildObject("c", "0123456789"));
+
+            assertNotNull(cache.get("bucket", "a"));
+            assertNull(cache.get("bucket", "b"));
+            assertNotNull(cache.get("bucket", "c"));
+            assertEquals(20, cache.getCachedBytes());
+            assertEquals(1, cache.getEvictionCount());
+        } finally {
+            cache.close();
+        }
+    }
+
+    public void testDataIsReusedByLaterCache() throws Exception {
+        ObjectDataCache cache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        cache.put("bucket", buildObject("dir/key.txt", "Hello World"));
+        cache.put("bucket", buildObject("removed.txt", "Goodbye"));
+        cache.invalidate("bucket", "removed.txt");
+        File cacheDirectory = cache.getCacheDirectory();
+        cache.close();
+
+        // Files left by an interrupted download are not reused.
+        new FileOutputStream(new File(cacheDirectory, "partial.tmp")).close();
+
+        ObjectDataCache laterCache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        try {
+            assertEquals(cacheDirectory, laterCache.getCacheDirectory());
+            assertEquals(11, laterCache.getCachedBytes());
+            assertNull(laterCache.get("bucket", "removed.txt"));
+            assertFalse(new File(cacheDirectory, "partial.tmp").exists());
+
+            ObjectDataCache.Entry entry = laterCache.get("bucket", "dir/key.txt");
+            assertNotNull(entry);
+            assertTrue("Reused data must be revalidated", entry.isExpired());
+            assertEquals(buildObject("dir/key.txt", "Hello World").getETag(), entry.getETag());
+            assertEquals("Hello World", readData(entry));
+            assertEquals("blue", entry.openObject().getMetadata("x-amz-meta-color"));
+        } finally {
+            laterCache.close();
+        }
+    }
+
+    public void testRunningCacheDirectoryIsNotTakenOver() throws Exception {
+        ObjectDataCache cache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        ObjectDataCache otherCache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        try {
+            cache.put("bucket", buildObject("key", "Hello World"));
+            assertFalse(cache.getCacheDirectory().equals(otherCache.getCacheDirectory()));
+            assertNull(otherCache.get("bucket", "key"));
+        } finally {
+            cache.close();
+            otherCache.close();
+        }
+
+        // Only one of the closed caches' directories is taken over, the other is deleted.
+        ObjectDataCache laterCache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        try {
+            assertEquals(1, baseDirectory.list().length);
+        } finally {
+            laterCache.close();
+        }
+    }
+
+    public void testReusedDataIsEvictedToFitMaximumSize() throws Exception {
+        ObjectDataCache cache = new ObjectDataCache(baseDirectory, 1000, 60000);
+        cache.put("bucket", buildObject("a", "0123456789"));
+        cache.put("bucket", buildObject("b", "0123456789"));
+        cache.close();
+
+        ObjectDataCache laterCache = new ObjectDataCache(baseDirectory, 15, 60000);
+        try {
+            assertEquals(10, laterCache.getCachedBytes());
+            assertEquals(1, laterCache.getEvictionCount());
+            assertEquals(3, laterCache.getCacheDirectory().list().length);
+        } finally {
+            laterCache.close();
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.Constants;
+import org.jets3t.service.model.S3Object;
+import org.jets3t.service.utils.PackIndex;
+import org.jets3t.service.utils.ServiceUtils;
+
+/**
+ * Tests the serialization and bookkeeping of the index of packed small files.
+ *
+ * @author James Murty
+ */
+public class PackIndexTest extends TestCase {
+
+    private PackIndex buildIndex() {
+        PackIndex index = new PackIndex();
+        index.putEntry("dir/b.txt", new PackIndex.Entry(
+            ".jets3t-packs/pack-1", 100, 50, "bbbbbbbbbbbbbbbbbbbbbb==", 1200000000000L));
+        index.putEntry("a file\twith tab.txt", new PackIndex.Entry(
+            ".jets3t-packs/pack-1", 0, 100, "aaaaaaaaaaaaaaaaaaaaaa==", 1100000000000L));
+        index.putEntry("c.txt", new PackIndex.Entry(
+            ".jets3t-packs/pack 2", 0, 10, "cccccccccccccccccccccc==", 1300000000000L));
+        return index;
+    }
+
+    public void testSerializedIndexCanBeParsed() throws Exception {
+        PackIndex index = buildIndex();
+        PackIndex parsed = PackIndex.parse(new ByteArrayInputStream(index.toByteArray()));
+
+        assertEquals(3, parsed.size());
+        assertEquals(index.getKeys(), parsed.getKeys());
+        PackIndex.Entry entry = parsed.getEntry("a file\twith tab.txt");
+        assertEquals(".jets3t-packs/pack-1", entry.getPackKey());
+        assertEquals(0, entry.getOffset());
+        assertEquals(100, entry.getLength());
+        assertEquals("aaaaaaaaaaaaaaaaaaaaaa==", entry.getMd5HashAsBase64());
+        assertEquals(1100000000000L, entry.getLastModified());
+        assertEquals(".jets3t-packs/pack 2", parsed.getEntry("c.txt").getPackKey());
+    }
+
+    public void testKeysAreSorted() throws Exception {
+        Object[] keys = buildIndex().getKeys().toArray();
+        assertEquals("a file\twith tab.txt", keys[0]);
+        assertEquals("c.txt", keys[1]);
+        assertEquals("dir/b.txt", keys[2]);
+    }
+
+    public void testInvalidIndexDataIsRejected() throws Exception {
+        try {
+            PackIndex.parse(new ByteArrayInputStream("not an index\n".getBytes("UTF-8")));
+            fail("Expected data without the index header to be rejected");
+        } catch (IOException e) {
+        }
+
+        byte[] data = buildIndex().toByteArray();
+        String truncated = new String(data, "UTF-8");
+        truncated = truncated.substring(0, truncated.lastIndexOf('\t')) + "\n";
+        try {
+            PackIndex.parse(new ByteArrayInputStream(truncated.getBytes("UTF-8")));
+            fail("Expected an entry with missing fields to be rejected");
+        } catch (IOException e) {
+        }
+    }
+
+    public void testReferencedPackKeysAndRemoval() throws Exception {
+        PackIndex index = buildIndex();
+        assertEquals(2, index.getReferencedPackKeys().size());
+
+        index.removeEntries(Arrays.asList(new String[] {"c.txt", "missing.txt"}));
+        assertEquals(2, index.size());
+        assertFalse(index.containsKey("c.txt"));
+        assertEquals(1, index.getReferencedPackKeys().size());
+        assertTrue(index.getReferencedPackKeys().contains(".jets3t-packs/pack-1"));
+
+        assertNotNull(index.removeEntry("dir/b.txt"));
+        assertNull(index.removeEntry("dir/b.txt"));
+    }
+
+    public void testObjectMapCarriesHashAndDate() throws Exception {
+        Map objectsMap = buildIndex().buildS3ObjectMap();
+        assertEquals(3, objectsMap.size());
+        S3Object object = (S3Object) objectsMap.get("dir/b.txt");
+        assertEquals(50, object.getContentLength());
+        assertEquals("bbbbbbbbbbbbbbbbbbbbbb==",
+            object.getMetadata(S3Object.METADATA_HEADER_ORIGINAL_HASH_MD5));
+        assertEquals(ServiceUtils.formatIso8601Date(new Date(1200000000000L)),
+            object.getMetadata(Constants.METADATA_JETS3T_LOCAL_FILE_DATE));
+        assertTrue(object.isMetadataComplete());
+    }
+
+    public void testPackDirectoryPaths() throws Exception {
+        assertEquals(".jets3t-packs/", PackIndex.getPackDirectoryPath(""));
+        assertEquals("root/.jets3t-packs/", PackIndex.getPackDirectoryPath("root"));
+        assertEquals("root/.jets3t-packs/", PackIndex.getPackDirectoryPath("root/"));
+        assertTrue(PackIndex.isPackDirectoryKey(".jets3t-packs"));
+        assertTrue(PackIndex.isPackDirectoryKey(".jets3t-packs/index"));
+        assertFalse(PackIndex.isPackDirectoryKey(".jets3t-packs-other"));
+        assertFalse(PackIndex.isPackDirectoryKey("dir/.jets3t-packs/index"));
+    }
+
+}
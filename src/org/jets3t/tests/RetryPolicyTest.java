@@ -0,0 +1,126 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import junit.framework.TestCase;
+
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.retry.DefaultRetryPolicy;
+import org.jets3t.service.retry.RetryBudget;
+import org.jets3t.service.retry.RetryPolicy;
+
+/**
+ * Tests the default retry policy and the retry budget shared by a service's requests.
+ *
+ * @author James Murty
+ */
+public class RetryPolicyTest extends TestCase {
+
+    private Jets3tProperties buildProperties() {
+        Jets3tProperties properties = new Jets3tProperties();
+        properties.setProperty("s3service.retry-base-delay-ms", "100");
+        properties.setProperty("s3service.retry-max-delay-ms", "2000");
+        properties.setProperty("s3service.internal-error-retry-max", "4");
+        properties.setProperty("httpclient.retry-max", "3");
+        properties.setProperty("s3service.io-error-retry-max", "2");
+        properties.setProperty("s3service.redirect-max", "6");
+        return properties;
+    }
+
+    public void testMaximumRetriesDependOnErrorAndOperation() throws Exception {
+        RetryPolicy policy = new DefaultRetryPolicy(buildProperties());
+
+        assertEquals(4, policy.getMaxRetries(
+            RetryPolicy.OPERATION_WRITE, RetryPolicy.ERROR_SERVER_UNAVAILABLE));
+        assertEquals(3, policy.getMaxRetries(
+            RetryPolicy.OPERATION_WRITE, RetryPolicy.ERROR_REQUEST_TIMEOUT));
+        assertEquals(2, policy.getMaxRetries(
+            RetryPolicy.OPERATION_READ, RetryPolicy.ERROR_IO));
+        assertEquals(2, policy.getMaxRetries(
+            RetryPolicy.OPERATION_DELETE, RetryPolicy.ERROR_IO));
+        assertEquals("Writes should not be retried after IO errors", 0,
+            policy.getMaxRetries(RetryPolicy.OPERATION_WRITE, RetryPolicy.ERROR_IO));
+        assertEquals(0, policy.getMaxRetries(RetryPolicy.OPERATION_READ, 99));
+        assertEquals(6, policy.getMaxRedirects());
+    }
+
+    public void testDelaysAreJitteredWithinBounds() throws Exception {
+        RetryPolicy policy = new DefaultRetryPolicy(buildProperties());
+
+        long previousDelayMs = 0;
+        boolean isDelayVaried = false;
+        for (int i = 1; i <= 1000; i++) {
+            long delayMs = policy.getRetryDelayMs(i, previousDelayMs);
+            assertTrue("Delay below base: " + delayMs, delayMs >= 100);
+            assertTrue("Delay above maximum: " + delayMs, delayMs <= 2000);
+            assertTrue("Delay above three times previous: " + delayMs,
+                delayMs <= Math.max(100, previousDelayMs) * 3);
+            if (previousDelayMs > 0 && delayMs != previousDelayMs) {
+                isDelayVaried = true;
+            }
+            previousDelayMs = delayMs;
+        }
+        assertTrue("Delays should be random", isDelayVaried);
+    }
+
+    public void testMaximumDelayIsNeverBelowBaseDelay() throws Exception {
+        Jets3tProperties properties = new Jets3tProperties();
+        properties.setProperty("s3service.retry-base-delay-ms", "500");
+        properties.setProperty("s3service.retry-max-delay-ms", "10");
+        RetryPolicy policy = new DefaultRetryPolicy(properties);
+        assertEquals(500, policy.getRetryDelayMs(1, 0));
+        assertEquals(500, policy.getRetryDelayMs(5, 500));
+    }
+
+    public void testBudgetIsSpentByRetriesAndEarnedBySuccesses() throws Exception {
+        RetryBudget budget = new RetryBudget(3, 2);
+        assertEquals(3, budget.getAvailableTokens());
+        assertTrue(budget.tryAcquireRetry());
+        assertTrue(budget.tryAcquireRetry());
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse("Budget should be exhausted", budget.tryAcquireRetry());
+        assertEquals(0, budget.getAvailableTokens());
+
+        budget.recordSuccess();
+        assertFalse("One success earns only half a token", budget.tryAcquireRetry());
+        budget.recordSuccess();
+        assertEquals(1, budget.getAvailableTokens());
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+    }
+
+    public void testBudgetIsLimitedByCapacity() throws Exception {
+        RetryBudget budget = new RetryBudget(2, 1);
+        for (int i = 0; i < 10; i++) {
+            budget.recordSuccess();
+        }
+        assertEquals(2, budget.getAvailableTokens());
+    }
+
+    public void testDisabledBudgetIsUnlimited() throws Exception {
+        Jets3tProperties properties = new Jets3tProperties();
+        properties.setProperty("s3service.retry-budget-capacity", "0");
+        RetryBudget budget = new RetryBudget(properties);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(budget.tryAcquireRetry());
+        }
+        assertEquals(-1, budget.getAvailableTokens());
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * jets3t : Java Extra-Tasty S3 Toolkit (for Amazon S3 online storage service)
+ * This is a java.net project, see https://jets3t.dev.java.net/
+ *
+ * Copyright 2008 James Murty
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jets3t.tests;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Date;
+
+import org.jets3t.service.Jets3tProperties;
+import org.jets3t.service.S3Service;
+import org.jets3t.service.impl.rest.httpclient.RestS3Service;
+import org.jets3t.service.model.S3Object;
+import org.jets3t.service.security.AWSCredentials;
+import org.jets3t.service.utils.ServiceUtils;
+
+/**
+ * Compares the HTTP transports available to {@link RestS3Service} by performing many
+ * concurrent HEAD and GET object requests against a local stand-in S3 server, which answers
+ * every request for an object after a fixed delay to imitate network and service latency.
+ * <p>
+ * Usage: <tt>TransportBenchmark [requests] [concurrency] [latencyMs] [objectSize]</tt>
+ * <br>
+ * The defaults are 2000 requests, 50 concurrent requests, 10ms latency and 1024 byte objects.
+ * The benchmark runs once with the <tt>httpclient</tt> transport and once with the
+ * <tt>nio</tt> transport, and reports the throughput and average latency of each.
+ *
+ * @author James Murty
+ */
+public class TransportBenchmark {
+    private static final String BUCKET_NAME = "TransportBenchmark";
+
+    /**
+     * A minimal HTTP/1.1 server with persistent connections, which serves the same object
+     * data for every GET request and the same object details for every HEAD request.
+     */
+    private static class StandInServer implements Runnable {
+        private final ServerSocket serverSocket;
+        private final long latencyMs;
+        private final byte[] objectData;
+        private final String etag;
+
+        public StandInServer(long latencyMs, int objectSize) throws Exception {
+            this.serverSocket = new ServerSocket(0, 1000, InetAddress.getByName("127.0.0.1"));
+            this.latencyMs = latencyMs;
+            this.objectData = new byte[objectSize];
+            for (int i = 0; i < objectSize; i++) {
+                objectData[i] = (byte) ('a' + (i % 26));
+            }
+            this.etag = "\"" + ServiceUtils.toHex(ServiceUtils.computeMD5Hash(objectData)) + "\"";
+        }
+
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public void run() {
+            while (true) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    Thread connectionThread = new Thread(new Runnable() {
+                        public void run() {
+                            serveConnection(socket);
+                        }
+                    });
+                    connectionThread.setDaemon(true);
+                    connectionThread.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serveConnection(Socket socket) {
+            try {
+                socket.setTcpNoDelay(true);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+                String requestLine = null;
+                while ((requestLine = readLine(in)) != null) {
+                    // Read headers, noting the length of any request body.
+                    long contentLength = 0;
+                    String header = null;
+                    while ((header = readLine(in)) != null && header.length() > 0) {
+                        if (header.toLowerCase().startsWith("content-length:")) {
+                            contentLength = Long.parseLong(header.substring(15).trim());
+                        }
+                    }
+                    for (long i = 0; i < contentLength; i++) {
+                        in.read();
+                    }
+
+                    if (latencyMs > 0) {
+                        Thread.sleep(latencyMs);
+                    }
+
+                    boolean isHead = requestLine.startsWith("HEAD ");
+                    String date = ServiceUtils.formatRfc822Date(new Date());
+                    String response =
+                        "HTTP/1.1 200 OK\r\n"
+                        + "Date: " + date + "\r\n"
+                        + "Last-Modified: " + date + "\r\n"
+                        + "ETag: " + etag + "\r\n"
+                        + "Content-Type: application/octet-stream\r\n"
+                        + "Content-Length: " + objectData.length + "\r\n"
+                        + "\r\n";
+                    out.write(response.getBytes("US-ASCII"));
+                    if (!isHead) {
+                        out.write(objectData);
+                    }
+                    out.flush();
+                }
+            } catch (Exception e) {
+                // Connection closed by client.
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        private String readLine(InputStream in) throws IOException {
+            StringBuffer line = new StringBuffer();
+            int b = -1;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    return line.toString();
+                }
+                line.append((char) b);
+            }
+            return (line.length() > 0 ? line.toString() : null);
+        }
+    }
+
+    private static S3Service createService(String transport, int port, int concurrency)
+        throws Exception
+    {
+        Jets3tProperties properties = new Jets3tProperties();
+        properties.setProperty("httpclient.transport", transport);
+        properties.setProperty("httpclient.max-connections", String.valueOf(concurrency));
+        properties.setProperty("httpclient.proxy-autodetect", "false");
+        properties.setProperty("s3service.https-only", "false");
+        properties.setProperty("s3service.s3-endpoint", "127.0.0.1");
+        properties.setProperty("s3service.s3-endpoint-http-port", String.valueOf(port));
+
+        AWSCredentials fakeAwsCredentials =
+            new AWSCredentials("fake-aws-access-key", "fake-aws-secret-key");
+        return new RestS3Service(fakeAwsCredentials, "TransportBenchmark", null, properties);
+    }
+
+    private static void runBenchmark(final S3Service s3Service, String transport,
+        final int requestCount, int concurrency) throws Exception
+    {
+        final int[] nextRequest = new int[] {0};
+        final long[] totalLatencyMs = new long[] {0};
+        final int[] errorCount = new int[] {0};
+
+        Thread[] threads = new Thread[concurrency];
+        long startTime = System.currentTimeMillis();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    byte[] buffer = new byte[8192];
+                    while (true) {
+                        int requestNumber;
+                        synchronized (nextRequest) {
+                            if (nextRequest[0] >= requestCount) {
+                                return;
+                            }
+                            requestNumber = nextRequest[0]++;
+                        }
+                        String key = "object-" + requestNumber;
+                        long requestStart = System.currentTimeMillis();
+                        try {
+                            if (requestNumber % 2 == 0) {
+                                s3Service.getObjectDetails(BUCKET_NAME, key, null, null, null, null);
+                            } else {
+                                S3Object object = s3Service.getObject(
+                                    BUCKET_NAME, key, null, null, null, null, null, null);
+                                InputStream is = object.getDataInputStream();
+                                while (is.read(buffer) != -1) {
+                                    // Discard data.
+                                }
+                                is.close();
+                            }
+                            synchronized (totalLatencyMs) {
+                                totalLatencyMs[0] += System.currentTimeMillis() - requestStart;
+                            }
+                        } catch (Exception e) {
+                            synchronized (errorCount) {
+                                if (errorCount[0]++ == 0) {
+                                    e.printStackTrace();
+                                }
+                            }
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - startTime);
+
+        int successCount = requestCount - errorCount[0];
+        System.out.println(transport + ": " + requestCount + " requests in " + elapsedMs + "ms"
+            + ", " + (requestCount * 1000L / elapsedMs) + " requests/sec"
+            + ", average latency " + (successCount > 0 ? totalLatencyMs[0] / successCount : 0) + "ms"
+            + ", errors " + errorCount[0]
+            + ", live threads " + Thread.activeCount());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requestCount = (args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+        int concurrency = (args.length > 1 ? Integer.parseInt(args[1]) : 50);
+        long latencyMs = (args.length > 2 ? Long.parseLong(args[2]) : 10);
+        int objectSize = (args.length > 3 ? Integer.parseInt(args[3]) : 1024);
+
+        StandInServer server = new StandInServer(latencyMs, objectSize);
+        Thread serverThread = new Thread(server);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        System.out.println("Stand-in server listening on port " + server.getPort());
+
+        String[] transports = new String[] {"httpclient", "nio"};
+        for (int i = 0; i < transports.length; i++) {
+            S3Service s3Service = createService(transports[i], server.getPort(), concurrency);
+            // Warm up connections and code paths before measuring.
+            runBenchmark(s3Service, transports[i] + " (warm-up)", concurrency * 2, concurrency);
+            runBenchmark(s3Service, transports[i], requestCount, concurrency);
+            ((RestS3Service) s3Service).getHttpTransport().shutdown();
+        }
+    }
+
+}